@@ -312,6 +312,26 @@ def get_underlying_type(data_type, allow_data_structures=True):
     return data_type
 
 
+def get_validation_patterns(fields):
+    """
+    Returns the string patterns validated by the given fields, in order of first use, mapped to the
+    name of the first field that uses each pattern.
+    """
+    patterns = OrderedDict()
+
+    def add_patterns(field, data_type):
+        if is_nullable_type(data_type) or is_list_type(data_type):
+            add_patterns(field, data_type.data_type)
+        elif is_map_type(data_type):
+            add_patterns(field, data_type.value_data_type)
+        elif is_string_type(data_type) and data_type.pattern is not None:
+            patterns.setdefault(data_type.pattern, field.name)
+
+    for field in fields:
+        add_patterns(field, field.data_type)
+    return patterns
+
+
 def union_create_with_method_name(data_type, value_fields_subset):
     if len(value_fields_subset) > 0:
         method_suffix = 'And%s' % _capwords(value_fields_subset[0].name)
@@ -720,6 +740,10 @@ class JavaImporter(object):
         )
         for route in namespace.routes:
             self.add_imports_for_route(route)
+            if is_struct_type(route.arg_data_type):
+                self.add_imports_for_pattern_validation(route.arg_data_type.all_fields)
+            if self._j.request_style(route) == 'rpc':
+                self.add_imports('com.dropbox.core.DbxCallback')
 
     def add_imports_for_route(self, route):
         assert isinstance(route, ApiRoute), repr(route)
@@ -812,14 +836,21 @@ class JavaImporter(object):
 
         for field in data_type.all_fields:
             self.add_imports_for_field(field)
-            # for regex pattern validation
-            if is_string_type(field.data_type) and field.data_type.pattern is not None:
-                self.add_imports('java.util.regex.Pattern')
+
+        # for regex pattern validation
+        self.add_imports_for_pattern_validation(data_type.all_fields)
 
         # check if we need to import parent type
         if is_struct_type(data_type) and data_type.parent_type:
             self._add_imports_for_data_type(data_type.parent_type)
 
+    def add_imports_for_pattern_validation(self, fields):
+        if get_validation_patterns(fields):
+            self.add_imports(
+                'com.dropbox.core.stone.StoneValidation',
+                'java.util.regex.Pattern',
+            )
+
     def add_imports_for_exception_type(self, data_type):
         j = self._j
         self.add_imports(
@@ -879,6 +910,8 @@ class JavaImporter(object):
             self.add_imports('com.dropbox.core.stone.StructSerializer')
         elif is_union_type(data_type):
             self.add_imports('com.dropbox.core.stone.UnionSerializer')
+        if self._j.uses_indexed_dispatch(data_type):
+            self.add_imports('java.util.Map')
 
     def __repr__(self):
         return '%s(class=%s,imports=%s)' % (type(self).__name__, self._class, self._imports)
@@ -897,6 +930,7 @@ class JavaClassWriter(object):
         self._class = java_class
         self._stone_element = stone_element
         self._package_doc = package_doc
+        self._pattern_constants = {}
 
         if package_doc:
             assert java_class.name == 'package-info', "Only package-info.java files can contain package Javadoc"
@@ -980,6 +1014,38 @@ class JavaClassWriter(object):
         else:
             return self.block('%s %s %s', ' '.join(modifiers), class_type, class_name)
 
+    def pattern_constants(self, fields):
+        """
+        Emits precompiled static Pattern constants for all the string patterns validated by the
+        given fields. Validation code generated afterwards in this class will reference these
+        constants instead of recompiling the pattern on every call.
+        """
+        patterns = get_validation_patterns(fields)
+        if not patterns:
+            return
+
+        pattern_class = JavaClass('java.util.regex.Pattern')
+        used_names = set(self._pattern_constants.values())
+
+        self.out('')
+        for pattern, field_name in patterns.items():
+            if pattern in self._pattern_constants:
+                continue
+            name = allcaps(field_name) + '_PATTERN'
+            suffix = 2
+            while name in used_names:
+                name = '%s_PATTERN_%d' % (allcaps(field_name), suffix)
+                suffix += 1
+            used_names.add(name)
+            self._pattern_constants[pattern] = name
+            self.out('private static final %s %s = %s.compile("%s");',
+                     pattern_class, name, pattern_class, sanitize_pattern(pattern))
+
+    def pattern_constant(self, pattern):
+        assert pattern in self._pattern_constants, \
+            "Pattern constant not declared in %s: %r" % (self._class, pattern)
+        return self._pattern_constants[pattern]
+
     def resolved_class(self, val, generics=True):
         if isinstance(val, six.text_type):
             val = JavaClass(val)
@@ -1781,6 +1847,21 @@ class JavaApi(object):
         else:
             return False
 
+    @staticmethod
+    def deserializer_dispatch_names(data_type):
+        """
+        Returns the JSON names a deserializer for the given data type must dispatch on: struct
+        field names or union tags (excluding the catch-all tag).
+        """
+        assert is_user_defined_type(data_type), repr(data_type)
+        if is_union_type(data_type):
+            return [f.name for f in data_type.all_fields if f != data_type.catch_all_field]
+        else:
+            return [f.name for f in data_type.all_fields]
+
+    def uses_indexed_dispatch(self, data_type):
+        return len(self.deserializer_dispatch_names(data_type)) >= _INDEXED_DISPATCH_MIN_NAMES
+
     def is_collapsible(self, data_type):
         assert isinstance(data_type, DataType), repr(data_type)
         return is_struct_type(data_type) and not data_type.has_enumerated_subtypes()
@@ -1961,6 +2042,11 @@ class JavaApi(object):
         assert isinstance(route, ApiRoute), repr(route)
         return camelcase(format_func_name(route))
 
+    @staticmethod
+    def route_async_method(route):
+        assert isinstance(route, ApiRoute), repr(route)
+        return camelcase(format_func_name(route) + '_async')
+
     @staticmethod
     def route_builder_method(route):
         assert isinstance(route, ApiRoute), repr(route)
@@ -2634,6 +2720,12 @@ class JavaCodeGenerationInstance(object):
             w.javadoc('Routes in namespace "%s".' % namespace.name)
             with w.class_block(namespace):
                 w.out('// namespace %s (%s)', namespace.name, ', '.join(j.get_spec_filenames(namespace)))
+                w.pattern_constants([
+                    field
+                    for route in namespace.routes if is_struct_type(route.arg_data_type)
+                    for field in route.arg_data_type.all_fields
+                ])
+
                 w.out('')
                 w.out('private final DbxRawClientV2 client;')
 
@@ -2641,6 +2733,13 @@ class JavaCodeGenerationInstance(object):
                 with w.block('public %s(DbxRawClientV2 client)', j.java_class(namespace)):
                     w.out('this.client = client;')
 
+                # lets hand-written helpers in the same package call routes with their own
+                # serializers, such as streaming deserializers for large results
+                w.out('')
+                w.javadoc('Returns the client these requests are sent through.')
+                with w.block('DbxRawClientV2 getClient()'):
+                    w.out('return client;')
+
                 for route in namespace.routes:
                     w.out('')
                     w.out('//')
@@ -2762,6 +2861,69 @@ class JavaCodeGenerationInstance(object):
             else:
                 assert False, "unrecognized route request style: %s" % j.request_style(route)
 
+        if j.request_style(route) == 'rpc':
+            self.generate_route_base_async(route, is_public)
+
+    def generate_route_base_async(self, route, is_public):
+        assert isinstance(route, ApiRoute), repr(route)
+
+        w = self.w
+        j = self.j
+
+        assert j.request_style(route) == 'rpc', repr(route)
+
+        result_class = j.java_class(route.result_data_type, boxed=True)
+
+        if is_public:
+            deprecated = None # automatically determine from route
+            visibility = 'public'
+        else:
+            deprecated = False # Don't mark private methods deprecated since we don't care
+            visibility = ''    # package private
+
+        args = []
+        params = []
+        if j.has_arg(route):
+            args.append(w.fmt('%s arg', j.java_class(route.arg_data_type)))
+            params.append(('arg', route.arg_data_type.doc))
+        args.append(w.fmt('%s callback', JavaClass('com.dropbox.core.DbxCallback', generics=(result_class,))))
+        params.append(('callback', 'Receives the result of the request, or its error.'))
+
+        doc = """
+            Asynchronous version of %s.
+
+            Route errors are passed to {@code callback} as %s instead of being thrown.
+            """ % (w.javadoc_ref(route), w.javadoc_ref(j.route_exception_class(route)))
+
+        w.out('')
+        w.javadoc(doc, stone_elem=route, deprecated=deprecated, params=params)
+        with w.block('%s void %s(%s)',
+                     visibility,
+                     j.route_async_method(route),
+                     ', '.join(args)):
+            rpc_callback_class = JavaClass('com.dropbox.core.v2.DbxRawClientV2.RpcCallback',
+                                           generics=(result_class,))
+            with w.block('%s _callback = new %s(callback)',
+                         rpc_callback_class, rpc_callback_class, after=';'):
+                w.out('@Override')
+                with w.block('protected DbxException newException(DbxWrappedException ex)'):
+                    w.out('return %s' % self.translate_error_wrapper(route, 'ex'))
+
+            self.g.generate_multiline_list(
+                [
+                    'this.client.getHost().%s()' % camelcase('get_' + j.route_host(route)),
+                    '"%s"' % j.url_path(route),
+                    'arg' if j.has_arg(route) else 'null',
+                    'true' if j.auth_style(route) == 'noauth' else 'false',
+                    w.java_serializer(route.arg_data_type),
+                    w.java_serializer(route.result_data_type),
+                    w.java_serializer(route.error_data_type),
+                    '_callback',
+                ],
+                before='this.client.rpcStyleAsync',
+                after=';',
+            )
+
     def generate_route(self, route, required_only=True):
         assert isinstance(route, ApiRoute), repr(route)
 
@@ -2844,27 +3006,7 @@ class JavaCodeGenerationInstance(object):
         w.out('')
         w.javadoc(doc, stone_elem=route, fields=fields, returns=returns, allow_defaults=False)
         with w.block('public %s %s(%s) throws %s', return_class, j.route_method(route), args, throws):
-            arg_class = j.java_class(arg)
-            required_args = ', '.join(j.param_name(f) for f in arg.all_required_fields)
-            if required_only:
-                w.out('%s _arg = new %s(%s);', arg_class, arg_class, required_args)
-            else:
-                optional_fields = arg.all_optional_fields
-                for field in optional_fields:
-                    # disable translation of nulls to default
-                    self.generate_field_validation(field, allow_default=False)
-
-                if j.has_builder(arg):
-                    # use builder to build with optional fields
-                    w.out('%s _arg = %s.newBuilder(%s)', arg_class, required_args)
-                    with self.g.indent():
-                        for field in optional_fields:
-                            w.out('.%s(%s)', j.field_builder_method(field), j.param_name(field))
-                        w.out('.build();')
-                else:
-                    # use full constructor
-                    all_args = ', '.join(j.param_name(f) for f in arg.all_fields)
-                    w.out('%s _arg = new %s(%s);', arg_class, arg_class, all_args)
+            self.generate_route_arg(route, required_only)
 
             if j.has_result(route) or j.request_style(route) in ('upload', 'download'):
                 args = ['_arg']
@@ -2877,6 +3019,55 @@ class JavaCodeGenerationInstance(object):
             else:
                 w.out('%s(_arg);', j.route_method(route))
 
+        if j.request_style(route) == 'rpc':
+            result_class = j.java_class(route.result_data_type, boxed=True)
+            async_args = args + ', ' if args else ''
+            async_args += w.fmt('%s callback', JavaClass('com.dropbox.core.DbxCallback', generics=(result_class,)))
+            async_doc = """
+                Asynchronous version of %s.
+
+                Route errors are passed to {@code callback} as %s instead of being thrown.
+                """ % (
+                    w.javadoc_ref(route),
+                    w.javadoc_ref(j.route_exception_class(route)),
+                )
+            async_params = (('callback', 'Receives the result of the request, or its error.'),)
+
+            w.out('')
+            w.javadoc(async_doc, stone_elem=route, fields=fields, params=async_params, allow_defaults=False)
+            with w.block('public void %s(%s)', j.route_async_method(route), async_args):
+                self.generate_route_arg(route, required_only)
+                w.out('%s(_arg, callback);', j.route_async_method(route))
+
+    def generate_route_arg(self, route, required_only):
+        assert isinstance(route, ApiRoute), repr(route)
+
+        w = self.w
+        j = self.j
+
+        arg = route.arg_data_type
+        arg_class = j.java_class(arg)
+        required_args = ', '.join(j.param_name(f) for f in arg.all_required_fields)
+        if required_only:
+            w.out('%s _arg = new %s(%s);', arg_class, arg_class, required_args)
+        else:
+            optional_fields = arg.all_optional_fields
+            for field in optional_fields:
+                # disable translation of nulls to default
+                self.generate_field_validation(field, allow_default=False)
+
+            if j.has_builder(arg):
+                # use builder to build with optional fields
+                w.out('%s _arg = %s.newBuilder(%s)', arg_class, required_args)
+                with self.g.indent():
+                    for field in optional_fields:
+                        w.out('.%s(%s)', j.field_builder_method(field), j.param_name(field))
+                    w.out('.build();')
+            else:
+                # use full constructor
+                all_args = ', '.join(j.param_name(f) for f in arg.all_fields)
+                w.out('%s _arg = new %s(%s);', arg_class, arg_class, all_args)
+
     def generate_route_builder_method(self, route):
         assert isinstance(route, ApiRoute), repr(route)
 
@@ -3054,6 +3245,8 @@ class JavaCodeGenerationInstance(object):
         w.javadoc(data_type)
         with w.class_block(data_type, visibility=visibility):
             w.out('// union %s (%s)', j.stone_fq_name(data_type), j.get_spec_filename(data_type))
+
+            w.pattern_constants(data_type.all_fields)
             self.generate_enum_values(data_type)
 
             #
@@ -3332,6 +3525,8 @@ class JavaCodeGenerationInstance(object):
         with w.class_block(data_type, visibility=visibility):
             w.out('// struct %s (%s)', j.stone_fq_name(data_type), j.get_spec_filename(data_type))
 
+            w.pattern_constants(data_type.all_fields)
+
             #
             # instance fields
             #
@@ -3886,6 +4081,7 @@ class JavaCodeGenerationInstance(object):
             w.out('public static final %s INSTANCE = new %s();',
                   j.serializer_class(data_type),
                   j.serializer_class(data_type))
+            self.generate_dispatch_index(data_type)
             self.generate_struct_serialize(data_type)
             self.generate_struct_deserialize(data_type)
 
@@ -3906,9 +4102,26 @@ class JavaCodeGenerationInstance(object):
             w.out('public static final %s INSTANCE = new %s();',
                   j.serializer_class(data_type),
                   j.serializer_class(data_type))
+            self.generate_dispatch_index(data_type)
             self.generate_union_serialize(data_type)
             self.generate_union_deserialize(data_type)
 
+    def generate_dispatch_index(self, data_type):
+        w = self.w
+        j = self.j
+
+        if not j.uses_indexed_dispatch(data_type):
+            return
+
+        names = j.deserializer_dispatch_names(data_type)
+        w.out('')
+        self.g.generate_multiline_list(
+            ['"%s"' % name for name in names],
+            before='private static final Map<String, Integer> %s = indexNames' % (
+                'TAG_INDEXES' if is_union_type(data_type) else 'FIELD_INDEXES'),
+            after=';',
+        )
+
     def generate_struct_serialize(self, data_type):
         assert is_struct_type(data_type), repr(data_type)
 
@@ -3978,13 +4191,23 @@ class JavaCodeGenerationInstance(object):
                         w.out('String field = p.getCurrentName();')
                         w.out('p.nextToken();')
 
-                        for i, field in enumerate(data_type.all_fields):
-                            conditional = 'if' if i == 0 else 'else if'
-                            serializer = w.java_serializer(field.data_type)
-                            with w.block('%s ("%s".equals(field))', conditional, field.name):
-                                w.out('f_%s = %s.deserialize(p);', j.param_name(field), serializer)
-                        with w.block('else'):
-                            w.out('skipValue(p);')
+                        if j.uses_indexed_dispatch(data_type):
+                            with w.block('switch (indexOf(FIELD_INDEXES, field))'):
+                                for i, field in enumerate(data_type.all_fields):
+                                    serializer = w.java_serializer(field.data_type)
+                                    with w.block('case %d:', i):
+                                        w.out('f_%s = %s.deserialize(p);', j.param_name(field), serializer)
+                                        w.out('break;')
+                                with w.block('default:'):
+                                    w.out('skipValue(p);')
+                        else:
+                            for i, field in enumerate(data_type.all_fields):
+                                conditional = 'if' if i == 0 else 'else if'
+                                serializer = w.java_serializer(field.data_type)
+                                with w.block('%s ("%s".equals(field))', conditional, field.name):
+                                    w.out('f_%s = %s.deserialize(p);', j.param_name(field), serializer)
+                            with w.block('else'):
+                                w.out('skipValue(p);')
 
                 for field in data_type.all_fields:
                     if field not in data_type.all_optional_fields:
@@ -4003,7 +4226,9 @@ class JavaCodeGenerationInstance(object):
             with w.block('if (!collapsed)'):
                 w.out('expectEndObject(p);')
 
-            w.out('StoneDeserializerLogger.log(value, value.toStringMultiline());')
+            # only pay for the pretty-printed representation if someone is listening
+            with w.block('if (StoneDeserializerLogger.hasCallback(value))'):
+                w.out('StoneDeserializerLogger.log(value, value.toStringMultiline());')
             w.out('return value;')
 
     def generate_union_serialize(self, data_type):
@@ -4067,36 +4292,21 @@ class JavaCodeGenerationInstance(object):
             with w.block('if (tag == null)'):
                 w.out('throw new JsonParseException(p, "Required field missing: " + TAG_FIELD);')
 
-            for field in data_type.all_fields:
-                if field == data_type.catch_all_field:
-                    continue
-
-                field_dt = field.data_type
-                with w.block('else if ("%s".equals(tag))', field.name):
-                    if is_void_type(field.data_type):
-                        w.out('value = %s.%s;', j.java_class(data_type), j.field_static_instance(field))
-                    else:
-                        w.out('%s fieldValue = null;', j.java_class(field_dt, boxed=True, generics=True))
-                        with w.conditional_block(is_nullable_type(field.data_type), 'if (p.getCurrentToken() != JsonToken.END_OBJECT)'):
-                            field_serializer = w.java_serializer(field_dt)
-                            if j.is_collapsible(field_dt) or is_nullable_type(field_dt) and j.is_collapsible(field_dt.data_type):
-                                w.out('fieldValue = %s.deserialize(p, true);', field_serializer)
-                            else:
-                                w.out('expectField("%s", p);', field.name)
-                                w.out('fieldValue = %s.deserialize(p);', field_serializer)
-
-                        if is_nullable_type(field.data_type):
-                            with w.block('if (fieldValue == null)'):
-                                w.out('value = %s.%s();', j.java_class(data_type), j.field_factory_method(field))
-                            with w.block('else'):
-                                w.out('value = %s.%s(fieldValue);', j.java_class(data_type), j.field_factory_method(field))
-                        else:
-                            w.out('value = %s.%s(fieldValue);', j.java_class(data_type), j.field_factory_method(field))
-            with w.block('else'):
-                if data_type.catch_all_field:
-                    w.out('value = %s.%s;', j.java_class(data_type), j.field_static_instance(data_type.catch_all_field))
-                else:
-                    w.out('throw new JsonParseException(p, "Unknown tag: " + tag);')
+            tag_fields = [f for f in data_type.all_fields if f != data_type.catch_all_field]
+            if j.uses_indexed_dispatch(data_type):
+                with w.block('switch (indexOf(TAG_INDEXES, tag))'):
+                    for i, field in enumerate(tag_fields):
+                        with w.block('case %d:', i):
+                            self.generate_union_deserialize_tag(data_type, field)
+                            w.out('break;')
+                    with w.block('default:'):
+                        self.generate_union_deserialize_unknown_tag(data_type)
+            else:
+                for field in tag_fields:
+                    with w.block('else if ("%s".equals(tag))', field.name):
+                        self.generate_union_deserialize_tag(data_type, field)
+                with w.block('else'):
+                    self.generate_union_deserialize_unknown_tag(data_type)
 
             with w.block('if (!collapsed)'):
                 w.out('skipFields(p);')
@@ -4104,6 +4314,40 @@ class JavaCodeGenerationInstance(object):
 
             w.out('return value;')
 
+    def generate_union_deserialize_tag(self, data_type, field):
+        w = self.w
+        j = self.j
+
+        field_dt = field.data_type
+        if is_void_type(field.data_type):
+            w.out('value = %s.%s;', j.java_class(data_type), j.field_static_instance(field))
+        else:
+            w.out('%s fieldValue = null;', j.java_class(field_dt, boxed=True, generics=True))
+            with w.conditional_block(is_nullable_type(field.data_type), 'if (p.getCurrentToken() != JsonToken.END_OBJECT)'):
+                field_serializer = w.java_serializer(field_dt)
+                if j.is_collapsible(field_dt) or is_nullable_type(field_dt) and j.is_collapsible(field_dt.data_type):
+                    w.out('fieldValue = %s.deserialize(p, true);', field_serializer)
+                else:
+                    w.out('expectField("%s", p);', field.name)
+                    w.out('fieldValue = %s.deserialize(p);', field_serializer)
+
+            if is_nullable_type(field.data_type):
+                with w.block('if (fieldValue == null)'):
+                    w.out('value = %s.%s();', j.java_class(data_type), j.field_factory_method(field))
+                with w.block('else'):
+                    w.out('value = %s.%s(fieldValue);', j.java_class(data_type), j.field_factory_method(field))
+            else:
+                w.out('value = %s.%s(fieldValue);', j.java_class(data_type), j.field_factory_method(field))
+
+    def generate_union_deserialize_unknown_tag(self, data_type):
+        w = self.w
+        j = self.j
+
+        if data_type.catch_all_field:
+            w.out('value = %s.%s;', j.java_class(data_type), j.field_static_instance(data_type.catch_all_field))
+        else:
+            w.out('throw new JsonParseException(p, "Unknown tag: " + tag);')
+
     def generate_data_type_validation(self, data_type, value_name, description=None, omit_arg_name=False, level=0):
         assert isinstance(data_type, DataType), repr(data_type)
 
@@ -4165,11 +4409,12 @@ class JavaCodeGenerationInstance(object):
                     w.out('throw new IllegalArgumentException("String%s is longer than %s");',
                           description, java_value)
             if data_type.pattern is not None:
-                # TODO: Save the pattern as a static variable.
-                # NOTE: pattern should match against entire input sequence
-                pattern_class = JavaClass("java.util.regex.Pattern")
-                pattern = sanitize_pattern(data_type.pattern)
-                with w.block('if (!%s.matches("%s", %s))', pattern_class, pattern, value_name):
+                # NOTE: pattern should match against entire input sequence. Values deserialized
+                # from trusted sources may skip the check (see StoneValidation).
+                with w.block('if (%s.isPatternCheckEnabled() && !%s.matcher(%s).matches())',
+                             JavaClass('com.dropbox.core.stone.StoneValidation'),
+                             w.pattern_constant(data_type.pattern),
+                             value_name):
                     w.out('throw new IllegalArgumentException("String%s does not match pattern");', description)
 
         elif any((
@@ -4414,6 +4659,10 @@ _TYPE_MAP_BOXED = {
     'Map': 'java.util.Map',
 }
 
+# Deserializers with more fields (or union tags) than this dispatch on a precomputed name index
+# instead of a chain of String.equals(..) checks. Short chains are as fast as a hash lookup.
+_INDEXED_DISPATCH_MIN_NAMES = 4
+
 _CATCH_ALL_DOC = """
 Catch-all used for unknown tag values returned by the Dropbox servers.
 
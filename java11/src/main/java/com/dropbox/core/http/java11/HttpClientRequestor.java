@@ -0,0 +1,393 @@
+package com.dropbox.core.http.java11;
+
+import com.dropbox.core.http.HttpRequestor;
+import com.dropbox.core.http.SSLConfig;
+import com.dropbox.core.util.IOUtil;
+import com.dropbox.core.util.ProgressOutputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import javax.net.ssl.SSLException;
+
+/**
+ * {@link HttpRequestor} implementation that uses the {@link HttpClient} bundled with Java 11 and
+ * later.
+ *
+ * <p> Unlike {@link com.dropbox.core.http.StandardHttpRequestor}, which issues one request per
+ * connection at a time, {@code HttpClient} negotiates HTTP/2 with the Dropbox API servers and
+ * multiplexes concurrent requests over a small number of connections. Use a single instance of
+ * this requestor (and thus a single {@code HttpClient}) for all your clients to benefit from
+ * this.
+ */
+public class HttpClientRequestor extends HttpRequestor {
+    // Same as OkHttpUtil.PipedStream: the max size for JSON requests on server.
+    private static final int PIPE_BUFFER_SIZE = 5 << 20;
+
+    /**
+     * Returns an {@code HttpClient} instance with the default settings for this SDK.
+     */
+    public static HttpClient defaultHttpClient() {
+        return defaultHttpClientBuilder().build();
+    }
+
+    /**
+     * Returns an {@code HttpClient.Builder} instance with the default settings for this SDK.
+     */
+    public static HttpClient.Builder defaultHttpClientBuilder() {
+        try {
+            return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(DEFAULT_CONNECT_TIMEOUT_MILLIS))
+                // enables certificate pinning
+                .sslContext(SSLConfig.getSSLContext())
+                .sslParameters(SSLConfig.getSSLParameters());
+        } catch (SSLException ex) {
+            throw new IllegalStateException("Unable to configure SSL for HttpClient.", ex);
+        }
+    }
+
+    private final HttpClient client;
+
+    /**
+     * Creates a new instance of this requestor that uses {@code client} for its requests.
+     *
+     * <pre>
+     * HttpClient client = HttpClientRequestor.defaultHttpClient();
+     * HttpRequestor requestor = new HttpClientRequestor(client);
+     * </pre>
+     *
+     * <p> If you don't use {@link #defaultHttpClient()} or {@link #defaultHttpClientBuilder()},
+     * make sure to use Dropbox's hardened SSL settings from {@link SSLConfig}:
+     *
+     * <pre>
+     * HttpClient client = HttpClient.newBuilder()
+     *     ...
+     *     .sslContext(SSLConfig.getSSLContext())
+     *     .sslParameters(SSLConfig.getSSLParameters())
+     *     .build();
+     * </pre>
+     */
+    public HttpClientRequestor(HttpClient client) {
+        if (client == null) throw new NullPointerException("client");
+        this.client = client;
+    }
+
+    /**
+     * Returns the underlying {@code HttpClient} used to make requests.
+     *
+     * @return underlying {@code HttpClient} used by this requestor.
+     */
+    public HttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * Called before building the request and executing it.
+     *
+     * <p> This method should be used by subclasses to make any changes or additions to the request
+     * before it is issued, such as setting a per-request {@link HttpRequest.Builder#timeout}.
+     *
+     * @param request Builder of request to be executed
+     */
+    protected void configureRequest(HttpRequest.Builder request) { }
+
+    /**
+     * Called before returning {@link Response} from a request.
+     *
+     * <p> This method should be used by subclasses to add any logging, analytics, or cleanup
+     * necessary. Do not consume the response body in this method.
+     *
+     * @param response {@code HttpClient} response
+     */
+    protected void interceptResponse(HttpResponse<InputStream> response) { }
+
+    @Override
+    public Response doGet(String url, Iterable<Header> headers) throws IOException {
+        HttpRequest.Builder builder = newRequestBuilder(url, headers);
+        builder.GET();
+        configureRequest(builder);
+        return toResponse(send(builder.build()));
+    }
+
+    @Override
+    public HttpRequestor.Uploader startPost(String url, Iterable<Header> headers) throws IOException {
+        return startUpload(url, headers, "POST");
+    }
+
+    @Override
+    public HttpRequestor.Uploader startPut(String url, Iterable<Header> headers) throws IOException {
+        return startUpload(url, headers, "PUT");
+    }
+
+    /**
+     * Sends the request with {@link HttpClient#sendAsync} instead of blocking the calling thread.
+     * {@code callback} is invoked on one of the {@code HttpClient} executor threads.
+     */
+    @Override
+    public void startPostAsync(String url, Iterable<Header> headers, byte [] body, ResponseCallback callback) {
+        if (callback == null) throw new NullPointerException("callback");
+
+        HttpRequest.Builder builder;
+        try {
+            builder = newRequestBuilder(url, headers);
+        } catch (IOException ex) {
+            callback.onFailure(ex);
+            return;
+        }
+        builder.POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        configureRequest(builder);
+        client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream())
+            .whenComplete((response, error) -> {
+                if (error == null) {
+                    Response converted;
+                    try {
+                        converted = toResponse(response);
+                    } catch (RuntimeException ex) {
+                        // whenComplete would swallow it, leaving the callback uncalled
+                        IOUtil.closeQuietly(response.body());
+                        callback.onFailure(new IOException(ex));
+                        return;
+                    }
+                    callback.onResponse(converted);
+                } else if (error instanceof IOException) {
+                    callback.onFailure((IOException) error);
+                } else if (error.getCause() instanceof IOException) {
+                    callback.onFailure((IOException) error.getCause());
+                } else {
+                    callback.onFailure(new IOException(error));
+                }
+            });
+    }
+
+    private Uploader startUpload(String url, Iterable<Header> headers, String method) throws IOException {
+        return new Uploader(method, newRequestBuilder(url, headers), getContentLength(headers));
+    }
+
+    private static HttpRequest.Builder newRequestBuilder(String url, Iterable<Header> headers) throws IOException {
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(URI.create(url));
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Invalid request URL: " + url, ex);
+        }
+        for (Header header : headers) {
+            // HttpClient sets Content-Length itself and rejects it as a user header. We instead
+            // pass it along with the request body.
+            if (isContentLength(header)) {
+                continue;
+            }
+            builder.header(header.getKey(), header.getValue());
+        }
+        return builder;
+    }
+
+    private static boolean isContentLength(Header header) {
+        return "Content-Length".equalsIgnoreCase(header.getKey());
+    }
+
+    private static long getContentLength(Iterable<Header> headers) {
+        for (Header header : headers) {
+            if (isContentLength(header)) {
+                try {
+                    return Long.parseLong(header.getValue().trim());
+                } catch (NumberFormatException ex) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private HttpResponse<InputStream> send(HttpRequest request) throws IOException {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private Response toResponse(HttpResponse<InputStream> response) {
+        interceptResponse(response);
+        return new Response(response.statusCode(), response.body(), response.headers().map());
+    }
+
+    /**
+     * {@code HttpClient} pulls request bodies from a {@link HttpRequest.BodyPublisher} that must be
+     * set before the request is issued.
+     *
+     * <p> Like {@link com.dropbox.core.http.OkHttp3Requestor}, we avoid streaming when the whole
+     * body is handed to us (files and byte arrays). If we must stream, we issue the request
+     * asynchronously, reading its body from a pipe whose other end is exposed to the caller.
+     */
+    private class Uploader extends HttpRequestor.Uploader {
+        private final String method;
+        private final HttpRequest.Builder request;
+        private final long contentLength;
+
+        private HttpRequest.BodyPublisher body;
+        private ProgressOutputStream out;
+        private PipedInputStream in;
+        private CompletableFuture<HttpResponse<InputStream>> pending;
+
+        private boolean cancelled;
+
+        public Uploader(String method, HttpRequest.Builder request, long contentLength) {
+            this.method = method;
+            this.request = request;
+            this.contentLength = contentLength;
+
+            this.body = null;
+            this.out = null;
+            this.in = null;
+            this.pending = null;
+
+            this.cancelled = false;
+        }
+
+        private void setBody(HttpRequest.BodyPublisher body) {
+            if (this.body != null) {
+                throw new IllegalStateException("Request body already set.");
+            }
+            this.body = body;
+            this.request.method(method, body);
+            configureRequest(request);
+        }
+
+        @Override
+        public OutputStream getBody() {
+            // getBody() can be called multiple times to get access to the output stream. Don't
+            // error if this is the case.
+            if (out != null) {
+                return out;
+            }
+
+            PipedInputStream pipeIn = new PipedInputStream(PIPE_BUFFER_SIZE);
+            PipedOutputStream pipeOut;
+            try {
+                pipeOut = new PipedOutputStream(pipeIn);
+            } catch (IOException ex) {
+                throw new IllegalStateException("Unable to create piped stream for async upload request.");
+            }
+
+            final InputStream source = pipeIn;
+            HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.ofInputStream(() -> source);
+            if (contentLength >= 0) {
+                publisher = HttpRequest.BodyPublishers.fromPublisher(publisher, contentLength);
+            }
+            setBody(publisher);
+
+            this.in = pipeIn;
+            this.out = new ProgressOutputStream(pipeOut, progressListener);
+            // send the request asynchronously. HttpClient pulls the body from the pipe on its own
+            // threads, which allows us to provide streaming uploads.
+            this.pending = client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            return out;
+        }
+
+        @Override
+        public void upload(File file) throws IOException {
+            setBody(HttpRequest.BodyPublishers.ofFile(file.toPath()));
+        }
+
+        @Override
+        public void upload(byte [] body) {
+            setBody(HttpRequest.BodyPublishers.ofByteArray(body));
+        }
+
+        @Override
+        public void upload(byte [] body, int off, int len) {
+            setBody(HttpRequest.BodyPublishers.ofByteArray(body, off, len));
+        }
+
+        @Override
+        public void upload(FileChannel channel, long position, long count) {
+            if (channel == null) throw new NullPointerException("channel");
+            if (position < 0) throw new IllegalArgumentException("position must be non-negative");
+            if (count < 0) throw new IllegalArgumentException("count must be non-negative");
+
+            if (count == 0) {
+                setBody(HttpRequest.BodyPublishers.noBody());
+                return;
+            }
+            // a new positional stream for every subscription, so the client can resend the body
+            setBody(HttpRequest.BodyPublishers.fromPublisher(
+                HttpRequest.BodyPublishers.ofInputStream(() -> IOUtil.newInputStream(channel, position, count)),
+                count
+            ));
+        }
+
+        @Override
+        public void setProgressListener(IOUtil.ProgressListener progressListener) {
+            super.setProgressListener(progressListener);
+            if (out != null) {
+                out.setListener(progressListener);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (out != null) {
+                IOUtil.closeQuietly(out);
+            }
+            if (in != null) {
+                IOUtil.closeQuietly(in);
+            }
+        }
+
+        @Override
+        public void abort() {
+            if (pending != null) {
+                pending.cancel(true);
+            }
+            cancelled = true;
+            close();
+        }
+
+        @Override
+        public Response finish() throws IOException {
+            if (cancelled) {
+                throw new IllegalStateException("Already aborted");
+            }
+            if (body == null) {
+                upload(new byte[0]);
+            }
+
+            if (pending == null) {
+                return toResponse(send(request.build()));
+            }
+
+            // ensure our request body is closed or we could dead-lock
+            IOUtil.closeQuietly(out);
+            try {
+                return toResponse(pending.get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (CancellationException ex) {
+                throw new IllegalStateException("Already aborted");
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.dropbox.core.http.java11;
+
+import com.dropbox.core.http.HttpRequestor;
+import com.dropbox.core.http.StandardHttpRequestor;
+
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+public class HttpClientRequestorBench
+{
+    /**
+     * RPC-sized POSTs from 256 concurrent callers against a local server that speaks both
+     * HTTP/1.1 and cleartext HTTP/2 (h2c). {@code StandardHttpRequestor} needs one connection per
+     * in-flight request, while {@code HttpClientRequestor} multiplexes all of them over a single
+     * HTTP/2 connection.
+     */
+    @State(Scope.Benchmark)
+    @BenchmarkMode(Mode.Throughput)
+    public static class ConcurrentRpc
+    {
+        static final byte [] REQUEST = "{\"path\":\"/Photos/IMG_0001.jpg\"}".getBytes(StandardCharsets.UTF_8);
+        static final byte [] RESPONSE = (
+            "{\".tag\":\"file\",\"name\":\"IMG_0001.jpg\",\"id\":\"id:a4ayc_80_OEAAAAAAAAAXw\"," +
+            "\"rev\":\"a1c10ce0dd78\",\"size\":7212,\"path_lower\":\"/photos/img_0001.jpg\"}"
+        ).getBytes(StandardCharsets.UTF_8);
+
+        Server server;
+        String url;
+
+        HttpRequestor standard;
+        HttpRequestor httpClient;
+
+        @Setup
+        public void setUp()
+            throws Exception
+        {
+            server = new Server();
+            HttpConfiguration config = new HttpConfiguration();
+            ServerConnector connector = new ServerConnector(
+                server,
+                new HttpConnectionFactory(config),
+                new HTTP2CServerConnectionFactory(config)
+            );
+            connector.setHost("127.0.0.1");
+            connector.setPort(0);
+            server.addConnector(connector);
+            server.setHandler(new AbstractHandler() {
+                @Override
+                public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                    throws IOException
+                {
+                    InputStream in = request.getInputStream();
+                    byte [] buf = new byte[1024];
+                    while (in.read(buf) >= 0) {
+                        // discard
+                    }
+                    response.setStatus(200);
+                    response.setContentType("application/json");
+                    response.setContentLength(RESPONSE.length);
+                    response.getOutputStream().write(RESPONSE);
+                    baseRequest.setHandled(true);
+                }
+            });
+            server.start();
+            url = "http://127.0.0.1:" + connector.getLocalPort() + "/2/files/get_metadata";
+
+            standard = StandardHttpRequestor.INSTANCE;
+            // plain-text stand-in, so no pinned TLS settings
+            httpClient = new HttpClientRequestor(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .build());
+
+            // HttpClient only upgrades cleartext connections to HTTP/2 on requests without a body.
+            // Establish the upgraded connection before measuring.
+            drain(httpClient.doGet(url, Collections.<HttpRequestor.Header>emptyList()));
+        }
+
+        @TearDown
+        public void tearDown()
+            throws Exception
+        {
+            server.stop();
+        }
+
+        @Benchmark
+        @Threads(256)
+        public int standardHttpRequestor()
+            throws IOException
+        {
+            return post(standard);
+        }
+
+        @Benchmark
+        @Threads(256)
+        public int httpClientRequestor()
+            throws IOException
+        {
+            return post(httpClient);
+        }
+
+        private int post(HttpRequestor requestor)
+            throws IOException
+        {
+            HttpRequestor.Uploader uploader = requestor.startPost(
+                url,
+                Collections.singletonList(new HttpRequestor.Header("Content-Type", "application/json")),
+                REQUEST.length
+            );
+            try {
+                uploader.upload(REQUEST);
+                return drain(uploader.finish());
+            } finally {
+                uploader.close();
+            }
+        }
+
+        private static int drain(HttpRequestor.Response response)
+            throws IOException
+        {
+            InputStream in = response.getBody();
+            byte [] buf = new byte[1024];
+            while (in.read(buf) >= 0) {
+                // discard
+            }
+            in.close();
+            return response.getStatusCode();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.dropbox.core.http.java11;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import com.dropbox.core.http.HttpRequestor;
+import com.dropbox.core.util.IOUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class HttpClientRequestorTest {
+    private HttpServer server;
+    private String url;
+    private HttpClientRequestor requestor;
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/echo", this::echo);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/echo";
+
+        // the local stand-in speaks plain HTTP/1.1, so don't use the pinned TLS defaults
+        requestor = new HttpClientRequestor(HttpClient.newHttpClient());
+    }
+
+    @AfterClass
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private void echo(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        IOUtil.copyStreamToStream(exchange.getRequestBody(), body);
+
+        exchange.getResponseHeaders().add("X-Request-Method", exchange.getRequestMethod());
+        exchange.getResponseHeaders().add(
+            "X-Request-Content-Length",
+            String.valueOf(exchange.getRequestHeaders().getFirst("Content-Length"))
+        );
+        exchange.getResponseHeaders().add(
+            "X-Request-Dropbox-Arg",
+            String.valueOf(exchange.getRequestHeaders().getFirst("Dropbox-API-Arg"))
+        );
+
+        exchange.sendResponseHeaders(200, body.size() == 0 ? -1 : body.size());
+        OutputStream out = exchange.getResponseBody();
+        body.writeTo(out);
+        out.close();
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        List<HttpRequestor.Header> headers = new ArrayList<HttpRequestor.Header>();
+        headers.add(new HttpRequestor.Header("Dropbox-API-Arg", "{\"path\":\"/a.txt\"}"));
+
+        HttpRequestor.Response response = requestor.doGet(url, headers);
+
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(firstHeader(response, "X-Request-Method"), "GET");
+        assertEquals(firstHeader(response, "X-Request-Dropbox-Arg"), "{\"path\":\"/a.txt\"}");
+    }
+
+    @Test
+    public void testUploadBytesWithContentLength() throws Exception {
+        byte [] body = "{\"path\":\"/a.txt\"}".getBytes("UTF-8");
+
+        HttpRequestor.Uploader uploader = requestor.startPost(
+            url,
+            Collections.<HttpRequestor.Header>emptyList(),
+            body.length
+        );
+        HttpRequestor.Response response;
+        try {
+            uploader.upload(body);
+            response = uploader.finish();
+        } finally {
+            uploader.close();
+        }
+
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(firstHeader(response, "X-Request-Method"), "POST");
+        assertEquals(firstHeader(response, "X-Request-Content-Length"), Integer.toString(body.length));
+        assertEquals(IOUtil.slurp(response.getBody(), 1024), body);
+    }
+
+    @Test
+    public void testStreamingUpload() throws Exception {
+        byte [] body = newBody(3 * IOUtil.DEFAULT_COPY_BUFFER_SIZE + 7);
+        final AtomicLong progress = new AtomicLong();
+
+        HttpRequestor.Uploader uploader = requestor.startPut(url, Collections.<HttpRequestor.Header>emptyList());
+        HttpRequestor.Response response;
+        try {
+            uploader.setProgressListener(new IOUtil.ProgressListener() {
+                @Override
+                public void onProgress(long bytesWritten) {
+                    progress.set(bytesWritten);
+                }
+            });
+            OutputStream out = uploader.getBody();
+            out.write(body, 0, 100);
+            out.write(body, 100, body.length - 100);
+            response = uploader.finish();
+        } finally {
+            uploader.close();
+        }
+
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(firstHeader(response, "X-Request-Method"), "PUT");
+        assertEquals(progress.get(), body.length);
+        assertEquals(IOUtil.slurp(response.getBody(), body.length), body);
+    }
+
+    @Test
+    public void testStreamingUploadWithContentLength() throws Exception {
+        byte [] body = newBody(2 * IOUtil.DEFAULT_COPY_BUFFER_SIZE);
+
+        HttpRequestor.Uploader uploader = requestor.startPost(
+            url,
+            Collections.<HttpRequestor.Header>emptyList(),
+            body.length
+        );
+        HttpRequestor.Response response;
+        try {
+            uploader.upload(new ByteArrayInputStream(body));
+            response = uploader.finish();
+        } finally {
+            uploader.close();
+        }
+
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(firstHeader(response, "X-Request-Content-Length"), Integer.toString(body.length));
+        assertEquals(IOUtil.slurp(response.getBody(), body.length), body);
+    }
+
+    @Test
+    public void testUploadFile() throws Exception {
+        byte [] body = newBody(IOUtil.DEFAULT_COPY_BUFFER_SIZE + 1);
+        File file = File.createTempFile("dbx-upload", ".bin");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+
+            HttpRequestor.Uploader uploader = requestor.startPost(url, Collections.<HttpRequestor.Header>emptyList());
+            HttpRequestor.Response response;
+            try {
+                uploader.upload(file);
+                response = uploader.finish();
+            } finally {
+                uploader.close();
+            }
+
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(IOUtil.slurp(response.getBody(), body.length), body);
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void testFinishWithoutBody() throws Exception {
+        HttpRequestor.Uploader uploader = requestor.startPost(url, Collections.<HttpRequestor.Header>emptyList());
+        try {
+            HttpRequestor.Response response = uploader.finish();
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(firstHeader(response, "X-Request-Content-Length"), "0");
+        } finally {
+            uploader.close();
+        }
+    }
+
+    @Test
+    public void testStartPostAsync() throws Exception {
+        byte [] body = "{\"path\":\"/b.txt\"}".getBytes("UTF-8");
+        final CompletableFuture<HttpRequestor.Response> result = new CompletableFuture<HttpRequestor.Response>();
+
+        requestor.startPostAsync(url, Collections.<HttpRequestor.Header>emptyList(), body, new HttpRequestor.ResponseCallback() {
+            @Override
+            public void onResponse(HttpRequestor.Response response) {
+                result.complete(response);
+            }
+
+            @Override
+            public void onFailure(IOException ex) {
+                result.completeExceptionally(ex);
+            }
+        });
+
+        HttpRequestor.Response response = result.get(30, TimeUnit.SECONDS);
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(firstHeader(response, "X-Request-Method"), "POST");
+        assertEquals(firstHeader(response, "X-Request-Content-Length"), Integer.toString(body.length));
+        assertEquals(IOUtil.slurp(response.getBody(), 1024), body);
+    }
+
+    private static byte [] newBody(int size) {
+        byte [] body = new byte[size];
+        for (int i = 0; i < body.length; ++i) {
+            body[i] = (byte) i;
+        }
+        return body;
+    }
+
+    private static String firstHeader(HttpRequestor.Response response, String name) {
+        List<String> values = response.getHeaders().get(name);
+        assertEquals(values.size(), 1);
+        return values.get(0);
+    }
+}
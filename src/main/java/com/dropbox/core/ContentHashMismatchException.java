@@ -0,0 +1,37 @@
+package com.dropbox.core;
+
+/**
+ * Thrown when the content hash reported by the Dropbox server doesn't match the content hash of
+ * the bytes actually transferred (see {@link DbxContentHasher}).
+ */
+public class ContentHashMismatchException extends BadResponseException {
+    private static final long serialVersionUID = 0;
+
+    private final String expectedContentHash;
+    private final String actualContentHash;
+
+    public ContentHashMismatchException(String requestId, String expectedContentHash, String actualContentHash) {
+        super(requestId, "Content hash mismatch: server reported " + expectedContentHash
+            + " but transferred content hashes to " + actualContentHash);
+        this.expectedContentHash = expectedContentHash;
+        this.actualContentHash = actualContentHash;
+    }
+
+    /**
+     * Returns the content hash reported by the server.
+     *
+     * @return content hash from the file metadata
+     */
+    public String getExpectedContentHash() {
+        return expectedContentHash;
+    }
+
+    /**
+     * Returns the content hash of the bytes that were transferred.
+     *
+     * @return locally computed content hash
+     */
+    public String getActualContentHash() {
+        return actualContentHash;
+    }
+}
@@ -0,0 +1,40 @@
+package com.dropbox.core;
+
+/*>>> import checkers.nullness.quals.Nullable; */
+
+/**
+ * Receives the outcome of an asynchronous API request, such as those issued by the {@code
+ * ...Async} route methods.
+ *
+ * <p> Exactly one of the methods is called for each request, possibly on a thread owned by the
+ * {@link com.dropbox.core.http.HttpRequestor} in use. Implementations should return quickly and
+ * hand off any long-running work.
+ *
+ * <p> On Java 8 and later, this interface is easily adapted to a {@code CompletableFuture}:
+ *
+ * <pre>
+ * final CompletableFuture&lt;Metadata&gt; future = new CompletableFuture&lt;Metadata&gt;();
+ * client.files().getMetadataAsync("/Homework/math", new DbxCallback&lt;Metadata&gt;() {
+ *     public void onSuccess(Metadata result) { future.complete(result); }
+ *     public void onFailure(DbxException error) { future.completeExceptionally(error); }
+ * });
+ * </pre>
+ *
+ * @param <T> type of the request result ({@link Void} for routes without a result)
+ */
+public interface DbxCallback<T> {
+    /**
+     * Called when the request completed successfully.
+     *
+     * @param result request result, {@code null} for routes without a result
+     */
+    void onSuccess(/*@Nullable*/T result);
+
+    /**
+     * Called when the request failed. Route errors are reported with the same route-specific
+     * {@link DbxApiException} subclasses thrown by the synchronous route methods.
+     *
+     * @param error request failure, never {@code null}
+     */
+    void onFailure(DbxException error);
+}
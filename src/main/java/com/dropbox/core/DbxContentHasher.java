@@ -0,0 +1,331 @@
+package com.dropbox.core;
+
+import com.dropbox.core.util.IOUtil;
+import com.dropbox.core.util.StringUtil;
+import com.dropbox.core.v2.files.FileMetadata;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the Dropbox content hash of a file, as returned by {@code
+ * FileMetadata.getContentHash()}.
+ *
+ * <p> The content hash is computed by splitting the content into blocks of {@link #BLOCK_SIZE}
+ * bytes, hashing every block with SHA-256, and hashing the concatenation of the block hashes
+ * with SHA-256 again. See the <a href="https://www.dropbox.com/developers/reference/content-hash">
+ * content hash reference</a> for details.
+ *
+ * <p> This class is a {@link MessageDigest}, so it can be used with {@link
+ * java.security.DigestInputStream} and {@link java.security.DigestOutputStream}, or written to
+ * through {@link #asOutputStream}. Use {@link #digestHex} to get the hash in the format of the
+ * Dropbox API:
+ *
+ * <pre>
+ * DbxContentHasher hasher = new DbxContentHasher();
+ * hasher.update(data);
+ * String contentHash = hasher.digestHex();
+ * </pre>
+ *
+ * <p> To hash a local file, use {@link #hash(File)}, or {@link #hash(File, ExecutorService)} to
+ * hash the blocks of large files concurrently.
+ *
+ * <p> {@link DbxUploader#uploadAndVerify} and {@link DbxDownloader#downloadAndVerify} compute
+ * the content hash while the content is transferred and compare it with the hash reported by the
+ * server.
+ *
+ * <p> Like other {@link MessageDigest}s, this class is not thread-safe.
+ */
+public final class DbxContentHasher extends MessageDigest implements Cloneable {
+    /**
+     * Size of the blocks content is split into: 4 MiB.
+     */
+    public static final int BLOCK_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Length of the content hash in bytes.
+     */
+    public static final int DIGEST_LENGTH = 32;
+
+    private static final String ALGORITHM = "SHA-256";
+
+    private MessageDigest overallHasher;
+    private MessageDigest blockHasher;
+    private int blockPos;
+
+    public DbxContentHasher() {
+        super("Dropbox-Content-Hash");
+        this.overallHasher = newSha256();
+        this.blockHasher = newSha256();
+        this.blockPos = 0;
+    }
+
+    /**
+     * Computes the content hash of a local file on the calling thread.
+     *
+     * @param file file to hash
+     *
+     * @return content hash as lowercase hex string
+     *
+     * @throws IOException if the file could not be read
+     */
+    public static String hash(File file) throws IOException {
+        if (file == null) throw new NullPointerException("file");
+
+        DbxContentHasher hasher = new DbxContentHasher();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte [] buffer = new byte[IOUtil.DEFAULT_COPY_BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                hasher.update(buffer, 0, n);
+            }
+        } finally {
+            IOUtil.closeInput(in);
+        }
+        return hasher.digestHex();
+    }
+
+    /**
+     * Computes the content hash of a local file, hashing its blocks concurrently on {@code
+     * executor}. Every running block hash holds a block in memory, so at most {@code
+     * BLOCK_SIZE} bytes per thread of the executor are used.
+     *
+     * <p> Any {@link ExecutorService} can be used. On Java 7 or later, passing a {@code
+     * ForkJoinPool} such as {@code ForkJoinPool.commonPool()} shares the threads with other
+     * parallel work.
+     *
+     * @param file file to hash
+     * @param executor executor to hash blocks on
+     *
+     * @return content hash as lowercase hex string
+     *
+     * @throws IOException if the file could not be read, or changed size while being hashed
+     * @throws InterruptedIOException if the calling thread was interrupted
+     */
+    public static String hash(File file, ExecutorService executor) throws IOException {
+        if (file == null) throw new NullPointerException("file");
+        if (executor == null) throw new NullPointerException("executor");
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+
+            List<Future<byte []>> blocks = new ArrayList<Future<byte []>>((int) (size / BLOCK_SIZE) + 1);
+            try {
+                for (long position = 0; position < size; position += BLOCK_SIZE) {
+                    int length = (int) Math.min(BLOCK_SIZE, size - position);
+                    blocks.add(executor.submit(new BlockHash(channel, position, length)));
+                }
+
+                MessageDigest overallHasher = newSha256();
+                for (Future<byte []> block : blocks) {
+                    overallHasher.update(get(block));
+                }
+                return StringUtil.binaryToHex(overallHasher.digest());
+            } finally {
+                for (Future<byte []> block : blocks) {
+                    block.cancel(true);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns an {@link OutputStream} that updates this hasher with every byte written to it.
+     *
+     * @return stream updating this hasher
+     */
+    public OutputStream asOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                update((byte) b);
+            }
+
+            @Override
+            public void write(byte [] b, int off, int len) {
+                update(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * Completes the hash computation like {@link #digest()} and returns the hash as a lowercase
+     * hex string, the format used by the Dropbox API. The hasher is reset.
+     *
+     * @return content hash as lowercase hex string
+     */
+    public String digestHex() {
+        return StringUtil.binaryToHex(digest());
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return DIGEST_LENGTH;
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        finishBlockIfFull();
+        blockHasher.update(input);
+        blockPos += 1;
+    }
+
+    @Override
+    protected void engineUpdate(byte [] input, int offset, int len) {
+        int inputEnd = offset + len;
+        while (offset < inputEnd) {
+            finishBlockIfFull();
+
+            int spaceInBlock = BLOCK_SIZE - blockPos;
+            int inputPartEnd = Math.min(inputEnd, offset + spaceInBlock);
+            int inputPartLength = inputPartEnd - offset;
+            blockHasher.update(input, offset, inputPartLength);
+
+            blockPos += inputPartLength;
+            offset = inputPartEnd;
+        }
+    }
+
+    @Override
+    protected void engineUpdate(ByteBuffer input) {
+        while (input.hasRemaining()) {
+            finishBlockIfFull();
+
+            int inputPartLength = Math.min(input.remaining(), BLOCK_SIZE - blockPos);
+            int limit = input.limit();
+            input.limit(input.position() + inputPartLength);
+            blockHasher.update(input);
+            input.limit(limit);
+
+            blockPos += inputPartLength;
+        }
+    }
+
+    @Override
+    protected byte [] engineDigest() {
+        if (blockPos > 0) {
+            overallHasher.update(blockHasher.digest());
+            blockPos = 0;
+        }
+        return overallHasher.digest();
+    }
+
+    @Override
+    protected void engineReset() {
+        blockHasher.reset();
+        overallHasher.reset();
+        blockPos = 0;
+    }
+
+    @Override
+    public DbxContentHasher clone() throws CloneNotSupportedException {
+        DbxContentHasher clone = (DbxContentHasher) super.clone();
+        clone.overallHasher = (MessageDigest) overallHasher.clone();
+        clone.blockHasher = (MessageDigest) blockHasher.clone();
+        return clone;
+    }
+
+    /**
+     * Throws if {@code result} is file metadata with a content hash other than {@code
+     * contentHash}. Other results have no content hash to compare with.
+     */
+    static void verify(Object result, String contentHash) throws ContentHashMismatchException {
+        if (!(result instanceof FileMetadata)) {
+            return;
+        }
+        String expected = ((FileMetadata) result).getContentHash();
+        if (expected != null && !expected.equals(contentHash)) {
+            throw new ContentHashMismatchException(null, expected, contentHash);
+        }
+    }
+
+    private void finishBlockIfFull() {
+        if (blockPos == BLOCK_SIZE) {
+            overallHasher.update(blockHasher.digest());
+            blockPos = 0;
+        }
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            // every Java platform must support SHA-256
+            throw new IllegalStateException("Unable to create " + ALGORITHM + " digest", ex);
+        }
+    }
+
+    private static byte [] get(Future<byte []> block) throws IOException {
+        try {
+            return block.get();
+        } catch (InterruptedException ex) {
+            // preserve interrupt
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while hashing");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Unable to hash block", cause);
+        }
+    }
+
+    /**
+     * Hashes a single block, reading it with positional reads so blocks can be read concurrently
+     * from the same channel.
+     */
+    private static final class BlockHash implements Callable<byte []> {
+        private final FileChannel channel;
+        private final long position;
+        private final int length;
+
+        private BlockHash(FileChannel channel, long position, int length) {
+            this.channel = channel;
+            this.position = position;
+            this.length = length;
+        }
+
+        @Override
+        public byte [] call() throws IOException {
+            ByteBuffer block = ByteBuffer.allocate(length);
+            while (block.hasRemaining()) {
+                int n = channel.read(block, position + block.position());
+                if (n < 0) {
+                    throw new IOException("File changed size while being hashed");
+                }
+            }
+            block.flip();
+
+            MessageDigest blockHasher = newSha256();
+            blockHasher.update(block);
+            return blockHasher.digest();
+        }
+    }
+}
@@ -7,6 +7,10 @@ import java.io.Closeable;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.DigestOutputStream;
 
 /**
  * Class for handling download requests.
@@ -92,6 +96,98 @@ public class DbxDownloader<R> implements Closeable {
         return body;
     }
 
+    /**
+     * Returns a {@link ReadableByteChannel} over the response body, for reading it into {@link
+     * ByteBuffer}s. Closing the channel closes the response body; remember to call {@link #close}
+     * afterwards all the same.
+     *
+     * <p> The channel reads with the least copying the HTTP transport allows: heap buffers are
+     * filled straight from the response body, and transports whose response body can itself be
+     * read as a channel fill direct buffers without an intermediate array.
+     *
+     * @return Response body channel.
+     *
+     * @see #download(FileChannel)
+     *
+     * @throws IllegalStateException if this downloader has already been closed (see {@link #close})
+     */
+    public ReadableByteChannel getChannel() {
+        assertOpen();
+        return IOUtil.newChannel(body);
+    }
+
+    /**
+     * Downloads the response body to the given {@link FileChannel}, starting at its current
+     * position, and returns the server response. The position of the channel is advanced past the
+     * downloaded bytes.
+     *
+     * <p> The body is read into a single heap buffer, straight from the response body of stream
+     * based transports, and written from there to the file at its position.
+     *
+     * <p> Like {@link #download(OutputStream)}, this method closes this downloader.
+     *
+     * @param out {@code FileChannel} to write response body to, not closed by this method
+     *
+     * @return Response from server
+     *
+     * @throws DbxException if an error occurs reading the response or response body
+     * @throws IOException if an error occurs writing the response body to the channel.
+     * @throws IllegalStateException if this downloader has already been closed (see {@link #close})
+     */
+    public R download(FileChannel out) throws DbxException, IOException {
+        return download(out, null);
+    }
+
+    /**
+     * This method is the same as {@link #download(FileChannel)} except for allowing to track
+     * download progress.
+     *
+     * @param out {@code FileChannel} to write response body to, not closed by this method
+     * @param progressListener {@code IOUtil.ProgressListener} to track the download progress, or
+     * {@code null}
+     *
+     * @return Response from server
+     *
+     * @throws DbxException if an error occurs reading the response or response body.
+     * @throws IOException if an error occurs writing the response body to the channel.
+     */
+    public R download(FileChannel out, IOUtil.ProgressListener progressListener)
+            throws DbxException, IOException {
+        if (out == null) throw new NullPointerException("out");
+
+        try {
+            long position = out.position();
+            ReadableByteChannel in = getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(IOUtil.DEFAULT_COPY_BUFFER_SIZE);
+            long total = 0;
+            while (true) {
+                buffer.clear();
+                int n;
+                try {
+                    n = in.read(buffer);
+                } catch (IOException ex) {
+                    throw new NetworkIOException(ex);
+                }
+                if (n < 0) {
+                    break;
+                }
+
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    total += out.write(buffer, position + total);
+                }
+                if (n > 0 && progressListener != null) {
+                    progressListener.onProgress(total);
+                }
+            }
+            out.position(position + total);
+        } finally {
+            close();
+        }
+
+        return result;
+    }
+
     /**
      * Downloads the response body to the given {@link OutputStream} and returns the server
      * response.
@@ -151,6 +247,56 @@ public class DbxDownloader<R> implements Closeable {
         return download(new ProgressOutputStream(out, progressListener));
     }
 
+    /**
+     * Downloads the response body to the given {@link OutputStream} like {@link
+     * #download(OutputStream)}, computing its content hash (see {@link DbxContentHasher}) on the
+     * way. If the server response is file metadata, its content hash is compared with the
+     * computed one, so the download is verified without reading the content a second time.
+     *
+     * <p> The content is written to {@code out} before it can be verified. Discard what was
+     * written if this method throws a {@link ContentHashMismatchException}.
+     *
+     * @param out {@code OutputStream} to write response body to
+     *
+     * @return Response from server
+     *
+     * @throws ContentHashMismatchException if the downloaded content does not match the content
+     * hash reported by the server
+     * @throws DbxException if an error occurs reading the response or response body
+     * @throws IOException if an error occurs writing the response body to the output stream.
+     * @throws IllegalStateException if this downloader has already been closed (see {@link #close})
+     */
+    public R downloadAndVerify(OutputStream out) throws DbxException, IOException {
+        return downloadAndVerify(out, null);
+    }
+
+    /**
+     * This method is the same as {@link #downloadAndVerify(OutputStream)} except for allowing to
+     * track download progress.
+     *
+     * @param out {@code OutputStream} to write response body to
+     * @param progressListener {@code IOUtil.ProgressListener} to track the download progress, or
+     * {@code null}
+     *
+     * @return Response from server
+     *
+     * @throws ContentHashMismatchException if the downloaded content does not match the content
+     * hash reported by the server
+     * @throws DbxException if an error occurs reading the response or response body.
+     * @throws IOException if an error occurs writing the response body to the output stream.
+     */
+    public R downloadAndVerify(OutputStream out, IOUtil.ProgressListener progressListener)
+            throws DbxException, IOException {
+        DbxContentHasher hasher = new DbxContentHasher();
+        OutputStream hashed = new DigestOutputStream(out, hasher);
+        if (progressListener != null) {
+            hashed = new ProgressOutputStream(hashed, progressListener);
+        }
+        R result = download(hashed);
+        DbxContentHasher.verify(result, hasher.digestHex());
+        return result;
+    }
+
     /**
      * Closes this downloader and releases its underlying resources.
      *
@@ -0,0 +1,374 @@
+package com.dropbox.core;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/*>>> import checkers.nullness.quals.Nullable; */
+
+/**
+ * Adaptive client-side rate limiter for requests to the Dropbox API.
+ *
+ * <p> Every API v2 request issued with a {@link DbxRequestConfig} that has this limiter (see
+ * {@link DbxRequestConfig.Builder#withRateLimiter}) first acquires a permit from it. When any
+ * request is rate limited by the server ({@link RateLimitException}), all requests for the same
+ * user are paused for the backoff requested by the server. Afterwards, requests are paced at a
+ * reduced rate that slowly ramps back up as requests succeed (additive increase, multiplicative
+ * decrease). This keeps many threads sharing an access token from each running into their own
+ * rate limit errors.
+ *
+ * <p> Limits are tracked separately per Dropbox user ID. Clients that don't know their user ID
+ * share a single limit, so use separate limiters for separate apps. Until the first rate limit
+ * error, requests are not paced at all.
+ *
+ * <p> Share one instance between all your request configurations, for example {@link
+ * #getDefault}. This class is thread-safe.
+ */
+public final class DbxRateLimiter {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final String NO_USER = "";
+    private static final DbxRateLimiter DEFAULT = newBuilder().build();
+
+    private final double minRate;
+    private final double maxRate;
+    private final double additiveIncrease;
+    private final double decreaseFactor;
+
+    private final ConcurrentMap<String, Limit> limits;
+
+    private DbxRateLimiter(Builder builder) {
+        this.minRate = builder.minRate;
+        this.maxRate = builder.maxRate;
+        this.additiveIncrease = builder.additiveIncrease;
+        this.decreaseFactor = builder.decreaseFactor;
+        this.limits = new ConcurrentHashMap<String, Limit>();
+    }
+
+    /**
+     * Returns a limiter with default settings shared by the whole process.
+     *
+     * @return process-wide rate limiter
+     */
+    public static DbxRateLimiter getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns a new builder for creating a {@link DbxRateLimiter} instance.
+     *
+     * @return new builder with default settings
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Blocks until a request for the given user may be sent.
+     *
+     * @param userId Dropbox user ID the request is made for, or {@code null} if unknown
+     *
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public void acquire(/*@Nullable*/ String userId) throws InterruptedException {
+        Limit limit = getLimit(userId);
+        long waitNanos = limit.reserve(System.nanoTime());
+        while (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+            // we may have been rate limited while waiting for our turn
+            waitNanos = limit.isPaused(System.nanoTime()) ? limit.reserve(System.nanoTime()) : 0;
+        }
+    }
+
+    /**
+     * Reserves the next permit for the given user without blocking. The caller must wait for the
+     * returned delay before sending the request.
+     *
+     * <p> Use this method instead of {@link #acquire} to schedule requests asynchronously.
+     *
+     * @param userId Dropbox user ID the request is made for, or {@code null} if unknown
+     *
+     * @return milliseconds to wait before sending the request, or {@code 0} to send it now
+     */
+    public long reserve(/*@Nullable*/ String userId) {
+        long waitNanos = getLimit(userId).reserve(System.nanoTime());
+        // round up so callers never send before their turn
+        return (waitNanos + TimeUnit.MILLISECONDS.toNanos(1) - 1) / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Records that a request for the given user succeeded, ramping up the request rate if it is
+     * currently reduced.
+     *
+     * @param userId Dropbox user ID the request was made for, or {@code null} if unknown
+     */
+    public void onSuccess(/*@Nullable*/ String userId) {
+        Limit limit = limits.get(key(userId));
+        if (limit != null) {
+            limit.increase();
+        }
+    }
+
+    /**
+     * Records that a request for the given user was rate limited. Pauses all requests for the
+     * user for the given backoff and reduces their rate.
+     *
+     * @param userId Dropbox user ID the request was made for, or {@code null} if unknown
+     * @param backoffMillis backoff requested by the server, in milliseconds
+     */
+    public void onRateLimited(/*@Nullable*/ String userId, long backoffMillis) {
+        getLimit(userId).decrease(System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(Math.max(0, backoffMillis)));
+    }
+
+    /**
+     * Returns the rate, in requests per second, requests for the given user are currently paced
+     * at. Returns {@link Double#POSITIVE_INFINITY} if requests are not paced.
+     *
+     * @param userId Dropbox user ID, or {@code null} for requests without a user ID
+     *
+     * @return current request rate per second
+     */
+    public double getRate(/*@Nullable*/ String userId) {
+        Limit limit = limits.get(key(userId));
+        return limit == null ? Double.POSITIVE_INFINITY : limit.getRate();
+    }
+
+    /**
+     * Returns the number of requests for the given user currently waiting to be sent.
+     *
+     * @param userId Dropbox user ID, or {@code null} for requests without a user ID
+     *
+     * @return number of waiting requests
+     */
+    public int getQueueDepth(/*@Nullable*/ String userId) {
+        Limit limit = limits.get(key(userId));
+        return limit == null ? 0 : limit.getQueueDepth(System.nanoTime());
+    }
+
+    /**
+     * Returns the number of requests for all users currently waiting to be sent.
+     *
+     * @return total number of waiting requests
+     */
+    public int getQueueDepth() {
+        long now = System.nanoTime();
+        int depth = 0;
+        for (Limit limit : limits.values()) {
+            depth += limit.getQueueDepth(now);
+        }
+        return depth;
+    }
+
+    private Limit getLimit(/*@Nullable*/ String userId) {
+        String key = key(userId);
+        Limit limit = limits.get(key);
+        if (limit == null) {
+            Limit created = new Limit();
+            limit = limits.putIfAbsent(key, created);
+            if (limit == null) {
+                limit = created;
+            }
+        }
+        return limit;
+    }
+
+    private static String key(/*@Nullable*/ String userId) {
+        return userId == null ? NO_USER : userId;
+    }
+
+    /**
+     * Pacing state for a single user.
+     *
+     * <p> Each request reserves the next free slot, which are spaced {@code 1 / rate} apart. While
+     * paused, no slot starts before the end of the pause.
+     */
+    private final class Limit {
+        // slot times of reservations that haven't been sent yet
+        private final PriorityQueue<Long> queue = new PriorityQueue<Long>();
+
+        private double rate = Double.POSITIVE_INFINITY;
+        private long nextFreeNanos = System.nanoTime();
+        private long pausedUntilNanos;
+        private boolean paused;
+
+        // requests reserved in the current and previous second, to estimate the unpaced rate
+        private long windowStartNanos = System.nanoTime();
+        private int windowCount;
+        private int previousWindowCount;
+
+        synchronized long reserve(long now) {
+            countRequest(now);
+            drain(now);
+
+            long slot = now;
+            if (paused && pausedUntilNanos - now > 0) {
+                slot = pausedUntilNanos;
+            }
+            if (nextFreeNanos - slot > 0) {
+                slot = nextFreeNanos;
+            }
+            if (rate != Double.POSITIVE_INFINITY) {
+                nextFreeNanos = slot + (long) (NANOS_PER_SECOND / rate);
+            }
+
+            long waitNanos = slot - now;
+            if (waitNanos > 0) {
+                queue.add(slot);
+            }
+            return waitNanos;
+        }
+
+        synchronized boolean isPaused(long now) {
+            return paused && pausedUntilNanos - now > 0;
+        }
+
+        synchronized void increase() {
+            if (rate == Double.POSITIVE_INFINITY) {
+                return;
+            }
+            // roughly adds additiveIncrease to the rate every second at full speed
+            rate = Math.min(maxRate, rate + additiveIncrease / rate);
+        }
+
+        synchronized void decrease(long now, long backoffNanos) {
+            // all requests in flight when we got rate limited will likely see the same error.
+            // Only decrease once for them, but honor the longest backoff.
+            boolean alreadyPaused = isPaused(now);
+            if (!alreadyPaused || now + backoffNanos - pausedUntilNanos > 0) {
+                pausedUntilNanos = now + backoffNanos;
+            }
+            paused = true;
+            if (alreadyPaused) {
+                return;
+            }
+
+            double current = rate;
+            if (current == Double.POSITIVE_INFINITY) {
+                countRequest(now);
+                current = Math.max(windowCount, previousWindowCount);
+            }
+            rate = Math.max(minRate, Math.min(maxRate, current * decreaseFactor));
+            nextFreeNanos = pausedUntilNanos;
+        }
+
+        synchronized double getRate() {
+            return rate;
+        }
+
+        synchronized int getQueueDepth(long now) {
+            drain(now);
+            return queue.size();
+        }
+
+        private void countRequest(long now) {
+            long elapsed = now - windowStartNanos;
+            if (elapsed >= NANOS_PER_SECOND) {
+                previousWindowCount = elapsed < 2 * NANOS_PER_SECOND ? windowCount : 0;
+                windowCount = 0;
+                windowStartNanos = now;
+            }
+            ++windowCount;
+        }
+
+        private void drain(long now) {
+            while (!queue.isEmpty() && queue.peek() - now <= 0) {
+                queue.poll();
+            }
+        }
+    }
+
+    /**
+     * Builder for {@link DbxRateLimiter}.
+     */
+    public static final class Builder {
+        private double minRate;
+        private double maxRate;
+        private double additiveIncrease;
+        private double decreaseFactor;
+
+        private Builder() {
+            this.minRate = 1;
+            this.maxRate = Double.POSITIVE_INFINITY;
+            this.additiveIncrease = 1;
+            this.decreaseFactor = 0.5;
+        }
+
+        /**
+         * Sets the lowest rate, in requests per second, requests are paced at after being rate
+         * limited.
+         *
+         * <p> Defaults to {@code 1}.
+         *
+         * @param minRate minimum requests per second. Must be positive.
+         *
+         * @return this builder
+         */
+        public Builder withMinRate(double minRate) {
+            if (!(minRate > 0)) throw new IllegalArgumentException("minRate must be positive");
+            this.minRate = minRate;
+            return this;
+        }
+
+        /**
+         * Sets the highest rate, in requests per second, requests are paced at after being rate
+         * limited.
+         *
+         * <p> Defaults to no maximum.
+         *
+         * @param maxRate maximum requests per second. Must be positive.
+         *
+         * @return this builder
+         */
+        public Builder withMaxRate(double maxRate) {
+            if (!(maxRate > 0)) throw new IllegalArgumentException("maxRate must be positive");
+            this.maxRate = maxRate;
+            return this;
+        }
+
+        /**
+         * Sets how fast the request rate ramps back up after being rate limited, in requests per
+         * second gained per second of successful requests.
+         *
+         * <p> Defaults to {@code 1}.
+         *
+         * @param additiveIncrease rate increase. Must be positive.
+         *
+         * @return this builder
+         */
+        public Builder withAdditiveIncrease(double additiveIncrease) {
+            if (!(additiveIncrease > 0)) throw new IllegalArgumentException("additiveIncrease must be positive");
+            this.additiveIncrease = additiveIncrease;
+            return this;
+        }
+
+        /**
+         * Sets the factor the request rate is multiplied by when rate limited.
+         *
+         * <p> Defaults to {@code 0.5}.
+         *
+         * @param decreaseFactor rate decrease factor. Must be between 0 and 1, exclusive.
+         *
+         * @return this builder
+         */
+        public Builder withDecreaseFactor(double decreaseFactor) {
+            if (!(decreaseFactor > 0 && decreaseFactor < 1)) {
+                throw new IllegalArgumentException("decreaseFactor must be between 0 and 1");
+            }
+            this.decreaseFactor = decreaseFactor;
+            return this;
+        }
+
+        /**
+         * Builds an instance of {@link DbxRateLimiter} with this builder's configured parameters or
+         * defaults.
+         *
+         * @return new {@code DbxRateLimiter} instance
+         */
+        public DbxRateLimiter build() {
+            if (minRate > maxRate) {
+                throw new IllegalStateException("minRate must not exceed maxRate");
+            }
+            return new DbxRateLimiter(this);
+        }
+    }
+}
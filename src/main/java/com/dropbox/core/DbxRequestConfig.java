@@ -16,8 +16,20 @@ public class DbxRequestConfig {
     private final /*@Nullable*/String userLocale;
     private final HttpRequestor httpRequestor;
     private final int maxRetries;
-
-    private DbxRequestConfig(String clientIdentifier, /*@Nullable*/ String userLocale, HttpRequestor httpRequestor, int maxRetries) {
+    private final /*@Nullable*/ RetryPolicy customRetryPolicy;
+    private final RetryPolicy retryPolicy;
+    private final /*@Nullable*/ DbxRateLimiter rateLimiter;
+    private final /*@Nullable*/ RequestListener requestListener;
+    private final boolean requestBodyStreaming;
+
+    private DbxRequestConfig(String clientIdentifier,
+                             /*@Nullable*/ String userLocale,
+                             HttpRequestor httpRequestor,
+                             int maxRetries,
+                             /*@Nullable*/ RetryPolicy customRetryPolicy,
+                             /*@Nullable*/ DbxRateLimiter rateLimiter,
+                             /*@Nullable*/ RequestListener requestListener,
+                             boolean requestBodyStreaming) {
         if (clientIdentifier == null) throw new NullPointerException("clientIdentifier");
         if (httpRequestor == null) throw new NullPointerException("httpRequestor");
         if (maxRetries < 0) throw new IllegalArgumentException("maxRetries");
@@ -26,6 +38,11 @@ public class DbxRequestConfig {
         this.userLocale = toLanguageTag(userLocale);
         this.httpRequestor = httpRequestor;
         this.maxRetries = maxRetries;
+        this.customRetryPolicy = customRetryPolicy;
+        this.retryPolicy = customRetryPolicy != null ? customRetryPolicy : RetryPolicy.serverBackoff(maxRetries);
+        this.rateLimiter = rateLimiter;
+        this.requestListener = requestListener;
+        this.requestBodyStreaming = requestBodyStreaming;
     }
 
     /**
@@ -61,7 +78,7 @@ public class DbxRequestConfig {
      */
     @Deprecated
     public DbxRequestConfig(String clientIdentifier, /*@Nullable*/ String userLocale, HttpRequestor httpRequestor) {
-        this(clientIdentifier, userLocale, httpRequestor, 0);
+        this(clientIdentifier, userLocale, httpRequestor, 0, null, null, null, false);
     }
 
     /**
@@ -125,13 +142,14 @@ public class DbxRequestConfig {
      * <p> If enabled, the client will retry the request a max number of times (specified by {@link
      * #getMaxRetries}) before propagating the {@link RetryException}.</p>
      *
-     * <p> Defaults to {@code false} (the client will not automatically retry any requests).
+     * <p> Defaults to {@code false} (the client will not automatically retry any requests). Always
+     * {@code true} if a custom {@link RetryPolicy} was set.
      *
      * @return whether this client will automatically retry requests that fail with a {@link
      * RetryException}
      */
     public boolean isAutoRetryEnabled() {
-        return maxRetries > 0;
+        return maxRetries > 0 || customRetryPolicy != null;
     }
 
     /**
@@ -142,7 +160,8 @@ public class DbxRequestConfig {
      * 3, the client may issue a request a total of 4 times: once for the initial call, then 3
      * additional times for the 3 retries.</p>
      *
-     * <p> This value is ignored unless {@link #isAutoRetryEnabled} is {@code true}.
+     * <p> This value is ignored unless {@link #isAutoRetryEnabled} is {@code true}. API v2
+     * requests ignore this value if a custom {@link RetryPolicy} was set.
      *
      * <p> The value returned by this method is always positive if retries are enabled, otherwise it
      * is {@code 0}.
@@ -156,6 +175,55 @@ public class DbxRequestConfig {
         return maxRetries;
     }
 
+    /**
+     * Returns the {@link RetryPolicy} API v2 RPC and download requests consult when they fail.
+     *
+     * <p> Defaults to {@link RetryPolicy#serverBackoff} with the maximum number of retries
+     * returned by {@link #getMaxRetries}, unless a custom policy was set with {@link
+     * Builder#withRetryPolicy}.
+     *
+     * @return retry policy for API v2 requests, never {@code null}
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Returns the {@link DbxRateLimiter} API v2 requests acquire a permit from before being sent,
+     * or {@code null} if requests are not rate limited on the client.
+     *
+     * <p> Defaults to {@code null}.
+     *
+     * @return client-side rate limiter, or {@code null}
+     */
+    public /*@Nullable*/ DbxRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Returns the {@link RequestListener} notified of the lifecycle of API v2 requests, or {@code
+     * null} if there is none.
+     *
+     * <p> Defaults to {@code null}.
+     *
+     * @return request listener, or {@code null}
+     */
+    public /*@Nullable*/ RequestListener getRequestListener() {
+        return requestListener;
+    }
+
+    /**
+     * Returns whether API v2 RPC request arguments are serialized directly into the request body
+     * stream instead of into a buffer.
+     *
+     * <p> Defaults to {@code false}.
+     *
+     * @return whether request bodies are streamed
+     */
+    public boolean isRequestBodyStreamingEnabled() {
+        return requestBodyStreaming;
+    }
+
     /**
      * Returns a builder for building a copy of this configuration. Useful for modifying an existing
      * configuration.
@@ -163,7 +231,7 @@ public class DbxRequestConfig {
      * @return builder configured to build a copy of this instance
      */
     public Builder copy() {
-        return new Builder(clientIdentifier, userLocale, httpRequestor, maxRetries);
+        return new Builder(clientIdentifier, userLocale, httpRequestor, maxRetries, customRetryPolicy, rateLimiter, requestListener, requestBodyStreaming);
     }
 
 
@@ -231,15 +299,27 @@ public class DbxRequestConfig {
         private /*@Nullable*/ String userLocale;
         private HttpRequestor httpRequestor;
         private int maxRetries;
+        private /*@Nullable*/ RetryPolicy retryPolicy;
+        private /*@Nullable*/ DbxRateLimiter rateLimiter;
+        private /*@Nullable*/ RequestListener requestListener;
+        private boolean requestBodyStreaming;
 
         private Builder(String clientIdentifier,
                         /*@Nullable*/ String userLocale,
                         HttpRequestor httpRequestor,
-                        int maxRetries) {
+                        int maxRetries,
+                        /*@Nullable*/ RetryPolicy retryPolicy,
+                        /*@Nullable*/ DbxRateLimiter rateLimiter,
+                        /*@Nullable*/ RequestListener requestListener,
+                        boolean requestBodyStreaming) {
             this.clientIdentifier = clientIdentifier;
             this.userLocale = userLocale;
             this.httpRequestor = httpRequestor;
             this.maxRetries = maxRetries;
+            this.retryPolicy = retryPolicy;
+            this.rateLimiter = rateLimiter;
+            this.requestListener = requestListener;
+            this.requestBodyStreaming = requestBodyStreaming;
         }
 
         private Builder(String clientIdentifier) {
@@ -248,6 +328,10 @@ public class DbxRequestConfig {
             this.userLocale = null;
             this.httpRequestor = StandardHttpRequestor.INSTANCE;
             this.maxRetries = 0;
+            this.retryPolicy = null;
+            this.rateLimiter = null;
+            this.requestListener = null;
+            this.requestBodyStreaming = false;
         }
 
         /**
@@ -334,12 +418,15 @@ public class DbxRequestConfig {
          *
          * <p> By default, the client will not automatically retry any requests.
          *
+         * <p> This also removes any retry policy set by {@link #withRetryPolicy}.
+         *
          * @return this builder
          *
          * @see #withAutoRetryEnabled
          */
         public Builder withAutoRetryDisabled() {
             this.maxRetries = 0;
+            this.retryPolicy = null;
             return this;
         }
 
@@ -358,6 +445,8 @@ public class DbxRequestConfig {
          * <p> To enable automatic retries with the default maximum number of attempts, use {@link
          * #withAutoRetryEnabled()}.
          *
+         * <p> This also removes any retry policy set by {@link #withRetryPolicy}.
+         *
          * @param maxRetries maximum number of times to retry a retriable failed request. Must be
          * positive.
          *
@@ -368,6 +457,85 @@ public class DbxRequestConfig {
         public Builder withAutoRetryEnabled(int maxRetries) {
             if (maxRetries <= 0) throw new IllegalArgumentException("maxRetries must be positive");
             this.maxRetries = maxRetries;
+            this.retryPolicy = null;
+            return this;
+        }
+
+        /**
+         * Sets the policy deciding whether and when failed API v2 RPC and download requests are
+         * retried, replacing the policy configured by {@link #withAutoRetryEnabled(int)}.
+         *
+         * <p> By default, the client will not automatically retry any requests.
+         *
+         * <p> Upload requests are never retried automatically. The retry behavior of API v1
+         * requests is not affected by this policy.
+         *
+         * @param retryPolicy policy for retrying failed requests, never {@code null}
+         *
+         * @return this builder
+         *
+         * @see ExponentialBackoffRetryPolicy
+         */
+        public Builder withRetryPolicy(RetryPolicy retryPolicy) {
+            if (retryPolicy == null) throw new NullPointerException("retryPolicy");
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the limiter API v2 requests acquire a permit from before being sent. The limiter
+         * reacts to rate limit errors by pausing and slowing down all requests for the same user.
+         *
+         * <p> Share a single limiter between all configurations for the same app (for example,
+         * {@link DbxRateLimiter#getDefault}) so that all their requests are limited together.
+         *
+         * <p> Defaults to {@code null}, which means requests are not rate limited on the client.
+         *
+         * @param rateLimiter client-side rate limiter, or {@code null} to disable client-side rate
+         * limiting
+         *
+         * @return this builder
+         */
+        public Builder withRateLimiter(/*@Nullable*/ DbxRateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * Sets the listener notified of the start, progress, retries and completion of every API
+         * v2 RPC, download and upload request.
+         *
+         * <p> Defaults to {@code null}.
+         *
+         * @param requestListener request listener, or {@code null} to not listen to requests
+         *
+         * @return this builder
+         *
+         * @see RouteLatencyRecorder
+         */
+        public Builder withRequestListener(/*@Nullable*/ RequestListener requestListener) {
+            this.requestListener = requestListener;
+            return this;
+        }
+
+        /**
+         * Sets whether API v2 RPC request arguments are serialized directly into the request body
+         * stream of the {@link HttpRequestor}.
+         *
+         * <p> By default, arguments are serialized into a buffer that is reused by the calling
+         * thread, and the buffer is sent with a {@code Content-Length}. Streaming avoids the buffer
+         * for very large arguments (for example, long lists of paths), at the cost of serializing
+         * the argument again for every retry and of sending the body without a {@code
+         * Content-Length}.
+         *
+         * <p> Defaults to {@code false}.
+         *
+         * @param requestBodyStreaming whether to stream request bodies
+         *
+         * @return this builder
+         */
+        public Builder withRequestBodyStreaming(boolean requestBodyStreaming) {
+            this.requestBodyStreaming = requestBodyStreaming;
             return this;
         }
 
@@ -378,7 +546,7 @@ public class DbxRequestConfig {
          * @return new {@code DbxRequestConfig} instance.
          */
         public DbxRequestConfig build() {
-            return new DbxRequestConfig(clientIdentifier, userLocale, httpRequestor, maxRetries);
+            return new DbxRequestConfig(clientIdentifier, userLocale, httpRequestor, maxRetries, retryPolicy, rateLimiter, requestListener, requestBodyStreaming);
         }
     }
 }
@@ -246,16 +246,49 @@ public final class DbxRequestUtil {
                                                       byte[] body,
                                                       /*@Nullable*/List<HttpRequestor.Header> headers)
         throws NetworkIOException {
+        return startPostRaw(requestConfig, requestConfig.getHttpRequestor(), sdkUserAgentIdentifier, host, path, body, headers);
+    }
+
+    /**
+     * Same as {@link #startPostRaw(DbxRequestConfig, String, String, String, byte[], List)}, but
+     * issues the request through {@code httpRequestor} instead of the configured requestor.
+     */
+    public static HttpRequestor.Response startPostRaw(DbxRequestConfig requestConfig,
+                                                      HttpRequestor httpRequestor,
+                                                      String sdkUserAgentIdentifier,
+                                                      String host,
+                                                      String path,
+                                                      byte[] body,
+                                                      /*@Nullable*/List<HttpRequestor.Header> headers)
+        throws NetworkIOException {
+        return startPostRaw(requestConfig, httpRequestor, sdkUserAgentIdentifier, host, path, RequestBody.of(body), headers);
+    }
+
+    /**
+     * Same as {@link #startPostRaw(DbxRequestConfig, HttpRequestor, String, String, String, byte[],
+     * List)}, but writes the request body from {@code body}. If the length of the body is unknown,
+     * no {@code Content-Length} header is sent.
+     */
+    public static HttpRequestor.Response startPostRaw(DbxRequestConfig requestConfig,
+                                                      HttpRequestor httpRequestor,
+                                                      String sdkUserAgentIdentifier,
+                                                      String host,
+                                                      String path,
+                                                      RequestBody body,
+                                                      /*@Nullable*/List<HttpRequestor.Header> headers)
+        throws NetworkIOException {
         String uri = buildUri(host, path);
 
         headers = copyHeaders(headers);
         headers = addUserAgentHeader(headers, requestConfig, sdkUserAgentIdentifier);
-        headers.add(new HttpRequestor.Header("Content-Length", Integer.toString(body.length)));
+        if (body.getLength() >= 0) {
+            headers.add(new HttpRequestor.Header("Content-Length", Long.toString(body.getLength())));
+        }
 
         try {
-            HttpRequestor.Uploader uploader = requestConfig.getHttpRequestor().startPost(uri, headers);
+            HttpRequestor.Uploader uploader = httpRequestor.startPost(uri, headers);
             try {
-                uploader.upload(body);
+                body.writeTo(uploader);
                 return uploader.finish();
             } finally {
                 uploader.close();
@@ -265,6 +298,42 @@ public final class DbxRequestUtil {
         }
     }
 
+    /**
+     * Asynchronous version of {@link #startPostRaw}. The outcome is reported to {@code callback}
+     * (see {@link HttpRequestor#startPostAsync}).
+     */
+    public static void startPostRawAsync(DbxRequestConfig requestConfig,
+                                         String sdkUserAgentIdentifier,
+                                         String host,
+                                         String path,
+                                         byte[] body,
+                                         /*@Nullable*/List<HttpRequestor.Header> headers,
+                                         HttpRequestor.ResponseCallback callback) {
+        startPostRawAsync(requestConfig, requestConfig.getHttpRequestor(), sdkUserAgentIdentifier, host, path, body, headers, callback);
+    }
+
+    /**
+     * Same as {@link #startPostRawAsync(DbxRequestConfig, String, String, String, byte[], List,
+     * HttpRequestor.ResponseCallback)}, but issues the request through {@code httpRequestor}
+     * instead of the configured requestor.
+     */
+    public static void startPostRawAsync(DbxRequestConfig requestConfig,
+                                         HttpRequestor httpRequestor,
+                                         String sdkUserAgentIdentifier,
+                                         String host,
+                                         String path,
+                                         byte[] body,
+                                         /*@Nullable*/List<HttpRequestor.Header> headers,
+                                         HttpRequestor.ResponseCallback callback) {
+        String uri = buildUri(host, path);
+
+        headers = copyHeaders(headers);
+        headers = addUserAgentHeader(headers, requestConfig, sdkUserAgentIdentifier);
+        headers.add(new HttpRequestor.Header("Content-Length", Integer.toString(body.length)));
+
+        httpRequestor.startPostAsync(uri, headers, body, callback);
+    }
+
     private static List<HttpRequestor.Header> copyHeaders(List<HttpRequestor.Header> headers) {
         if (headers == null) {
             return new ArrayList<HttpRequestor.Header>();
@@ -323,7 +392,7 @@ public final class DbxRequestUtil {
             case 403:
                 try {
                     ApiErrorResponse<AccessError> accessErrorResponse = new ApiErrorResponse.Serializer<AccessError>(AccessError.Serializer.INSTANCE)
-                            .deserialize(response.getBody());
+                            .deserializeTrusted(response.getBody());
                     if (accessErrorResponse.getUserMessage() != null) {
                         message = accessErrorResponse.getUserMessage().toString();
                     }
@@ -338,7 +407,7 @@ public final class DbxRequestUtil {
             case 422:
                 try {
                     ApiErrorResponse<PathRootError> pathRootErrorResponse = new ApiErrorResponse.Serializer<PathRootError>(Serializer.INSTANCE)
-                            .deserialize(response.getBody());
+                            .deserializeTrusted(response.getBody());
                     if (pathRootErrorResponse.getUserMessage() != null) {
                         message = pathRootErrorResponse.getUserMessage().toString();
                     }
@@ -507,6 +576,55 @@ public final class DbxRequestUtil {
         return DbxRequestUtil.getFirstHeaderMaybe(response, "Content-Type");
     }
 
+    /**
+     * Body of a request that can be written more than once, so that the request can be retried.
+     */
+    public static abstract class RequestBody {
+        /**
+         * Returns the length of this body in bytes, or {@code -1} if it is not known until the
+         * body is written.
+         */
+        public abstract long getLength();
+
+        /**
+         * Writes this entire body as the request body of {@code uploader}. Called once for every
+         * attempt of a request.
+         */
+        public abstract void writeTo(HttpRequestor.Uploader uploader) throws IOException;
+
+        /**
+         * Returns a body holding the given bytes. The array is not copied.
+         */
+        public static RequestBody of(byte [] body) {
+            return of(body, 0, body.length);
+        }
+
+        /**
+         * Returns a body holding {@code len} bytes of the given array, starting at {@code off}. The
+         * array is not copied.
+         */
+        public static RequestBody of(final byte [] body, final int off, final int len) {
+            if (off < 0 || len < 0 || off > body.length - len) {
+                throw new IndexOutOfBoundsException("off=" + off + ", len=" + len + ", length=" + body.length);
+            }
+            return new RequestBody() {
+                @Override
+                public long getLength() {
+                    return len;
+                }
+
+                @Override
+                public void writeTo(HttpRequestor.Uploader uploader) throws IOException {
+                    if (off == 0 && len == body.length) {
+                        uploader.upload(body);
+                    } else {
+                        uploader.upload(body, off, len);
+                    }
+                }
+            };
+        }
+    }
+
     public static abstract class RequestMaker<T, E extends Throwable> {
         public abstract T run() throws DbxException, E;
     }
@@ -4,6 +4,8 @@ import java.io.Closeable;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.security.DigestInputStream;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 
@@ -187,6 +189,117 @@ public abstract class DbxUploader<R, E, X extends DbxApiException> implements Cl
         return uploadAndFinish(IOUtil.limit(in, limit), progressListener);
     }
 
+    /**
+     * Uploads all bytes read from the given {@link InputStream} like {@link
+     * #uploadAndFinish(InputStream)}, computing their content hash (see {@link DbxContentHasher})
+     * on the way. If the server responds with file metadata, its content hash is compared with the
+     * computed one, so the upload is verified without reading the content a second time.
+     *
+     * <p> Only use this for requests that upload the entire file, such as {@code upload}. For
+     * requests that upload a part of a file, such as {@code upload_session/finish}, the hashes
+     * can't match.
+     *
+     * @param in {@code InputStream} containing data to upload
+     *
+     * @return Response from server
+     *
+     * @throws ContentHashMismatchException if the content hash reported by the server does not
+     * match the uploaded content
+     * @throws X if the server sent an error response for the request
+     * @throws DbxException if an error occurs uploading the data or reading the response
+     * @throws IOException if an error occurs reading the input stream.
+     * @throws IllegalStateException if this uploader has already been closed (see {@link #close}) or finished (see {@link #finish})
+     */
+    public R uploadAndVerify(InputStream in) throws X, DbxException, IOException {
+        return uploadAndVerify(in, null);
+    }
+
+    /**
+     * This method is the same as {@link #uploadAndVerify(InputStream)} except for it allows
+     * tracking the upload progress.
+     *
+     * @param in {@code InputStream} containing data to upload
+     * @param progressListener {@code IOUtil.ProgressListener} to track the upload progress.
+     *
+     * @return Response from server
+     *
+     * @throws ContentHashMismatchException if the content hash reported by the server does not
+     * match the uploaded content
+     * @throws X if the server sent an error response for the request
+     * @throws DbxException if an error occurs uploading the data or reading the response
+     * @throws IOException if an error occurs reading the input stream.
+     * @throws IllegalStateException if this uploader has already been closed (see {@link #close}) or finished (see {@link #finish})
+     */
+    public R uploadAndVerify(InputStream in, IOUtil.ProgressListener progressListener) throws X, DbxException, IOException {
+        DbxContentHasher hasher = new DbxContentHasher();
+        R result = uploadAndFinish(new DigestInputStream(in, hasher), progressListener);
+        DbxContentHasher.verify(result, hasher.digestHex());
+        return result;
+    }
+
+    /**
+     * Uploads {@code count} bytes of the given file, starting at {@code position}, and returns the
+     * response.
+     *
+     * <p> Unlike {@link #uploadAndFinish(InputStream, long)}, the bytes are not copied through a
+     * stream buffer: the {@link HttpRequestor} sends the file region with the most efficient
+     * transfer it supports (see {@link HttpRequestor.Uploader#upload(FileChannel, long, long)}).
+     * The channel is read with positional reads, so its position is not changed and several
+     * uploaders may upload different regions of the same channel concurrently, for example the
+     * chunks of an upload session. The channel is not closed.
+     *
+     * This method manages closing this uploader's resources, so no further calls to {@link #close}
+     * are necessary.
+     *
+     * @param channel file containing data to upload
+     * @param position offset in the file of the first byte to upload
+     * @param count number of bytes to upload
+     *
+     * @return Response from server
+     *
+     * @throws X if the server sent an error response for the request
+     * @throws DbxException if an error occurs uploading the data or reading the response
+     * @throws IOException if an error occurs reading the file.
+     * @throws IllegalStateException if this uploader has already been closed (see {@link #close}) or finished (see {@link #finish})
+     */
+    public R uploadAndFinish(FileChannel channel, long position, long count) throws X, DbxException, IOException {
+        return uploadAndFinish(channel, position, count, null);
+    }
+
+    /**
+     * This method is the same as {@link #uploadAndFinish(FileChannel, long, long)} except for it
+     * allows tracking the upload progress.
+     *
+     * @param channel file containing data to upload
+     * @param position offset in the file of the first byte to upload
+     * @param count number of bytes to upload
+     * @param progressListener {@code IOUtil.ProgressListener} to track the upload progress.
+     *
+     * @return Response from server
+     *
+     * @throws X if the server sent an error response for the request
+     * @throws DbxException if an error occurs uploading the data or reading the response
+     * @throws IOException if an error occurs reading the file.
+     * @throws IllegalStateException if this uploader has already been closed (see {@link #close}) or finished (see {@link #finish})
+     */
+    public R uploadAndFinish(FileChannel channel, long position, long count, IOUtil.ProgressListener progressListener) throws X, DbxException, IOException {
+        try {
+            try {
+                httpUploader.setProgressListener(progressListener);
+                httpUploader.upload(channel, position, count);
+            } catch (IOUtil.ReadException ex) {
+                throw ex.getCause();
+            } catch (IOException ex) {
+                // write exceptions and everything else is a Network I/O problem
+                throw new NetworkIOException(ex);
+            }
+
+            return finish();
+        } finally {
+            close();
+        }
+    }
+
     /**
      * Closes this upload request and releases its underlying resources.
      *
@@ -258,7 +371,7 @@ public abstract class DbxUploader<R, E, X extends DbxApiException> implements Cl
 
             try {
                 if (response.getStatusCode() == 200) {
-                    return responseSerializer.deserialize(response.getBody());
+                    return responseSerializer.deserializeTrusted(response.getBody());
                 }
                 else if (response.getStatusCode() == 409) {
                     DbxWrappedException wrapped =  DbxWrappedException.fromResponse(errorSerializer, response, this.userId);
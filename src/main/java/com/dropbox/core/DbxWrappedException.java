@@ -44,7 +44,7 @@ public final class DbxWrappedException extends Exception {
         String requestId = DbxRequestUtil.getRequestId(response);
 
         ApiErrorResponse<T> apiResponse = new ApiErrorResponse.Serializer<T>(errSerializer)
-            .deserialize(response.getBody());
+            .deserializeTrusted(response.getBody());
 
         T routeError = apiResponse.getError();
 
@@ -0,0 +1,323 @@
+package com.dropbox.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*>>> import checkers.nullness.quals.Nullable; */
+
+/**
+ * {@link RetryPolicy} that retries with exponentially increasing, randomized delays.
+ *
+ * <p> Requests failing with a {@link RetryException} are retried. If the server requested a
+ * backoff (see {@link RetryException#getBackoffMillis}), the client always waits at least that
+ * long. Requests failing with a {@link NetworkIOException} are only retried if enabled through
+ * {@link Builder#withNetworkErrorRetries} and the request is idempotent.
+ *
+ * <p> Retries stop once the maximum number of retries is reached, once the next retry would start
+ * after the maximum elapsed time, or once the configured {@link RetryBudget} is exhausted.
+ *
+ * <pre>
+ * DbxRequestConfig config = DbxRequestConfig.newBuilder("MyApp/1.0")
+ *     .withRetryPolicy(ExponentialBackoffRetryPolicy.newBuilder()
+ *         .withMaxRetries(5)
+ *         .withMaxElapsedTime(1, TimeUnit.MINUTES)
+ *         .withNetworkErrorRetries(true)
+ *         .build())
+ *     .build();
+ * </pre>
+ */
+public final class ExponentialBackoffRetryPolicy extends RetryPolicy {
+    private static final Random RAND = new Random();
+
+    /**
+     * How delays are randomized between retries.
+     *
+     * <p> See <a href="https://aws.amazon.com/blogs/architecture/exponential-backoff-and-jitter/">
+     * Exponential Backoff And Jitter</a> for a comparison of the two strategies.
+     */
+    public enum Jitter {
+        /**
+         * Wait a random amount of time between {@code 0} and {@code min(maxDelay, baseDelay *
+         * 2^retries)}.
+         */
+        FULL,
+        /**
+         * Wait a random amount of time between {@code baseDelay} and three times the previous
+         * delay, capped at {@code maxDelay}.
+         */
+        DECORRELATED;
+    }
+
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final long maxElapsedMillis;
+    private final Jitter jitter;
+    private final boolean networkErrorRetries;
+    private final Set<String> idempotentRoutes;
+    private final /*@Nullable*/ RetryBudget budget;
+
+    private ExponentialBackoffRetryPolicy(Builder builder) {
+        this.maxRetries = builder.maxRetries;
+        this.baseDelayMillis = builder.baseDelayMillis;
+        this.maxDelayMillis = builder.maxDelayMillis;
+        this.maxElapsedMillis = builder.maxElapsedMillis;
+        this.jitter = builder.jitter;
+        this.networkErrorRetries = builder.networkErrorRetries;
+        this.idempotentRoutes = Collections.unmodifiableSet(new HashSet<String>(builder.idempotentRoutes));
+        this.budget = builder.budget;
+    }
+
+    /**
+     * Returns a new builder for creating an {@link ExponentialBackoffRetryPolicy} instance.
+     *
+     * @return new builder with default settings
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    @Override
+    public void onRequest() {
+        if (budget != null) {
+            budget.recordRequest();
+        }
+    }
+
+    @Override
+    public long getRetryDelayMillis(FailedAttempt attempt) {
+        if (!isRetriable(attempt) || attempt.getRetries() >= maxRetries) {
+            return NO_RETRY;
+        }
+
+        long delay = nextDelayMillis(attempt);
+        if (attempt.getError() instanceof RetryException) {
+            delay = Math.max(delay, ((RetryException) attempt.getError()).getBackoffMillis());
+        }
+
+        if (maxElapsedMillis > 0 && attempt.getElapsedMillis() + delay > maxElapsedMillis) {
+            return NO_RETRY;
+        }
+        // withdraw from the budget last so we don't spend tokens on retries we never make
+        if (budget != null && !budget.tryAcquireRetry()) {
+            return NO_RETRY;
+        }
+        return delay;
+    }
+
+    private boolean isRetriable(FailedAttempt attempt) {
+        DbxException error = attempt.getError();
+        if (error instanceof RetryException) {
+            return true;
+        }
+        if (error instanceof NetworkIOException) {
+            return networkErrorRetries
+                && (attempt.isIdempotent() || idempotentRoutes.contains(attempt.getRoute()));
+        }
+        return false;
+    }
+
+    private long nextDelayMillis(FailedAttempt attempt) {
+        switch (jitter) {
+            case FULL: {
+                // compare before shifting to avoid overflow for large retry counts
+                int retries = attempt.getRetries();
+                long cap = maxDelayMillis;
+                if (retries < Long.SIZE - 1 && baseDelayMillis <= (maxDelayMillis >> retries)) {
+                    cap = baseDelayMillis << retries;
+                }
+                return randomBetween(0, cap);
+            }
+            case DECORRELATED: {
+                long previous = Math.max(baseDelayMillis, attempt.getPreviousDelayMillis());
+                long upper = previous > Long.MAX_VALUE / 3 ? Long.MAX_VALUE : previous * 3;
+                return Math.min(maxDelayMillis, randomBetween(baseDelayMillis, upper));
+            }
+            default:
+                throw new AssertionError("Unknown jitter: " + jitter);
+        }
+    }
+
+    private static long randomBetween(long min, long max) {
+        if (max <= min) {
+            return min;
+        }
+        return min + (long) (RAND.nextDouble() * (max - min));
+    }
+
+    /**
+     * Builder for {@link ExponentialBackoffRetryPolicy}.
+     */
+    public static final class Builder {
+        private int maxRetries;
+        private long baseDelayMillis;
+        private long maxDelayMillis;
+        private long maxElapsedMillis;
+        private Jitter jitter;
+        private boolean networkErrorRetries;
+        private Set<String> idempotentRoutes;
+        private /*@Nullable*/ RetryBudget budget;
+
+        private Builder() {
+            this.maxRetries = 3;
+            this.baseDelayMillis = 500;
+            this.maxDelayMillis = TimeUnit.SECONDS.toMillis(30);
+            this.maxElapsedMillis = TimeUnit.MINUTES.toMillis(2);
+            this.jitter = Jitter.DECORRELATED;
+            this.networkErrorRetries = false;
+            this.idempotentRoutes = new HashSet<String>();
+            this.budget = RetryBudget.getDefault();
+        }
+
+        /**
+         * Sets the maximum number of retries, not counting the initial attempt.
+         *
+         * <p> Defaults to {@code 3}.
+         *
+         * @param maxRetries maximum number of retries. Must not be negative.
+         *
+         * @return this builder
+         */
+        public Builder withMaxRetries(int maxRetries) {
+            if (maxRetries < 0) throw new IllegalArgumentException("maxRetries must be non-negative");
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * Sets the base delay from which retry delays grow.
+         *
+         * <p> Defaults to 500 milliseconds.
+         *
+         * @param delay base delay. Must not be negative.
+         * @param unit unit of {@code delay}
+         *
+         * @return this builder
+         */
+        public Builder withBaseDelay(long delay, TimeUnit unit) {
+            if (unit == null) throw new NullPointerException("unit");
+            if (delay < 0) throw new IllegalArgumentException("delay must be non-negative");
+            this.baseDelayMillis = unit.toMillis(delay);
+            return this;
+        }
+
+        /**
+         * Sets the maximum delay between retries. Backoffs requested by the server may exceed
+         * this value.
+         *
+         * <p> Defaults to 30 seconds.
+         *
+         * @param delay maximum delay. Must not be negative.
+         * @param unit unit of {@code delay}
+         *
+         * @return this builder
+         */
+        public Builder withMaxDelay(long delay, TimeUnit unit) {
+            if (unit == null) throw new NullPointerException("unit");
+            if (delay < 0) throw new IllegalArgumentException("delay must be non-negative");
+            this.maxDelayMillis = unit.toMillis(delay);
+            return this;
+        }
+
+        /**
+         * Sets the maximum time since the initial attempt after which a request will no longer be
+         * retried. A request is not retried if waiting for the next retry would exceed this time.
+         *
+         * <p> Defaults to 2 minutes.
+         *
+         * @param time maximum elapsed time, or {@code 0} for no limit. Must not be negative.
+         * @param unit unit of {@code time}
+         *
+         * @return this builder
+         */
+        public Builder withMaxElapsedTime(long time, TimeUnit unit) {
+            if (unit == null) throw new NullPointerException("unit");
+            if (time < 0) throw new IllegalArgumentException("time must be non-negative");
+            this.maxElapsedMillis = unit.toMillis(time);
+            return this;
+        }
+
+        /**
+         * Sets how retry delays are randomized.
+         *
+         * <p> Defaults to {@link Jitter#DECORRELATED}.
+         *
+         * @param jitter jitter strategy, never {@code null}
+         *
+         * @return this builder
+         */
+        public Builder withJitter(Jitter jitter) {
+            if (jitter == null) throw new NullPointerException("jitter");
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * Sets whether idempotent requests failing with a {@link NetworkIOException} should be
+         * retried.
+         *
+         * <p> Download requests are always considered idempotent. RPC routes are only considered
+         * idempotent if passed to {@link #withIdempotentRoutes}.
+         *
+         * <p> Defaults to {@code false}.
+         *
+         * @param networkErrorRetries whether to retry network errors for idempotent requests
+         *
+         * @return this builder
+         */
+        public Builder withNetworkErrorRetries(boolean networkErrorRetries) {
+            this.networkErrorRetries = networkErrorRetries;
+            return this;
+        }
+
+        /**
+         * Marks the given RPC routes as idempotent, making them eligible for network error retries
+         * (see {@link #withNetworkErrorRetries}). Routes are identified by their path, such as
+         * {@code "2/files/get_metadata"}.
+         *
+         * @param routes paths of idempotent routes
+         *
+         * @return this builder
+         */
+        public Builder withIdempotentRoutes(String... routes) {
+            if (routes == null) throw new NullPointerException("routes");
+            for (String route : routes) {
+                if (route == null) throw new NullPointerException("route");
+            }
+            this.idempotentRoutes.addAll(Arrays.asList(routes));
+            return this;
+        }
+
+        /**
+         * Sets the retry budget limiting the total volume of retries.
+         *
+         * <p> Defaults to {@link RetryBudget#getDefault}, which is shared by all clients in the
+         * process.
+         *
+         * @param budget retry budget, or {@code null} to not limit retry volume
+         *
+         * @return this builder
+         */
+        public Builder withRetryBudget(/*@Nullable*/ RetryBudget budget) {
+            this.budget = budget;
+            return this;
+        }
+
+        /**
+         * Builds an instance of {@link ExponentialBackoffRetryPolicy} with this builder's
+         * configured parameters or defaults.
+         *
+         * @return new {@code ExponentialBackoffRetryPolicy} instance
+         */
+        public ExponentialBackoffRetryPolicy build() {
+            if (baseDelayMillis > maxDelayMillis) {
+                throw new IllegalStateException("base delay must not exceed max delay");
+            }
+            return new ExponentialBackoffRetryPolicy(this);
+        }
+    }
+}
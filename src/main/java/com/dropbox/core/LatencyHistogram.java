@@ -0,0 +1,159 @@
+package com.dropbox.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies with bounded relative error.
+ *
+ * <p> Values are counted in log-linear buckets: every power of two is split into 32 equally sized
+ * buckets, so reported percentiles are within about 3% of the recorded values. Recording never
+ * blocks and never allocates, which makes it safe to call on every request.
+ *
+ * <p> Percentiles are computed from a racy read of the buckets, so they may not reflect values
+ * recorded concurrently.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong max;
+
+    /**
+     * Creates a new, empty histogram.
+     */
+    public LatencyHistogram() {
+        this.buckets = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Records a latency. Negative values are recorded as {@code 0}.
+     *
+     * @param nanos latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return number of recorded values
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the largest recorded latency, or {@code 0} if none were recorded.
+     *
+     * @param unit unit of the returned value
+     *
+     * @return maximum latency
+     */
+    public long getMax(TimeUnit unit) {
+        return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the latency below which the given percentage of recorded latencies fall, or {@code
+     * 0} if none were recorded.
+     *
+     * @param percentile percentile between {@code 0} and {@code 100}, such as {@code 99.9}
+     * @param unit unit of the returned value
+     *
+     * @return latency at the percentile
+     */
+    public long getPercentile(double percentile, TimeUnit unit) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+
+        long total = 0;
+        long [] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * (percentile / 100)));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // never report more than we actually recorded
+                long value = Math.min(highestValueOf(i), max.get());
+                return unit.convert(value, TimeUnit.NANOSECONDS);
+            }
+        }
+        return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the median latency. Same as {@code getPercentile(50, unit)}.
+     */
+    public long getP50(TimeUnit unit) {
+        return getPercentile(50, unit);
+    }
+
+    /**
+     * Returns the 99th percentile latency. Same as {@code getPercentile(99, unit)}.
+     */
+    public long getP99(TimeUnit unit) {
+        return getPercentile(99, unit);
+    }
+
+    /**
+     * Returns the 99.9th percentile latency. Same as {@code getPercentile(99.9, unit)}.
+     */
+    public long getP999(TimeUnit unit) {
+        return getPercentile(99.9, unit);
+    }
+
+    /**
+     * Resets this histogram to its empty state. Values recorded concurrently may be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        max.set(0);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = (Long.SIZE - 1) - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        int subBucket = index % SUB_BUCKET_COUNT;
+        long lowest = ((long) (SUB_BUCKET_COUNT + subBucket)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,175 @@
+package com.dropbox.core;
+
+/*>>> import checkers.nullness.quals.Nullable; */
+
+/**
+ * Receives lifecycle events for API v2 requests, for example to collect metrics or trace
+ * requests.
+ *
+ * <p> Register a listener on your client's configuration using {@link
+ * DbxRequestConfig.Builder#withRequestListener}. For every RPC, download and upload request, the
+ * listener receives, in order:
+ *
+ * <ol>
+ *   <li> {@link #onStart} once, before the first attempt,</li>
+ *   <li> for every attempt, {@link #onHeadersSent}, any number of {@link #onBytesSent} and
+ *        {@link #onBytesReceived} calls, and {@link #onFirstByte} once the response status is
+ *        received,</li>
+ *   <li> {@link #onRetry} before each retry,</li>
+ *   <li> {@link #onComplete} once, after the request finished or failed for good.</li>
+ * </ol>
+ *
+ * <p> Download and upload requests complete once their response body is closed, which may be long
+ * after the client method returned.
+ *
+ * <p> Listeners are called synchronously on the threads issuing and reading requests, so they
+ * must be thread-safe and should return quickly. All methods do nothing by default.
+ *
+ * @see RouteLatencyRecorder
+ */
+public abstract class RequestListener {
+    /**
+     * Called once before the first attempt of a request.
+     *
+     * @param request request that is starting
+     */
+    public void onStart(Request request) {
+    }
+
+    /**
+     * Called when the request headers of an attempt have been handed to the {@link
+     * com.dropbox.core.http.HttpRequestor}.
+     *
+     * @param request request being attempted
+     * @param attempt attempt number, {@code 0} for the initial attempt
+     */
+    public void onHeadersSent(Request request, int attempt) {
+    }
+
+    /**
+     * Called when the response status and headers of an attempt have been received.
+     *
+     * @param request request being attempted
+     * @param attempt attempt number, {@code 0} for the initial attempt
+     * @param statusCode HTTP status code of the response
+     */
+    public void onFirstByte(Request request, int attempt, int statusCode) {
+    }
+
+    /**
+     * Called when request body bytes have been written.
+     *
+     * @param request request being attempted
+     * @param bytes number of bytes written since the last call
+     */
+    public void onBytesSent(Request request, long bytes) {
+    }
+
+    /**
+     * Called when response body bytes have been read.
+     *
+     * @param request request being attempted
+     * @param bytes number of bytes read since the last call
+     */
+    public void onBytesReceived(Request request, long bytes) {
+    }
+
+    /**
+     * Called when a failed attempt will be retried.
+     *
+     * @param request request being retried
+     * @param attempt number of the attempt that failed, {@code 0} for the initial attempt
+     * @param error error the attempt failed with
+     * @param delayMillis milliseconds until the next attempt
+     */
+    public void onRetry(Request request, int attempt, DbxException error, long delayMillis) {
+    }
+
+    /**
+     * Called once the request is done.
+     *
+     * @param request request that is done
+     * @param durationNanos nanoseconds since the request started
+     * @param error error the request failed with, or {@code null} if it succeeded. Route errors
+     * are reported as {@link DbxWrappedException}.
+     */
+    public void onComplete(Request request, long durationNanos, /*@Nullable*/ Exception error) {
+    }
+
+    /**
+     * Style of an API v2 request.
+     */
+    public enum Style {
+        RPC,
+        DOWNLOAD,
+        UPLOAD;
+    }
+
+    /**
+     * Describes a single API v2 request, including all of its attempts.
+     */
+    public static final class Request {
+        private final Style style;
+        private final String host;
+        private final String route;
+        private final long startNanos;
+
+        /**
+         * @param style see {@link #getStyle}
+         * @param host see {@link #getHost}
+         * @param route see {@link #getRoute}
+         * @param startNanos see {@link #getStartNanos}
+         */
+        public Request(Style style, String host, String route, long startNanos) {
+            if (style == null) throw new NullPointerException("style");
+            if (host == null) throw new NullPointerException("host");
+            if (route == null) throw new NullPointerException("route");
+
+            this.style = style;
+            this.host = host;
+            this.route = route;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * Returns the style of the request.
+         *
+         * @return request style
+         */
+        public Style getStyle() {
+            return style;
+        }
+
+        /**
+         * Returns the host the request is sent to, such as {@code "api.dropboxapi.com"}.
+         *
+         * @return request host
+         */
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * Returns the path of the requested route, such as {@code "2/files/get_metadata"}.
+         *
+         * @return route path
+         */
+        public String getRoute() {
+            return route;
+        }
+
+        /**
+         * Returns the value of {@link System#nanoTime} when the request started.
+         *
+         * @return request start time in nanoseconds
+         */
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        @Override
+        public String toString() {
+            return style + " " + host + "/" + route;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.dropbox.core;
+
+/**
+ * Token bucket limiting retries to a fraction of overall request volume.
+ *
+ * <p> Every request deposits {@code retryRatio} tokens into the bucket and every retry withdraws
+ * one. A retry is only allowed while a whole token is available. The bucket also refills at a
+ * minimum rate of {@code minRetriesPerSecond} so low-traffic clients can still retry. This way a
+ * widespread outage, where most requests fail, does not multiply the load sent to the Dropbox
+ * servers by the number of retries each request is allowed.
+ *
+ * <p> The bucket holds at most 10 seconds worth of minimum retries, or a single token, whichever is
+ * larger.
+ *
+ * <p> This class is thread-safe. Share an instance between policies to enforce a common budget;
+ * {@link #getDefault} returns a budget shared by the whole process.
+ */
+public final class RetryBudget {
+    private static final long NANOS_PER_SECOND = 1000L * 1000L * 1000L;
+    private static final RetryBudget DEFAULT = new RetryBudget(0.1, 10);
+
+    private final double retryRatio;
+    private final double minRetriesPerSecond;
+    private final double capacity;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * Creates a new budget, initially full.
+     *
+     * @param retryRatio tokens deposited per request, e.g. {@code 0.1} to allow one retry for
+     * every 10 requests. Must not be negative.
+     * @param minRetriesPerSecond tokens deposited per second regardless of traffic. Must not be
+     * negative.
+     */
+    public RetryBudget(double retryRatio, double minRetriesPerSecond) {
+        if (!(retryRatio >= 0)) throw new IllegalArgumentException("retryRatio must be non-negative");
+        if (!(minRetriesPerSecond >= 0)) throw new IllegalArgumentException("minRetriesPerSecond must be non-negative");
+
+        this.retryRatio = retryRatio;
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.capacity = Math.max(1, minRetriesPerSecond * 10);
+
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the budget shared by all clients in this process, which allows one retry for every
+     * 10 requests, plus 10 retries per second.
+     *
+     * @return process-wide retry budget
+     */
+    public static RetryBudget getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Records a request, depositing {@code retryRatio} tokens.
+     */
+    public synchronized void recordRequest() {
+        refill();
+        tokens = Math.min(capacity, tokens + retryRatio);
+    }
+
+    /**
+     * Withdraws a token for a retry if one is available.
+     *
+     * @return {@code true} if the retry is within budget, otherwise {@code false}
+     */
+    public synchronized boolean tryAcquireRetry() {
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * Returns the number of retries currently allowed by this budget.
+     *
+     * @return number of available retries
+     */
+    public synchronized int getAvailableRetries() {
+        refill();
+        return (int) tokens;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        long elapsed = now - lastRefillNanos;
+        if (elapsed <= 0) {
+            return;
+        }
+        lastRefillNanos = now;
+        tokens = Math.min(capacity, tokens + (minRetriesPerSecond * elapsed) / NANOS_PER_SECOND);
+    }
+}
@@ -0,0 +1,179 @@
+package com.dropbox.core;
+
+import java.util.Random;
+
+/**
+ * Decides whether, and after how long, a failed API v2 request should be retried.
+ *
+ * <p> Set a policy on your client's configuration using {@link
+ * DbxRequestConfig.Builder#withRetryPolicy}. The SDK consults the policy every time an RPC or
+ * download request fails with a {@link DbxException}. Route errors are never retried.
+ *
+ * <p> A single policy instance is shared by every request issued with the same configuration,
+ * possibly from multiple threads at once, so implementations must be thread-safe.
+ *
+ * @see ExponentialBackoffRetryPolicy
+ */
+public abstract class RetryPolicy {
+    /**
+     * Returned by {@link #getRetryDelayMillis} to indicate the failure should be propagated to
+     * the caller instead of retried.
+     */
+    public static final long NO_RETRY = -1L;
+
+    /**
+     * Called once for every request issued with this policy, before its first attempt. Retries of
+     * the request do not call this method.
+     *
+     * <p> The default implementation does nothing. Policies that throttle retries relative to
+     * overall traffic (see {@link RetryBudget}) should record the request here.
+     */
+    public void onRequest() {
+    }
+
+    /**
+     * Returns the number of milliseconds to wait before retrying the failed attempt, or {@link
+     * #NO_RETRY} to give up and propagate the attempt's error.
+     *
+     * @param attempt details about the failed attempt, never {@code null}
+     *
+     * @return non-negative retry delay in milliseconds, or {@link #NO_RETRY}
+     */
+    public abstract long getRetryDelayMillis(FailedAttempt attempt);
+
+    /**
+     * Returns a policy that retries requests failing with a {@link RetryException} at most {@code
+     * maxRetries} times, waiting for the backoff requested by the server plus a random jitter of
+     * up to a second.
+     *
+     * <p> This is the policy used by {@link DbxRequestConfig.Builder#withAutoRetryEnabled(int)}.
+     *
+     * @param maxRetries maximum number of retries, not counting the initial attempt. Must not be
+     * negative.
+     *
+     * @return policy honoring server backoff
+     */
+    public static RetryPolicy serverBackoff(int maxRetries) {
+        if (maxRetries < 0) throw new IllegalArgumentException("maxRetries must be non-negative");
+        return new ServerBackoffRetryPolicy(maxRetries);
+    }
+
+    private static final class ServerBackoffRetryPolicy extends RetryPolicy {
+        private static final Random RAND = new Random();
+
+        private final int maxRetries;
+
+        private ServerBackoffRetryPolicy(int maxRetries) {
+            this.maxRetries = maxRetries;
+        }
+
+        @Override
+        public long getRetryDelayMillis(FailedAttempt attempt) {
+            if (!(attempt.getError() instanceof RetryException) || attempt.getRetries() >= maxRetries) {
+                return NO_RETRY;
+            }
+            // add a small jitter to the sleep to avoid stampeding herd problem, especially when the
+            // server backoff is 0.
+            RetryException error = (RetryException) attempt.getError();
+            return error.getBackoffMillis() + RAND.nextInt(1000);
+        }
+    }
+
+    /**
+     * Details about a failed request attempt passed to {@link RetryPolicy#getRetryDelayMillis}.
+     */
+    public static final class FailedAttempt {
+        private final String route;
+        private final boolean idempotent;
+        private final DbxException error;
+        private final int retries;
+        private final long elapsedMillis;
+        private final long previousDelayMillis;
+
+        /**
+         * @param route see {@link #getRoute}
+         * @param idempotent see {@link #isIdempotent}
+         * @param error see {@link #getError}
+         * @param retries see {@link #getRetries}
+         * @param elapsedMillis see {@link #getElapsedMillis}
+         * @param previousDelayMillis see {@link #getPreviousDelayMillis}
+         */
+        public FailedAttempt(String route,
+                             boolean idempotent,
+                             DbxException error,
+                             int retries,
+                             long elapsedMillis,
+                             long previousDelayMillis) {
+            if (route == null) throw new NullPointerException("route");
+            if (error == null) throw new NullPointerException("error");
+
+            this.route = route;
+            this.idempotent = idempotent;
+            this.error = error;
+            this.retries = retries;
+            this.elapsedMillis = elapsedMillis;
+            this.previousDelayMillis = previousDelayMillis;
+        }
+
+        /**
+         * Returns the path of the route that was requested, such as {@code
+         * "2/files/get_metadata"}.
+         *
+         * @return requested route path
+         */
+        public String getRoute() {
+            return route;
+        }
+
+        /**
+         * Returns whether the request is known to be safe to re-issue even if it may already have
+         * been processed by the server, such as after a network error.
+         *
+         * <p> Download requests are idempotent. RPC requests are conservatively reported as not
+         * idempotent.
+         *
+         * @return whether the request is idempotent
+         */
+        public boolean isIdempotent() {
+            return idempotent;
+        }
+
+        /**
+         * Returns the error the attempt failed with.
+         *
+         * @return attempt error
+         */
+        public DbxException getError() {
+            return error;
+        }
+
+        /**
+         * Returns the number of times the request has already been retried. This is {@code 0} when
+         * the initial attempt failed.
+         *
+         * @return number of previous retries
+         */
+        public int getRetries() {
+            return retries;
+        }
+
+        /**
+         * Returns the number of milliseconds elapsed since the initial attempt was issued.
+         *
+         * @return milliseconds since the request started
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * Returns the delay returned by the policy before this attempt, or {@code 0} if this was the
+         * initial attempt.
+         *
+         * @return previous retry delay in milliseconds
+         */
+        public long getPreviousDelayMillis() {
+            return previousDelayMillis;
+        }
+    }
+}
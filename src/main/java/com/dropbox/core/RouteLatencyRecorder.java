@@ -0,0 +1,91 @@
+package com.dropbox.core;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*>>> import checkers.nullness.quals.Nullable; */
+
+/**
+ * {@link RequestListener} that keeps a {@link LatencyHistogram} of request durations and of
+ * times to first byte for every route.
+ *
+ * <pre>
+ * RouteLatencyRecorder recorder = new RouteLatencyRecorder();
+ * DbxRequestConfig config = DbxRequestConfig.newBuilder("MyApp/1.0")
+ *     .withRequestListener(recorder)
+ *     .build();
+ * ...
+ * LatencyHistogram latency = recorder.getLatency("2/files/list_folder");
+ * System.out.println("p99: " + latency.getP99(TimeUnit.MILLISECONDS) + "ms");
+ * </pre>
+ *
+ * <p> Recording does not lock or allocate once a route has been seen.
+ */
+public class RouteLatencyRecorder extends RequestListener {
+    private final ConcurrentMap<String, LatencyHistogram> latencies;
+    private final ConcurrentMap<String, LatencyHistogram> firstByteLatencies;
+
+    public RouteLatencyRecorder() {
+        this.latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+        this.firstByteLatencies = new ConcurrentHashMap<String, LatencyHistogram>();
+    }
+
+    @Override
+    public void onFirstByte(Request request, int attempt, int statusCode) {
+        getOrCreate(firstByteLatencies, request.getRoute()).record(System.nanoTime() - request.getStartNanos());
+    }
+
+    @Override
+    public void onComplete(Request request, long durationNanos, /*@Nullable*/ Exception error) {
+        getOrCreate(latencies, request.getRoute()).record(durationNanos);
+    }
+
+    /**
+     * Returns the paths of all routes with recorded requests.
+     *
+     * @return unmodifiable view of recorded route paths
+     */
+    public Set<String> getRoutes() {
+        return Collections.unmodifiableSet(latencies.keySet());
+    }
+
+    /**
+     * Returns the histogram of durations of completed requests for the given route, including
+     * retries and, for downloads and uploads, the time spent transferring the body.
+     *
+     * @param route route path, such as {@code "2/files/get_metadata"}
+     *
+     * @return duration histogram, or {@code null} if no request for the route completed yet
+     */
+    public /*@Nullable*/ LatencyHistogram getLatency(String route) {
+        return latencies.get(route);
+    }
+
+    /**
+     * Returns the histogram of times from the start of a request until its response status was
+     * received, for the given route. Every attempt is recorded, measured from the start of the
+     * request.
+     *
+     * @param route route path, such as {@code "2/files/get_metadata"}
+     *
+     * @return time to first byte histogram, or {@code null} if no response for the route was
+     * received yet
+     */
+    public /*@Nullable*/ LatencyHistogram getTimeToFirstByte(String route) {
+        return firstByteLatencies.get(route);
+    }
+
+    private static LatencyHistogram getOrCreate(ConcurrentMap<String, LatencyHistogram> histograms, String route) {
+        LatencyHistogram histogram = histograms.get(route);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = histograms.putIfAbsent(route, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+}
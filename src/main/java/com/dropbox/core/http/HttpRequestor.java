@@ -5,6 +5,9 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -36,10 +39,107 @@ public abstract class HttpRequestor
     // server.
     public static final long DEFAULT_READ_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
 
+    private static final String CONTENT_LENGTH = "Content-Length";
+
     public abstract Response doGet(String url, Iterable<Header> headers) throws IOException;
     public abstract Uploader startPost(String url, Iterable<Header> headers) throws IOException;
     public abstract Uploader startPut(String url, Iterable<Header> headers) throws IOException;
 
+    /**
+     * Same as {@link #startPost(String, Iterable)}, but for requests whose body length is known
+     * up front. The caller must write exactly {@code contentLength} bytes to the returned
+     * {@link Uploader}.
+     *
+     * <p> The length is sent as a {@code Content-Length} header, which lets implementations avoid
+     * chunked transfer encoding (see {@link StandardHttpRequestor}).
+     *
+     * @param url request URL
+     * @param headers request headers
+     * @param contentLength exact number of bytes in the request body
+     *
+     * @return uploader for sending the request body
+     *
+     * @throws IllegalArgumentException if {@code contentLength} is negative
+     */
+    public Uploader startPost(String url, Iterable<Header> headers, long contentLength) throws IOException {
+        return startPost(url, withContentLength(headers, contentLength));
+    }
+
+    /**
+     * Same as {@link #startPut(String, Iterable)}, but for requests whose body length is known
+     * up front. See {@link #startPost(String, Iterable, long)}.
+     */
+    public Uploader startPut(String url, Iterable<Header> headers, long contentLength) throws IOException {
+        return startPut(url, withContentLength(headers, contentLength));
+    }
+
+    /**
+     * Issues a POST request with the given body without waiting for the response, and reports the
+     * outcome to {@code callback}.
+     *
+     * <p> Implementations backed by non-blocking or asynchronous HTTP clients should override this
+     * method so the calling thread is not tied up for the round trip. The default implementation
+     * issues the request synchronously through {@link #startPost(String, Iterable, long)} on the
+     * calling thread before invoking {@code callback}.
+     *
+     * <p> Exactly one of the callback methods is invoked, possibly on a different thread. The
+     * callback is responsible for consuming and closing the {@link Response} body.
+     *
+     * @param url request URL
+     * @param headers request headers
+     * @param body complete request body
+     * @param callback receives the response or the failure
+     */
+    public void startPostAsync(String url, Iterable<Header> headers, byte [] body, ResponseCallback callback) {
+        if (callback == null) throw new NullPointerException("callback");
+
+        Response response;
+        try {
+            Uploader uploader = startPost(url, headers, body.length);
+            try {
+                uploader.upload(body);
+                response = uploader.finish();
+            } finally {
+                uploader.close();
+            }
+        } catch (IOException ex) {
+            callback.onFailure(ex);
+            return;
+        }
+        callback.onResponse(response);
+    }
+
+    private static List<Header> withContentLength(Iterable<Header> headers, long contentLength) {
+        if (contentLength < 0) {
+            throw new IllegalArgumentException("contentLength must be non-negative");
+        }
+        List<Header> copy = new ArrayList<Header>();
+        for (Header header : headers) {
+            if (!CONTENT_LENGTH.equalsIgnoreCase(header.getKey())) {
+                copy.add(header);
+            }
+        }
+        copy.add(new Header(CONTENT_LENGTH, Long.toString(contentLength)));
+        return copy;
+    }
+
+    /**
+     * Returns the value of the {@code Content-Length} header in {@code headers}, or {@code -1} if
+     * there is no such header or it is malformed.
+     */
+    static long getContentLength(Iterable<Header> headers) {
+        for (Header header : headers) {
+            if (CONTENT_LENGTH.equalsIgnoreCase(header.getKey())) {
+                try {
+                    return Long.parseLong(header.getValue().trim());
+                } catch (NumberFormatException ex) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
     /**
      * A simple structure holding an HTTP header, which is key/value pair.
      * Used with {@link HttpRequestor}.
@@ -72,6 +172,29 @@ public abstract class HttpRequestor
         }
     }
 
+    /**
+     * Receives the outcome of a request issued through {@link #startPostAsync}.
+     *
+     * <p> Implementations should not throw. Requestors invoke them on threads where an exception
+     * has nowhere to go, so any failure must be reported through the callback's own result.
+     */
+    public interface ResponseCallback {
+        /**
+         * Called once the response status and headers have been received. The response body may
+         * still be streaming.
+         *
+         * @param response HTTP response, never {@code null}
+         */
+        void onResponse(Response response);
+
+        /**
+         * Called if the request could not be completed because of a network error.
+         *
+         * @param ex network error
+         */
+        void onFailure(IOException ex);
+    }
+
     public static abstract class Uploader {
         protected IOUtil.ProgressListener progressListener;
 
@@ -112,6 +235,90 @@ public abstract class HttpRequestor
             }
         }
 
+        /**
+         * Uploads {@code len} bytes of {@code body}, starting at offset {@code off}, as the request
+         * body.
+         *
+         * <p> The array must not be modified until {@link #finish} returns. Implementations must
+         * not keep a reference to it afterwards, since callers may reuse it for other requests.
+         *
+         * @param body array holding the request body
+         * @param off offset of the request body in {@code body}
+         * @param len length of the request body
+         */
+        public void upload(byte [] body, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || off > body.length - len) {
+                throw new IndexOutOfBoundsException("off=" + off + ", len=" + len + ", length=" + body.length);
+            }
+            OutputStream out = getBody();
+            try {
+                out.write(body, off, len);
+            } finally {
+                out.close();
+            }
+        }
+
+        /**
+         * Uploads {@code count} bytes of {@code channel}, starting at {@code position}, as the
+         * request body.
+         *
+         * <p> The channel is read with positional reads, so its position is not changed and
+         * several requests may upload different regions of the same channel concurrently. The
+         * channel may be read more than once if the request is retried by the HTTP client, and
+         * must stay open until {@link #finish} returns. It is not closed by this method.
+         *
+         * <p> The default implementation copies the bytes to {@link #getBody} through a single
+         * buffer (see {@link IOUtil#copyChannelToStream}). Implementations should override this
+         * method if their HTTP client can send the file region more efficiently.
+         *
+         * @param channel file to upload from
+         * @param position offset in the file of the first byte to upload
+         * @param count number of bytes to upload
+         *
+         * @throws IOUtil.ReadException if reading the channel failed, or the channel has fewer than
+         * {@code count} bytes after {@code position}
+         */
+        public void upload(FileChannel channel, long position, long count) throws IOException {
+            if (channel == null) throw new NullPointerException("channel");
+
+            OutputStream out = getBody();
+            try {
+                IOUtil.copyChannelToStream(channel, position, count, out);
+            } finally {
+                out.close();
+            }
+        }
+
+        /**
+         * Uploads the remaining bytes of {@code body} as the request body, and advances its
+         * position to its limit.
+         *
+         * <p> Buffers backed by an array are uploaded through {@link #upload(byte[], int, int)}, so
+         * the same restrictions apply: the buffer contents must not be modified until {@link
+         * #finish} returns.
+         *
+         * @param body buffer holding the request body
+         */
+        public void upload(ByteBuffer body) throws IOException {
+            if (body.hasArray()) {
+                upload(body.array(), body.arrayOffset() + body.position(), body.remaining());
+                body.position(body.limit());
+                return;
+            }
+
+            OutputStream out = getBody();
+            try {
+                byte [] copyBuffer = new byte[Math.min(body.remaining(), IOUtil.DEFAULT_COPY_BUFFER_SIZE)];
+                while (body.hasRemaining()) {
+                    int len = Math.min(body.remaining(), copyBuffer.length);
+                    body.get(copyBuffer, 0, len);
+                    out.write(copyBuffer, 0, len);
+                }
+            } finally {
+                out.close();
+            }
+        }
+
         public void setProgressListener(IOUtil.ProgressListener progressListener) {
             this.progressListener = progressListener;
         }
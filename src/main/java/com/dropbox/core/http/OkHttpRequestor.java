@@ -14,6 +14,7 @@ import java.io.File;
 import java.io.InterruptedIOException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -233,6 +234,16 @@ public class OkHttpRequestor extends HttpRequestor {
             setBody(RequestBody.create(null, body));
         }
 
+        @Override
+        public void upload(byte [] body, int off, int len) {
+            setBody(RequestBody.create(null, body, off, len));
+        }
+
+        @Override
+        public void upload(FileChannel channel, long position, long count) {
+            setBody(new FileChannelRequestBody(channel, position, count, progressListener));
+        }
+
         @Override
         public void close() {
             if (body != null && (body instanceof Closeable)) {
@@ -376,4 +387,58 @@ public class OkHttpRequestor extends HttpRequestor {
             }
         }
     }
+
+    /**
+     * Request body that sends a region of a file. The region is read through an okio source over
+     * positional reads, straight into okio's segments, so the body can be written again if OkHttp
+     * retries the request.
+     */
+    private static final class FileChannelRequestBody extends RequestBody {
+        private static final long PROGRESS_INTERVAL = 64 << 10;
+
+        private final FileChannel channel;
+        private final long position;
+        private final long count;
+        private final IOUtil.ProgressListener listener;
+
+        public FileChannelRequestBody(FileChannel channel, long position, long count, IOUtil.ProgressListener listener) {
+            if (channel == null) throw new NullPointerException("channel");
+            if (position < 0) throw new IllegalArgumentException("position must be non-negative");
+            if (count < 0) throw new IllegalArgumentException("count must be non-negative");
+
+            this.channel = channel;
+            this.position = position;
+            this.count = count;
+            this.listener = listener;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return null;
+        }
+
+        @Override
+        public long contentLength() {
+            return count;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            Source source = Okio.source(IOUtil.newInputStream(channel, position, count));
+            try {
+                long written = 0;
+                while (written < count) {
+                    long byteCount = Math.min(count - written, PROGRESS_INTERVAL);
+                    // throws EOFException if the file is shorter than expected
+                    sink.write(source, byteCount);
+                    written += byteCount;
+                    if (listener != null) {
+                        listener.onProgress(written);
+                    }
+                }
+            } finally {
+                source.close();
+            }
+        }
+    }
 }
@@ -26,6 +26,7 @@ import java.util.List;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
@@ -58,6 +59,7 @@ import javax.net.ssl.X509TrustManager;
  */
 public class SSLConfig {
     private static final X509TrustManager TRUST_MANAGER = createTrustManager();
+    private static final SSLContext SSL_CONTEXT = createSSLContext(new TrustManager[] { TRUST_MANAGER });
     private static final SSLSocketFactory SSL_SOCKET_FACTORY = createSSLSocketFactory();
 
     private static final String[] PROTOCOL_LIST_TLS_V1_2 = {"TLSv1.2"};
@@ -151,6 +153,49 @@ public class SSLConfig {
         return SSL_SOCKET_FACTORY;
     }
 
+    /**
+     * Returns an {@link SSLContext} that only trusts Dropbox's root certificates.
+     *
+     * <p> Use this together with {@link #getSSLParameters} for HTTP clients that are configured
+     * with an {@code SSLContext} instead of an {@link SSLSocketFactory}. Note that sockets created
+     * directly from this context do not have the protocol and ciphersuite restrictions applied.
+     *
+     * @return SSL context trusting Dropbox's root certificates
+     */
+    public static SSLContext getSSLContext() {
+        return SSL_CONTEXT;
+    }
+
+    /**
+     * Returns a new {@link SSLParameters} instance that limits the TLS protocol versions and
+     * ciphersuites to those allowed by Dropbox. See {@link #getSSLContext}.
+     *
+     * @return SSL parameters with Dropbox's protocol and ciphersuite restrictions
+     *
+     * @throws SSLException if none of "TLSv1.2", "TLSv1.0" or "TLSv1" are supported
+     */
+    public static SSLParameters getSSLParameters() throws SSLException {
+        SSLParameters supported = SSL_CONTEXT.getSupportedSSLParameters();
+        return new SSLParameters(
+            getFilteredCipherSuites(supported.getCipherSuites()),
+            getProtocolList(supported.getProtocols())
+        );
+    }
+
+    private static String[] getProtocolList(String[] supportedProtocols) throws SSLException {
+        List<String> supported = Arrays.asList(supportedProtocols);
+        if (supported.contains("TLSv1.2")) {
+            return PROTOCOL_LIST_TLS_V1_2;
+        }
+        if (supported.contains("TLSv1.0")) {
+            return PROTOCOL_LIST_TLS_V1_0;
+        }
+        if (supported.contains("TLSv1")) {
+            return PROTOCOL_LIST_TLS_V1;
+        }
+        throw new SSLException("SSLContext doesn't support protocols \"TLSv1.2\", \"TLSv1.0\" or \"TLSv1\".");
+    }
+
     private static void limitProtocolsAndCiphers(SSLSocket socket) throws SSLException
     {
         // Set TLS protocol version
@@ -224,8 +269,7 @@ public class SSLConfig {
     }
 
     private static SSLSocketFactory createSSLSocketFactory() {
-        SSLContext sslContext = createSSLContext(new TrustManager[] { TRUST_MANAGER });
-        return new SSLSocketFactoryWrapper(sslContext.getSocketFactory());
+        return new SSLSocketFactoryWrapper(SSL_CONTEXT.getSocketFactory());
     }
 
     private static final class SSLSocketFactoryWrapper extends SSLSocketFactory {
@@ -195,7 +195,16 @@ public class StandardHttpRequestor extends HttpRequestor {
         conn.setReadTimeout((int) config.getReadTimeoutMillis());
         conn.setUseCaches(false);
         conn.setAllowUserInteraction(false);
-        conn.setChunkedStreamingMode(IOUtil.DEFAULT_COPY_BUFFER_SIZE);
+
+        // Stream bodies of known length with a Content-Length header instead of chunked transfer
+        // encoding. This avoids the per-chunk framing overhead and lets the server know the body
+        // size up front. HttpURLConnection only accepts an int here before Java 7.
+        long contentLength = getContentLength(headers);
+        if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+            conn.setFixedLengthStreamingMode((int) contentLength);
+        } else {
+            conn.setChunkedStreamingMode(IOUtil.DEFAULT_COPY_BUFFER_SIZE);
+        }
 
         // Some JREs (like the one provided by Google AppEngine) will return HttpURLConnection
         // instead of HttpsURLConnection. So we have to check here.
@@ -209,6 +218,11 @@ public class StandardHttpRequestor extends HttpRequestor {
         configure(conn);
 
         for (Header header : headers) {
+            // Content-Length is a restricted header for HttpURLConnection and is set through the
+            // streaming mode above.
+            if ("Content-Length".equalsIgnoreCase(header.getKey())) {
+                continue;
+            }
             conn.addRequestProperty(header.getKey(), header.getValue());
         }
 
@@ -1,6 +1,8 @@
 package com.dropbox.core.stone;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.core.JsonGenerator;
@@ -26,6 +28,28 @@ public abstract class CompositeSerializer<T> extends StoneSerializer<T> {
         return tag;
     }
 
+    /**
+     * Builds a lookup table from each name to its position in {@code names}. Generated
+     * deserializers use this to dispatch on field names and tags in constant time instead of
+     * comparing against every known name.
+     */
+    protected static Map<String, Integer> indexNames(String... names) {
+        Map<String, Integer> indexes = new HashMap<String, Integer>(names.length * 2);
+        for (int i = 0; i < names.length; ++i) {
+            indexes.put(names[i], i);
+        }
+        return indexes;
+    }
+
+    /**
+     * Returns the index of {@code name} in a table built by {@link #indexNames}, or {@code -1} if
+     * the name is unknown.
+     */
+    protected static int indexOf(Map<String, Integer> indexes, String name) {
+        Integer index = indexes.get(name);
+        return index == null ? -1 : index;
+    }
+
     protected void writeTag(String tag, JsonGenerator g) throws IOException, JsonGenerationException {
         if (tag != null) {
             g.writeStringField(TAG_FIELD, tag);
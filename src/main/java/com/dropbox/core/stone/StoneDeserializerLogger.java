@@ -11,6 +11,10 @@ public class StoneDeserializerLogger {
         LOGGER_MAP.put(c, callback);
     }
 
+    public static boolean hasCallback(Object value) {
+        return !LOGGER_MAP.isEmpty() && LOGGER_MAP.containsKey(value.getClass());
+    }
+
     public static void log(Object value, String multiLineLog) {
         Class<?> c = value.getClass();
 
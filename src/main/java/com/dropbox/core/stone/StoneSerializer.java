@@ -49,6 +49,31 @@ public abstract class StoneSerializer<T> {
     }
 
     public T deserialize(String json) throws JsonParseException {
+        return deserialize(json, false);
+    }
+
+    public T deserialize(InputStream json) throws IOException, JsonParseException {
+        return deserialize(json, false);
+    }
+
+    /**
+     * Same as {@link #deserialize(String)}, but marks the JSON as coming from a trusted source
+     * (the Dropbox API servers). See {@link StoneValidation.Mode#SERVER_TRUSTED}.
+     */
+    public T deserializeTrusted(String json) throws JsonParseException {
+        return deserialize(json, true);
+    }
+
+    /**
+     * Same as {@link #deserialize(InputStream)}, but marks the JSON as coming from a trusted
+     * source (the Dropbox API servers). See {@link StoneValidation.Mode#SERVER_TRUSTED}.
+     */
+    public T deserializeTrusted(InputStream json) throws IOException, JsonParseException {
+        return deserialize(json, true);
+    }
+
+    private T deserialize(String json, boolean trusted) throws JsonParseException {
+        int previous = StoneValidation.enterDeserialization(trusted);
         try {
             JsonParser p = Util.JSON.createParser(json);
             p.nextToken();
@@ -57,13 +82,20 @@ public abstract class StoneSerializer<T> {
             throw ex;
         } catch (IOException ex) {
             throw new IllegalStateException("Impossible I/O exception", ex);
+        } finally {
+            StoneValidation.exitDeserialization(previous);
         }
     }
 
-    public T deserialize(InputStream json) throws IOException, JsonParseException {
-        JsonParser p = Util.JSON.createParser(json);
-        p.nextToken();
-        return deserialize(p);
+    private T deserialize(InputStream json, boolean trusted) throws IOException, JsonParseException {
+        int previous = StoneValidation.enterDeserialization(trusted);
+        try {
+            JsonParser p = Util.JSON.createParser(json);
+            p.nextToken();
+            return deserialize(p);
+        } finally {
+            StoneValidation.exitDeserialization(previous);
+        }
     }
 
     public abstract void serialize(T value, JsonGenerator g) throws IOException, JsonGenerationException;
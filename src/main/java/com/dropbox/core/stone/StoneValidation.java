@@ -0,0 +1,109 @@
+package com.dropbox.core.stone;
+
+/**
+ * Controls how much validation generated Stone data types perform on values read through the
+ * deserialization path.
+ *
+ * <p> Generated data types validate string patterns (paths, IDs, revisions, ...) when they are
+ * constructed. Values built by your own code are always validated. Values built while
+ * deserializing JSON may skip pattern validation depending on the configured {@link Mode}. Values
+ * returned by the Dropbox servers are already validated server-side, so re-checking every pattern
+ * of every entry of large responses (e.g. {@code listFolder} results) is wasted work.
+ *
+ * <p> This setting is process-wide.
+ */
+public final class StoneValidation {
+    /**
+     * Validation modes for values read through the deserialization path.
+     */
+    public enum Mode {
+        /**
+         * Validate all values, including those deserialized from server responses. This is the
+         * default.
+         */
+        FULL,
+        /**
+         * Skip pattern validation for values deserialized from Dropbox API responses. Values
+         * deserialized from any other source are still fully validated.
+         */
+        SERVER_TRUSTED,
+        /**
+         * Skip pattern validation for all deserialized values, regardless of their source.
+         */
+        OFF
+    }
+
+    private static final int SOURCE_NONE = 0;
+    private static final int SOURCE_UNTRUSTED = 1;
+    private static final int SOURCE_TRUSTED = 2;
+
+    private static final ThreadLocal<int []> SOURCE = new ThreadLocal<int []>() {
+        @Override
+        protected int [] initialValue() {
+            return new int [] { SOURCE_NONE };
+        }
+    };
+
+    private static volatile Mode mode = Mode.FULL;
+
+    private StoneValidation() {
+    }
+
+    /**
+     * Returns the current validation mode. Defaults to {@link Mode#FULL}.
+     *
+     * @return current validation mode, never {@code null}
+     */
+    public static Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Sets the validation mode for all values read through the deserialization path.
+     *
+     * @param mode new validation mode, never {@code null}
+     */
+    public static void setMode(Mode mode) {
+        if (mode == null) throw new NullPointerException("mode");
+        StoneValidation.mode = mode;
+    }
+
+    /**
+     * For internal use only.
+     *
+     * <p> Returns whether values currently being constructed on this thread should have their
+     * string patterns validated.
+     *
+     * @return {@code true} if pattern validation should be performed
+     */
+    public static boolean isPatternCheckEnabled() {
+        switch (mode) {
+            case SERVER_TRUSTED:
+                return SOURCE.get()[0] != SOURCE_TRUSTED;
+            case OFF:
+                return SOURCE.get()[0] == SOURCE_NONE;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Marks the current thread as deserializing values. Must be paired with a call to {@link
+     * #exitDeserialization} in a {@code finally} block.
+     *
+     * @return previous state to pass to {@link #exitDeserialization}
+     */
+    static int enterDeserialization(boolean trusted) {
+        int [] source = SOURCE.get();
+        int previous = source[0];
+        // never downgrade a trusted outer scope
+        if (previous != SOURCE_TRUSTED) {
+            source[0] = trusted ? SOURCE_TRUSTED : SOURCE_UNTRUSTED;
+        }
+        return previous;
+    }
+
+    static void exitDeserialization(int previous) {
+        SOURCE.get()[0] = previous;
+    }
+}
@@ -3,6 +3,7 @@ package com.dropbox.core.util;
 import java.io.ByteArrayOutputStream;
 import java.io.BufferedInputStream;
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -14,6 +15,10 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.CharacterCodingException;
 
 public class IOUtil {
@@ -68,6 +73,89 @@ public class IOUtil {
         copyStreamToStream(in, out, new byte[copyBufferSize]);
     }
 
+    /**
+     * Copies {@code count} bytes of {@code channel}, starting at {@code position}, to {@code out}.
+     *
+     * <p> Uses positional reads into a single heap buffer whose array is written to {@code out}
+     * directly, so the bytes are copied no more often than by {@link #copyStreamToStream}. The
+     * position of the channel is not changed.
+     *
+     * @throws ReadException if reading the channel failed or it has fewer than {@code count} bytes
+     * after {@code position}
+     * @throws WriteException if writing to {@code out} failed
+     */
+    public static void copyChannelToStream(FileChannel channel, long position, long count, OutputStream out)
+        throws ReadException, WriteException {
+        checkRange(position, count);
+
+        byte [] copyBuffer = new byte[(int) Math.min(count, DEFAULT_COPY_BUFFER_SIZE)];
+        ByteBuffer buffer = ByteBuffer.wrap(copyBuffer);
+        long end = position + count;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(copyBuffer.length, end - position));
+            int read;
+            try {
+                read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException("Channel ended " + (end - position) + " bytes early");
+                }
+            } catch (IOException ex) {
+                throw new ReadException(ex);
+            }
+
+            try {
+                out.write(copyBuffer, 0, read);
+            } catch (IOException ex) {
+                throw new WriteException(ex);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Returns a stream that reads {@code count} bytes of {@code channel}, starting at {@code
+     * position}.
+     *
+     * <p> The stream uses positional reads, so it neither depends on nor changes the position of
+     * the channel, and several streams may read different regions of the same channel
+     * concurrently. Closing the stream does not close the channel.
+     */
+    public static InputStream newInputStream(FileChannel channel, long position, long count) {
+        if (channel == null) throw new NullPointerException("channel");
+        checkRange(position, count);
+        return new ChannelInputStream(channel, position, count);
+    }
+
+    /**
+     * Returns a channel that reads from {@code in}. Closing the channel closes the stream.
+     *
+     * <p> Streams that are also a {@link ReadableByteChannel}, such as response bodies of HTTP
+     * clients that can read into buffers themselves, are returned as they are. Other streams read
+     * straight into the backing array of heap buffers; direct buffers are filled through a
+     * reusable copy buffer. Unlike {@link java.nio.channels.Channels#newChannel(InputStream)},
+     * heap buffers are never copied twice.
+     */
+    public static ReadableByteChannel newChannel(InputStream in) {
+        if (in == null) throw new NullPointerException("in");
+        if (in instanceof ReadableByteChannel) {
+            return (ReadableByteChannel) in;
+        }
+        return new InputStreamChannel(in);
+    }
+
+    private static void checkRange(long position, long count) {
+        if (position < 0) {
+            throw new IllegalArgumentException("position must be non-negative");
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("count must be non-negative");
+        }
+        if (position + count < 0) {
+            throw new IllegalArgumentException("position + count overflows");
+        }
+    }
+
     public static byte[] slurp(InputStream in, int byteLimit) throws IOException {
         return slurp(in, byteLimit, new byte[DEFAULT_COPY_BUFFER_SIZE]);
     }
@@ -292,6 +380,109 @@ public class IOUtil {
         }
     }
 
+    /**
+     * {@link InputStream} over a region of a {@link FileChannel} that uses positional reads.
+     */
+    private static final class ChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+        // reused by single-byte reads
+        private final byte [] single;
+
+        public ChannelInputStream(FileChannel channel, long position, long count) {
+            this.channel = channel;
+            this.position = position;
+            this.end = position + count;
+            this.single = new byte[1];
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(end - position, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : (single[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte [] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+
+            len = (int) Math.min(len, end - position);
+            int read = channel.read(ByteBuffer.wrap(b, off, len), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            n = Math.max(0, Math.min(n, end - position));
+            position += n;
+            return n;
+        }
+    }
+
+    private static final class InputStreamChannel implements ReadableByteChannel {
+        private final InputStream in;
+        private byte [] copyBuffer;
+        private boolean open;
+
+        public InputStreamChannel(InputStream in) {
+            this.in = in;
+            this.copyBuffer = null;
+            this.open = true;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            if (!dst.hasRemaining()) {
+                return 0;
+            }
+
+            if (dst.hasArray()) {
+                int n = in.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+                if (n > 0) {
+                    dst.position(dst.position() + n);
+                }
+                return n;
+            }
+
+            if (copyBuffer == null) {
+                copyBuffer = new byte[DEFAULT_COPY_BUFFER_SIZE];
+            }
+            int n = in.read(copyBuffer, 0, Math.min(dst.remaining(), copyBuffer.length));
+            if (n > 0) {
+                dst.put(copyBuffer, 0, n);
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            open = false;
+            in.close();
+        }
+    }
+
     public interface ProgressListener {
         void onProgress(long bytesWritten);
     }
@@ -13,6 +13,7 @@ import com.dropbox.core.util.IOUtil;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 /**
  * The common interface for all builders associated with download style methods. After setting any
@@ -164,4 +165,22 @@ public abstract class DbxDownloadStyleBuilder<R> {
     public R download(OutputStream out) throws DbxException, IOException {
         return start().download(out);
     }
+
+    /**
+     * Convenience method for {@link DbxDownloader#download(FileChannel)}:
+     *
+     * <pre><code>
+     *    builder.start().download(channel);
+     * </code></pre>
+     *
+     * @param channel {@code FileChannel} to write response body to
+     *
+     * @return Response from server
+     *
+     * @throws DbxException if an error occurs reading the response or response body
+     * @throws IOException if an error occurs writing the response body to the channel.
+     */
+    public R download(FileChannel channel) throws DbxException, IOException {
+        return start().download(channel);
+    }
 }
@@ -4,18 +4,23 @@ import static com.dropbox.core.DbxRequestUtil.addUserLocaleHeader;
 import static com.dropbox.core.DbxRequestUtil.addPathRootHeader;
 
 import com.dropbox.core.BadResponseException;
+import com.dropbox.core.DbxCallback;
 import com.dropbox.core.DbxDownloader;
 import com.dropbox.core.DbxException;
 import com.dropbox.core.DbxHost;
+import com.dropbox.core.DbxRateLimiter;
 import com.dropbox.core.DbxRequestConfig;
 import com.dropbox.core.DbxRequestUtil;
 import com.dropbox.core.DbxUploader;
 import com.dropbox.core.DbxWebAuth;
 import com.dropbox.core.DbxWrappedException;
 import com.dropbox.core.NetworkIOException;
-import com.dropbox.core.RetryException;
+import com.dropbox.core.RateLimitException;
+import com.dropbox.core.RequestListener;
+import com.dropbox.core.RetryPolicy;
 import com.dropbox.core.stone.StoneSerializer;
 import com.dropbox.core.http.HttpRequestor;
+import com.dropbox.core.util.IOUtil;
 import com.dropbox.core.util.LangUtil;
 import com.dropbox.core.v2.common.PathRoot;
 
@@ -25,12 +30,18 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /*>>> import checkers.nullness.quals.NonNull; */
 /*>>> import checkers.nullness.quals.Nullable; */
@@ -50,7 +61,6 @@ public abstract class DbxRawClientV2 {
     public static final String USER_AGENT_ID = "OfficialDropboxJavaSDKv2";
 
     private static final JsonFactory JSON = new JsonFactory();
-    private static final Random RAND = new Random();
 
     private final DbxRequestConfig requestConfig;
     private final DbxHost host;
@@ -100,8 +110,85 @@ public abstract class DbxRawClientV2 {
                                           final StoneSerializer<ErrT> errorSerializer)
         throws DbxWrappedException, DbxException {
 
-        final byte [] body = writeAsBytes(argSerializer, arg);
-        final List<HttpRequestor.Header> headers = new ArrayList<HttpRequestor.Header>();
+        final BodyBuffer buffer;
+        final DbxRequestUtil.RequestBody body;
+        if (requestConfig.isRequestBodyStreamingEnabled()) {
+            // serialize straight into the connection, once per attempt
+            buffer = null;
+            body = streamingBody(argSerializer, arg);
+        } else {
+            // serialize once into a reusable buffer and send it for every attempt
+            buffer = BodyBuffer.acquire();
+            body = buffer.write(argSerializer, arg);
+        }
+
+        try {
+            final List<HttpRequestor.Header> headers = rpcHeaders(host, noAuth);
+            final RequestEvents events = RequestEvents.start(requestConfig, RequestListener.Style.RPC, host, path);
+            final HttpRequestor httpRequestor = events.wrap(requestConfig.getHttpRequestor());
+
+            return executeRetriable(path, false, events, new RetriableExecution<ResT> () {
+                private String userIdAnon;
+
+                @Override
+                public ResT execute() throws DbxWrappedException, DbxException {
+                    HttpRequestor.Response response = DbxRequestUtil.startPostRaw(requestConfig, httpRequestor, USER_AGENT_ID, host, path, body, headers);
+                    return readRpcResponse(response, responseSerializer, errorSerializer, userIdAnon);
+                }
+
+                private RetriableExecution<ResT> init(String userId){
+                    this.userIdAnon = userId;
+                    return this;
+                }
+            }.init(this.userId));
+        } finally {
+            if (buffer != null) {
+                buffer.release();
+            }
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #rpcStyle}.
+     *
+     * <p> The request is issued through {@link HttpRequestor#startPostAsync}, so whether the
+     * calling thread is blocked depends on the configured {@link HttpRequestor} (see {@link
+     * com.dropbox.core.http.OkHttp3Requestor}). Retries are scheduled on a shared timer instead of
+     * sleeping a thread, and re-issued from a shared pool of sending threads.
+     *
+     * @param callback receives the result or error of the request
+     */
+    public <ArgT,ResT,ErrT> void rpcStyleAsync(final String host,
+                                               final String path,
+                                               final ArgT arg,
+                                               final boolean noAuth,
+                                               final StoneSerializer<ArgT> argSerializer,
+                                               final StoneSerializer<ResT> responseSerializer,
+                                               final StoneSerializer<ErrT> errorSerializer,
+                                               final RpcCallback<ResT> callback) {
+        if (callback == null) throw new NullPointerException("callback");
+
+        byte [] body;
+        try {
+            body = writeAsBytes(argSerializer, arg);
+        } catch (DbxException ex) {
+            callback.onFailure(ex);
+            return;
+        }
+
+        new AsyncRpcExecution<ResT,ErrT>(
+            host,
+            path,
+            body,
+            rpcHeaders(host, noAuth),
+            responseSerializer,
+            errorSerializer,
+            callback
+        ).run();
+    }
+
+    private List<HttpRequestor.Header> rpcHeaders(String host, boolean noAuth) {
+        List<HttpRequestor.Header> headers = new ArrayList<HttpRequestor.Header>();
         if (!noAuth) {
             addAuthHeaders(headers);
         }
@@ -112,35 +199,29 @@ public abstract class DbxRawClientV2 {
         }
 
         headers.add(new HttpRequestor.Header("Content-Type", "application/json; charset=utf-8"));
+        return headers;
+    }
 
-        return executeRetriable(requestConfig.getMaxRetries(), new RetriableExecution<ResT> () {
-            private String userIdAnon;
-
-            @Override
-            public ResT execute() throws DbxWrappedException, DbxException {
-                HttpRequestor.Response response = DbxRequestUtil.startPostRaw(requestConfig, USER_AGENT_ID, host, path, body, headers);
-                try {
-                    switch (response.getStatusCode()) {
-                        case 200:
-                            return responseSerializer.deserialize(response.getBody());
-                        case 409:
-                            throw DbxWrappedException.fromResponse(errorSerializer, response, userIdAnon);
-                        default:
-                            throw DbxRequestUtil.unexpectedStatus(response, userIdAnon);
-                    }
-                } catch (JsonProcessingException ex) {
-                    String requestId = DbxRequestUtil.getRequestId(response);
-                    throw new BadResponseException(requestId, "Bad JSON: " + ex.getMessage(), ex);
-                } catch (IOException ex) {
-                    throw new NetworkIOException(ex);
-                }
-            }
-
-            private RetriableExecution<ResT> init(String userId){
-                this.userIdAnon = userId;
-                return this;
+    private static <ResT,ErrT> ResT readRpcResponse(HttpRequestor.Response response,
+                                                    StoneSerializer<ResT> responseSerializer,
+                                                    StoneSerializer<ErrT> errorSerializer,
+                                                    String userId)
+        throws DbxWrappedException, DbxException {
+        try {
+            switch (response.getStatusCode()) {
+                case 200:
+                    return responseSerializer.deserializeTrusted(response.getBody());
+                case 409:
+                    throw DbxWrappedException.fromResponse(errorSerializer, response, userId);
+                default:
+                    throw DbxRequestUtil.unexpectedStatus(response, userId);
             }
-        }.init(this.userId));
+        } catch (JsonProcessingException ex) {
+            String requestId = DbxRequestUtil.getRequestId(response);
+            throw new BadResponseException(requestId, "Bad JSON: " + ex.getMessage(), ex);
+        } catch (IOException ex) {
+            throw new NetworkIOException(ex);
+        }
     }
 
     public <ArgT,ResT,ErrT> DbxDownloader<ResT> downloadStyle(final String host,
@@ -163,13 +244,15 @@ public abstract class DbxRawClientV2 {
         headers.add(new HttpRequestor.Header("Content-Type", ""));
 
         final byte[] body = new byte[0];
+        final RequestEvents events = RequestEvents.start(requestConfig, RequestListener.Style.DOWNLOAD, host, path);
+        final HttpRequestor httpRequestor = events.wrap(requestConfig.getHttpRequestor());
 
-        return executeRetriable(requestConfig.getMaxRetries(), new RetriableExecution<DbxDownloader<ResT>>() {
+        return executeRetriable(path, true, events, new RetriableExecution<DbxDownloader<ResT>>() {
             private String userIdAnon;
 
             @Override
             public DbxDownloader<ResT> execute() throws DbxWrappedException, DbxException {
-                HttpRequestor.Response response = DbxRequestUtil.startPostRaw(requestConfig, USER_AGENT_ID, host, path, body, headers);
+                HttpRequestor.Response response = DbxRequestUtil.startPostRaw(requestConfig, httpRequestor, USER_AGENT_ID, host, path, body, headers);
                 String requestId = DbxRequestUtil.getRequestId(response);
                 String contentType = DbxRequestUtil.getContentType(response);
 
@@ -190,8 +273,8 @@ public abstract class DbxRawClientV2 {
                                 throw new BadResponseException(requestId, "Null Dropbox-API-Result header; " + response.getHeaders());
                             }
 
-                            ResT result = responseSerializer.deserialize(resultHeader);
-                            return new DbxDownloader<ResT>(result, response.getBody(), contentType);
+                            ResT result = responseSerializer.deserializeTrusted(resultHeader);
+                            return new DbxDownloader<ResT>(result, events.completeOnClose(response.getBody()), contentType);
                         case 409:
                             throw DbxWrappedException.fromResponse(errorSerializer, response, userIdAnon);
                         default:
@@ -221,6 +304,20 @@ public abstract class DbxRawClientV2 {
         return out.toByteArray();
     }
 
+    private static <T> DbxRequestUtil.RequestBody streamingBody(final StoneSerializer<T> serializer, final T arg) {
+        return new DbxRequestUtil.RequestBody() {
+            @Override
+            public long getLength() {
+                return -1;
+            }
+
+            @Override
+            public void writeTo(HttpRequestor.Uploader uploader) throws IOException {
+                serializer.serialize(arg, uploader.getBody());
+            }
+        };
+    }
+
     private static <T> String headerSafeJson(StoneSerializer<T> serializer, T value) {
         StringWriter out = new StringWriter();
         try {
@@ -253,10 +350,13 @@ public abstract class DbxRawClientV2 {
         headers.add(new HttpRequestor.Header("Content-Type", "application/octet-stream"));
         headers = DbxRequestUtil.addUserAgentHeader(headers, requestConfig, USER_AGENT_ID);
         headers.add(new HttpRequestor.Header("Dropbox-API-Arg", headerSafeJson(argSerializer, arg)));
+        acquirePermit();
+        RequestEvents events = RequestEvents.start(requestConfig, RequestListener.Style.UPLOAD, host, path);
         try {
-            return requestConfig.getHttpRequestor().startPost(uri, headers);
+            return events.wrap(requestConfig.getHttpRequestor()).startPost(uri, headers);
         }
         catch (IOException ex) {
+            events.complete(ex);
             throw new NetworkIOException(ex);
         }
     }
@@ -289,45 +389,96 @@ public abstract class DbxRawClientV2 {
     }
 
     /**
-     * Retries the execution at most a maximum number of times.
+     * Retries the execution for as long as the retry policy allows. Each attempt first acquires a
+     * permit from the configured {@link DbxRateLimiter}, if any. Retries and the outcome are
+     * reported to {@code events}.
      *
      * <p> This method is an alternative implementation to {@code DbxRequestUtil.runAndRetry(..)}
-     * that does <b>not</b> retry 500 errors ({@link com.dropbox.core.ServerException}). To maintain
-     * behavior backwards compatibility in v1, we leave the old implementation in {@code
-     * DbxRequestUtil} unchanged.
+     * that lets the {@link RetryPolicy} decide which errors to retry. The default policy does
+     * <b>not</b> retry 500 errors ({@link com.dropbox.core.ServerException}). To maintain behavior
+     * backwards compatibility in v1, we leave the old implementation in {@code DbxRequestUtil}
+     * unchanged.
      */
-    private static <T> T executeRetriable(int maxRetries, RetriableExecution<T> execution) throws DbxWrappedException, DbxException {
-        if (maxRetries == 0) {
-            return execution.execute();
-        }
+    private <T> T executeRetriable(String path,
+                                   boolean idempotent,
+                                   RequestEvents events,
+                                   RetriableExecution<T> execution)
+        throws DbxWrappedException, DbxException {
+        RetryPolicy retryPolicy = requestConfig.getRetryPolicy();
+        DbxRateLimiter rateLimiter = requestConfig.getRateLimiter();
+        retryPolicy.onRequest();
 
+        long start = System.nanoTime();
         int retries = 0;
-        while (true) {
-            try {
-                return execution.execute();
-            } catch (RetryException ex) {
-                if (retries < maxRetries) {
+        long previousDelay = 0;
+        try {
+            while (true) {
+                acquirePermit();
+                try {
+                    T result = execution.execute();
+                    if (rateLimiter != null) {
+                        rateLimiter.onSuccess(userId);
+                    }
+                    events.succeeded();
+                    return result;
+                } catch (DbxException ex) {
+                    onFailedAttempt(rateLimiter, ex);
+                    RetryPolicy.FailedAttempt attempt = new RetryPolicy.FailedAttempt(
+                        path, idempotent, ex, retries, elapsedMillis(start), previousDelay
+                    );
+                    long delay = retryPolicy.getRetryDelayMillis(attempt);
+                    if (delay < 0) {
+                        throw ex;
+                    }
+                    events.retry(ex, delay);
                     ++retries;
-                    sleepQuietlyWithJitter(ex.getBackoffMillis());
-                } else {
-                    throw ex;
+                    previousDelay = delay;
+                    sleepQuietly(delay);
                 }
             }
+        } catch (DbxWrappedException ex) {
+            events.complete(ex);
+            throw ex;
+        } catch (DbxException ex) {
+            events.complete(ex);
+            throw ex;
+        } catch (RuntimeException ex) {
+            events.complete(ex);
+            throw ex;
+        }
+    }
+
+    private void acquirePermit() throws NetworkIOException {
+        DbxRateLimiter rateLimiter = requestConfig.getRateLimiter();
+        if (rateLimiter == null) {
+            return;
+        }
+        try {
+            rateLimiter.acquire(userId);
+        } catch (InterruptedException ex) {
+            // preserve interrupt
+            Thread.currentThread().interrupt();
+            throw new NetworkIOException(new InterruptedIOException("Interrupted while waiting for rate limiter"));
+        }
+    }
+
+    private void onFailedAttempt(/*@Nullable*/ DbxRateLimiter rateLimiter, DbxException ex) {
+        if (rateLimiter != null && ex instanceof RateLimitException) {
+            rateLimiter.onRateLimited(userId, ((RateLimitException) ex).getBackoffMillis());
         }
     }
 
-    private static void sleepQuietlyWithJitter(long millis) {
-        // add a small jitter to the sleep to avoid stampeding herd problem, especially when millis
-        // is 0.
-        long jitter = RAND.nextInt(1000);
-        long sleepMillis = millis + jitter;
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
 
-        if (sleepMillis <= 0) {
+    private static void sleepQuietly(long millis) {
+        if (millis <= 0) {
             return;
         }
 
         try {
-            Thread.sleep(sleepMillis);
+            Thread.sleep(millis);
         } catch (InterruptedException ex) {
             // preserve interrupt
             Thread.currentThread().interrupt();
@@ -337,4 +488,296 @@ public abstract class DbxRawClientV2 {
     private interface RetriableExecution<T> {
         T execute() throws DbxWrappedException, DbxException;
     }
+
+    /**
+     * For internal use only.
+     *
+     * <p> Receives the outcome of {@link #rpcStyleAsync} and forwards it to a {@link DbxCallback},
+     * translating route error responses into route-specific exceptions.
+     *
+     * @param <ResT> route result type
+     */
+    public static abstract class RpcCallback<ResT> {
+        private final DbxCallback<? super ResT> callback;
+
+        protected RpcCallback(DbxCallback<? super ResT> callback) {
+            if (callback == null) throw new NullPointerException("callback");
+            this.callback = callback;
+        }
+
+        /**
+         * Returns the route-specific exception for a route error response.
+         *
+         * @param error route error response
+         *
+         * @return exception to pass to the wrapped callback
+         */
+        protected abstract DbxException newException(DbxWrappedException error);
+
+        void onSuccess(ResT result) {
+            callback.onSuccess(result);
+        }
+
+        void onFailure(DbxWrappedException error) {
+            callback.onFailure(newException(error));
+        }
+
+        void onFailure(DbxException error) {
+            callback.onFailure(error);
+        }
+    }
+
+    /**
+     * A single asynchronous RPC request, including its retries.
+     */
+    private final class AsyncRpcExecution<ResT,ErrT> implements HttpRequestor.ResponseCallback, Runnable {
+        private final String host;
+        private final String path;
+        private final byte [] body;
+        private final List<HttpRequestor.Header> headers;
+        private final StoneSerializer<ResT> responseSerializer;
+        private final StoneSerializer<ErrT> errorSerializer;
+        private final RpcCallback<ResT> callback;
+        private final RetryPolicy retryPolicy;
+        private final DbxRateLimiter rateLimiter;
+        private final RequestEvents events;
+        private final HttpRequestor httpRequestor;
+        private final long start;
+
+        private int retries;
+        private long previousDelay;
+        private boolean completed;
+
+        private AsyncRpcExecution(String host,
+                                  String path,
+                                  byte [] body,
+                                  List<HttpRequestor.Header> headers,
+                                  StoneSerializer<ResT> responseSerializer,
+                                  StoneSerializer<ErrT> errorSerializer,
+                                  RpcCallback<ResT> callback) {
+            this.host = host;
+            this.path = path;
+            this.body = body;
+            this.headers = headers;
+            this.responseSerializer = responseSerializer;
+            this.errorSerializer = errorSerializer;
+            this.callback = callback;
+            this.retryPolicy = requestConfig.getRetryPolicy();
+            this.rateLimiter = requestConfig.getRateLimiter();
+            this.events = RequestEvents.start(requestConfig, RequestListener.Style.RPC, host, path);
+            this.httpRequestor = events.wrap(requestConfig.getHttpRequestor());
+            this.start = System.nanoTime();
+            this.retries = 0;
+            this.previousDelay = 0;
+            this.completed = false;
+
+            retryPolicy.onRequest();
+        }
+
+        @Override
+        public void run() {
+            long delay = rateLimiter == null ? 0 : rateLimiter.reserve(userId);
+            if (delay > 0) {
+                RetryTimer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        send();
+                    }
+                }, delay);
+            } else {
+                send();
+            }
+        }
+
+        private void send() {
+            try {
+                DbxRequestUtil.startPostRawAsync(requestConfig, httpRequestor, USER_AGENT_ID, host, path, body, headers, this);
+            } catch (RuntimeException ex) {
+                failUnexpected(ex, new DbxException("Unexpected error sending request: " + ex, ex));
+            }
+        }
+
+        @Override
+        public void onResponse(HttpRequestor.Response response) {
+            try {
+                handleResponse(response);
+            } catch (RuntimeException ex) {
+                IOUtil.closeQuietly(response.getBody());
+                String requestId = DbxRequestUtil.getRequestId(response);
+                failUnexpected(ex, new BadResponseException(requestId, "Unexpected error handling response: " + ex, ex));
+            }
+        }
+
+        private void handleResponse(HttpRequestor.Response response) {
+            ResT result;
+            try {
+                result = readRpcResponse(response, responseSerializer, errorSerializer, userId);
+            } catch (DbxWrappedException ex) {
+                events.complete(ex);
+                completed = true;
+                callback.onFailure(ex);
+                return;
+            } catch (DbxException ex) {
+                retryOrFail(ex);
+                return;
+            }
+            if (rateLimiter != null) {
+                rateLimiter.onSuccess(userId);
+            }
+            events.succeeded();
+            completed = true;
+            callback.onSuccess(result);
+        }
+
+        @Override
+        public void onFailure(IOException ex) {
+            if (ex instanceof RequestEvents.ListenerException) {
+                // the listener threw while the requestor was reporting the response
+                RuntimeException cause = (RuntimeException) ex.getCause();
+                failUnexpected(cause, new DbxException("Unexpected error handling response: " + cause, cause));
+                return;
+            }
+            try {
+                retryOrFail(new NetworkIOException(ex));
+            } catch (RuntimeException unexpected) {
+                failUnexpected(unexpected, new DbxException("Unexpected error handling failure: " + unexpected, unexpected));
+            }
+        }
+
+        private void retryOrFail(DbxException ex) {
+            onFailedAttempt(rateLimiter, ex);
+            RetryPolicy.FailedAttempt attempt = new RetryPolicy.FailedAttempt(
+                path, false, ex, retries, elapsedMillis(start), previousDelay
+            );
+            long delay = retryPolicy.getRetryDelayMillis(attempt);
+            if (delay < 0) {
+                fail(ex);
+                return;
+            }
+            events.retry(ex, delay);
+            ++retries;
+            previousDelay = delay;
+            RetryTimer.schedule(this, delay);
+        }
+
+        /**
+         * Reports a failure that escaped the request's own error handling, e.g. from a
+         * deserializer, a {@link RequestListener} or the {@link HttpRequestor}, so the callback
+         * is not left waiting forever. If the callback was already called, {@code ex} was thrown
+         * by the callback itself and is rethrown instead.
+         */
+        private void failUnexpected(RuntimeException ex, DbxException error) {
+            if (completed) {
+                throw ex;
+            }
+            fail(error);
+        }
+
+        private void fail(DbxException error) {
+            completed = true;
+            try {
+                events.complete(error);
+            } finally {
+                callback.onFailure(error);
+            }
+        }
+    }
+
+    /**
+     * Buffer for serialized RPC arguments that is reused by the thread that acquired it, so
+     * requests don't allocate a new body array (plus a copy) every time.
+     *
+     * <p> A thread holds at most one buffer. Requests made while the thread's buffer is in use,
+     * for example from a {@link RequestListener}, get a new buffer instead. Buffers that grew
+     * larger than {@link #MAX_POOLED_SIZE} are not kept, so a single huge request does not pin
+     * its memory.
+     */
+    private static final class BodyBuffer extends ByteArrayOutputStream {
+        private static final int MAX_POOLED_SIZE = 1024 * 1024;
+
+        private static final ThreadLocal<BodyBuffer> POOL = new ThreadLocal<BodyBuffer>() {
+            @Override
+            protected BodyBuffer initialValue() {
+                return new BodyBuffer(true);
+            }
+        };
+
+        private final boolean pooled;
+        private boolean inUse;
+
+        private BodyBuffer(boolean pooled) {
+            super(1024);
+            this.pooled = pooled;
+            this.inUse = false;
+        }
+
+        static BodyBuffer acquire() {
+            BodyBuffer buffer = POOL.get();
+            if (buffer.inUse) {
+                buffer = new BodyBuffer(false);
+            }
+            buffer.inUse = true;
+            return buffer;
+        }
+
+        <T> DbxRequestUtil.RequestBody write(StoneSerializer<T> serializer, T arg) {
+            reset();
+            try {
+                serializer.serialize(arg, this);
+            } catch (IOException ex) {
+                throw LangUtil.mkAssert("Impossible", ex);
+            }
+            return DbxRequestUtil.RequestBody.of(buf, 0, count);
+        }
+
+        void release() {
+            inUse = false;
+            if (pooled && buf.length > MAX_POOLED_SIZE) {
+                POOL.remove();
+            }
+        }
+    }
+
+    /**
+     * Lazily started timer for re-issuing asynchronous requests after a backoff.
+     */
+    private static final class RetryTimer {
+        private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "dropbox-async-retry");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }
+        );
+
+        // requestors that don't override startPostAsync block the sending thread for the whole
+        // round trip, so delayed sends must not run on the timer thread itself
+        private static final ExecutorService SENDER = Executors.newCachedThreadPool(
+            new ThreadFactory() {
+                private final AtomicInteger threads = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "dropbox-async-send-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }
+        );
+
+        /**
+         * Runs {@code send} on a sending thread after {@code delayMillis}.
+         */
+        static void schedule(final Runnable send, long delayMillis) {
+            TIMER.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    SENDER.execute(send);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
 }
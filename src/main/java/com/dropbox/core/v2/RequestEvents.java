@@ -0,0 +1,394 @@
+package com.dropbox.core.v2;
+
+import com.dropbox.core.BadResponseCodeException;
+import com.dropbox.core.DbxException;
+import com.dropbox.core.DbxRequestConfig;
+import com.dropbox.core.DbxRequestUtil;
+import com.dropbox.core.RequestListener;
+import com.dropbox.core.http.HttpRequestor;
+import com.dropbox.core.util.IOUtil;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*>>> import checkers.nullness.quals.Nullable; */
+
+/**
+ * Reports the lifecycle of a single request to the configured {@link RequestListener}.
+ *
+ * <p> Network events are observed by wrapping the {@link HttpRequestor} used for the request (see
+ * {@link #wrap(HttpRequestor)}), so they are reported for any requestor implementation.
+ */
+final class RequestEvents {
+    /**
+     * Used when no listener is configured. Reports nothing and wraps nothing.
+     */
+    static final RequestEvents NONE = new RequestEvents(null, null);
+
+    private final /*@Nullable*/ RequestListener listener;
+    private final /*@Nullable*/ RequestListener.Request request;
+    private final AtomicBoolean completed;
+
+    private volatile int attempt;
+
+    private RequestEvents(/*@Nullable*/ RequestListener listener, /*@Nullable*/ RequestListener.Request request) {
+        this.listener = listener;
+        this.request = request;
+        this.completed = new AtomicBoolean(false);
+        this.attempt = 0;
+    }
+
+    /**
+     * Starts reporting events for a new request, if the configuration has a listener.
+     */
+    static RequestEvents start(DbxRequestConfig requestConfig, RequestListener.Style style, String host, String path) {
+        RequestListener listener = requestConfig.getRequestListener();
+        if (listener == null) {
+            return NONE;
+        }
+        RequestEvents events = new RequestEvents(listener, new RequestListener.Request(style, host, path, System.nanoTime()));
+        listener.onStart(events.request);
+        return events;
+    }
+
+    /**
+     * Returns a requestor that issues requests through {@code requestor} and reports their
+     * network events.
+     */
+    HttpRequestor wrap(HttpRequestor requestor) {
+        if (listener == null) {
+            return requestor;
+        }
+        return new ListeningRequestor(requestor);
+    }
+
+    /**
+     * Reports that the current attempt failed and will be retried after {@code delayMillis}.
+     */
+    void retry(DbxException error, long delayMillis) {
+        if (listener == null) {
+            return;
+        }
+        listener.onRetry(request, attempt, error, delayMillis);
+        ++attempt;
+    }
+
+    /**
+     * Reports that an attempt succeeded. Download requests complete once their body is closed
+     * instead (see {@link #completeOnClose}).
+     */
+    void succeeded() {
+        if (request != null && request.getStyle() != RequestListener.Style.DOWNLOAD) {
+            complete(null);
+        }
+    }
+
+    /**
+     * Reports that the request is done. Only the first call has an effect.
+     */
+    void complete(/*@Nullable*/ Exception error) {
+        if (listener == null || !completed.compareAndSet(false, true)) {
+            return;
+        }
+        listener.onComplete(request, System.nanoTime() - request.getStartNanos(), error);
+    }
+
+    /**
+     * Returns a stream that completes the request when {@code body} is closed.
+     */
+    InputStream completeOnClose(InputStream body) {
+        if (listener == null) {
+            return body;
+        }
+        return new CompletingInputStream(body, null);
+    }
+
+    private final class ListeningRequestor extends HttpRequestor {
+        private final HttpRequestor delegate;
+
+        private ListeningRequestor(HttpRequestor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Response doGet(String url, Iterable<Header> headers) throws IOException {
+            return delegate.doGet(url, headers);
+        }
+
+        @Override
+        public HttpRequestor.Uploader startPost(String url, Iterable<Header> headers) throws IOException {
+            listener.onHeadersSent(request, attempt);
+            return new ListeningUploader(delegate.startPost(url, headers));
+        }
+
+        @Override
+        public HttpRequestor.Uploader startPut(String url, Iterable<Header> headers) throws IOException {
+            listener.onHeadersSent(request, attempt);
+            return new ListeningUploader(delegate.startPut(url, headers));
+        }
+
+        @Override
+        public void startPostAsync(String url, Iterable<Header> headers, final byte [] body, final ResponseCallback callback) {
+            listener.onHeadersSent(request, attempt);
+            delegate.startPostAsync(url, headers, body, new ResponseCallback() {
+                @Override
+                public void onResponse(Response response) {
+                    Response listened;
+                    try {
+                        listener.onBytesSent(request, body.length);
+                        listened = listen(response, false);
+                    } catch (RuntimeException ex) {
+                        IOUtil.closeQuietly(response.getBody());
+                        callback.onFailure(new ListenerException(ex));
+                        return;
+                    }
+                    callback.onResponse(listened);
+                }
+
+                @Override
+                public void onFailure(IOException ex) {
+                    callback.onFailure(ex);
+                }
+            });
+        }
+    }
+
+    /**
+     * Passed to {@link HttpRequestor.ResponseCallback#onFailure} when the listener throws while an
+     * asynchronous response is reported, so the request fails instead of losing its callback.
+     * Its cause is the listener's exception.
+     */
+    static final class ListenerException extends IOException {
+        private static final long serialVersionUID = 0L;
+
+        private ListenerException(RuntimeException cause) {
+            super("RequestListener failed", cause);
+        }
+    }
+
+    private HttpRequestor.Response listen(HttpRequestor.Response response, boolean completeOnClose) {
+        listener.onFirstByte(request, attempt, response.getStatusCode());
+        if (response.getBody() == null) {
+            return response;
+        }
+        InputStream body = new CountingInputStream(response.getBody());
+        if (completeOnClose) {
+            body = new CompletingInputStream(body, response);
+        }
+        return new HttpRequestor.Response(response.getStatusCode(), body, response.getHeaders());
+    }
+
+    private final class ListeningUploader extends HttpRequestor.Uploader {
+        private final HttpRequestor.Uploader delegate;
+        private /*@Nullable*/ OutputStream body;
+        private boolean finished;
+
+        private ListeningUploader(HttpRequestor.Uploader delegate) {
+            this.delegate = delegate;
+            this.body = null;
+            this.finished = false;
+        }
+
+        @Override
+        public OutputStream getBody() {
+            if (body == null) {
+                body = new CountingOutputStream(delegate.getBody());
+            }
+            return body;
+        }
+
+        @Override
+        public void upload(File file) throws IOException {
+            // let the requestor upload files and byte arrays however it prefers
+            delegate.upload(file);
+            listener.onBytesSent(request, file.length());
+        }
+
+        @Override
+        public void upload(byte [] body) throws IOException {
+            delegate.upload(body);
+            listener.onBytesSent(request, body.length);
+        }
+
+        @Override
+        public void upload(byte [] body, int off, int len) throws IOException {
+            delegate.upload(body, off, len);
+            listener.onBytesSent(request, len);
+        }
+
+        @Override
+        public void upload(FileChannel channel, long position, long count) throws IOException {
+            delegate.upload(channel, position, count);
+            listener.onBytesSent(request, count);
+        }
+
+        @Override
+        public void upload(ByteBuffer body) throws IOException {
+            int remaining = body.remaining();
+            delegate.upload(body);
+            listener.onBytesSent(request, remaining);
+        }
+
+        @Override
+        public void setProgressListener(IOUtil.ProgressListener progressListener) {
+            super.setProgressListener(progressListener);
+            delegate.setProgressListener(progressListener);
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+            if (!finished && request.getStyle() == RequestListener.Style.UPLOAD) {
+                complete(new IOException("Upload closed before it finished"));
+            }
+        }
+
+        @Override
+        public void abort() {
+            delegate.abort();
+            if (request.getStyle() == RequestListener.Style.UPLOAD) {
+                complete(new IOException("Upload aborted"));
+            }
+        }
+
+        @Override
+        public HttpRequestor.Response finish() throws IOException {
+            finished = true;
+            HttpRequestor.Response response;
+            try {
+                response = delegate.finish();
+            } catch (IOException ex) {
+                if (request.getStyle() == RequestListener.Style.UPLOAD) {
+                    complete(ex);
+                }
+                throw ex;
+            }
+            // RPC and download requests are completed by the client once it handled the response
+            return listen(response, request.getStyle() == RequestListener.Style.UPLOAD);
+        }
+    }
+
+    /**
+     * Stream over a response body that can also be read as a channel, so transports that read
+     * into buffers themselves keep doing so through the listener's wrappers.
+     */
+    private static class ChannelFilterInputStream extends FilterInputStream implements ReadableByteChannel {
+        private /*@Nullable*/ ReadableByteChannel channel;
+        private boolean closed;
+
+        private ChannelFilterInputStream(InputStream in) {
+            super(in);
+            this.channel = null;
+            this.closed = false;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (channel == null) {
+                channel = IOUtil.newChannel(in);
+            }
+            return channel.read(dst);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !closed;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+
+    private final class CountingInputStream extends ChannelFilterInputStream {
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            int n = super.read(dst);
+            if (n > 0) {
+                listener.onBytesReceived(request, n);
+            }
+            return n;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                listener.onBytesReceived(request, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte [] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                listener.onBytesReceived(request, n);
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Completes the request once the response body is closed. If a response is given, responses
+     * other than 200 complete the request with an error.
+     */
+    private final class CompletingInputStream extends ChannelFilterInputStream {
+        private final /*@Nullable*/ HttpRequestor.Response response;
+
+        private CompletingInputStream(InputStream in, /*@Nullable*/ HttpRequestor.Response response) {
+            super(in);
+            this.response = response;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (response == null || response.getStatusCode() == 200) {
+                    complete(null);
+                } else {
+                    complete(new BadResponseCodeException(
+                        DbxRequestUtil.getRequestId(response),
+                        "Unexpected response code " + response.getStatusCode(),
+                        response.getStatusCode()
+                    ));
+                }
+            }
+        }
+    }
+
+    private final class CountingOutputStream extends FilterOutputStream {
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            listener.onBytesSent(request, 1);
+        }
+
+        @Override
+        public void write(byte [] b, int off, int len) throws IOException {
+            // FilterOutputStream writes one byte at a time
+            out.write(b, off, len);
+            listener.onBytesSent(request, len);
+        }
+    }
+}
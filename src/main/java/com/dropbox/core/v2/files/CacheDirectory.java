@@ -0,0 +1,184 @@
+package com.dropbox.core.v2.files;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*>>> import checkers.nullness.quals.Nullable; */
+
+/**
+ * Directory of cache entries, one file per entry, bounded in size by least recently used
+ * eviction.
+ *
+ * <p> Entries are written to a {@link #newTempFile temporary file} and {@link #publish published}
+ * under their final name once complete, so readers never see partial entries. Entries are opened
+ * under the index lock, so an entry can't be evicted between finding and opening it. Usage order
+ * survives restarts through the modification times of the entries.
+ *
+ * <p> A directory must not be used by several instances at the same time. This class is
+ * thread-safe.
+ */
+final class CacheDirectory {
+    private static final String TEMP_PREFIX = "tmp-";
+
+    private final File directory;
+    private final long maxSize;
+
+    // file name -> size, in least recently used order
+    private final LinkedHashMap<String, Long> entries;
+    private long size;
+    private final AtomicLong evictions;
+
+    /**
+     * Indexes the entries cached by earlier runs, in the order they were last used, and deletes
+     * temporary files left behind by interrupted writes.
+     */
+    CacheDirectory(File directory, long maxSize) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+        this.size = 0;
+        this.evictions = new AtomicLong();
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create cache directory: " + directory);
+        }
+        File [] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Unable to list cache directory: " + directory);
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+            }
+        });
+        for (File file : files) {
+            if (file.getName().startsWith(TEMP_PREFIX)) {
+                file.delete();
+            } else if (file.isFile()) {
+                entries.put(file.getName(), file.length());
+                size += file.length();
+            }
+        }
+        evict();
+    }
+
+    long getMaxSize() {
+        return maxSize;
+    }
+
+    synchronized long getSize() {
+        return size;
+    }
+
+    long getEvictions() {
+        return evictions.get();
+    }
+
+    synchronized boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * Opens the entry {@code name} and marks it as used, or returns {@code null} if there is no
+     * such entry. Entries with another size than {@code expectedSize} are dropped, unless {@code
+     * expectedSize} is negative.
+     */
+    synchronized /*@Nullable*/ InputStream open(String name, long expectedSize) {
+        Long cachedSize = entries.get(name);
+        if (cachedSize == null) {
+            return null;
+        }
+
+        File file = new File(directory, name);
+        if (expectedSize >= 0 && (cachedSize != expectedSize || file.length() != expectedSize)) {
+            remove(name);
+            return null;
+        }
+        InputStream in;
+        try {
+            in = new FileInputStream(file);
+        } catch (FileNotFoundException ex) {
+            // deleted behind our back
+            remove(name);
+            return null;
+        }
+        // keeps the usage order across restarts
+        file.setLastModified(System.currentTimeMillis());
+        return in;
+    }
+
+    /**
+     * Returns a new temporary file in the cache directory, to be {@link #publish published} or
+     * deleted by the caller.
+     */
+    File newTempFile() {
+        return new File(directory, TEMP_PREFIX + UUID.randomUUID());
+    }
+
+    /**
+     * Renames the complete entry {@code temp} to {@code name}, replacing any previous entry, and
+     * marks it as used. The cache may exceed its maximum size until the next {@link #evict}.
+     */
+    void publish(File temp, String name) throws IOException {
+        File file = new File(directory, name);
+        if (!temp.renameTo(file)) {
+            // platforms that can't rename over existing files
+            if (!file.delete() || !temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Unable to publish cache entry: " + file);
+            }
+        }
+
+        synchronized (this) {
+            Long previous = entries.put(name, file.length());
+            size += file.length() - (previous == null ? 0 : previous);
+        }
+    }
+
+    /**
+     * Deletes least recently used entries until the cache fits its maximum size. Entries that
+     * can't be deleted, such as files being read on platforms that don't allow deleting open
+     * files, are kept until a later eviction.
+     */
+    synchronized void evict() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        List<String> kept = new ArrayList<String>();
+        while (size > maxSize && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            File file = new File(directory, entry.getKey());
+            if (file.delete() || !file.exists()) {
+                size -= entry.getValue();
+                it.remove();
+                evictions.incrementAndGet();
+            } else {
+                kept.add(entry.getKey());
+            }
+        }
+        // try the entries we could not delete again after the others
+        for (String name : kept) {
+            entries.get(name);
+        }
+    }
+
+    private synchronized void remove(String name) {
+        Long removed = entries.remove(name);
+        if (removed != null) {
+            size -= removed;
+        }
+        new File(directory, name).delete();
+    }
+}
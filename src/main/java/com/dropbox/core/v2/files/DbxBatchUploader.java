@@ -0,0 +1,768 @@
+package com.dropbox.core.v2.files;
+
+import com.dropbox.core.BadResponseException;
+import com.dropbox.core.DbxException;
+import com.dropbox.core.ExponentialBackoffRetryPolicy;
+import com.dropbox.core.RetryPolicy;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*>>> import checkers.nullness.quals.Nullable; */
+
+/**
+ * Uploads many small files to Dropbox, committing them in batches.
+ *
+ * <p> Committing a file takes a lock on the namespace it is committed to, so uploading many files
+ * one {@code upload} request at a time is dominated by commit latency and lock contention. This
+ * uploader instead sends the content of every file with its own {@code upload_session/start}
+ * request, closing the session right away. Up to {@link Builder#withParallelism parallelism}
+ * files are sent concurrently. Closed sessions are committed together with {@code
+ * upload_session/finish_batch}, up to {@link Builder#withBatchSize batch size} files at a time,
+ * while the content of the next files is still being sent. Batches of one {@link #upload} call
+ * are committed one after another.
+ *
+ * <p> Batch commits complete asynchronously. The uploader polls {@code
+ * upload_session/finish_batch/check} for the result, starting with an interval based on how long
+ * previous batches took to commit and backing off while the batch is still in progress.
+ *
+ * <p> Every file gets its own {@link Result}. A file that could not be read, sent or committed
+ * does not fail the other files.
+ *
+ * <pre>
+ * DbxBatchUploader uploader = DbxBatchUploader.newBuilder(client.files()).build();
+ * try {
+ *     List&lt;DbxBatchUploader.Entry&gt; entries = new ArrayList&lt;DbxBatchUploader.Entry&gt;();
+ *     for (File file : files) {
+ *         entries.add(new DbxBatchUploader.Entry(file, new CommitInfo("/Notes/" + file.getName())));
+ *     }
+ *     for (DbxBatchUploader.Result result : uploader.upload(entries)) {
+ *         if (!result.isSuccess()) {
+ *             System.err.println("Failed to upload " + result.getEntry().getFile());
+ *         }
+ *     }
+ * } finally {
+ *     uploader.close();
+ * }
+ * </pre>
+ *
+ * <p> For backups where most files did not change, {@link Builder#withSkipUnchanged} compares
+ * every file with the file at its commit path on the server and only uploads the files that
+ * differ.
+ *
+ * <p> Files larger than {@link #MAX_FILE_SIZE} can't be sent with a single request, use {@link
+ * DbxFileUploader} for those.
+ *
+ * <p> This class is thread-safe.
+ */
+public final class DbxBatchUploader implements Closeable {
+    /**
+     * Largest number of files the server commits in one {@code upload_session/finish_batch}
+     * request: 1000.
+     */
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    /**
+     * Largest file this uploader can send in a single request: 150 MiB.
+     */
+    public static final long MAX_FILE_SIZE = DbxFileUploader.MAX_CHUNK_SIZE;
+
+    private static final String START_ROUTE = "2/files/upload_session/start";
+    private static final String FINISH_BATCH_ROUTE = "2/files/upload_session/finish_batch";
+    private static final String FINISH_BATCH_CHECK_ROUTE = "2/files/upload_session/finish_batch/check";
+
+    private final DbxUserFilesRequests files;
+    private final int parallelism;
+    private final int batchSize;
+    private final long minPollIntervalMillis;
+    private final long maxPollIntervalMillis;
+    private final RetryPolicy retryPolicy;
+    private final boolean skipUnchanged;
+    private final int listFolderThreshold;
+
+    private final AtomicLong skippedFiles;
+    private final AtomicLong skippedBytes;
+
+    private /*@Nullable*/ ExecutorService executor;
+    private boolean closed;
+    // average time the server took to commit one file of a batch, or -1 if no batch completed yet
+    private double commitMillisPerFile;
+
+    private DbxBatchUploader(Builder builder) {
+        this.files = builder.files;
+        this.parallelism = builder.parallelism;
+        this.batchSize = builder.batchSize;
+        this.minPollIntervalMillis = builder.minPollIntervalMillis;
+        this.maxPollIntervalMillis = builder.maxPollIntervalMillis;
+        this.retryPolicy = builder.retryPolicy;
+        this.skipUnchanged = builder.skipUnchanged;
+        this.listFolderThreshold = builder.listFolderThreshold;
+
+        this.skippedFiles = new AtomicLong(0);
+        this.skippedBytes = new AtomicLong(0);
+
+        this.executor = null;
+        this.closed = false;
+        this.commitMillisPerFile = -1;
+    }
+
+    /**
+     * Returns a new builder for an uploader that uploads through the given requests.
+     *
+     * @param files requests used for uploading, such as {@code client.files()}
+     *
+     * @return builder for a {@link DbxBatchUploader}
+     */
+    public static Builder newBuilder(DbxUserFilesRequests files) {
+        if (files == null) throw new NullPointerException("files");
+        return new Builder(files);
+    }
+
+    /**
+     * Returns the maximum number of files whose content is sent concurrently.
+     *
+     * @return number of concurrent uploads
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns the maximum number of files committed with one {@code upload_session/finish_batch}
+     * request.
+     *
+     * @return files per batch
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Returns the number of files that were not uploaded because the server already had them (see
+     * {@link Builder#withSkipUnchanged}), over all uploads of this uploader.
+     *
+     * @return number of skipped files
+     */
+    public long getSkippedFiles() {
+        return skippedFiles.get();
+    }
+
+    /**
+     * Returns the number of bytes that were not uploaded because the server already had them
+     * (see {@link Builder#withSkipUnchanged}), over all uploads of this uploader.
+     *
+     * @return number of bytes saved
+     */
+    public long getSkippedBytes() {
+        return skippedBytes.get();
+    }
+
+    /**
+     * Uploads and commits the given files, waiting until all of them are done.
+     *
+     * @param entries files to upload and where to commit them
+     *
+     * @return one result per entry, in the order of {@code entries}
+     *
+     * @throws IllegalArgumentException if a file is larger than {@link #MAX_FILE_SIZE}
+     * @throws IllegalStateException if this uploader has been closed
+     * @throws InterruptedException if the calling thread was interrupted. Files that were not
+     * committed yet are abandoned.
+     */
+    public List<Result> upload(List<Entry> entries) throws InterruptedException {
+        if (entries == null) throw new NullPointerException("entries");
+        for (Entry entry : entries) {
+            if (entry == null) throw new NullPointerException("entries can't contain null");
+            if (entry.file.length() > MAX_FILE_SIZE) {
+                throw new IllegalArgumentException("File is too large for a batch upload: " + entry.file);
+            }
+        }
+
+        ExecutorService executor = getExecutor();
+
+        RemoteFileLookup lookup = null;
+        if (skipUnchanged) {
+            List<String> paths = new ArrayList<String>(entries.size());
+            for (Entry entry : entries) {
+                paths.add(entry.commitInfo.getPath());
+            }
+            lookup = new RemoteFileLookup(files, retryPolicy);
+            lookup.prefetch(paths, listFolderThreshold);
+        }
+
+        Result [] results = new Result[entries.size()];
+        CompletionService<Started> starts = new ExecutorCompletionService<Started>(executor);
+        List<Future<Started>> futures = new ArrayList<Future<Started>>(entries.size());
+        try {
+            for (int i = 0; i < entries.size(); ++i) {
+                futures.add(starts.submit(new Start(i, entries.get(i), lookup)));
+            }
+
+            List<Started> batch = new ArrayList<Started>(Math.min(batchSize, entries.size()));
+            for (int received = 0; received < entries.size(); ++received) {
+                Started started = take(starts);
+                if (started.error != null) {
+                    results[started.index] = new Result(entries.get(started.index), null, null, started.error);
+                } else if (started.unchanged != null) {
+                    results[started.index] = new Result(entries.get(started.index), started.unchanged);
+                    skippedFiles.incrementAndGet();
+                    skippedBytes.addAndGet(started.unchanged.getSize());
+                } else {
+                    batch.add(started);
+                }
+
+                boolean last = received == entries.size() - 1;
+                if (batch.size() == batchSize || (last && !batch.isEmpty())) {
+                    commit(batch, entries, results);
+                    batch.clear();
+                }
+            }
+        } finally {
+            for (Future<Started> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    /**
+     * Stops accepting new uploads. Uploads in progress still complete.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (closed) {
+            throw new IllegalStateException("Uploader already closed.");
+        }
+        if (executor == null) {
+            final AtomicInteger threads = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "dropbox-batch-uploader-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    private static Started take(CompletionService<Started> starts) throws InterruptedException {
+        try {
+            return starts.take().get();
+        } catch (ExecutionException ex) {
+            // Start catches everything it expects, anything else is a bug
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Commits the closed upload sessions of {@code batch} and records the result of every file.
+     */
+    private void commit(List<Started> batch, List<Entry> entries, Result [] results) throws InterruptedException {
+        List<UploadSessionFinishArg> args = new ArrayList<UploadSessionFinishArg>(batch.size());
+        for (Started started : batch) {
+            args.add(new UploadSessionFinishArg(started.cursor, entries.get(started.index).commitInfo));
+        }
+
+        List<UploadSessionFinishBatchResultEntry> committed;
+        try {
+            committed = finishBatch(args).getEntries();
+            if (committed.size() != batch.size()) {
+                throw new BadResponseException(null, "Batch commit returned " + committed.size()
+                    + " results for " + batch.size() + " files");
+            }
+        } catch (DbxException ex) {
+            for (Started started : batch) {
+                results[started.index] = new Result(entries.get(started.index), null, null, ex);
+            }
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); ++i) {
+            int index = batch.get(i).index;
+            UploadSessionFinishBatchResultEntry entry = committed.get(i);
+            if (entry.isSuccess()) {
+                results[index] = new Result(entries.get(index), entry.getSuccessValue(), null, null);
+            } else if (entry.isFailure()) {
+                results[index] = new Result(entries.get(index), null, entry.getFailureValue(), null);
+            } else {
+                results[index] = new Result(entries.get(index), null, null,
+                    new BadResponseException(null, "Unexpected batch commit result: " + entry));
+            }
+        }
+    }
+
+    private UploadSessionFinishBatchResult finishBatch(List<UploadSessionFinishArg> args)
+        throws DbxException, InterruptedException {
+        // the server may have started committing the batch even if the request failed, so this
+        // is not idempotent.
+        RequestAttempts attempts = new RequestAttempts(retryPolicy, FINISH_BATCH_ROUTE, false);
+        UploadSessionFinishBatchLaunch launch;
+        while (true) {
+            try {
+                launch = files.uploadSessionFinishBatch(args);
+                break;
+            } catch (DbxException ex) {
+                attempts.failed(ex);
+            }
+        }
+
+        if (launch.isComplete()) {
+            return launch.getCompleteValue();
+        }
+        if (!launch.isAsyncJobId()) {
+            throw new BadResponseException(null, "Unexpected batch commit launch result: " + launch);
+        }
+
+        String asyncJobId = launch.getAsyncJobIdValue();
+        long startNanos = System.nanoTime();
+        long delayMillis = initialPollIntervalMillis(args.size());
+        while (true) {
+            Thread.sleep(delayMillis);
+
+            UploadSessionFinishBatchJobStatus status = finishBatchCheck(asyncJobId);
+            if (status.isComplete()) {
+                committed(args.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                return status.getCompleteValue();
+            }
+            if (!status.isInProgress()) {
+                throw new BadResponseException(null, "Unexpected batch commit status: " + status);
+            }
+            delayMillis = Math.min(Math.max(delayMillis * 2, 1), maxPollIntervalMillis);
+        }
+    }
+
+    private UploadSessionFinishBatchJobStatus finishBatchCheck(String asyncJobId) throws DbxException {
+        RequestAttempts attempts = new RequestAttempts(retryPolicy, FINISH_BATCH_CHECK_ROUTE, true);
+        while (true) {
+            try {
+                return files.uploadSessionFinishBatchCheck(asyncJobId);
+            } catch (DbxException ex) {
+                attempts.failed(ex);
+            }
+        }
+    }
+
+    /**
+     * Returns how long to wait before first checking on a batch of {@code files} files: about
+     * as long as a batch of that size took to commit before.
+     */
+    private synchronized long initialPollIntervalMillis(int files) {
+        if (commitMillisPerFile < 0) {
+            return minPollIntervalMillis;
+        }
+        long estimate = (long) (commitMillisPerFile * files);
+        return Math.max(minPollIntervalMillis, Math.min(estimate, maxPollIntervalMillis));
+    }
+
+    private synchronized void committed(int files, long elapsedMillis) {
+        double millisPerFile = (double) elapsedMillis / files;
+        if (commitMillisPerFile < 0) {
+            commitMillisPerFile = millisPerFile;
+        } else {
+            // moving average, so a single slow batch doesn't slow down polling for long
+            commitMillisPerFile = (commitMillisPerFile + millisPerFile) / 2;
+        }
+    }
+
+    /**
+     * Sends the content of one file in a closed upload session.
+     */
+    private final class Start implements Callable<Started> {
+        private final int index;
+        private final Entry entry;
+        private final /*@Nullable*/ RemoteFileLookup lookup;
+
+        private Start(int index, Entry entry, /*@Nullable*/ RemoteFileLookup lookup) {
+            this.index = index;
+            this.entry = entry;
+            this.lookup = lookup;
+        }
+
+        @Override
+        public Started call() {
+            try {
+                if (lookup != null) {
+                    FileMetadata remote = lookup.get(entry.commitInfo.getPath());
+                    if (RemoteFileLookup.isUnchanged(remote, entry.file)) {
+                        return new Started(index, remote);
+                    }
+                }
+
+                RandomAccessFile raf = new RandomAccessFile(entry.file, "r");
+                try {
+                    FileChannel channel = raf.getChannel();
+                    long size = channel.size();
+                    String sessionId = start(channel, size);
+                    return new Started(index, new UploadSessionCursor(sessionId, size), null);
+                } finally {
+                    raf.close();
+                }
+            } catch (DbxException ex) {
+                return new Started(index, null, ex);
+            } catch (IOException ex) {
+                return new Started(index, null, ex);
+            }
+        }
+
+        private String start(FileChannel channel, long size) throws DbxException, IOException {
+            // a failed attempt at most leaves an unused session behind, so this is idempotent
+            RequestAttempts attempts = new RequestAttempts(retryPolicy, START_ROUTE, true);
+            while (true) {
+                try {
+                    return files.uploadSessionStart(true)
+                        .uploadAndFinish(channel, 0, size)
+                        .getSessionId();
+                } catch (DbxException ex) {
+                    attempts.failed(ex);
+                }
+            }
+        }
+    }
+
+    private static final class Started {
+        private final int index;
+        private final /*@Nullable*/ UploadSessionCursor cursor;
+        private final /*@Nullable*/ Exception error;
+        private final /*@Nullable*/ FileMetadata unchanged;
+
+        private Started(int index, /*@Nullable*/ UploadSessionCursor cursor, /*@Nullable*/ Exception error) {
+            this.index = index;
+            this.cursor = cursor;
+            this.error = error;
+            this.unchanged = null;
+        }
+
+        private Started(int index, FileMetadata unchanged) {
+            this.index = index;
+            this.cursor = null;
+            this.error = null;
+            this.unchanged = unchanged;
+        }
+    }
+
+    /**
+     * A local file to upload and how to commit it.
+     */
+    public static final class Entry {
+        private final File file;
+        private final CommitInfo commitInfo;
+
+        /**
+         * @param file local file to upload, no larger than {@link #MAX_FILE_SIZE}
+         * @param commitInfo where and how to commit the file
+         */
+        public Entry(File file, CommitInfo commitInfo) {
+            if (file == null) throw new NullPointerException("file");
+            if (commitInfo == null) throw new NullPointerException("commitInfo");
+            this.file = file;
+            this.commitInfo = commitInfo;
+        }
+
+        /**
+         * Returns the local file to upload.
+         *
+         * @return local file
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Returns where and how to commit the file.
+         *
+         * @return commit info
+         */
+        public CommitInfo getCommitInfo() {
+            return commitInfo;
+        }
+    }
+
+    /**
+     * Outcome of uploading a single {@link Entry}. Exactly one of {@link #getMetadata}, {@link
+     * #getFinishError} and {@link #getException} is not {@code null}.
+     */
+    public static final class Result {
+        private final Entry entry;
+        private final /*@Nullable*/ FileMetadata metadata;
+        private final /*@Nullable*/ UploadSessionFinishError finishError;
+        private final /*@Nullable*/ Exception exception;
+        private final boolean skipped;
+
+        private Result(Entry entry,
+                       /*@Nullable*/ FileMetadata metadata,
+                       /*@Nullable*/ UploadSessionFinishError finishError,
+                       /*@Nullable*/ Exception exception) {
+            this.entry = entry;
+            this.metadata = metadata;
+            this.finishError = finishError;
+            this.exception = exception;
+            this.skipped = false;
+        }
+
+        private Result(Entry entry, FileMetadata unchanged) {
+            this.entry = entry;
+            this.metadata = unchanged;
+            this.finishError = null;
+            this.exception = null;
+            this.skipped = true;
+        }
+
+        /**
+         * Returns the entry this is the result of.
+         *
+         * @return uploaded entry
+         */
+        public Entry getEntry() {
+            return entry;
+        }
+
+        /**
+         * Returns whether the file was committed.
+         *
+         * @return {@code true} if {@link #getMetadata} holds the metadata of the committed file
+         */
+        public boolean isSuccess() {
+            return metadata != null;
+        }
+
+        /**
+         * Returns whether the file was not uploaded because the server already had a file with
+         * the same size and content hash at its path (see {@link Builder#withSkipUnchanged}).
+         * Skipped files are successful.
+         *
+         * @return {@code true} if the upload of this file was skipped
+         */
+        public boolean isSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Returns the metadata of the committed file. For {@link #isSkipped skipped} files, this
+         * is the metadata of the file already on the server.
+         *
+         * @return metadata of the file, or {@code null} if the upload failed
+         */
+        public /*@Nullable*/ FileMetadata getMetadata() {
+            return metadata;
+        }
+
+        /**
+         * Returns why the server did not commit the file, such as a conflict with an existing
+         * file.
+         *
+         * @return commit error, or {@code null} if the file was committed or failed before
+         * reaching the batch commit
+         */
+        public /*@Nullable*/ UploadSessionFinishError getFinishError() {
+            return finishError;
+        }
+
+        /**
+         * Returns the exception that made the upload of the file fail: an {@link IOException} if
+         * the file could not be read, or a {@link DbxException} if sending its content or
+         * committing its batch failed for good.
+         *
+         * @return exception, or {@code null} if the file was committed or the server reported a
+         * {@link #getFinishError commit error}
+         */
+        public /*@Nullable*/ Exception getException() {
+            return exception;
+        }
+    }
+
+    /**
+     * Builder for {@link DbxBatchUploader}.
+     */
+    public static final class Builder {
+        private final DbxUserFilesRequests files;
+
+        private int parallelism;
+        private int batchSize;
+        private long minPollIntervalMillis;
+        private long maxPollIntervalMillis;
+        private RetryPolicy retryPolicy;
+        private boolean skipUnchanged;
+        private int listFolderThreshold;
+
+        private Builder(DbxUserFilesRequests files) {
+            this.files = files;
+            this.skipUnchanged = false;
+            this.listFolderThreshold = 16;
+
+            this.parallelism = 8;
+            this.batchSize = MAX_BATCH_SIZE;
+            this.minPollIntervalMillis = 200;
+            this.maxPollIntervalMillis = 5000;
+            this.retryPolicy = ExponentialBackoffRetryPolicy.newBuilder()
+                .withMaxRetries(4)
+                .withNetworkErrorRetries(true)
+                .build();
+        }
+
+        /**
+         * Sets the maximum number of files whose content is sent concurrently. Defaults to
+         * {@code 8}.
+         *
+         * @param parallelism number of concurrent uploads, must be positive
+         *
+         * @return this builder
+         *
+         * @throws IllegalArgumentException if {@code parallelism} is not positive
+         */
+        public Builder withParallelism(int parallelism) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("parallelism must be positive");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of files committed together. Larger batches need fewer
+         * commits, smaller batches commit the first files sooner. Defaults to {@link
+         * #MAX_BATCH_SIZE}.
+         *
+         * @param batchSize files per batch, between 1 and {@link #MAX_BATCH_SIZE}
+         *
+         * @return this builder
+         *
+         * @throws IllegalArgumentException if {@code batchSize} is out of range
+         */
+        public Builder withBatchSize(int batchSize) {
+            if (batchSize <= 0 || batchSize > MAX_BATCH_SIZE) {
+                throw new IllegalArgumentException("batchSize must be between 1 and " + MAX_BATCH_SIZE);
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Sets the bounds of the interval between checks on a batch commit. The first check of a
+         * batch waits about as long as previous batches of the same size took to commit, later
+         * checks wait twice as long as the one before. Defaults to between 200 milliseconds and
+         * 5 seconds.
+         *
+         * @param min shortest wait, must not be negative
+         * @param max longest wait, at least {@code min}
+         * @param unit unit of {@code min} and {@code max}
+         *
+         * @return this builder
+         *
+         * @throws IllegalArgumentException if {@code min} is negative or larger than {@code max}
+         */
+        public Builder withPollInterval(long min, long max, TimeUnit unit) {
+            if (unit == null) throw new NullPointerException("unit");
+            if (min < 0 || min > max) {
+                throw new IllegalArgumentException("Poll interval bounds must satisfy 0 <= min <= max");
+            }
+            this.minPollIntervalMillis = unit.toMillis(min);
+            this.maxPollIntervalMillis = unit.toMillis(max);
+            return this;
+        }
+
+        /**
+         * Sets the policy deciding whether and when a failed request is sent again. Requests
+         * sending file content and checking on a batch commit are reported as idempotent,
+         * requests launching a batch commit are not.
+         *
+         * <p> Defaults to an {@link ExponentialBackoffRetryPolicy} that retries up to 4 times,
+         * including on network errors for idempotent requests.
+         *
+         * @param retryPolicy retry policy for requests
+         *
+         * @return this builder
+         */
+        public Builder withRetryPolicy(RetryPolicy retryPolicy) {
+            if (retryPolicy == null) throw new NullPointerException("retryPolicy");
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Sets whether files the server already has are skipped. Before uploading a file, its
+         * size is compared with the size of the file at its commit path, and if they are equal,
+         * its content hash (see {@link com.dropbox.core.DbxContentHasher}) is compared with the
+         * content hash reported by the server. Only files that differ are uploaded. Skipped files
+         * are reported with {@link Result#isSkipped}, and counted by {@link #getSkippedBytes}.
+         *
+         * <p> Server metadata is looked up with one {@code list_folder} listing per parent folder
+         * holding many of the files (see {@link #withListFolderThreshold}), and with {@code
+         * get_metadata} for the other files. Only files committed to a path, rather than an id,
+         * can be skipped. Defaults to {@code false}.
+         *
+         * @param skipUnchanged whether to skip files the server already has
+         *
+         * @return this builder
+         */
+        public Builder withSkipUnchanged(boolean skipUnchanged) {
+            this.skipUnchanged = skipUnchanged;
+            return this;
+        }
+
+        /**
+         * Sets how many files of one upload must go to the same folder for that folder to be
+         * listed with {@code list_folder} instead of looking up its files one by one. Listing
+         * takes one request per page of the folder, so it pays off when many of its files are
+         * uploaded. Only used if {@link #withSkipUnchanged skipping unchanged files}. Defaults to
+         * {@code 16}.
+         *
+         * @param listFolderThreshold minimum number of files per folder, or {@code 0} to never
+         * list folders
+         *
+         * @return this builder
+         *
+         * @throws IllegalArgumentException if {@code listFolderThreshold} is negative
+         */
+        public Builder withListFolderThreshold(int listFolderThreshold) {
+            if (listFolderThreshold < 0) {
+                throw new IllegalArgumentException("listFolderThreshold must not be negative");
+            }
+            this.listFolderThreshold = listFolderThreshold;
+            return this;
+        }
+
+        /**
+         * Returns a {@link DbxBatchUploader} with the values set by this builder.
+         *
+         * @return new uploader
+         */
+        public DbxBatchUploader build() {
+            return new DbxBatchUploader(this);
+        }
+    }
+}
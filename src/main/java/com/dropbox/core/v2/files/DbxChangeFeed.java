@@ -0,0 +1,626 @@
+package com.dropbox.core.v2.files;
+
+import com.dropbox.core.DbxCallback;
+import com.dropbox.core.DbxException;
+import com.dropbox.core.ExponentialBackoffRetryPolicy;
+import com.dropbox.core.RetryPolicy;
+import com.dropbox.core.util.Collector;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*>>> import checkers.nullness.quals.Nullable; */
+
+/**
+ * Watches many folder cursors for changes and delivers the changes through a bounded queue.
+ *
+ * <p> Every {@link #watch watched} cursor is polled with {@link
+ * DbxUserFilesRequests#listFolderLongpollAsync}, at most {@link
+ * Builder#withMaxConcurrentPolls} at a time; the other cursors wait for their turn. Changes are
+ * only fetched, with {@link DbxUserFilesRequests#listFolderContinue}, for cursors whose poll
+ * reported changes, and are queued one page at a time for the application to {@link #take}:
+ *
+ * <pre>
+ * DbxChangeFeed feed = DbxChangeFeed.newBuilder(client.files())
+ *     .withLongpollRequests(longpollClient.files())
+ *     .build();
+ * try {
+ *     for (String cursor : cursors) {
+ *         feed.watch(cursor);
+ *     }
+ *     while (true) {
+ *         DbxChangeFeed.Changes changes = feed.take();
+ *         if (changes.getError() != null) {
+ *             // the cursor can't be watched anymore, for instance because it was reset
+ *         } else {
+ *             // apply changes.getEntries(), then save changes.getCursor()
+ *         }
+ *     }
+ * } finally {
+ *     feed.close();
+ * }
+ * </pre>
+ *
+ * <p> The queue holds at most {@link Builder#withQueueCapacity} pages. Once it is full, changes
+ * are no longer fetched, and cursors that reported changes are no longer polled, until the
+ * application catches up. Changes are thus held back on the server rather than in memory.
+ *
+ * <p> Polls honor the {@code backoff} returned by the server. Failed polls and fetches are
+ * retried according to the {@link Builder#withRetryPolicy retry policy} of the feed; once it
+ * gives up on a cursor, the failure is queued as {@link Changes#getError} and the cursor is no
+ * longer watched.
+ *
+ * <p> Long-poll requests are issued asynchronously, so with a transport that implements {@link
+ * com.dropbox.core.http.HttpRequestor#startPostAsync} without blocking, such as {@link
+ * com.dropbox.core.http.OkHttp3Requestor}, waiting polls don't hold a thread each. Long-poll
+ * requests wait on the server for up to {@link Builder#withTimeout} seconds plus a random delay
+ * of up to 90 seconds; the requests given to {@link Builder#withLongpollRequests} must use a read
+ * timeout longer than that.
+ *
+ * <p> This class is thread-safe.
+ */
+public final class DbxChangeFeed implements Closeable {
+    private static final String LONGPOLL_ROUTE = "2/files/list_folder/longpoll";
+    private static final String LIST_FOLDER_CONTINUE_ROUTE = "2/files/list_folder/continue";
+
+    private final DbxUserFilesRequests longpollFiles;
+    private final DbxListFolderPager pager;
+    private final long timeout;
+    private final int maxConcurrentPolls;
+    private final RetryPolicy retryPolicy;
+    private final BlockingQueue<Changes> queue;
+
+    private final ExecutorService pollExecutor;
+    private final ExecutorService fetchExecutor;
+    private final ScheduledExecutorService timer;
+
+    // guarded by this
+    private final Queue<Watch> waiting;
+    private int polling;
+    private boolean closed;
+
+    private DbxChangeFeed(Builder builder) {
+        this.longpollFiles = builder.longpollFiles != null ? builder.longpollFiles : builder.files;
+        this.pager = new DbxListFolderPager(builder.files);
+        this.timeout = builder.timeout;
+        this.maxConcurrentPolls = builder.maxConcurrentPolls;
+        this.retryPolicy = builder.retryPolicy;
+        this.queue = new ArrayBlockingQueue<Changes>(builder.queueCapacity);
+
+        this.pollExecutor = Executors.newFixedThreadPool(maxConcurrentPolls, threadFactory("poll"));
+        this.fetchExecutor = Executors.newFixedThreadPool(builder.fetchParallelism, threadFactory("fetch"));
+        this.timer = Executors.newSingleThreadScheduledExecutor(threadFactory("timer"));
+
+        this.waiting = new ArrayDeque<Watch>();
+        this.polling = 0;
+        this.closed = false;
+    }
+
+    /**
+     * Returns a new builder for a feed that lists changes through the given requests.
+     *
+     * @param files requests used for listing changes, such as {@code client.files()}, and for
+     * long-poll requests unless {@link Builder#withLongpollRequests} is set
+     *
+     * @return builder for a {@link DbxChangeFeed}
+     */
+    public static Builder newBuilder(DbxUserFilesRequests files) {
+        if (files == null) throw new NullPointerException("files");
+        return new Builder(files);
+    }
+
+    /**
+     * Starts watching {@code cursor} for changes.
+     *
+     * @param cursor cursor returned by {@link DbxUserFilesRequests#listFolder}, {@link
+     * DbxUserFilesRequests#listFolderContinue} or {@link
+     * DbxUserFilesRequests#listFolderGetLatestCursor}
+     *
+     * @return handle of the watched cursor, found in the {@link Changes} listed from it
+     *
+     * @throws IllegalStateException if this feed has been closed
+     */
+    public Watch watch(String cursor) {
+        if (cursor == null) throw new NullPointerException("cursor");
+
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Change feed already closed.");
+            }
+        }
+        Watch watch = new Watch(cursor);
+        poll(watch);
+        return watch;
+    }
+
+    /**
+     * Returns the next page of changes, waiting until there is one.
+     *
+     * @return next page of changes, or failure of a watched cursor
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Changes take() throws InterruptedException {
+        return queue.take();
+    }
+
+    /**
+     * Returns the next page of changes, waiting up to {@code timeout} until there is one.
+     *
+     * @param timeout how long to wait for changes
+     * @param unit unit of {@code timeout}
+     *
+     * @return next page of changes, failure of a watched cursor, or {@code null} if there was
+     * none in time
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public /*@Nullable*/ Changes poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+
+    /**
+     * Returns the number of cursors waiting for a free long-poll slot.
+     *
+     * @return number of waiting cursors
+     */
+    public synchronized int getWaitingCount() {
+        return waiting.size();
+    }
+
+    /**
+     * Stops watching all cursors. Pages already queued can still be taken.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            waiting.clear();
+        }
+        pollExecutor.shutdownNow();
+        fetchExecutor.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    /**
+     * Polls {@code watch} once a long-poll slot is free.
+     */
+    private void poll(Watch watch) {
+        synchronized (this) {
+            if (closed || !watch.isActive()) {
+                return;
+            }
+            if (polling >= maxConcurrentPolls) {
+                waiting.add(watch);
+                return;
+            }
+            ++polling;
+        }
+        startPoll(watch);
+    }
+
+    /**
+     * Frees the long-poll slot of a finished poll, or hands it to the next waiting cursor.
+     */
+    private void pollFinished() {
+        Watch next;
+        synchronized (this) {
+            do {
+                next = waiting.poll();
+            } while (next != null && !next.isActive());
+            if (next == null) {
+                --polling;
+                return;
+            }
+        }
+        startPoll(next);
+    }
+
+    private void startPoll(final Watch watch) {
+        try {
+            pollExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    retryPolicy.onRequest();
+                    longpollFiles.listFolderLongpollAsync(watch.cursor, timeout, new DbxCallback<ListFolderLongpollResult>() {
+                        @Override
+                        public void onSuccess(ListFolderLongpollResult result) {
+                            pollFinished();
+                            watch.succeeded();
+                            long backoffMillis = result.getBackoff() == null ? 0 : TimeUnit.SECONDS.toMillis(result.getBackoff());
+                            if (result.getChanges()) {
+                                fetch(watch, backoffMillis);
+                            } else {
+                                pollAfter(watch, backoffMillis);
+                            }
+                        }
+
+                        @Override
+                        public void onFailure(DbxException error) {
+                            pollFinished();
+                            long delayMillis = error instanceof ListFolderLongpollErrorException
+                                ? -1
+                                : watch.retryDelay(retryPolicy, LONGPOLL_ROUTE, error);
+                            if (delayMillis < 0) {
+                                fail(watch, error);
+                            } else {
+                                pollAfter(watch, delayMillis);
+                            }
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // closed
+        }
+    }
+
+    private void pollAfter(final Watch watch, long delayMillis) {
+        if (delayMillis <= 0) {
+            poll(watch);
+            return;
+        }
+        try {
+            timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    poll(watch);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            // closed
+        }
+    }
+
+    /**
+     * Lists the changes of {@code watch} and queues them page by page, then polls the cursor
+     * again after {@code backoffMillis}.
+     */
+    private void fetch(final Watch watch, final long backoffMillis) {
+        try {
+            fetchExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        DbxListFolderPager.Result<ArrayList<Metadata>> page;
+                        do {
+                            page = fetchPage(watch.cursor);
+                            if (!page.getEntries().isEmpty()) {
+                                // blocks while the application is behind
+                                queue.put(new Changes(watch, page.getEntries(), page.getCursor(), null));
+                            }
+                            watch.cursor = page.getCursor();
+                        } while (page.getHasMore() && watch.isActive());
+                    } catch (DbxException ex) {
+                        fail(watch, ex);
+                        return;
+                    } catch (InterruptedException ex) {
+                        // closed
+                        return;
+                    }
+                    pollAfter(watch, backoffMillis);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // closed
+        }
+    }
+
+    private DbxListFolderPager.Result<ArrayList<Metadata>> fetchPage(String cursor) throws DbxException {
+        RequestAttempts attempts = new RequestAttempts(retryPolicy, LIST_FOLDER_CONTINUE_ROUTE, true);
+        while (true) {
+            try {
+                return pager.listFolderContinuePage(cursor, new Collector.ArrayListCollector<Metadata>());
+            } catch (ListFolderContinueErrorException ex) {
+                throw ex;
+            } catch (DbxException ex) {
+                attempts.failed(ex);
+            }
+        }
+    }
+
+    /**
+     * Stops watching {@code watch} and queues its failure.
+     */
+    private void fail(final Watch watch, final DbxException error) {
+        watch.cancel();
+        try {
+            fetchExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        queue.put(new Changes(watch, Collections.<Metadata>emptyList(), watch.cursor, error));
+                    } catch (InterruptedException ex) {
+                        // closed
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // closed
+        }
+    }
+
+    private static ThreadFactory threadFactory(final String role) {
+        final AtomicInteger threads = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "dropbox-change-feed-" + role + "-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * A cursor watched by a {@link DbxChangeFeed}.
+     */
+    public static final class Watch {
+        private volatile String cursor;
+        private volatile boolean active;
+
+        // failures in a row; a watch is polled or fetched by one thread at a time
+        private int failures;
+        private long failingSinceNanos;
+        private long previousDelayMillis;
+
+        private Watch(String cursor) {
+            this.cursor = cursor;
+            this.active = true;
+        }
+
+        /**
+         * Returns the cursor of the last page of changes queued for this watch.
+         *
+         * @return latest cursor
+         */
+        public String getCursor() {
+            return cursor;
+        }
+
+        /**
+         * Returns whether the cursor is still watched.
+         *
+         * @return {@code false} once cancelled or failed
+         */
+        public boolean isActive() {
+            return active;
+        }
+
+        /**
+         * Stops watching the cursor. A poll in progress is completed, but its changes are not
+         * fetched.
+         */
+        public void cancel() {
+            active = false;
+        }
+
+        private void succeeded() {
+            failures = 0;
+            previousDelayMillis = 0;
+        }
+
+        private long retryDelay(RetryPolicy retryPolicy, String route, DbxException error) {
+            if (failures == 0) {
+                failingSinceNanos = System.nanoTime();
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - failingSinceNanos);
+            long delayMillis = retryPolicy.getRetryDelayMillis(
+                new RetryPolicy.FailedAttempt(route, true, error, failures, elapsedMillis, previousDelayMillis)
+            );
+            ++failures;
+            previousDelayMillis = delayMillis;
+            return delayMillis;
+        }
+    }
+
+    /**
+     * A page of changes listed from a watched cursor, or the failure that stopped the watch.
+     */
+    public static final class Changes {
+        private final Watch watch;
+        private final List<Metadata> entries;
+        private final String cursor;
+        private final /*@Nullable*/ DbxException error;
+
+        private Changes(Watch watch, List<Metadata> entries, String cursor, /*@Nullable*/ DbxException error) {
+            this.watch = watch;
+            this.entries = Collections.unmodifiableList(entries);
+            this.cursor = cursor;
+            this.error = error;
+        }
+
+        /**
+         * Returns the watch these changes were listed from.
+         *
+         * @return watch returned by {@link DbxChangeFeed#watch}
+         */
+        public Watch getWatch() {
+            return watch;
+        }
+
+        /**
+         * Returns the changed entries, as listed by {@link
+         * DbxUserFilesRequests#listFolderContinue}.
+         *
+         * @return changed entries, empty if {@link #getError} is set
+         */
+        public List<Metadata> getEntries() {
+            return entries;
+        }
+
+        /**
+         * Returns the cursor following these changes, to save once they are applied.
+         *
+         * @return cursor following the changes
+         */
+        public String getCursor() {
+            return cursor;
+        }
+
+        /**
+         * Returns the failure that stopped the watch, such as a {@link
+         * ListFolderLongpollErrorException} or {@link ListFolderContinueErrorException} for a
+         * reset cursor.
+         *
+         * @return failure, or {@code null} for a page of changes
+         */
+        public /*@Nullable*/ DbxException getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Builder for {@link DbxChangeFeed}.
+     */
+    public static final class Builder {
+        private final DbxUserFilesRequests files;
+
+        private /*@Nullable*/ DbxUserFilesRequests longpollFiles;
+        private long timeout;
+        private int maxConcurrentPolls;
+        private int fetchParallelism;
+        private int queueCapacity;
+        private RetryPolicy retryPolicy;
+
+        private Builder(DbxUserFilesRequests files) {
+            this.files = files;
+
+            this.longpollFiles = null;
+            this.timeout = 30;
+            this.maxConcurrentPolls = 64;
+            this.fetchParallelism = 4;
+            this.queueCapacity = 1024;
+            this.retryPolicy = ExponentialBackoffRetryPolicy.newBuilder()
+                .withMaxRetries(4)
+                .withNetworkErrorRetries(true)
+                .build();
+        }
+
+        /**
+         * Sets the requests used for long-poll requests, typically those of a client whose
+         * transport has a longer read timeout. Defaults to {@code null}: the requests given to
+         * {@link DbxChangeFeed#newBuilder} are used.
+         *
+         * @param longpollFiles requests used for long-poll requests, or {@code null}
+         *
+         * @return this builder
+         */
+        public Builder withLongpollRequests(/*@Nullable*/ DbxUserFilesRequests longpollFiles) {
+            this.longpollFiles = longpollFiles;
+            return this;
+        }
+
+        /**
+         * Sets how long each long-poll request waits for changes, in seconds. Defaults to {@code
+         * 30}.
+         *
+         * @param timeout long-poll timeout in seconds, from 30 to 480
+         *
+         * @return this builder
+         *
+         * @throws IllegalArgumentException if {@code timeout} is out of range
+         */
+        public Builder withTimeout(long timeout) {
+            if (timeout < 30 || timeout > 480) {
+                throw new IllegalArgumentException("timeout must be between 30 and 480 seconds");
+            }
+            this.timeout = timeout;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of long-poll requests in flight. Other watched cursors wait for
+         * a free slot, in turn. Defaults to {@code 64}.
+         *
+         * @param maxConcurrentPolls maximum number of concurrent long-poll requests, must be
+         * positive
+         *
+         * @return this builder
+         *
+         * @throws IllegalArgumentException if {@code maxConcurrentPolls} is not positive
+         */
+        public Builder withMaxConcurrentPolls(int maxConcurrentPolls) {
+            if (maxConcurrentPolls <= 0) {
+                throw new IllegalArgumentException("maxConcurrentPolls must be positive");
+            }
+            this.maxConcurrentPolls = maxConcurrentPolls;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of cursors whose changes are fetched concurrently. Defaults to
+         * {@code 4}.
+         *
+         * @param fetchParallelism number of fetching threads, must be positive
+         *
+         * @return this builder
+         *
+         * @throws IllegalArgumentException if {@code fetchParallelism} is not positive
+         */
+        public Builder withFetchParallelism(int fetchParallelism) {
+            if (fetchParallelism <= 0) {
+                throw new IllegalArgumentException("fetchParallelism must be positive");
+            }
+            this.fetchParallelism = fetchParallelism;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of pages of changes queued for the application. Defaults to
+         * {@code 1024}.
+         *
+         * @param queueCapacity capacity of the queue, must be positive
+         *
+         * @return this builder
+         *
+         * @throws IllegalArgumentException if {@code queueCapacity} is not positive
+         */
+        public Builder withQueueCapacity(int queueCapacity) {
+            if (queueCapacity <= 0) {
+                throw new IllegalArgumentException("queueCapacity must be positive");
+            }
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Sets the policy deciding whether and when failed long-poll requests and change
+         * listings are retried.
+         *
+         * <p> Defaults to an {@link ExponentialBackoffRetryPolicy} that retries up to 4 times,
+         * including on network errors.
+         *
+         * @param retryPolicy retry policy for polls and listings
+         *
+         * @return this builder
+         */
+        public Builder withRetryPolicy(RetryPolicy retryPolicy) {
+            if (retryPolicy == null) throw new NullPointerException("retryPolicy");
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Returns a {@link DbxChangeFeed} with the values set by this builder.
+         *
+         * @return new feed
+         */
+        public DbxChangeFeed build() {
+            return new DbxChangeFeed(this);
+        }
+    }
+}
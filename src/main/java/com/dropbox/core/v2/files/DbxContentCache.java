@@ -0,0 +1,315 @@
+package com.dropbox.core.v2.files;
+
+import com.dropbox.core.DbxException;
+import com.dropbox.core.util.IOUtil;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*>>> import checkers.nullness.quals.Nullable; */
+
+/**
+ * Size-bounded local disk cache of file content, for applications that download the same file
+ * revisions over and over.
+ *
+ * <p> Content is cached by its content hash, or by its revision if the metadata has no content
+ * hash. File revisions never change, so cached content never goes stale; a new revision of a
+ * file is simply a new cache entry. Cached files are served without any request:
+ *
+ * <pre>
+ * DbxContentCache cache = DbxContentCache.newBuilder(client.files(), new File("cache"))
+ *     .withMaxSize(10L &lt;&lt; 30)
+ *     .build();
+ * InputStream in = cache.open(metadata);
+ * try {
+ *     // read from in
+ * } finally {
+ *     in.close();
+ * }
+ * </pre>
+ *
+ * <p> Missing content is downloaded with a {@link DbxFileDownloader}, which verifies it against
+ * its content hash, into a temporary file in the cache directory. The temporary file is renamed
+ * to its final name only once it is complete, so readers never see partial content. Concurrent
+ * requests for the same missing content share a single download.
+ *
+ * <p> Once the cache grows beyond its maximum size, the least recently used entries are deleted.
+ * Streams returned by {@link #open} are opened before their entry can be evicted; on platforms
+ * that allow deleting open files they stay readable after eviction, elsewhere entries that are
+ * being read are evicted later. Usage order survives restarts through the modification times of
+ * the cached files.
+ *
+ * <p> A cache directory must not be shared by several caches at the same time. This class is
+ * thread-safe.
+ */
+public final class DbxContentCache implements Closeable {
+    private static final String HASH_PREFIX = "h-";
+    private static final String REV_PREFIX = "r-";
+
+    private final DbxUserFilesRequests files;
+    private final CacheDirectory directory;
+    private final DbxFileDownloader downloader;
+    private final boolean ownsDownloader;
+    private final SingleFlight<String, Void> loading;
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    private DbxContentCache(Builder builder) throws IOException {
+        this.files = builder.files;
+        this.directory = new CacheDirectory(builder.directory, builder.maxSize);
+        this.ownsDownloader = builder.downloader == null;
+        this.downloader = ownsDownloader ? DbxFileDownloader.newBuilder(builder.files).build() : builder.downloader;
+        this.loading = new SingleFlight<String, Void>();
+
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * Returns a new builder for a cache in {@code directory} that downloads missing content
+     * through the given requests.
+     *
+     * @param files requests used for downloading, such as {@code client.files()}
+     * @param directory directory to keep cached content in, created if it does not exist
+     *
+     * @return builder for a {@link DbxContentCache}
+     */
+    public static Builder newBuilder(DbxUserFilesRequests files, File directory) {
+        if (files == null) throw new NullPointerException("files");
+        if (directory == null) throw new NullPointerException("directory");
+        return new Builder(files, directory);
+    }
+
+    /**
+     * Returns a stream over the content of the file revision described by {@code metadata},
+     * downloading it into the cache first if it is missing.
+     *
+     * <p> Files larger than the maximum size of the cache are not cached; the returned stream
+     * then reads the download directly.
+     *
+     * @param metadata metadata of the file revision to read
+     *
+     * @return stream over the content of the file, to be closed by the caller
+     *
+     * @throws DbxException if downloading the content failed
+     * @throws IOException if reading or writing the cache failed
+     */
+    public InputStream open(FileMetadata metadata) throws DbxException, IOException {
+        if (metadata == null) throw new NullPointerException("metadata");
+
+        String name = name(metadata);
+        InputStream in = directory.open(name, metadata.getSize());
+        if (in != null) {
+            hits.incrementAndGet();
+            return in;
+        }
+
+        misses.incrementAndGet();
+        if (metadata.getSize() > directory.getMaxSize()) {
+            return files.downloadBuilder("rev:" + metadata.getRev()).start().getInputStream();
+        }
+
+        // the content can be evicted between loading and opening it if the cache is far too
+        // small for the content it serves, so it is loaded a second time
+        for (int attempt = 0; attempt < 2; ++attempt) {
+            load(name, metadata);
+            in = directory.open(name, metadata.getSize());
+            if (in != null) {
+                directory.evict();
+                return in;
+            }
+        }
+        throw new FileNotFoundException("Unable to open cached content: " + name);
+    }
+
+    /**
+     * Writes the content of the file revision described by {@code metadata} to {@code out},
+     * downloading it into the cache first if it is missing.
+     *
+     * @param metadata metadata of the file revision to read
+     * @param out stream to write the content to, not closed by this method
+     *
+     * @throws DbxException if downloading the content failed
+     * @throws IOException if reading or writing the cache or writing to {@code out} failed
+     */
+    public void download(FileMetadata metadata, OutputStream out) throws DbxException, IOException {
+        if (out == null) throw new NullPointerException("out");
+
+        InputStream in = open(metadata);
+        try {
+            IOUtil.copyStreamToStream(in, out);
+        } finally {
+            IOUtil.closeInput(in);
+        }
+    }
+
+    /**
+     * Returns whether the content of the file revision described by {@code metadata} is cached.
+     *
+     * @param metadata metadata of a file revision
+     *
+     * @return whether reading the content would be a cache hit
+     */
+    public boolean contains(FileMetadata metadata) {
+        if (metadata == null) throw new NullPointerException("metadata");
+        return directory.contains(name(metadata));
+    }
+
+    /**
+     * Returns the number of reads served from the cache.
+     *
+     * @return number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of reads not served from the cache. Concurrent reads of the same
+     * missing content are all misses, but share a single download.
+     *
+     * @return number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of entries deleted to keep the cache within its maximum size.
+     *
+     * @return number of evicted entries
+     */
+    public long getEvictions() {
+        return directory.getEvictions();
+    }
+
+    /**
+     * Returns the total size of the cached content.
+     *
+     * @return size of the cache in bytes
+     */
+    public long getSize() {
+        return directory.getSize();
+    }
+
+    /**
+     * Returns the maximum size of the cached content.
+     *
+     * @return maximum size of the cache in bytes
+     */
+    public long getMaxSize() {
+        return directory.getMaxSize();
+    }
+
+    /**
+     * Closes the downloader of this cache, unless it was given to the builder. Cached content is
+     * kept.
+     */
+    @Override
+    public void close() {
+        if (ownsDownloader) {
+            downloader.close();
+        }
+    }
+
+    /**
+     * Downloads the content into the cache as {@code name}, unless another thread already is.
+     */
+    private void load(final String name, final FileMetadata metadata) throws DbxException, IOException {
+        loading.load(name, new Callable<Void>() {
+            @Override
+            public Void call() throws DbxException, IOException {
+                if (directory.contains(name)) {
+                    // published while we were waiting to start
+                    return null;
+                }
+                File temp = directory.newTempFile();
+                try {
+                    downloader.download(metadata, temp);
+                    directory.publish(temp, name);
+                } finally {
+                    temp.delete();
+                }
+                return null;
+            }
+        });
+    }
+
+    private static String name(FileMetadata metadata) {
+        if (metadata.getContentHash() != null) {
+            return HASH_PREFIX + metadata.getContentHash();
+        }
+        return REV_PREFIX + metadata.getRev();
+    }
+
+    /**
+     * Builder for {@link DbxContentCache}.
+     */
+    public static final class Builder {
+        private final DbxUserFilesRequests files;
+        private final File directory;
+
+        private long maxSize;
+        private /*@Nullable*/ DbxFileDownloader downloader;
+
+        private Builder(DbxUserFilesRequests files, File directory) {
+            this.files = files;
+            this.directory = directory;
+
+            this.maxSize = 1L << 30;
+            this.downloader = null;
+        }
+
+        /**
+         * Sets the maximum total size of the cached content. Defaults to 1 GiB.
+         *
+         * @param maxSize maximum size in bytes, must be positive
+         *
+         * @return this builder
+         *
+         * @throws IllegalArgumentException if {@code maxSize} is not positive
+         */
+        public Builder withMaxSize(long maxSize) {
+            if (maxSize <= 0) {
+                throw new IllegalArgumentException("maxSize must be positive");
+            }
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Sets the downloader used to download missing content. The downloader is not closed
+         * with the cache.
+         *
+         * <p> Defaults to {@code null}: the cache uses its own {@link DbxFileDownloader} with
+         * default settings.
+         *
+         * @param downloader downloader for missing content, or {@code null} for the default
+         *
+         * @return this builder
+         */
+        public Builder withDownloader(/*@Nullable*/ DbxFileDownloader downloader) {
+            this.downloader = downloader;
+            return this;
+        }
+
+        /**
+         * Returns a {@link DbxContentCache} with the values set by this builder, indexing the
+         * content already in the cache directory.
+         *
+         * @return new cache
+         *
+         * @throws IOException if the cache directory could not be created or listed
+         */
+        public DbxContentCache build() throws IOException {
+            return new DbxContentCache(this);
+        }
+    }
+}
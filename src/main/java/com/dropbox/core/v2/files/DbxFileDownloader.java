@@ -0,0 +1,767 @@
+package com.dropbox.core.v2.files;
+
+import com.dropbox.core.BadResponseException;
+import com.dropbox.core.ContentHashMismatchException;
+import com.dropbox.core.DbxContentHasher;
+import com.dropbox.core.DbxDownloader;
+import com.dropbox.core.DbxException;
+import com.dropbox.core.ExponentialBackoffRetryPolicy;
+import com.dropbox.core.NetworkIOException;
+import com.dropbox.core.RetryPolicy;
+import com.dropbox.core.util.IOUtil;
+import com.dropbox.core.util.StringUtil;
+import com.dropbox.core.v2.DbxDownloadStyleBuilder;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*>>> import checkers.nullness.quals.Nullable; */
+
+/**
+ * Downloads Dropbox files to local files over several concurrent connections.
+ *
+ * <p> Files larger than the range size are split into byte ranges that are downloaded with
+ * concurrent {@code download} requests (see {@link DbxDownloadStyleBuilder#range(long, long)}).
+ * Every range is requested by revision ({@code "rev:..."}), so all ranges come from the same
+ * version of the file even if it is modified while it is downloaded. The target file is
+ * preallocated to the size of the file and every range is written straight to its position in
+ * it, so ranges may complete in any order.
+ *
+ * <p> Failed ranges are retried on their own, according to the configured {@link RetryPolicy}.
+ * A range that ends early is reported as a {@link NetworkIOException} and retried like any other
+ * network error.
+ *
+ * <p> Ranges are aligned to {@link DbxContentHasher#BLOCK_SIZE content hash blocks}, so every
+ * range hashes its blocks while they are downloaded. Once all ranges are complete, the content
+ * hash of the file is assembled from the block hashes and compared with the content hash of the
+ * file metadata, without reading the target file again:
+ *
+ * <pre>
+ * DbxFileDownloader downloader = DbxFileDownloader.newBuilder(client.files())
+ *     .withParallelism(8)
+ *     .build();
+ * try {
+ *     downloader.download("/Backup/disk.img", new File("disk.img"));
+ * } finally {
+ *     downloader.close();
+ * }
+ * </pre>
+ *
+ * <p> The ranges of all downloads share a pool of {@link #getParallelism} threads. Downloads
+ * themselves run on the calling thread, which waits for the ranges to complete.
+ *
+ * <p> Files can also be downloaded over a single connection to an {@link OutputStream} or {@link
+ * FileChannel}, for content that must be written in order. If the connection breaks, the
+ * download continues with a new request for the same revision, starting at the first byte that
+ * was not written yet. The caller sees one uninterrupted stream of content, verified against the
+ * content hash once it is complete:
+ *
+ * <pre>
+ * OutputStream out = new FileOutputStream("disk.img");
+ * try {
+ *     downloader.download(metadata, out);
+ * } finally {
+ *     out.close();
+ * }
+ * </pre>
+ *
+ * <p> This class is thread-safe.
+ */
+public final class DbxFileDownloader implements Closeable {
+    /**
+     * Default size of the ranges large files are split into: 32 MiB.
+     */
+    public static final long DEFAULT_RANGE_SIZE = 8L * DbxContentHasher.BLOCK_SIZE;
+
+    private static final String DOWNLOAD_ROUTE = "2/files/download";
+    private static final String GET_METADATA_ROUTE = "2/files/get_metadata";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DbxUserFilesRequests files;
+    private final long rangeSize;
+    private final int parallelism;
+    private final RetryPolicy retryPolicy;
+
+    private /*@Nullable*/ ExecutorService executor;
+    private boolean closed;
+
+    private DbxFileDownloader(Builder builder) {
+        this.files = builder.files;
+        this.rangeSize = builder.rangeSize;
+        this.parallelism = builder.parallelism;
+        this.retryPolicy = builder.retryPolicy;
+
+        this.executor = null;
+        this.closed = false;
+    }
+
+    /**
+     * Returns a new builder for a downloader that downloads through the given requests.
+     *
+     * @param files requests used for downloading, such as {@code client.files()}
+     *
+     * @return builder for a {@link DbxFileDownloader}
+     */
+    public static Builder newBuilder(DbxUserFilesRequests files) {
+        if (files == null) throw new NullPointerException("files");
+        return new Builder(files);
+    }
+
+    /**
+     * Returns the size of the ranges large files are split into.
+     *
+     * @return range size in bytes
+     */
+    public long getRangeSize() {
+        return rangeSize;
+    }
+
+    /**
+     * Returns the maximum number of ranges downloaded concurrently.
+     *
+     * @return number of concurrent range requests
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Downloads the latest revision of the file at {@code path} to {@code target}. The metadata
+     * of the file is looked up first, to learn its revision, size and content hash.
+     *
+     * @param path path or id of the file to download
+     * @param target local file to write, replaced if it exists
+     *
+     * @return metadata of the downloaded file
+     *
+     * @throws IllegalArgumentException if {@code path} is not a file
+     * @throws ContentHashMismatchException if the downloaded content does not match the content
+     * hash of the file
+     * @throws DbxException if the download failed for good
+     * @throws IOException if writing the target file failed
+     */
+    public FileMetadata download(String path, File target) throws DbxException, IOException {
+        return download(path, target, null);
+    }
+
+    /**
+     * Same as {@link #download(String, File)}, but reports the number of bytes downloaded so far
+     * to {@code progressListener}.
+     */
+    public FileMetadata download(String path, File target, /*@Nullable*/ IOUtil.ProgressListener progressListener)
+        throws DbxException, IOException {
+        if (path == null) throw new NullPointerException("path");
+        if (target == null) throw new NullPointerException("target");
+
+        Metadata metadata = getMetadata(path);
+        if (!(metadata instanceof FileMetadata)) {
+            throw new IllegalArgumentException("Not a file: " + path);
+        }
+        return download((FileMetadata) metadata, target, progressListener);
+    }
+
+    /**
+     * Downloads the revision of the file described by {@code metadata} to {@code target}. The
+     * content is verified against the content hash of {@code metadata}, if it has one.
+     *
+     * <p> The target file is written in place. If the download fails, its content is undefined
+     * and should be discarded.
+     *
+     * @param metadata metadata of the file revision to download
+     * @param target local file to write, replaced if it exists
+     *
+     * @return metadata of the downloaded file as returned by the server
+     *
+     * @throws ContentHashMismatchException if the downloaded content does not match the content
+     * hash of the file
+     * @throws DbxException if the download failed for good
+     * @throws IOException if writing the target file failed
+     */
+    public FileMetadata download(FileMetadata metadata, File target) throws DbxException, IOException {
+        return download(metadata, target, null);
+    }
+
+    /**
+     * Same as {@link #download(FileMetadata, File)}, but reports the number of bytes downloaded
+     * so far to {@code progressListener}. Progress may go backwards if a range is retried. The
+     * listener may be called on background threads, but never concurrently.
+     */
+    public FileMetadata download(FileMetadata metadata,
+                                 File target,
+                                 /*@Nullable*/ IOUtil.ProgressListener progressListener)
+        throws DbxException, IOException {
+        if (metadata == null) throw new NullPointerException("metadata");
+        if (target == null) throw new NullPointerException("target");
+
+        RandomAccessFile raf = new RandomAccessFile(target, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            raf.setLength(metadata.getSize());
+
+            Progress progress = new Progress(progressListener);
+            List<Range> ranges = new ArrayList<Range>();
+            for (long position = 0; position == 0 || position < metadata.getSize(); position += rangeSize) {
+                long length = Math.min(rangeSize, metadata.getSize() - position);
+                ranges.add(new Range(metadata, channel, position, length, progress));
+            }
+
+            List<RangeResult> results;
+            if (ranges.size() == 1) {
+                results = new ArrayList<RangeResult>();
+                results.add(ranges.get(0).call());
+            } else {
+                results = runAll(ranges);
+            }
+
+            MessageDigest overallHasher = newSha256();
+            for (RangeResult result : results) {
+                for (byte [] blockHash : result.blockHashes) {
+                    overallHasher.update(blockHash);
+                }
+            }
+            verify(metadata, StringUtil.binaryToHex(overallHasher.digest()));
+            return results.get(0).metadata;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Downloads the revision of the file described by {@code metadata} over a single connection,
+     * writing its content to {@code out} in order. Connections that break are resumed from the
+     * last byte written, see {@link DbxFileDownloader class documentation}. Every resumption that
+     * made progress starts with a fresh set of retries.
+     *
+     * <p> The content is verified against the content hash of {@code metadata}, if it has one,
+     * once it has been written to {@code out}. Discard what was written if this method throws.
+     *
+     * @param metadata metadata of the file revision to download
+     * @param out stream to write the content to, not closed by this method
+     *
+     * @return metadata of the downloaded file as returned by the server
+     *
+     * @throws ContentHashMismatchException if the downloaded content does not match the content
+     * hash of the file
+     * @throws DbxException if the download failed for good
+     * @throws IOException if writing to {@code out} failed
+     */
+    public FileMetadata download(FileMetadata metadata, OutputStream out) throws DbxException, IOException {
+        return download(metadata, out, null);
+    }
+
+    /**
+     * Same as {@link #download(FileMetadata, OutputStream)}, but reports the number of bytes
+     * written so far to {@code progressListener}.
+     */
+    public FileMetadata download(FileMetadata metadata,
+                                 final OutputStream out,
+                                 /*@Nullable*/ IOUtil.ProgressListener progressListener)
+        throws DbxException, IOException {
+        if (metadata == null) throw new NullPointerException("metadata");
+        if (out == null) throw new NullPointerException("out");
+
+        return new ResumableDownload(metadata, progressListener) {
+            @Override
+            void write(ByteBuffer buffer) throws IOException {
+                out.write(buffer.array(), buffer.position(), buffer.remaining());
+                buffer.position(buffer.limit());
+            }
+        }.run();
+    }
+
+    /**
+     * Same as {@link #download(FileMetadata, OutputStream)}, but writes the content to {@code
+     * channel}, starting at its current position. Connections that break are resumed like they
+     * are for streams.
+     *
+     * @param metadata metadata of the file revision to download
+     * @param channel channel to write the content to, not closed by this method
+     *
+     * @return metadata of the downloaded file as returned by the server
+     *
+     * @throws ContentHashMismatchException if the downloaded content does not match the content
+     * hash of the file
+     * @throws DbxException if the download failed for good
+     * @throws IOException if writing to {@code channel} failed
+     */
+    public FileMetadata download(FileMetadata metadata, FileChannel channel) throws DbxException, IOException {
+        return download(metadata, channel, null);
+    }
+
+    /**
+     * Same as {@link #download(FileMetadata, FileChannel)}, but reports the number of bytes
+     * written so far to {@code progressListener}.
+     */
+    public FileMetadata download(FileMetadata metadata,
+                                 final FileChannel channel,
+                                 /*@Nullable*/ IOUtil.ProgressListener progressListener)
+        throws DbxException, IOException {
+        if (metadata == null) throw new NullPointerException("metadata");
+        if (channel == null) throw new NullPointerException("channel");
+
+        return new ResumableDownload(metadata, progressListener) {
+            @Override
+            void write(ByteBuffer buffer) throws IOException {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }.run();
+    }
+
+    /**
+     * Stops the threads downloading ranges once they are done. Downloads started after this
+     * method was called fail, unless they fit in a single range.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (closed) {
+            throw new IllegalStateException("Downloader already closed.");
+        }
+        if (executor == null) {
+            final AtomicInteger threads = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "dropbox-file-downloader-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Downloads all ranges on the thread pool and returns their results in order. As soon as one
+     * range fails for good, the others are cancelled.
+     */
+    private List<RangeResult> runAll(List<Range> ranges) throws DbxException, IOException {
+        CompletionService<RangeResult> completion = new ExecutorCompletionService<RangeResult>(getExecutor());
+        List<Future<RangeResult>> futures = new ArrayList<Future<RangeResult>>(ranges.size());
+        try {
+            for (Range range : ranges) {
+                futures.add(completion.submit(range));
+            }
+            for (int i = 0; i < ranges.size(); ++i) {
+                get(completion.take());
+            }
+
+            List<RangeResult> results = new ArrayList<RangeResult>(ranges.size());
+            for (Future<RangeResult> future : futures) {
+                results.add(get(future));
+            }
+            return results;
+        } catch (InterruptedException ex) {
+            // preserve interrupt
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while downloading");
+        } finally {
+            for (Future<RangeResult> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private Metadata getMetadata(String path) throws DbxException {
+        RequestAttempts attempts = new RequestAttempts(retryPolicy, GET_METADATA_ROUTE, true);
+        while (true) {
+            try {
+                return files.getMetadata(path);
+            } catch (GetMetadataErrorException ex) {
+                throw ex;
+            } catch (DbxException ex) {
+                attempts.failed(ex);
+            }
+        }
+    }
+
+    private static RangeResult get(Future<RangeResult> future) throws DbxException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            // preserve interrupt
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while downloading");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof DbxException) {
+                throw (DbxException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Unable to download range", cause);
+        }
+    }
+
+    /**
+     * Throws if {@code metadata} has a content hash other than {@code contentHash}.
+     */
+    private static void verify(FileMetadata metadata, String contentHash) throws ContentHashMismatchException {
+        if (metadata.getContentHash() != null && !metadata.getContentHash().equals(contentHash)) {
+            throw new ContentHashMismatchException(null, metadata.getContentHash(), contentHash);
+        }
+    }
+
+    /**
+     * Reads from a response body. Failures are reported as network errors, which can be retried.
+     */
+    private static int read(InputStream in, byte [] buffer, int length) throws NetworkIOException {
+        try {
+            return in.read(buffer, 0, length);
+        } catch (IOException ex) {
+            throw new NetworkIOException(ex);
+        }
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // every Java platform must support SHA-256
+            throw new IllegalStateException("Unable to create SHA-256 digest", ex);
+        }
+    }
+
+    /**
+     * Downloaded range: the metadata returned with it and the hashes of its content hash blocks.
+     */
+    private static final class RangeResult {
+        private final FileMetadata metadata;
+        private final List<byte []> blockHashes;
+
+        private RangeResult(FileMetadata metadata, List<byte []> blockHashes) {
+            this.metadata = metadata;
+            this.blockHashes = blockHashes;
+        }
+    }
+
+    /**
+     * Bytes downloaded by all ranges of one download.
+     */
+    private static final class Progress {
+        private final /*@Nullable*/ IOUtil.ProgressListener listener;
+        private long bytes;
+
+        private Progress(/*@Nullable*/ IOUtil.ProgressListener listener) {
+            this.listener = listener;
+            this.bytes = 0;
+        }
+
+        synchronized void add(long delta) {
+            bytes += delta;
+            if (listener != null) {
+                listener.onProgress(bytes);
+            }
+        }
+    }
+
+    /**
+     * Download over a single connection that is resumed with a range request whenever it breaks.
+     * {@link #offset} is the number of bytes written so far.
+     */
+    private abstract class ResumableDownload {
+        private final FileMetadata metadata;
+        private final /*@Nullable*/ IOUtil.ProgressListener progressListener;
+        private final DbxContentHasher hasher;
+        private long offset;
+
+        private ResumableDownload(FileMetadata metadata, /*@Nullable*/ IOUtil.ProgressListener progressListener) {
+            this.metadata = metadata;
+            this.progressListener = progressListener;
+            this.hasher = new DbxContentHasher();
+            this.offset = 0;
+        }
+
+        /**
+         * Writes the remaining bytes of {@code buffer} to the destination.
+         */
+        abstract void write(ByteBuffer buffer) throws IOException;
+
+        FileMetadata run() throws DbxException, IOException {
+            RequestAttempts attempts = new RequestAttempts(retryPolicy, DOWNLOAD_ROUTE, true);
+            while (true) {
+                long resumedAt = offset;
+                try {
+                    FileMetadata result = fetch();
+                    verify(metadata, hasher.digestHex());
+                    return result;
+                } catch (DbxException ex) {
+                    if (offset > resumedAt) {
+                        // the connection made progress before it broke, so this is a new failure
+                        // rather than another retry of the same one
+                        attempts = new RequestAttempts(retryPolicy, DOWNLOAD_ROUTE, true);
+                    }
+                    attempts.failed(ex);
+                }
+            }
+        }
+
+        private FileMetadata fetch() throws DbxException, IOException {
+            DbxDownloadStyleBuilder<FileMetadata> builder = files.downloadBuilder("rev:" + metadata.getRev());
+            if (offset > 0) {
+                builder = builder.range(offset);
+            }
+
+            DbxDownloader<FileMetadata> downloader = builder.start();
+            try {
+                FileMetadata result = downloader.getResult();
+                if (!metadata.getRev().equals(result.getRev())) {
+                    throw new BadResponseException(null, "Requested rev " + metadata.getRev() + " but got " + result.getRev());
+                }
+
+                InputStream in = downloader.getInputStream();
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                while (offset < metadata.getSize()) {
+                    int n = read(in, buffer.array(), (int) Math.min(buffer.capacity(), metadata.getSize() - offset));
+                    if (n < 0) {
+                        throw new NetworkIOException(new EOFException(
+                            "Download ended after " + offset + " of " + metadata.getSize() + " bytes"
+                        ));
+                    }
+
+                    buffer.limit(n);
+                    hasher.update(buffer.array(), 0, n);
+                    write(buffer);
+                    buffer.clear();
+
+                    offset += n;
+                    if (progressListener != null) {
+                        progressListener.onProgress(offset);
+                    }
+                }
+
+                if (read(in, buffer.array(), 1) > 0) {
+                    throw new BadResponseException(null, "Server sent more than the size of the file");
+                }
+                return result;
+            } finally {
+                downloader.close();
+            }
+        }
+    }
+
+    /**
+     * Downloads one byte range of a file revision into its position of the target file.
+     */
+    private final class Range implements Callable<RangeResult> {
+        private final FileMetadata metadata;
+        private final FileChannel channel;
+        private final long position;
+        private final long length;
+        private final Progress progress;
+
+        private Range(FileMetadata metadata, FileChannel channel, long position, long length, Progress progress) {
+            this.metadata = metadata;
+            this.channel = channel;
+            this.position = position;
+            this.length = length;
+            this.progress = progress;
+        }
+
+        @Override
+        public RangeResult call() throws DbxException, IOException {
+            RequestAttempts attempts = new RequestAttempts(retryPolicy, DOWNLOAD_ROUTE, true);
+            while (true) {
+                try {
+                    return fetch();
+                } catch (DbxException ex) {
+                    attempts.failed(ex);
+                }
+            }
+        }
+
+        private RangeResult fetch() throws DbxException, IOException {
+            DbxDownloadStyleBuilder<FileMetadata> builder = files.downloadBuilder("rev:" + metadata.getRev());
+            if (length < metadata.getSize()) {
+                builder = builder.range(position, length);
+            }
+
+            long written = 0;
+            DbxDownloader<FileMetadata> downloader = builder.start();
+            try {
+                FileMetadata result = downloader.getResult();
+                if (!metadata.getRev().equals(result.getRev())) {
+                    throw new BadResponseException(null, "Requested rev " + metadata.getRev() + " but got " + result.getRev());
+                }
+
+                InputStream in = downloader.getInputStream();
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                MessageDigest blockHasher = newSha256();
+                int blockPos = 0;
+                List<byte []> blockHashes = new ArrayList<byte []>();
+
+                while (written < length) {
+                    int n = read(in, buffer.array(), (int) Math.min(buffer.capacity(), length - written));
+                    if (n < 0) {
+                        throw new NetworkIOException(new EOFException(
+                            "Range at " + position + " ended after " + written + " of " + length + " bytes"
+                        ));
+                    }
+
+                    // ranges start at block boundaries, so blocks never span ranges
+                    for (int off = 0; off < n; ) {
+                        int part = Math.min(n - off, DbxContentHasher.BLOCK_SIZE - blockPos);
+                        blockHasher.update(buffer.array(), off, part);
+                        blockPos += part;
+                        off += part;
+                        if (blockPos == DbxContentHasher.BLOCK_SIZE) {
+                            blockHashes.add(blockHasher.digest());
+                            blockPos = 0;
+                        }
+                    }
+
+                    buffer.limit(n);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer, position + written + buffer.position());
+                    }
+                    buffer.clear();
+
+                    written += n;
+                    progress.add(n);
+                }
+                if (blockPos > 0) {
+                    blockHashes.add(blockHasher.digest());
+                }
+
+                if (read(in, buffer.array(), 1) > 0) {
+                    // a server ignoring the Range header sends the whole file
+                    throw new BadResponseException(null, "Server sent more than the requested range");
+                }
+                return new RangeResult(result, blockHashes);
+            } catch (DbxException ex) {
+                progress.add(-written);
+                throw ex;
+            } finally {
+                downloader.close();
+            }
+        }
+    }
+
+    /**
+     * Builder for {@link DbxFileDownloader}.
+     */
+    public static final class Builder {
+        private final DbxUserFilesRequests files;
+
+        private long rangeSize;
+        private int parallelism;
+        private RetryPolicy retryPolicy;
+
+        private Builder(DbxUserFilesRequests files) {
+            this.files = files;
+
+            this.rangeSize = DEFAULT_RANGE_SIZE;
+            this.parallelism = 4;
+            this.retryPolicy = ExponentialBackoffRetryPolicy.newBuilder()
+                .withMaxRetries(4)
+                .withNetworkErrorRetries(true)
+                .build();
+        }
+
+        /**
+         * Sets the size of the ranges large files are split into. Files no larger than the range
+         * size are downloaded with a single request on the calling thread.
+         *
+         * <p> Smaller ranges spread a file over more connections, but every range is a separate
+         * request. Defaults to {@link #DEFAULT_RANGE_SIZE}.
+         *
+         * @param rangeSize range size in bytes, a positive multiple of {@link
+         * DbxContentHasher#BLOCK_SIZE}
+         *
+         * @return this builder
+         *
+         * @throws IllegalArgumentException if {@code rangeSize} is not a positive multiple of the
+         * content hash block size
+         */
+        public Builder withRangeSize(long rangeSize) {
+            if (rangeSize <= 0 || rangeSize % DbxContentHasher.BLOCK_SIZE != 0) {
+                throw new IllegalArgumentException(
+                    "rangeSize must be a positive multiple of " + DbxContentHasher.BLOCK_SIZE
+                );
+            }
+            this.rangeSize = rangeSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of ranges downloaded concurrently, across all downloads.
+         * Defaults to {@code 4}.
+         *
+         * @param parallelism number of concurrent range requests, must be positive
+         *
+         * @return this builder
+         *
+         * @throws IllegalArgumentException if {@code parallelism} is not positive
+         */
+        public Builder withParallelism(int parallelism) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("parallelism must be positive");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets the policy deciding whether and when a failed range is downloaded again. Range
+         * requests are reported as idempotent.
+         *
+         * <p> Defaults to an {@link ExponentialBackoffRetryPolicy} that retries up to 4 times,
+         * including on network errors.
+         *
+         * @param retryPolicy retry policy for ranges
+         *
+         * @return this builder
+         */
+        public Builder withRetryPolicy(RetryPolicy retryPolicy) {
+            if (retryPolicy == null) throw new NullPointerException("retryPolicy");
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Returns a {@link DbxFileDownloader} with the values set by this builder.
+         *
+         * @return new downloader
+         */
+        public DbxFileDownloader build() {
+            return new DbxFileDownloader(this);
+        }
+    }
+}
@@ -0,0 +1,688 @@
+package com.dropbox.core.v2.files;
+
+import com.dropbox.core.DbxContentHasher;
+import com.dropbox.core.DbxException;
+import com.dropbox.core.ExponentialBackoffRetryPolicy;
+import com.dropbox.core.RetryPolicy;
+import com.dropbox.core.util.IOUtil;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*>>> import checkers.nullness.quals.Nullable; */
+
+/**
+ * Uploads local files to Dropbox in chunks, using upload sessions.
+ *
+ * <p> Files no larger than the chunk size are uploaded with a single {@code upload} request.
+ * Larger files are split into chunks that are uploaded with {@code upload_session/start}, {@code
+ * upload_session/append_v2} and {@code upload_session/finish}, one chunk per request. Chunks are
+ * read straight from the file (see {@link com.dropbox.core.DbxUploader#uploadAndFinish(FileChannel,
+ * long, long)}).
+ *
+ * <p> Failed chunks are retried on their own, according to the configured {@link RetryPolicy}.
+ * If the server reports that a chunk was sent at an incorrect offset (for example, because an
+ * attempt that failed on our side did reach the server), the upload continues from the offset
+ * the server expects.
+ *
+ * <p> Chunks of one upload session must be appended in order, so the chunks of a single file are
+ * uploaded one after another. Files submitted through {@link #submit} are uploaded concurrently,
+ * up to the configured parallelism, each over its own connection:
+ *
+ * <pre>
+ * DbxFileUploader uploader = DbxFileUploader.newBuilder(client.files())
+ *     .withParallelism(4)
+ *     .build();
+ * try {
+ *     List&lt;Future&lt;FileMetadata&gt;&gt; results = new ArrayList&lt;Future&lt;FileMetadata&gt;&gt;();
+ *     for (File file : files) {
+ *         CommitInfo commitInfo = CommitInfo.newBuilder("/Backup/" + file.getName()).build();
+ *         results.add(uploader.submit(file, commitInfo));
+ *     }
+ *     for (Future&lt;FileMetadata&gt; result : results) {
+ *         System.out.println(result.get().getPathDisplay());
+ *     }
+ * } finally {
+ *     uploader.close();
+ * }
+ * </pre>
+ *
+ * <p> With a {@link Builder#withJournalDirectory journal directory}, chunked uploads record their
+ * progress in a {@link DbxUploadJournal}. Uploads interrupted by a crash or restart can then be
+ * picked up again from the last acknowledged chunk:
+ *
+ * <pre>
+ * for (DbxUploadJournal journal : uploader.getInterruptedUploads()) {
+ *     try {
+ *         uploader.resume(journal);
+ *     } catch (DbxUploadJournal.SourceFileChangedException ex) {
+ *         journal.delete();
+ *     }
+ * }
+ * </pre>
+ *
+ * <p> This class is thread-safe.
+ */
+public final class DbxFileUploader implements Closeable {
+    /**
+     * Default size of the chunks large files are split into: 8 MiB.
+     */
+    public static final long DEFAULT_CHUNK_SIZE = 8L << 20;
+
+    /**
+     * Largest chunk size accepted by the server for a single request: 150 MiB.
+     */
+    public static final long MAX_CHUNK_SIZE = 150L << 20;
+
+    private static final String UPLOAD_ROUTE = "2/files/upload";
+    private static final String START_ROUTE = "2/files/upload_session/start";
+    private static final String APPEND_ROUTE = "2/files/upload_session/append_v2";
+    private static final String FINISH_ROUTE = "2/files/upload_session/finish";
+
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    // consecutive offset corrections without a successful request before we give up
+    private static final int MAX_OFFSET_CORRECTIONS = 3;
+
+    private final DbxUserFilesRequests files;
+    private final long chunkSize;
+    private final int parallelism;
+    private final RetryPolicy retryPolicy;
+    private final /*@Nullable*/ File journalDirectory;
+    private final Set<File> activeJournals;
+
+    private /*@Nullable*/ ExecutorService executor;
+    private boolean closed;
+
+    private DbxFileUploader(Builder builder) {
+        this.files = builder.files;
+        this.chunkSize = builder.chunkSize;
+        this.parallelism = builder.parallelism;
+        this.retryPolicy = builder.retryPolicy;
+        this.journalDirectory = builder.journalDirectory;
+        this.activeJournals = Collections.synchronizedSet(new HashSet<File>());
+
+        this.executor = null;
+        this.closed = false;
+    }
+
+    /**
+     * Returns a new builder for an uploader that uploads through the given requests.
+     *
+     * @param files requests used for uploading, such as {@code client.files()}
+     *
+     * @return builder for a {@link DbxFileUploader}
+     */
+    public static Builder newBuilder(DbxUserFilesRequests files) {
+        if (files == null) throw new NullPointerException("files");
+        return new Builder(files);
+    }
+
+    /**
+     * Returns the size of the chunks large files are split into.
+     *
+     * @return chunk size in bytes
+     */
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Returns the maximum number of files uploaded concurrently through {@link #submit}.
+     *
+     * @return number of concurrent uploads
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Uploads a file on the calling thread and commits it as described by {@code commitInfo}.
+     *
+     * @param file local file to upload
+     * @param commitInfo where and how to commit the file
+     *
+     * @return metadata of the uploaded file
+     *
+     * @throws DbxException if the upload failed for good
+     * @throws IOException if reading the file failed
+     */
+    public FileMetadata upload(File file, CommitInfo commitInfo) throws DbxException, IOException {
+        return upload(file, commitInfo, null);
+    }
+
+    /**
+     * Same as {@link #upload(File, CommitInfo)}, but reports the number of bytes of the file
+     * uploaded so far to {@code progressListener}. Progress may go backwards if a chunk is retried.
+     *
+     * @param file local file to upload
+     * @param commitInfo where and how to commit the file
+     * @param progressListener listener for upload progress, or {@code null}
+     *
+     * @return metadata of the uploaded file
+     *
+     * @throws DbxException if the upload failed for good
+     * @throws IOException if reading the file failed
+     */
+    public FileMetadata upload(File file,
+                               CommitInfo commitInfo,
+                               /*@Nullable*/ IOUtil.ProgressListener progressListener)
+        throws DbxException, IOException {
+        if (file == null) throw new NullPointerException("file");
+        if (commitInfo == null) throw new NullPointerException("commitInfo");
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size <= chunkSize) {
+                return uploadSingle(channel, size, commitInfo, progressListener);
+            }
+            if (journalDirectory == null) {
+                return new ChunkedUpload(channel, size, commitInfo, null, progressListener).run();
+            }
+
+            File journalFile = new File(journalDirectory, "upload-" + UUID.randomUUID() + JOURNAL_SUFFIX);
+            DbxUploadJournal journal = DbxUploadJournal.create(journalFile, file, commitInfo);
+            return runJournaled(new ChunkedUpload(channel, size, commitInfo, journal, progressListener), journal);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the journals of chunked uploads that were interrupted, for example because the
+     * process was restarted, and can be {@link #resume resumed}. Uploads in progress in this
+     * uploader are not returned.
+     *
+     * @return interrupted uploads, empty if this uploader has no {@link
+     * Builder#withJournalDirectory journal directory}
+     *
+     * @throws IOException if the journal directory could not be listed
+     */
+    public List<DbxUploadJournal> getInterruptedUploads() throws IOException {
+        List<DbxUploadJournal> journals = new ArrayList<DbxUploadJournal>();
+        if (journalDirectory == null) {
+            return journals;
+        }
+
+        File [] journalFiles = journalDirectory.listFiles();
+        if (journalFiles == null) {
+            throw new IOException("Unable to list journal directory: " + journalDirectory);
+        }
+        for (File journalFile : journalFiles) {
+            if (!journalFile.getName().endsWith(JOURNAL_SUFFIX) || isActive(journalFile)) {
+                continue;
+            }
+            try {
+                journals.add(DbxUploadJournal.read(journalFile));
+            } catch (IOException ex) {
+                // a journal torn before its header was written: its upload never started
+            }
+        }
+        return journals;
+    }
+
+    /**
+     * Resumes an interrupted upload on the calling thread, continuing from the last offset the
+     * server acknowledged. The journal is deleted once the file is committed.
+     *
+     * <p> Upload sessions expire on the server, so an upload interrupted for too long fails
+     * with an {@link UploadSessionLookupErrorException}. Use {@link DbxUploadJournal#delete} to
+     * abandon such uploads.
+     *
+     * @param journal journal of the interrupted upload, see {@link #getInterruptedUploads}
+     *
+     * @return metadata of the uploaded file
+     *
+     * @throws DbxUploadJournal.SourceFileChangedException if the source file changed since the
+     * upload started. The journal is kept.
+     * @throws DbxException if the upload failed for good
+     * @throws IOException if reading the file or writing the journal failed
+     */
+    public FileMetadata resume(DbxUploadJournal journal) throws DbxException, IOException {
+        return resume(journal, null);
+    }
+
+    /**
+     * Same as {@link #resume(DbxUploadJournal)}, but reports the number of bytes of the file
+     * uploaded so far to {@code progressListener}.
+     */
+    public FileMetadata resume(DbxUploadJournal journal, /*@Nullable*/ IOUtil.ProgressListener progressListener)
+        throws DbxException, IOException {
+        if (journal == null) throw new NullPointerException("journal");
+        journal.verifySource();
+
+        RandomAccessFile raf = new RandomAccessFile(journal.getSourceFile(), "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ChunkedUpload upload = new ChunkedUpload(
+                channel, channel.size(), journal.getCommitInfo(), journal, progressListener
+            );
+            upload.sessionId = journal.getSessionId();
+            upload.offset = journal.getOffset();
+            return runJournaled(upload, journal);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Uploads a file in the background. At most {@link #getParallelism} files are uploaded at
+     * the same time; the others wait in submission order.
+     *
+     * @param file local file to upload
+     * @param commitInfo where and how to commit the file
+     *
+     * @return future holding the metadata of the uploaded file, or the {@link DbxException} or
+     * {@link IOException} that made the upload fail
+     *
+     * @throws IllegalStateException if this uploader has been closed
+     */
+    public Future<FileMetadata> submit(File file, CommitInfo commitInfo) {
+        return submit(file, commitInfo, null);
+    }
+
+    /**
+     * Same as {@link #submit(File, CommitInfo)}, but reports upload progress to {@code
+     * progressListener} (see {@link #upload(File, CommitInfo, IOUtil.ProgressListener)}). The
+     * listener is called on a background thread.
+     */
+    public Future<FileMetadata> submit(final File file,
+                                       final CommitInfo commitInfo,
+                                       final /*@Nullable*/ IOUtil.ProgressListener progressListener) {
+        if (file == null) throw new NullPointerException("file");
+        if (commitInfo == null) throw new NullPointerException("commitInfo");
+
+        return getExecutor().submit(new Callable<FileMetadata>() {
+            @Override
+            public FileMetadata call() throws DbxException, IOException {
+                return upload(file, commitInfo, progressListener);
+            }
+        });
+    }
+
+    /**
+     * Stops accepting new uploads. Submitted uploads still complete. Uploads on the calling
+     * thread are not affected.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (closed) {
+            throw new IllegalStateException("Uploader already closed.");
+        }
+        if (executor == null) {
+            final AtomicInteger threads = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "dropbox-file-uploader-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    private FileMetadata runJournaled(ChunkedUpload upload, DbxUploadJournal journal)
+        throws DbxException, IOException {
+        if (!activeJournals.add(journal.getJournalFile().getAbsoluteFile())) {
+            throw new IllegalStateException("Upload is already in progress: " + journal.getJournalFile());
+        }
+        try {
+            FileMetadata metadata = upload.run();
+            journal.delete();
+            return metadata;
+        } finally {
+            journal.close();
+            activeJournals.remove(journal.getJournalFile().getAbsoluteFile());
+        }
+    }
+
+    private boolean isActive(File journalFile) {
+        return activeJournals.contains(journalFile.getAbsoluteFile());
+    }
+
+    private FileMetadata uploadSingle(FileChannel channel,
+                                      long size,
+                                      CommitInfo commitInfo,
+                                      /*@Nullable*/ IOUtil.ProgressListener progressListener)
+        throws DbxException, IOException {
+        RequestAttempts attempts = new RequestAttempts(retryPolicy, UPLOAD_ROUTE, false);
+        while (true) {
+            try {
+                return files.upload(commitInfo).uploadAndFinish(channel, 0, size, progressListener);
+            } catch (DbxException ex) {
+                attempts.failed(ex);
+            }
+            // the failed attempt may have committed the file, sending it again would commit a
+            // second copy
+            FileMetadata committed = findCommitted(channel, size, commitInfo);
+            if (committed != null) {
+                return committed;
+            }
+        }
+    }
+
+    private RequestAttempts chunkAttempts(String route) {
+        // chunks are sent with their offset, so retrying them is always safe. A retried start
+        // at worst leaves an unused session behind.
+        return new RequestAttempts(retryPolicy, route, true);
+    }
+
+    /**
+     * Returns the metadata of the file at the path of {@code commitInfo} if it has the content of
+     * {@code channel}, which means an attempt whose outcome we did not learn committed it.
+     * Returns {@code null} otherwise, or if the file could not be looked up.
+     */
+    private /*@Nullable*/ FileMetadata findCommitted(FileChannel channel, long size, CommitInfo commitInfo)
+        throws IOException {
+        Metadata metadata;
+        try {
+            metadata = files.getMetadata(commitInfo.getPath());
+        } catch (DbxException ex) {
+            return null;
+        }
+        if (!(metadata instanceof FileMetadata)) {
+            return null;
+        }
+
+        FileMetadata file = (FileMetadata) metadata;
+        if (file.getSize() != size || file.getContentHash() == null) {
+            return null;
+        }
+        DbxContentHasher hasher = new DbxContentHasher();
+        IOUtil.copyChannelToStream(channel, 0, size, hasher.asOutputStream());
+        return file.getContentHash().equals(hasher.digestHex()) ? file : null;
+    }
+
+    /**
+     * State of an upload through an upload session. {@link #offset} is the number of bytes the
+     * server has acknowledged.
+     */
+    private final class ChunkedUpload {
+        private final FileChannel channel;
+        private final long size;
+        private final CommitInfo commitInfo;
+        private final /*@Nullable*/ DbxUploadJournal journal;
+        private final /*@Nullable*/ IOUtil.ProgressListener progressListener;
+
+        private /*@Nullable*/ String sessionId;
+        private long offset;
+        private int corrections;
+
+        private ChunkedUpload(FileChannel channel,
+                              long size,
+                              CommitInfo commitInfo,
+                              /*@Nullable*/ DbxUploadJournal journal,
+                              /*@Nullable*/ IOUtil.ProgressListener progressListener) {
+            this.channel = channel;
+            this.size = size;
+            this.commitInfo = commitInfo;
+            this.journal = journal;
+            this.progressListener = progressListener;
+
+            this.sessionId = null;
+            this.offset = 0;
+            this.corrections = 0;
+        }
+
+        FileMetadata run() throws DbxException, IOException {
+            if (sessionId == null) {
+                start();
+            }
+            while (true) {
+                if (size - offset > chunkSize) {
+                    append();
+                } else {
+                    FileMetadata metadata = finish();
+                    if (metadata != null) {
+                        return metadata;
+                    }
+                }
+            }
+        }
+
+        private void start() throws DbxException, IOException {
+            long count = Math.min(chunkSize, size);
+            RequestAttempts attempts = chunkAttempts(START_ROUTE);
+            while (true) {
+                try {
+                    sessionId = files.uploadSessionStart()
+                        .uploadAndFinish(channel, 0, count, progress(0))
+                        .getSessionId();
+                    if (journal != null) {
+                        journal.started(sessionId, count);
+                    }
+                    offset = count;
+                    return;
+                } catch (DbxException ex) {
+                    attempts.failed(ex);
+                }
+            }
+        }
+
+        private void append() throws DbxException, IOException {
+            long count = chunkSize;
+            RequestAttempts attempts = chunkAttempts(APPEND_ROUTE);
+            while (true) {
+                try {
+                    files.uploadSessionAppendV2(new UploadSessionCursor(sessionId, offset))
+                        .uploadAndFinish(channel, offset, count, progress(offset));
+                    acknowledged(offset + count);
+                    return;
+                } catch (UploadSessionLookupErrorException ex) {
+                    if (!ex.errorValue.isIncorrectOffset()) {
+                        throw ex;
+                    }
+                    correct(ex.errorValue.getIncorrectOffsetValue().getCorrectOffset(), ex);
+                    return;
+                } catch (DbxException ex) {
+                    attempts.failed(ex);
+                }
+            }
+        }
+
+        /**
+         * Commits the rest of the file. Returns {@code null} if the server expects the remaining
+         * bytes at a different offset.
+         */
+        private /*@Nullable*/ FileMetadata finish() throws DbxException, IOException {
+            // finishing commits the file and ends the session, so it is not idempotent
+            RequestAttempts attempts = new RequestAttempts(retryPolicy, FINISH_ROUTE, false);
+            boolean retried = false;
+            while (true) {
+                try {
+                    return files.uploadSessionFinish(new UploadSessionCursor(sessionId, offset), commitInfo)
+                        .uploadAndFinish(channel, offset, size - offset, progress(offset));
+                } catch (UploadSessionFinishErrorException ex) {
+                    if (!ex.errorValue.isLookupFailed()) {
+                        throw ex;
+                    }
+                    UploadSessionLookupError lookupError = ex.errorValue.getLookupFailedValue();
+                    if (retried && (lookupError.isNotFound() || lookupError.isClosed())) {
+                        // an earlier attempt may have committed the file and ended the session
+                        FileMetadata committed = findCommitted(channel, size, commitInfo);
+                        if (committed != null) {
+                            return committed;
+                        }
+                    }
+                    if (!lookupError.isIncorrectOffset()) {
+                        throw ex;
+                    }
+                    correct(lookupError.getIncorrectOffsetValue().getCorrectOffset(), ex);
+                    return null;
+                } catch (DbxException ex) {
+                    attempts.failed(ex);
+                    retried = true;
+                }
+            }
+        }
+
+        private void acknowledged(long offset) throws IOException {
+            if (journal != null) {
+                journal.acknowledged(offset);
+            }
+            this.offset = offset;
+            this.corrections = 0;
+        }
+
+        private void correct(long correctOffset, DbxException error) throws DbxException, IOException {
+            // the server can't expect bytes we never had, and a server that keeps disagreeing with
+            // us is not going to converge.
+            if (correctOffset < 0 || correctOffset > size || ++corrections > MAX_OFFSET_CORRECTIONS) {
+                throw error;
+            }
+            if (journal != null) {
+                journal.acknowledged(correctOffset);
+            }
+            offset = correctOffset;
+        }
+
+        private /*@Nullable*/ IOUtil.ProgressListener progress(final long base) {
+            if (progressListener == null) {
+                return null;
+            }
+            return new IOUtil.ProgressListener() {
+                @Override
+                public void onProgress(long bytesWritten) {
+                    progressListener.onProgress(base + bytesWritten);
+                }
+            };
+        }
+    }
+
+    /**
+     * Builder for {@link DbxFileUploader}.
+     */
+    public static final class Builder {
+        private final DbxUserFilesRequests files;
+
+        private long chunkSize;
+        private int parallelism;
+        private RetryPolicy retryPolicy;
+        private /*@Nullable*/ File journalDirectory;
+
+        private Builder(DbxUserFilesRequests files) {
+            this.files = files;
+            this.journalDirectory = null;
+
+            this.chunkSize = DEFAULT_CHUNK_SIZE;
+            this.parallelism = 4;
+            this.retryPolicy = ExponentialBackoffRetryPolicy.newBuilder()
+                .withMaxRetries(4)
+                .withNetworkErrorRetries(true)
+                .build();
+        }
+
+        /**
+         * Sets the size of the chunks large files are split into. Files no larger than the chunk
+         * size are uploaded with a single request.
+         *
+         * <p> Larger chunks need fewer requests, but more bytes are sent again when a chunk is
+         * retried. Use a multiple of 4 MiB. Defaults to {@link #DEFAULT_CHUNK_SIZE}.
+         *
+         * @param chunkSize chunk size in bytes, between 1 byte and {@link #MAX_CHUNK_SIZE}
+         *
+         * @return this builder
+         *
+         * @throws IllegalArgumentException if {@code chunkSize} is out of range
+         */
+        public Builder withChunkSize(long chunkSize) {
+            if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+                throw new IllegalArgumentException("chunkSize must be between 1 and " + MAX_CHUNK_SIZE);
+            }
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of files uploaded concurrently through {@link
+         * DbxFileUploader#submit}. Defaults to {@code 4}.
+         *
+         * @param parallelism number of concurrent uploads, must be positive
+         *
+         * @return this builder
+         *
+         * @throws IllegalArgumentException if {@code parallelism} is not positive
+         */
+        public Builder withParallelism(int parallelism) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("parallelism must be positive");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets the policy deciding whether and when a failed chunk is uploaded again. Requests
+         * that start a session or append to it are reported as idempotent. Requests that commit
+         * the file, single {@code upload} requests and {@code upload_session/finish}, are not:
+         * the default policy does not retry their network errors, since the file may have been
+         * committed. When such a request is retried anyway, the uploader first checks whether
+         * the file was committed.
+         *
+         * <p> Defaults to an {@link ExponentialBackoffRetryPolicy} that retries up to 4 times,
+         * including on network errors.
+         *
+         * @param retryPolicy retry policy for chunks
+         *
+         * @return this builder
+         */
+        public Builder withRetryPolicy(RetryPolicy retryPolicy) {
+            if (retryPolicy == null) throw new NullPointerException("retryPolicy");
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the directory chunked uploads keep their {@link DbxUploadJournal journal} in, so
+         * they can be {@link DbxFileUploader#resume resumed} after the process was restarted.
+         * Each journal is synced to disk after every chunk. Files uploaded with a single request
+         * are not journaled.
+         *
+         * <p> Defaults to {@code null}: uploads are not journaled.
+         *
+         * @param journalDirectory existing directory for journals, or {@code null} to disable
+         * journaling
+         *
+         * @return this builder
+         */
+        public Builder withJournalDirectory(/*@Nullable*/ File journalDirectory) {
+            this.journalDirectory = journalDirectory;
+            return this;
+        }
+
+        /**
+         * Returns a {@link DbxFileUploader} with the values set by this builder.
+         *
+         * @return new uploader
+         */
+        public DbxFileUploader build() {
+            return new DbxFileUploader(this);
+        }
+    }
+}
@@ -0,0 +1,512 @@
+package com.dropbox.core.v2.files;
+
+import com.dropbox.core.DbxException;
+import com.dropbox.core.ExponentialBackoffRetryPolicy;
+import com.dropbox.core.NetworkIOException;
+import com.dropbox.core.RetryPolicy;
+import com.dropbox.core.util.Collector;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*>>> import checkers.nullness.quals.Nullable; */
+
+/**
+ * Lists everything below a folder by listing its subfolders in parallel.
+ *
+ * <p> A recursive {@link DbxUserFilesRequests#listFolder} is a single chain of pages, each
+ * requested once the previous one arrived, which takes hours for wide team folders. This class
+ * instead lists every folder on its own, without recursion, and lists the subfolders it finds
+ * concurrently on a pool of {@link #getParallelism} threads. Entries are handed to a {@link
+ * Collector} as they are parsed, as by {@link DbxListFolderPager}:
+ *
+ * <pre>
+ * DbxFolderCrawler crawler = DbxFolderCrawler.newBuilder(client.files())
+ *     .withParallelism(16)
+ *     .withLatestCursor(true)
+ *     .build();
+ * try {
+ *     DbxFolderCrawler.Result&lt;Long&gt; result = crawler.crawl("/Team", new Collector&lt;Metadata, Long&gt;() {
+ *         private long files = 0;
+ *
+ *         public void add(Metadata entry) {
+ *             if (entry instanceof FileMetadata) {
+ *                 ++files;
+ *             }
+ *         }
+ *
+ *         public Long finish() {
+ *             return files;
+ *         }
+ *     });
+ *     // follow changes from here on with listFolderContinue(result.getCursor())
+ * } finally {
+ *     crawler.close();
+ * }
+ * </pre>
+ *
+ * <p> Folders are listed once per folder ID, so folders reachable through several paths are
+ * not listed twice. Entries come in no particular order, but a folder is always collected before
+ * its entries. The collector is called by one thread at a time.
+ *
+ * <p> Requests go through the rate limiter and retry policy of the client's {@link
+ * com.dropbox.core.DbxRequestConfig}, which slow all crawling threads down together when Dropbox
+ * limits the rate of requests. Pages that still fail are retried according to the {@link
+ * Builder#withRetryPolicy retry policy} of the crawler, which honors the backoff of rate limit
+ * errors, from the cursor of the last page listed.
+ *
+ * <p> This class is thread-safe.
+ */
+public final class DbxFolderCrawler implements Closeable {
+    private static final String LIST_FOLDER_ROUTE = "2/files/list_folder";
+    private static final String LIST_FOLDER_CONTINUE_ROUTE = "2/files/list_folder/continue";
+    private static final String GET_LATEST_CURSOR_ROUTE = "2/files/list_folder/get_latest_cursor";
+
+    private final DbxUserFilesRequests files;
+    private final DbxListFolderPager pager;
+    private final int parallelism;
+    private final boolean latestCursor;
+    private final RetryPolicy retryPolicy;
+
+    private /*@Nullable*/ ExecutorService executor;
+    private boolean closed;
+
+    private DbxFolderCrawler(Builder builder) {
+        this.files = builder.files;
+        this.pager = new DbxListFolderPager(builder.files);
+        this.parallelism = builder.parallelism;
+        this.latestCursor = builder.latestCursor;
+        this.retryPolicy = builder.retryPolicy;
+
+        this.executor = null;
+        this.closed = false;
+    }
+
+    /**
+     * Returns a new builder for a crawler that lists folders through the given requests.
+     *
+     * @param files requests used for listing, such as {@code client.files()}
+     *
+     * @return builder for a {@link DbxFolderCrawler}
+     */
+    public static Builder newBuilder(DbxUserFilesRequests files) {
+        if (files == null) throw new NullPointerException("files");
+        return new Builder(files);
+    }
+
+    /**
+     * Returns the maximum number of folders listed concurrently.
+     *
+     * @return number of crawling threads
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Lists all files and folders below {@code path}, not including the folder at {@code path}
+     * itself, and hands them to {@code collector}.
+     *
+     * <p> Folders deleted while the crawl is running are skipped. If {@link
+     * Builder#withLatestCursor latest cursors} are enabled, the cursor is taken before the crawl
+     * starts, so that changes made during the crawl are listed by {@link
+     * DbxUserFilesRequests#listFolderContinue} afterwards; some of them may then be listed twice.
+     *
+     * @param path path of the folder to crawl, {@code ""} for the root folder
+     * @param collector receives every entry, and is finished once the crawl is complete
+     *
+     * @return finished collector, number of folders listed, and the cursor to follow changes
+     * from, if enabled
+     *
+     * @throws ListFolderErrorException if the folder at {@code path} could not be listed
+     * @throws DbxException if a request failed for good. The crawl is stopped, and the
+     * collector is not called anymore.
+     * @throws IllegalStateException if this crawler has been closed
+     */
+    public <C> Result<C> crawl(String path, Collector<Metadata, ? extends C> collector)
+        throws ListFolderErrorException, DbxException {
+        if (path == null) throw new NullPointerException("path");
+        if (collector == null) throw new NullPointerException("collector");
+
+        String cursor = latestCursor ? getLatestCursor(path) : null;
+
+        Crawl crawl = new Crawl(collector);
+        crawl.submit(path, true);
+        crawl.await();
+        return new Result<C>(collector.finish(), crawl.folders.get(), cursor);
+    }
+
+    /**
+     * Stops the crawling threads once the crawls already started are done.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (closed) {
+            throw new IllegalStateException("Crawler already closed.");
+        }
+        if (executor == null) {
+            final AtomicInteger threads = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "dropbox-folder-crawler-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    private String getLatestCursor(String path) throws DbxException {
+        RequestAttempts attempts = new RequestAttempts(retryPolicy, GET_LATEST_CURSOR_ROUTE, true);
+        while (true) {
+            try {
+                return files.listFolderGetLatestCursorBuilder(path)
+                    .withRecursive(true)
+                    .start()
+                    .getCursor();
+            } catch (ListFolderErrorException ex) {
+                throw ex;
+            } catch (DbxException ex) {
+                attempts.failed(ex);
+            }
+        }
+    }
+
+    /**
+     * State of one call to {@link #crawl}.
+     */
+    private final class Crawl {
+        private final Collector<Metadata, ?> collector;
+        // IDs of the folders found so far
+        private final ConcurrentMap<String, Boolean> seen;
+        private final AtomicInteger folders;
+
+        // guarded by this
+        private int pending;
+        private boolean stopped;
+        private /*@Nullable*/ Throwable failure;
+
+        private Crawl(Collector<Metadata, ?> collector) {
+            this.collector = collector;
+            this.seen = new ConcurrentHashMap<String, Boolean>();
+            this.folders = new AtomicInteger();
+
+            this.pending = 0;
+            this.stopped = false;
+            this.failure = null;
+        }
+
+        private synchronized void submit(final String path, final boolean root) {
+            if (stopped) {
+                return;
+            }
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    Throwable error = null;
+                    try {
+                        listFolder(Crawl.this, path, root);
+                    } catch (Throwable t) {
+                        error = t;
+                    }
+                    finished(error);
+                }
+            });
+            // the task can't finish before we release the lock
+            ++pending;
+        }
+
+        private synchronized void finished(/*@Nullable*/ Throwable error) {
+            --pending;
+            if (error != null && failure == null) {
+                failure = error;
+                stopped = true;
+            }
+            notifyAll();
+        }
+
+        private synchronized boolean isStopped() {
+            return stopped;
+        }
+
+        /**
+         * Hands {@code entry} to the collector, and crawls it if it is a folder seen for the first
+         * time.
+         */
+        private void add(Metadata entry) {
+            FolderMetadata folder = null;
+            if (entry instanceof FolderMetadata) {
+                folder = (FolderMetadata) entry;
+                if (seen.putIfAbsent(folder.getId(), Boolean.TRUE) != null) {
+                    return;
+                }
+            }
+            synchronized (this) {
+                if (stopped) {
+                    return;
+                }
+                collector.add(entry);
+            }
+            // only once collected, so that folders are collected before their entries
+            if (folder != null) {
+                submit(folder.getPathLower() != null ? folder.getPathLower() : folder.getId(), false);
+            }
+        }
+
+        /**
+         * Waits until all folders were listed, or throws the first failure.
+         */
+        private synchronized void await() throws DbxException {
+            try {
+                while (pending > 0 && failure == null) {
+                    wait();
+                }
+            } catch (InterruptedException ex) {
+                stopped = true;
+                // preserve interrupt
+                Thread.currentThread().interrupt();
+                throw new NetworkIOException(new InterruptedIOException("Interrupted while crawling"));
+            }
+
+            if (failure instanceof DbxException) {
+                throw (DbxException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+        }
+    }
+
+    /**
+     * Lists one folder, page by page, without recursion.
+     */
+    private void listFolder(Crawl crawl, String path, boolean root) throws DbxException {
+        PageCollector collector = new PageCollector(crawl);
+        DbxListFolderPager.Result<Void> page;
+        try {
+            page = firstPage(path, collector);
+        } catch (ListFolderErrorException ex) {
+            if (!root && ex.errorValue.isPath() && ex.errorValue.getPathValue().isNotFound()) {
+                // deleted since its parent was listed
+                return;
+            }
+            throw ex;
+        }
+        crawl.folders.incrementAndGet();
+
+        while (page.getHasMore() && !crawl.isStopped()) {
+            page = nextPage(page.getCursor(), collector);
+        }
+    }
+
+    private DbxListFolderPager.Result<Void> firstPage(String path, PageCollector collector)
+        throws ListFolderErrorException, DbxException {
+        ListFolderArg arg = ListFolderArg.newBuilder(path).build();
+        RequestAttempts attempts = new RequestAttempts(retryPolicy, LIST_FOLDER_ROUTE, true);
+        collector.nextPage();
+        while (true) {
+            try {
+                collector.nextAttempt();
+                return pager.listFolderPage(arg, collector);
+            } catch (ListFolderErrorException ex) {
+                throw ex;
+            } catch (DbxException ex) {
+                attempts.failed(ex);
+            }
+        }
+    }
+
+    private DbxListFolderPager.Result<Void> nextPage(String cursor, PageCollector collector)
+        throws ListFolderContinueErrorException, DbxException {
+        RequestAttempts attempts = new RequestAttempts(retryPolicy, LIST_FOLDER_CONTINUE_ROUTE, true);
+        collector.nextPage();
+        while (true) {
+            try {
+                collector.nextAttempt();
+                return pager.listFolderContinuePage(cursor, collector);
+            } catch (ListFolderContinueErrorException ex) {
+                throw ex;
+            } catch (DbxException ex) {
+                attempts.failed(ex);
+            }
+        }
+    }
+
+    /**
+     * Forwards the entries of a page to the crawl, skipping the entries already forwarded by
+     * earlier attempts at the same page.
+     */
+    private static final class PageCollector extends Collector<Metadata, Void> {
+        private final Crawl crawl;
+        private long forwarded;
+        private long position;
+
+        private PageCollector(Crawl crawl) {
+            this.crawl = crawl;
+        }
+
+        void nextPage() {
+            forwarded = 0;
+        }
+
+        void nextAttempt() {
+            position = 0;
+        }
+
+        @Override
+        public void add(Metadata entry) {
+            if (position++ < forwarded) {
+                return;
+            }
+            ++forwarded;
+            crawl.add(entry);
+        }
+
+        @Override
+        public Void finish() {
+            return null;
+        }
+    }
+
+    /**
+     * Result of a crawl.
+     *
+     * @param <C> type of the finished collector
+     */
+    public static final class Result<C> {
+        private final C entries;
+        private final int folders;
+        private final /*@Nullable*/ String cursor;
+
+        private Result(C entries, int folders, /*@Nullable*/ String cursor) {
+            this.entries = entries;
+            this.folders = folders;
+            this.cursor = cursor;
+        }
+
+        /**
+         * Returns the value the collector was finished with.
+         *
+         * @return finished collector
+         */
+        public C getEntries() {
+            return entries;
+        }
+
+        /**
+         * Returns the number of folders listed, including the crawled folder itself.
+         *
+         * @return number of folders listed
+         */
+        public int getFolders() {
+            return folders;
+        }
+
+        /**
+         * Returns a recursive cursor for the crawled folder, taken before the crawl started, from
+         * which to follow changes with {@link DbxUserFilesRequests#listFolderContinue}.
+         *
+         * @return cursor to follow changes from, or {@code null} if {@link
+         * Builder#withLatestCursor latest cursors} are disabled
+         */
+        public /*@Nullable*/ String getCursor() {
+            return cursor;
+        }
+    }
+
+    /**
+     * Builder for {@link DbxFolderCrawler}.
+     */
+    public static final class Builder {
+        private final DbxUserFilesRequests files;
+
+        private int parallelism;
+        private boolean latestCursor;
+        private RetryPolicy retryPolicy;
+
+        private Builder(DbxUserFilesRequests files) {
+            this.files = files;
+
+            this.parallelism = 8;
+            this.latestCursor = false;
+            this.retryPolicy = ExponentialBackoffRetryPolicy.newBuilder()
+                .withMaxRetries(4)
+                .withNetworkErrorRetries(true)
+                .build();
+        }
+
+        /**
+         * Sets the maximum number of folders listed concurrently. Defaults to {@code 8}.
+         *
+         * @param parallelism number of crawling threads, must be positive
+         *
+         * @return this builder
+         *
+         * @throws IllegalArgumentException if {@code parallelism} is not positive
+         */
+        public Builder withParallelism(int parallelism) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("parallelism must be positive");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets whether crawls also return a recursive cursor for the crawled folder (see {@link
+         * Result#getCursor}), so that callers can switch to following changes once the crawl is
+         * complete. Defaults to {@code false}.
+         *
+         * @param latestCursor whether to take a cursor before each crawl
+         *
+         * @return this builder
+         */
+        public Builder withLatestCursor(boolean latestCursor) {
+            this.latestCursor = latestCursor;
+            return this;
+        }
+
+        /**
+         * Sets the policy deciding whether and when a page that failed is listed again.
+         *
+         * <p> Defaults to an {@link ExponentialBackoffRetryPolicy} that retries up to 4 times,
+         * including on network errors.
+         *
+         * @param retryPolicy retry policy for listing pages
+         *
+         * @return this builder
+         */
+        public Builder withRetryPolicy(RetryPolicy retryPolicy) {
+            if (retryPolicy == null) throw new NullPointerException("retryPolicy");
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Returns a {@link DbxFolderCrawler} with the values set by this builder.
+         *
+         * @return new crawler
+         */
+        public DbxFolderCrawler build() {
+            return new DbxFolderCrawler(this);
+        }
+    }
+}
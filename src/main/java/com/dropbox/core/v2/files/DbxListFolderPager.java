@@ -0,0 +1,353 @@
+package com.dropbox.core.v2.files;
+
+import com.dropbox.core.DbxException;
+import com.dropbox.core.DbxWrappedException;
+import com.dropbox.core.stone.StoneSerializers;
+import com.dropbox.core.stone.StructSerializer;
+import com.dropbox.core.util.Collector;
+import com.dropbox.core.v2.DbxRawClientV2;
+
+import com.fasterxml.jackson.core.JsonGenerationException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * Lists folders without holding their entries in memory.
+ *
+ * <p> {@link DbxUserFilesRequests#listFolder} and {@link DbxUserFilesRequests#listFolderContinue}
+ * return each page as a {@link ListFolderResult} holding all of its entries, and callers walking
+ * a large folder tree keep every page around until they are done with it. This class instead
+ * hands each {@link Metadata} entry to a {@link Collector} as soon as it is parsed from the
+ * response, and follows {@code cursor} and {@code has_more} from page to page, so memory use does
+ * not grow with the size of the folder:
+ *
+ * <pre>
+ * DbxListFolderPager pager = new DbxListFolderPager(client.files());
+ * DbxListFolderPager.Result&lt;Long&gt; result = pager.listFolder(
+ *     ListFolderArg.newBuilder("/Photos").withRecursive(true).build(),
+ *     new Collector&lt;Metadata, Long&gt;() {
+ *         private long size = 0;
+ *
+ *         public void add(Metadata entry) {
+ *             if (entry instanceof FileMetadata) {
+ *                 size += ((FileMetadata) entry).getSize();
+ *             }
+ *         }
+ *
+ *         public Long finish() {
+ *             return size;
+ *         }
+ *     }
+ * );
+ * System.out.println("Total size: " + result.getEntries());
+ * System.out.println("Cursor for changes: " + result.getCursor());
+ * </pre>
+ *
+ * <p> Pages are requested one after the other, as by {@link DbxUserFilesRequests#listFolder}.
+ * If a page is retried after some of its entries were collected, for instance because the
+ * connection broke while reading it, those entries are not collected again. Exceptions thrown by
+ * the collector stop the listing and are not retried.
+ *
+ * <p> This class is thread-safe, but collectors are not shared between listings.
+ */
+public final class DbxListFolderPager {
+    private static final String LIST_FOLDER_ROUTE = "2/files/list_folder";
+    private static final String LIST_FOLDER_CONTINUE_ROUTE = "2/files/list_folder/continue";
+
+    private final DbxUserFilesRequests files;
+
+    /**
+     * Creates a pager that lists folders through the given requests.
+     *
+     * @param files requests used for listing, such as {@code client.files()}
+     */
+    public DbxListFolderPager(DbxUserFilesRequests files) {
+        if (files == null) throw new NullPointerException("files");
+        this.files = files;
+    }
+
+    /**
+     * Lists the folder described by {@code arg}, page after page until the listing is complete,
+     * and returns the finished collector along with the cursor of the last page.
+     *
+     * @param arg folder to list and listing options
+     * @param collector receives every entry, and is finished once the listing is complete
+     *
+     * @return finished collector and cursor for {@link DbxUserFilesRequests#listFolderLongpoll}
+     * or later calls to {@link #listFolderContinue}
+     *
+     * @throws ListFolderErrorException if the folder could not be listed
+     * @throws ListFolderContinueErrorException if a later page could not be listed
+     * @throws DbxException if a request failed
+     */
+    public <C> Result<C> listFolder(ListFolderArg arg, Collector<Metadata, ? extends C> collector)
+        throws ListFolderErrorException, ListFolderContinueErrorException, DbxException {
+        if (arg == null) throw new NullPointerException("arg");
+        if (collector == null) throw new NullPointerException("collector");
+
+        PageEnd page = firstPage(arg, collector);
+        while (page.hasMore) {
+            page = nextPage(page.cursor, collector);
+        }
+        return new Result<C>(collector.finish(), page.cursor, false);
+    }
+
+    /**
+     * Lists the changes since {@code cursor}, page after page until the listing is complete, and
+     * returns the finished collector along with the cursor of the last page.
+     *
+     * @param cursor cursor returned by an earlier listing
+     * @param collector receives every entry, and is finished once the listing is complete
+     *
+     * @return finished collector and cursor for later calls
+     *
+     * @throws ListFolderContinueErrorException if the changes could not be listed, for instance
+     * because the cursor has been reset
+     * @throws DbxException if a request failed
+     */
+    public <C> Result<C> listFolderContinue(String cursor, Collector<Metadata, ? extends C> collector)
+        throws ListFolderContinueErrorException, DbxException {
+        if (cursor == null) throw new NullPointerException("cursor");
+        if (collector == null) throw new NullPointerException("collector");
+
+        PageEnd page = nextPage(cursor, collector);
+        while (page.hasMore) {
+            page = nextPage(page.cursor, collector);
+        }
+        return new Result<C>(collector.finish(), page.cursor, false);
+    }
+
+    /**
+     * Lists the first page of the folder described by {@code arg}, for callers that want to
+     * decide when to fetch each page. Continue with {@link #listFolderContinuePage} while {@link
+     * Result#getHasMore} is {@code true}.
+     *
+     * @param arg folder to list and listing options
+     * @param collector receives the entries of the page, and is finished after the page
+     *
+     * @return finished collector, cursor of the page, and whether more entries remain
+     *
+     * @throws ListFolderErrorException if the folder could not be listed
+     * @throws DbxException if the request failed
+     */
+    public <C> Result<C> listFolderPage(ListFolderArg arg, Collector<Metadata, ? extends C> collector)
+        throws ListFolderErrorException, DbxException {
+        if (arg == null) throw new NullPointerException("arg");
+        if (collector == null) throw new NullPointerException("collector");
+
+        PageEnd page = firstPage(arg, collector);
+        return new Result<C>(collector.finish(), page.cursor, page.hasMore);
+    }
+
+    /**
+     * Lists the page following {@code cursor}.
+     *
+     * @param cursor cursor returned by an earlier listing
+     * @param collector receives the entries of the page, and is finished after the page
+     *
+     * @return finished collector, cursor of the page, and whether more entries remain
+     *
+     * @throws ListFolderContinueErrorException if the page could not be listed, for instance
+     * because the cursor has been reset
+     * @throws DbxException if the request failed
+     */
+    public <C> Result<C> listFolderContinuePage(String cursor, Collector<Metadata, ? extends C> collector)
+        throws ListFolderContinueErrorException, DbxException {
+        if (cursor == null) throw new NullPointerException("cursor");
+        if (collector == null) throw new NullPointerException("collector");
+
+        PageEnd page = nextPage(cursor, collector);
+        return new Result<C>(collector.finish(), page.cursor, page.hasMore);
+    }
+
+    private PageEnd firstPage(ListFolderArg arg, Collector<Metadata, ?> collector)
+        throws ListFolderErrorException, DbxException {
+        DbxRawClientV2 client = files.getClient();
+        try {
+            return client.rpcStyle(
+                client.getHost().getApi(),
+                LIST_FOLDER_ROUTE,
+                arg,
+                false,
+                ListFolderArg.Serializer.INSTANCE,
+                new PageSerializer(collector),
+                ListFolderError.Serializer.INSTANCE
+            );
+        } catch (DbxWrappedException ex) {
+            throw new ListFolderErrorException(LIST_FOLDER_ROUTE, ex.getRequestId(), ex.getUserMessage(), (ListFolderError) ex.getErrorValue());
+        }
+    }
+
+    private PageEnd nextPage(String cursor, Collector<Metadata, ?> collector)
+        throws ListFolderContinueErrorException, DbxException {
+        DbxRawClientV2 client = files.getClient();
+        try {
+            return client.rpcStyle(
+                client.getHost().getApi(),
+                LIST_FOLDER_CONTINUE_ROUTE,
+                new ListFolderContinueArg(cursor),
+                false,
+                ListFolderContinueArg.Serializer.INSTANCE,
+                new PageSerializer(collector),
+                ListFolderContinueError.Serializer.INSTANCE
+            );
+        } catch (DbxWrappedException ex) {
+            throw new ListFolderContinueErrorException(LIST_FOLDER_CONTINUE_ROUTE, ex.getRequestId(), ex.getUserMessage(), (ListFolderContinueError) ex.getErrorValue());
+        }
+    }
+
+    /**
+     * Result of a listing: the finished collector, and the cursor to continue from.
+     *
+     * @param <C> type of the finished collector
+     */
+    public static final class Result<C> {
+        private final C entries;
+        private final String cursor;
+        private final boolean hasMore;
+
+        private Result(C entries, String cursor, boolean hasMore) {
+            this.entries = entries;
+            this.cursor = cursor;
+            this.hasMore = hasMore;
+        }
+
+        /**
+         * Returns the value the collector was finished with.
+         *
+         * @return finished collector
+         */
+        public C getEntries() {
+            return entries;
+        }
+
+        /**
+         * Returns the cursor of the last page listed, from which to list later pages or changes.
+         *
+         * @return cursor of the last page
+         */
+        public String getCursor() {
+            return cursor;
+        }
+
+        /**
+         * Returns whether entries remain to be listed after {@link #getCursor}. Always {@code
+         * false} for listings that follow all pages.
+         *
+         * @return whether more entries remain
+         */
+        public boolean getHasMore() {
+            return hasMore;
+        }
+    }
+
+    /**
+     * What remains of a {@link ListFolderResult} once its entries were collected.
+     */
+    private static final class PageEnd {
+        private final String cursor;
+        private final boolean hasMore;
+
+        private PageEnd(String cursor, boolean hasMore) {
+            this.cursor = cursor;
+            this.hasMore = hasMore;
+        }
+    }
+
+    /**
+     * Deserializes a {@link ListFolderResult}, handing each entry to a collector instead of
+     * keeping it. One instance serves all attempts at a page, and skips the entries collected by
+     * earlier attempts.
+     *
+     * <p> The generated {@link ListFolderResult.Serializer} always builds the full entry list, and
+     * the generator has no way to route a list field to a callback, so this serializer is written
+     * by hand. It reads the fields of {@code ListFolderResult} by name and skips the others, like
+     * the generated one does, and has to be kept in step with that struct in the spec. A {@link
+     * PageEnd} serializes as the page it came from, less the entries that went to the collector.
+     */
+    private static final class PageSerializer extends StructSerializer<PageEnd> {
+        private final Collector<Metadata, ?> collector;
+        private long collected;
+
+        private PageSerializer(Collector<Metadata, ?> collector) {
+            this.collector = collector;
+            this.collected = 0;
+        }
+
+        @Override
+        public void serialize(PageEnd value, JsonGenerator g, boolean collapse) throws IOException, JsonGenerationException {
+            if (!collapse) {
+                g.writeStartObject();
+            }
+            g.writeFieldName("entries");
+            g.writeStartArray();
+            g.writeEndArray();
+            g.writeFieldName("cursor");
+            StoneSerializers.string().serialize(value.cursor, g);
+            g.writeFieldName("has_more");
+            StoneSerializers.boolean_().serialize(value.hasMore, g);
+            if (!collapse) {
+                g.writeEndObject();
+            }
+        }
+
+        @Override
+        public PageEnd deserialize(JsonParser p, boolean collapsed) throws IOException, JsonParseException {
+            if (!collapsed) {
+                expectStartObject(p);
+                readTag(p);
+            }
+
+            boolean hasEntries = false;
+            String cursor = null;
+            Boolean hasMore = null;
+            while (p.getCurrentToken() == JsonToken.FIELD_NAME) {
+                String field = p.getCurrentName();
+                p.nextToken();
+                if ("entries".equals(field)) {
+                    hasEntries = true;
+                    readEntries(p);
+                } else if ("cursor".equals(field)) {
+                    cursor = StoneSerializers.string().deserialize(p);
+                } else if ("has_more".equals(field)) {
+                    hasMore = StoneSerializers.boolean_().deserialize(p);
+                } else {
+                    skipValue(p);
+                }
+            }
+
+            if (!hasEntries) {
+                throw new JsonParseException(p, "Required field \"entries\" missing.");
+            }
+            if (cursor == null) {
+                throw new JsonParseException(p, "Required field \"cursor\" missing.");
+            }
+            if (hasMore == null) {
+                throw new JsonParseException(p, "Required field \"has_more\" missing.");
+            }
+
+            if (!collapsed) {
+                expectEndObject(p);
+            }
+            return new PageEnd(cursor, hasMore);
+        }
+
+        private void readEntries(JsonParser p) throws IOException, JsonParseException {
+            expectStartArray(p);
+            long position = 0;
+            while (p.getCurrentToken() != JsonToken.END_ARRAY) {
+                Metadata entry = Metadata.Serializer.INSTANCE.deserialize(p);
+                if (position++ >= collected) {
+                    // first time we see this entry
+                    collector.add(entry);
+                    ++collected;
+                }
+            }
+            expectEndArray(p);
+        }
+    }
+}
@@ -0,0 +1,722 @@
+package com.dropbox.core.v2.files;
+
+import com.dropbox.core.DbxException;
+import com.dropbox.core.NetworkIOException;
+import com.dropbox.core.v2.DbxRawClientV2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*>>> import checkers.nullness.quals.Nullable; */
+
+/**
+ * Bounded in-memory cache of {@link DbxUserFilesRequests#getMetadata} results, for applications
+ * that look up the same paths over and over from many threads.
+ *
+ * <p> A cache can be shared by many clients: entries are kept per client and path, so each
+ * lookup names the requests it goes through:
+ *
+ * <pre>
+ * DbxMetadataCache cache = DbxMetadataCache.newBuilder()
+ *     .withMaxEntries(100000)
+ *     .withTtl(30, TimeUnit.SECONDS)
+ *     .build();
+ * Metadata metadata = cache.getMetadata(client.files(), "/Photos/cover.jpg");
+ * </pre>
+ *
+ * <p> Entries of one client are never returned to another, even if both act for the same user.
+ * The user ID a client was created with cannot tell accounts apart: it is optional, and {@link
+ * com.dropbox.core.v2.DbxTeamClientV2#asMember} clients carry the ID of their team client. Clients
+ * with another path root, from {@code withPathRoot}, are separate clients as well.
+ *
+ * <p> Entries expire {@link Builder#withTtl} after they were loaded, and the least recently used
+ * entries are evicted once there are more than {@link Builder#withMaxEntries}. Concurrent misses
+ * for the same entry share a single request. Failed lookups, such as paths that are not found,
+ * are not cached.
+ *
+ * <p> Changes made through {@link #upload}, {@link #deleteV2} and {@link #moveV2} invalidate the
+ * affected entries of the same client, including the entries below moved or deleted folders
+ * and entries looked up by id. Other changes, made through other clients or other applications,
+ * are seen once the entries expire, or after {@link #invalidate}.
+ *
+ * <p> This class is thread-safe. Entries are spread over independently locked segments, so
+ * lookups of different paths rarely contend. Each client's entries are also indexed by path, so
+ * invalidating a path only touches the entries of that client at or below it.
+ */
+public final class DbxMetadataCache {
+    private static final int MAX_SEGMENTS = 16;
+
+    private final long ttlNanos;
+    private final Segment [] segments;
+    private final ConcurrentMap<DbxRawClientV2, Namespace> namespaces;
+    private final SingleFlight<Load, Metadata> loading;
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+
+    private DbxMetadataCache(Builder builder) {
+        this.ttlNanos = builder.ttlNanos;
+
+        int segmentCount = Math.min(MAX_SEGMENTS, builder.maxEntries);
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; ++i) {
+            // round up so the segments together hold at least maxEntries
+            this.segments[i] = new Segment((builder.maxEntries + segmentCount - 1) / segmentCount);
+        }
+        this.namespaces = new ConcurrentHashMap<DbxRawClientV2, Namespace>();
+        this.loading = new SingleFlight<Load, Metadata>();
+
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+    }
+
+    /**
+     * Returns a new builder for a metadata cache.
+     *
+     * @return builder for a {@link DbxMetadataCache}
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the metadata of {@code path}, from the cache if it holds a fresh entry, otherwise
+     * from {@link DbxUserFilesRequests#getMetadata}.
+     *
+     * @param files requests of the user to look up {@code path} for, such as {@code
+     * client.files()}
+     * @param path path or id of the file or folder, as given to {@link
+     * DbxUserFilesRequests#getMetadata}
+     *
+     * @return metadata of the file or folder
+     *
+     * @throws GetMetadataErrorException if the metadata could not be retrieved, for instance
+     * because {@code path} does not exist
+     * @throws DbxException if the request failed
+     */
+    public Metadata getMetadata(final DbxUserFilesRequests files, final String path) throws GetMetadataErrorException, DbxException {
+        if (files == null) throw new NullPointerException("files");
+        if (path == null) throw new NullPointerException("path");
+
+        Key key = new Key(files.getClient(), path);
+        Segment segment = segment(key);
+        Entry entry = segment.get(key);
+        if (entry != null && System.nanoTime() - entry.loadedNanos >= ttlNanos) {
+            if (segment.remove(entry)) {
+                evictions.incrementAndGet();
+                entry.namespace.unindex(entry);
+            }
+            entry = null;
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry.metadata;
+        }
+
+        misses.incrementAndGet();
+        final Load load = startLoad(key);
+        try {
+            return loading.load(load, new Callable<Metadata>() {
+                @Override
+                public Metadata call() throws DbxException {
+                    Metadata loaded = null;
+                    try {
+                        loaded = files.getMetadata(path);
+                        return loaded;
+                    } finally {
+                        finishLoad(load, loaded);
+                    }
+                }
+            });
+        } catch (IOException ex) {
+            // SingleFlight only throws IOException when interrupted while waiting for another
+            // thread's request; report it the way interrupted requests are reported
+            throw new NetworkIOException(ex);
+        }
+    }
+
+    /**
+     * Uploads a file with {@link DbxUserFilesRequests#upload} and invalidates the cached
+     * metadata of its path.
+     *
+     * @param files requests of the user to upload for
+     * @param commitInfo path and options of the upload
+     * @param in content of the file, read until end-of-stream, not closed by this method
+     *
+     * @return metadata of the uploaded file
+     *
+     * @throws UploadErrorException if the file could not be committed
+     * @throws DbxException if the request failed
+     * @throws IOException if reading {@code in} failed
+     */
+    public FileMetadata upload(DbxUserFilesRequests files, CommitInfo commitInfo, InputStream in) throws UploadErrorException, DbxException, IOException {
+        if (files == null) throw new NullPointerException("files");
+        if (commitInfo == null) throw new NullPointerException("commitInfo");
+        if (in == null) throw new NullPointerException("in");
+
+        try {
+            FileMetadata metadata = files.upload(commitInfo).uploadAndFinish(in);
+            invalidate(files, metadata.getPathLower());
+            return metadata;
+        } finally {
+            // also when the outcome is unknown
+            invalidate(files, commitInfo.getPath());
+        }
+    }
+
+    /**
+     * Deletes a file or folder with {@link DbxUserFilesRequests#deleteV2} and invalidates the
+     * cached metadata of it and of everything below it.
+     *
+     * @param files requests of the user to delete for
+     * @param path path or id of the file or folder to delete
+     *
+     * @return metadata of the deleted file or folder
+     *
+     * @throws DeleteErrorException if the file or folder could not be deleted
+     * @throws DbxException if the request failed
+     */
+    public DeleteResult deleteV2(DbxUserFilesRequests files, String path) throws DeleteErrorException, DbxException {
+        if (files == null) throw new NullPointerException("files");
+        if (path == null) throw new NullPointerException("path");
+
+        try {
+            DeleteResult result = files.deleteV2(path);
+            invalidate(files, result.getMetadata().getPathLower());
+            return result;
+        } finally {
+            invalidate(files, path);
+        }
+    }
+
+    /**
+     * Moves a file or folder with {@link DbxUserFilesRequests#moveV2} and invalidates the cached
+     * metadata of both locations and of everything below them.
+     *
+     * @param files requests of the user to move for
+     * @param fromPath path or id of the file or folder to move
+     * @param toPath destination path
+     *
+     * @return metadata of the moved file or folder
+     *
+     * @throws RelocationErrorException if the file or folder could not be moved
+     * @throws DbxException if the request failed
+     */
+    public RelocationResult moveV2(DbxUserFilesRequests files, String fromPath, String toPath) throws RelocationErrorException, DbxException {
+        if (files == null) throw new NullPointerException("files");
+        if (fromPath == null) throw new NullPointerException("fromPath");
+        if (toPath == null) throw new NullPointerException("toPath");
+
+        try {
+            RelocationResult result = files.moveV2(fromPath, toPath);
+            invalidate(files, result.getMetadata().getPathLower());
+            return result;
+        } finally {
+            invalidate(files, fromPath);
+            invalidate(files, toPath);
+        }
+    }
+
+    /**
+     * Invalidates the cached metadata of {@code path} and of everything below it, for the client
+     * of {@code files}. Entries looked up by id are invalidated too if they
+     * describe an invalidated path.
+     *
+     * @param files requests of the client whose entries to invalidate
+     * @param path path or id of the changed file or folder, or {@code null} to do nothing
+     */
+    public void invalidate(DbxUserFilesRequests files, /*@Nullable*/ String path) {
+        if (files == null) throw new NullPointerException("files");
+        if (path == null) {
+            return;
+        }
+
+        Key changed = new Key(files.getClient(), path);
+        while (true) {
+            Namespace namespace = namespaces.get(changed.client);
+            if (namespace == null) {
+                // nothing cached or loading for this client
+                return;
+            }
+            synchronized (namespace) {
+                if (namespace.retired) {
+                    continue;
+                }
+                for (Entry entry : namespace.invalidate(changed.path)) {
+                    segment(entry.key).remove(entry);
+                }
+                namespace.retireIfEmpty();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public void invalidateAll() {
+        for (Namespace namespace : namespaces.values()) {
+            synchronized (namespace) {
+                for (Entry entry : namespace.invalidateAll()) {
+                    segment(entry.key).remove(entry);
+                }
+                namespace.retireIfEmpty();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of lookups served from the cache.
+     *
+     * @return number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups not served from the cache. Concurrent lookups of the same
+     * missing entry are all misses, but share a single request.
+     *
+     * @return number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of entries removed because they expired or to keep the cache within its
+     * maximum number of entries. Invalidated entries are not counted.
+     *
+     * @return number of evicted entries
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the number of cached entries, including expired entries not evicted yet.
+     *
+     * @return number of entries
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segment(Key key) {
+        // spread the hash so segments are not chosen by its low bits only
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[(hash & 0x7fffffff) % segments.length];
+    }
+
+    /**
+     * Registers a lookup of {@code key}, or returns the one already in progress so the caller
+     * can wait for it.
+     */
+    private Load startLoad(Key key) {
+        while (true) {
+            Namespace namespace = namespaces.get(key.client);
+            if (namespace == null) {
+                namespace = new Namespace(key.client);
+                Namespace existing = namespaces.putIfAbsent(key.client, namespace);
+                if (existing != null) {
+                    namespace = existing;
+                }
+            }
+            synchronized (namespace) {
+                if (namespace.retired) {
+                    // emptied and removed concurrently; use its replacement
+                    continue;
+                }
+                Load load = namespace.loads.get(key);
+                if (load == null) {
+                    load = new Load(namespace, key);
+                    namespace.loads.put(key, load);
+                }
+                return load;
+            }
+        }
+    }
+
+    /**
+     * Caches the result of {@code load}, unless the lookup failed or an invalidation of its
+     * client and path happened since it started.
+     */
+    private void finishLoad(Load load, /*@Nullable*/ Metadata loaded) {
+        Namespace namespace = load.namespace;
+        List<Entry> removed = Collections.emptyList();
+        synchronized (namespace) {
+            // invalidations unregister the lookups they affect, so this also tells whether
+            // the result is still current
+            if (namespace.loads.get(load.key) == load) {
+                namespace.loads.remove(load.key);
+                if (loaded != null) {
+                    Entry entry = new Entry(namespace, load.key, loaded, System.nanoTime());
+                    namespace.index(entry);
+                    removed = segment(load.key).put(entry);
+                }
+            }
+            namespace.retireIfEmpty();
+        }
+        // not under the namespace lock: removed entries may belong to other clients
+        for (Entry entry : removed) {
+            entry.namespace.unindex(entry);
+        }
+    }
+
+    /**
+     * Part of the cache, in least recently used order.
+     */
+    private final class Segment {
+        private final int maxEntries;
+        private final LinkedHashMap<Key, Entry> entries;
+
+        private Segment(int maxEntries) {
+            this.maxEntries = maxEntries;
+            this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+        }
+
+        private synchronized /*@Nullable*/ Entry get(Key key) {
+            return entries.get(key);
+        }
+
+        /**
+         * Adds {@code entry} and returns the entries it replaced or evicted, which the caller
+         * must remove from their namespace index.
+         */
+        private synchronized List<Entry> put(Entry entry) {
+            List<Entry> removed = new ArrayList<Entry>(1);
+            Entry replaced = entries.put(entry.key, entry);
+            if (replaced != null) {
+                removed.add(replaced);
+            }
+
+            Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && it.hasNext()) {
+                removed.add(it.next().getValue());
+                it.remove();
+                evictions.incrementAndGet();
+            }
+            return removed;
+        }
+
+        /**
+         * Removes {@code entry} if it is still cached, rather than a newer entry for its key.
+         */
+        private synchronized boolean remove(Entry entry) {
+            if (entries.get(entry.key) != entry) {
+                return false;
+            }
+            entries.remove(entry.key);
+            return true;
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    /**
+     * The entries and lookups in progress of one client, indexed by path.
+     *
+     * <p> Entries are indexed before they are added to a segment and unindexed after they are
+     * removed from it, so the index holds at least every cached entry. Locks are taken in that
+     * order too: a segment lock may be taken while holding a namespace lock, never the reverse.
+     */
+    private final class Namespace {
+        private final DbxRawClientV2 client;
+        // normalized path or id -> entries looked up by it or describing it
+        private final TreeMap<String, List<Entry>> index;
+        private final Map<Key, Load> loads;
+        private boolean retired;
+
+        private Namespace(DbxRawClientV2 client) {
+            this.client = client;
+            this.index = new TreeMap<String, List<Entry>>();
+            this.loads = new HashMap<Key, Load>();
+            this.retired = false;
+        }
+
+        private void index(Entry entry) {
+            for (String path : entry.indexPaths()) {
+                List<Entry> entries = index.get(path);
+                if (entries == null) {
+                    entries = new ArrayList<Entry>(1);
+                    index.put(path, entries);
+                }
+                entries.add(entry);
+            }
+        }
+
+        private synchronized void unindex(Entry entry) {
+            unindexLocked(entry);
+            retireIfEmpty();
+        }
+
+        private void unindexLocked(Entry entry) {
+            for (String path : entry.indexPaths()) {
+                List<Entry> entries = index.get(path);
+                if (entries == null) {
+                    continue;
+                }
+                // by identity: a newer entry for the same key may be indexed too
+                for (Iterator<Entry> it = entries.iterator(); it.hasNext(); ) {
+                    if (it.next() == entry) {
+                        it.remove();
+                    }
+                }
+                if (entries.isEmpty()) {
+                    index.remove(path);
+                }
+            }
+        }
+
+        /**
+         * Unindexes and returns the entries at or below {@code changed}, and unregisters the
+         * affected lookups in progress so their results are not cached. Lookups by id are
+         * always unregistered, since their path is not known until they complete.
+         */
+        private List<Entry> invalidate(String changed) {
+            Set<Entry> matched = Collections.newSetFromMap(new IdentityHashMap<Entry, Boolean>());
+            if (!changed.startsWith("/")) {
+                // ids and revisions only match themselves
+                addAll(matched, index.get(changed));
+            } else {
+                String prefix = changed.endsWith("/") ? changed : changed + "/";
+                addAll(matched, index.get(changed));
+                // every path below the prefix sorts before the prefix with its '/' incremented
+                String end = prefix.substring(0, prefix.length() - 1) + (char) ('/' + 1);
+                for (List<Entry> entries : index.subMap(prefix, end).values()) {
+                    addAll(matched, entries);
+                }
+            }
+            for (Entry entry : matched) {
+                unindexLocked(entry);
+            }
+
+            for (Iterator<Key> it = loads.keySet().iterator(); it.hasNext(); ) {
+                String path = it.next().path;
+                if (!path.startsWith("/") || isSameOrBelow(path, changed)) {
+                    it.remove();
+                }
+            }
+            return new ArrayList<Entry>(matched);
+        }
+
+        /**
+         * Unindexes and returns all entries, and unregisters all lookups in progress.
+         */
+        private List<Entry> invalidateAll() {
+            Set<Entry> matched = Collections.newSetFromMap(new IdentityHashMap<Entry, Boolean>());
+            for (List<Entry> entries : index.values()) {
+                addAll(matched, entries);
+            }
+            index.clear();
+            loads.clear();
+            return new ArrayList<Entry>(matched);
+        }
+
+        /**
+         * Removes this namespace from the cache once it holds nothing, so clients that are no
+         * longer used are not kept reachable.
+         */
+        private void retireIfEmpty() {
+            if (!retired && index.isEmpty() && loads.isEmpty()) {
+                retired = true;
+                namespaces.remove(client, this);
+            }
+        }
+    }
+
+    private static void addAll(Set<Entry> set, /*@Nullable*/ List<Entry> entries) {
+        if (entries != null) {
+            set.addAll(entries);
+        }
+    }
+
+    private static boolean isSameOrBelow(/*@Nullable*/ String path, String ancestor) {
+        if (path == null) {
+            return false;
+        }
+        if (!ancestor.startsWith("/")) {
+            // ids and revisions only match themselves
+            return path.equals(ancestor);
+        }
+        return path.equals(ancestor) || path.startsWith(ancestor.endsWith("/") ? ancestor : ancestor + "/");
+    }
+
+    /**
+     * Paths are case-insensitive; ids and other path forms are not.
+     */
+    private static /*@Nullable*/ String normalize(/*@Nullable*/ String path) {
+        if (path == null || !path.startsWith("/")) {
+            return path;
+        }
+        return path.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Entry {
+        private final Namespace namespace;
+        private final Key key;
+        private final Metadata metadata;
+        private final long loadedNanos;
+
+        private Entry(Namespace namespace, Key key, Metadata metadata, long loadedNanos) {
+            this.namespace = namespace;
+            this.key = key;
+            this.metadata = metadata;
+            this.loadedNanos = loadedNanos;
+        }
+
+        /**
+         * Returns the paths to find this entry by: the path or id it was looked up by and, if
+         * different, the path it describes.
+         */
+        private List<String> indexPaths() {
+            String described = normalize(metadata.getPathLower());
+            if (described == null || described.equals(key.path)) {
+                return Collections.singletonList(key.path);
+            }
+            List<String> paths = new ArrayList<String>(2);
+            paths.add(key.path);
+            paths.add(described);
+            return paths;
+        }
+    }
+
+    /**
+     * A path looked up through a client. Clients are compared by identity, since nothing they
+     * expose reliably identifies the account they act for.
+     */
+    private static final class Key {
+        private final DbxRawClientV2 client;
+        private final String path;
+
+        private Key(DbxRawClientV2 client, String path) {
+            this.client = client;
+            this.path = normalize(path);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return path.equals(other.path) && client == other.client;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * path.hashCode() + System.identityHashCode(client);
+        }
+
+        @Override
+        public String toString() {
+            return path;
+        }
+    }
+
+    /**
+     * A lookup in progress. Lookups are compared by identity: once an invalidation unregisters a
+     * lookup, later lookups of its key start a new one instead of waiting for its result.
+     */
+    private static final class Load {
+        private final Namespace namespace;
+        private final Key key;
+
+        private Load(Namespace namespace, Key key) {
+            this.namespace = namespace;
+            this.key = key;
+        }
+
+        @Override
+        public String toString() {
+            return key.toString();
+        }
+    }
+
+    /**
+     * Builder for {@link DbxMetadataCache}.
+     */
+    public static final class Builder {
+        private int maxEntries;
+        private long ttlNanos;
+
+        private Builder() {
+            this.maxEntries = 10000;
+            this.ttlNanos = TimeUnit.SECONDS.toNanos(30);
+        }
+
+        /**
+         * Sets the maximum number of cached entries. Defaults to {@code 10000}.
+         *
+         * @param maxEntries maximum number of entries, must be positive
+         *
+         * @return this builder
+         *
+         * @throws IllegalArgumentException if {@code maxEntries} is not positive
+         */
+        public Builder withMaxEntries(int maxEntries) {
+            if (maxEntries <= 0) {
+                throw new IllegalArgumentException("maxEntries must be positive");
+            }
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * Sets how long entries are served after they were loaded. Defaults to 30 seconds.
+         *
+         * @param ttl time to live of entries, must be positive
+         * @param unit unit of {@code ttl}
+         *
+         * @return this builder
+         *
+         * @throws IllegalArgumentException if {@code ttl} is not positive
+         */
+        public Builder withTtl(long ttl, TimeUnit unit) {
+            if (unit == null) throw new NullPointerException("unit");
+            if (ttl <= 0) {
+                throw new IllegalArgumentException("ttl must be positive");
+            }
+            this.ttlNanos = unit.toNanos(ttl);
+            return this;
+        }
+
+        /**
+         * Returns a {@link DbxMetadataCache} with the values set by this builder.
+         *
+         * @return new cache
+         */
+        public DbxMetadataCache build() {
+            return new DbxMetadataCache(this);
+        }
+    }
+}
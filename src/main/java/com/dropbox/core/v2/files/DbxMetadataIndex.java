@@ -0,0 +1,516 @@
+package com.dropbox.core.v2.files;
+
+import com.dropbox.core.DbxException;
+import com.dropbox.core.util.Collector;
+import com.dropbox.core.util.IOUtil;
+import com.dropbox.core.util.StringUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*>>> import checkers.nullness.quals.Nullable; */
+
+/**
+ * Local index of the metadata below a folder, answering {@code getMetadata} and folder listing
+ * questions without any request.
+ *
+ * <p> The index is filled by a recursive listing of the folder the first time it is {@link
+ * #sync synced}, and kept current by applying the changes listed by {@link
+ * DbxUserFilesRequests#listFolderContinue} on every later sync. Deleted folders are removed along
+ * with everything below them. If the index has a {@link Builder#withFile file}, it is saved there
+ * after every sync, along with its cursor, and loaded from there when the index is built, so that
+ * restarted processes only fetch the changes they missed:
+ *
+ * <pre>
+ * DbxMetadataIndex index = DbxMetadataIndex.newBuilder(client.files(), "/Team")
+ *     .withFile(new File("team.index"))
+ *     .build();
+ * index.sync();
+ *
+ * Metadata report = index.getMetadata("/Team/Reports/2017.pdf");
+ * List&lt;Metadata&gt; reports = index.listFolder("/Team/Reports");
+ * </pre>
+ *
+ * <p> Entries are looked up by their lowercase path. Paths given to this class are lowercased
+ * with {@link Locale#ROOT}, which matches the {@code path_lower} of the server for most paths.
+ * Entries are streamed from the server through {@link DbxListFolderPager}, so syncing does not
+ * hold the listing in memory twice.
+ *
+ * <p> This class is thread-safe. Lookups run concurrently with each other, and with syncs, which
+ * apply changes one entry at a time.
+ */
+public final class DbxMetadataIndex {
+    private static final int MAGIC = 0x44425849; // "DBXI"
+    private static final int VERSION = 1;
+
+    private final DbxListFolderPager pager;
+    private final String root;
+    private final /*@Nullable*/ File file;
+
+    private final ReadWriteLock lock;
+    // guarded by lock
+    private Tree tree;
+    private /*@Nullable*/ String cursor;
+
+    // held for the whole of a sync, so syncs don't interleave
+    private final Object syncLock;
+
+    private DbxMetadataIndex(Builder builder) throws IOException {
+        this.pager = new DbxListFolderPager(builder.files);
+        this.root = builder.root;
+        this.file = builder.file;
+
+        this.lock = new ReentrantReadWriteLock();
+        this.tree = new Tree();
+        this.cursor = null;
+        this.syncLock = new Object();
+
+        if (file != null && file.exists()) {
+            load(file);
+        }
+    }
+
+    /**
+     * Returns a new builder for an index of the folder at {@code path}, filled through the given
+     * requests.
+     *
+     * @param files requests used for listing, such as {@code client.files()}
+     * @param path path of the folder to index, {@code ""} for the root folder
+     *
+     * @return builder for a {@link DbxMetadataIndex}
+     */
+    public static Builder newBuilder(DbxUserFilesRequests files, String path) {
+        if (files == null) throw new NullPointerException("files");
+        if (path == null) throw new NullPointerException("path");
+        return new Builder(files, normalize(path));
+    }
+
+    /**
+     * Brings the index up to date: lists the folder if the index is empty or its cursor was
+     * reset by the server, and applies the changes since the last sync otherwise. The index is
+     * then saved to its file, if any.
+     *
+     * @return number of entries listed, including deletions
+     *
+     * @throws ListFolderErrorException if the folder could not be listed
+     * @throws ListFolderContinueErrorException if the changes could not be listed
+     * @throws DbxException if a request failed
+     * @throws IOException if the index could not be saved
+     */
+    public long sync() throws ListFolderErrorException, ListFolderContinueErrorException, DbxException, IOException {
+        synchronized (syncLock) {
+            String since = getCursor();
+            long changes;
+            if (since == null) {
+                changes = relist();
+            } else {
+                try {
+                    changes = applyChanges(since);
+                } catch (ListFolderContinueErrorException ex) {
+                    if (!ex.errorValue.isReset()) {
+                        throw ex;
+                    }
+                    changes = relist();
+                }
+            }
+
+            if (file != null) {
+                save(file);
+            }
+            return changes;
+        }
+    }
+
+    /**
+     * Returns the metadata of the file or folder at {@code path}, as of the last sync.
+     *
+     * @param path path of a file or folder below the indexed folder
+     *
+     * @return metadata, or {@code null} if there is no such entry in the index
+     */
+    public /*@Nullable*/ Metadata getMetadata(String path) {
+        if (path == null) throw new NullPointerException("path");
+
+        String key = normalize(path);
+        lock.readLock().lock();
+        try {
+            return tree.entries.get(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the entries of the folder at {@code path}, as of the last sync, in no particular
+     * order.
+     *
+     * @param path path of the indexed folder, or of a folder below it
+     *
+     * @return entries of the folder, or {@code null} if there is no such folder in the index
+     */
+    public /*@Nullable*/ List<Metadata> listFolder(String path) {
+        if (path == null) throw new NullPointerException("path");
+
+        String key = normalize(path);
+        lock.readLock().lock();
+        try {
+            if (!key.equals(root) && !(tree.entries.get(key) instanceof FolderMetadata)) {
+                return null;
+            }
+            Set<String> children = tree.children.get(key);
+            if (children == null) {
+                return Collections.emptyList();
+            }
+            List<Metadata> entries = new ArrayList<Metadata>(children.size());
+            for (String child : children) {
+                entries.add(tree.entries.get(child));
+            }
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of files and folders in the index.
+     *
+     * @return number of entries
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return tree.entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the cursor the next sync lists changes from.
+     *
+     * @return cursor of the last sync, or {@code null} if the index was never synced
+     */
+    public /*@Nullable*/ String getCursor() {
+        lock.readLock().lock();
+        try {
+            return cursor;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lists the whole folder into a new tree, and replaces the index with it.
+     */
+    private long relist() throws ListFolderErrorException, ListFolderContinueErrorException, DbxException {
+        final Tree fresh = new Tree();
+        DbxListFolderPager.Result<Long> result = pager.listFolder(
+            ListFolderArg.newBuilder(root).withRecursive(true).build(),
+            new Collector<Metadata, Long>() {
+                private long count = 0;
+
+                @Override
+                public void add(Metadata entry) {
+                    fresh.apply(entry);
+                    ++count;
+                }
+
+                @Override
+                public Long finish() {
+                    return count;
+                }
+            }
+        );
+
+        lock.writeLock().lock();
+        try {
+            tree = fresh;
+            cursor = result.getCursor();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return result.getEntries();
+    }
+
+    /**
+     * Applies the changes since {@code since} to the index, one entry at a time. If listing
+     * fails halfway, the changes applied so far are kept with the old cursor, and listed again by
+     * the next sync.
+     */
+    private long applyChanges(String since) throws ListFolderContinueErrorException, DbxException {
+        DbxListFolderPager.Result<Long> result = pager.listFolderContinue(
+            since,
+            new Collector<Metadata, Long>() {
+                private long count = 0;
+
+                @Override
+                public void add(Metadata entry) {
+                    lock.writeLock().lock();
+                    try {
+                        tree.apply(entry);
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                    ++count;
+                }
+
+                @Override
+                public Long finish() {
+                    return count;
+                }
+            }
+        );
+
+        lock.writeLock().lock();
+        try {
+            cursor = result.getCursor();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return result.getEntries();
+    }
+
+    /**
+     * Writes the index to a temporary file next to {@code target}, and renames it to {@code
+     * target} once complete, so a crash never leaves a torn index behind. The format is a gzipped
+     * sequence of:
+     *
+     * <pre>
+     * int magic, int version, string root, string cursor, int count, string[count] metadata
+     * </pre>
+     *
+     * where strings are an int length followed by UTF-8 bytes, and metadata is in the JSON format
+     * of the API.
+     */
+    private void save(File target) throws IOException {
+        File temp = new File(target.getPath() + ".tmp");
+        lock.readLock().lock();
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(temp))
+            ));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, root);
+                writeString(out, cursor == null ? "" : cursor);
+                out.writeInt(tree.entries.size());
+                for (Metadata entry : tree.entries.values()) {
+                    writeString(out, Metadata.Serializer.INSTANCE.serialize(entry));
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (!temp.renameTo(target)) {
+            // platforms that can't rename over existing files
+            if (!target.delete() || !temp.renameTo(target)) {
+                temp.delete();
+                throw new IOException("Unable to save metadata index: " + target);
+            }
+        }
+    }
+
+    /**
+     * Loads the index saved in {@code source}. Indexes of other folders, and files that can't
+     * be read as an index, are ignored: the index is then filled by the next sync.
+     */
+    private void load(File source) throws IOException {
+        FileInputStream fin = new FileInputStream(source);
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(fin)));
+        } catch (IOException ex) {
+            // not gzipped
+            IOUtil.closeInput(fin);
+            return;
+        }
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !root.equals(readString(in))) {
+                return;
+            }
+            String savedCursor = readString(in);
+            int count = in.readInt();
+
+            Tree saved = new Tree();
+            for (int i = 0; i < count; ++i) {
+                saved.apply(Metadata.Serializer.INSTANCE.deserialize(readString(in)));
+            }
+
+            tree = saved;
+            cursor = savedCursor.isEmpty() ? null : savedCursor;
+        } catch (IOException ex) {
+            // torn or corrupt index, relist
+        } finally {
+            IOUtil.closeInput(in);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte [] bytes = StringUtil.stringToUtf8(value);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > (1 << 20)) {
+            throw new IOException("Corrupt metadata index");
+        }
+        byte [] bytes = new byte[length];
+        in.readFully(bytes);
+        return StringUtil.utf8ToString(bytes);
+    }
+
+    /**
+     * Returns the lowercase form of {@code path}, without trailing slash, and {@code ""} for the
+     * root folder.
+     */
+    private static String normalize(String path) {
+        String key = path.toLowerCase(Locale.ROOT);
+        while (key.endsWith("/")) {
+            key = key.substring(0, key.length() - 1);
+        }
+        return key;
+    }
+
+    private static String parent(String key) {
+        return key.substring(0, Math.max(key.lastIndexOf('/'), 0));
+    }
+
+    /**
+     * Entries by lowercase path, and the lowercase paths of the entries of every folder.
+     */
+    private static final class Tree {
+        private final Map<String, Metadata> entries = new HashMap<String, Metadata>();
+        private final Map<String, Set<String>> children = new HashMap<String, Set<String>>();
+
+        /**
+         * Applies an entry of a listing: adds or replaces files and folders, and removes deleted
+         * entries along with everything below them.
+         */
+        void apply(Metadata entry) {
+            if (entry.getPathLower() == null) {
+                // outside of what we can see
+                return;
+            }
+            String key = normalize(entry.getPathLower());
+
+            if (entry instanceof DeletedMetadata) {
+                remove(key);
+                return;
+            }
+
+            Metadata previous = entries.put(key, entry);
+            if (previous instanceof FolderMetadata && !(entry instanceof FolderMetadata)) {
+                // folder replaced by a file
+                removeChildren(key);
+            }
+            if (previous == null) {
+                String parent = parent(key);
+                Set<String> siblings = children.get(parent);
+                if (siblings == null) {
+                    siblings = new HashSet<String>();
+                    children.put(parent, siblings);
+                }
+                siblings.add(key);
+            }
+        }
+
+        private void remove(String key) {
+            if (entries.remove(key) == null) {
+                return;
+            }
+            removeChildren(key);
+
+            String parent = parent(key);
+            Set<String> siblings = children.get(parent);
+            if (siblings != null) {
+                siblings.remove(key);
+                if (siblings.isEmpty()) {
+                    children.remove(parent);
+                }
+            }
+        }
+
+        private void removeChildren(String key) {
+            Set<String> removed = children.remove(key);
+            if (removed == null) {
+                return;
+            }
+            // iteratively, folder trees can be deep
+            List<String> pending = new ArrayList<String>(removed);
+            while (!pending.isEmpty()) {
+                String child = pending.remove(pending.size() - 1);
+                entries.remove(child);
+                Set<String> grandchildren = children.remove(child);
+                if (grandchildren != null) {
+                    pending.addAll(grandchildren);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builder for {@link DbxMetadataIndex}.
+     */
+    public static final class Builder {
+        private final DbxUserFilesRequests files;
+        private final String root;
+
+        private /*@Nullable*/ File file;
+
+        private Builder(DbxUserFilesRequests files, String root) {
+            this.files = files;
+            this.root = root;
+
+            this.file = null;
+        }
+
+        /**
+         * Sets the file the index is saved to after every sync, and loaded from when it is
+         * built. Defaults to {@code null}: the index is only kept in memory.
+         *
+         * @param file file for the index, or {@code null} to keep the index in memory only
+         *
+         * @return this builder
+         */
+        public Builder withFile(/*@Nullable*/ File file) {
+            this.file = file;
+            return this;
+        }
+
+        /**
+         * Returns a {@link DbxMetadataIndex} with the values set by this builder, loaded from its
+         * file if there is one.
+         *
+         * @return new index
+         *
+         * @throws IOException if the index file exists but could not be opened
+         */
+        public DbxMetadataIndex build() throws IOException {
+            return new DbxMetadataIndex(this);
+        }
+    }
+}
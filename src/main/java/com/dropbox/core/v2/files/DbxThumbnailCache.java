@@ -0,0 +1,537 @@
+package com.dropbox.core.v2.files;
+
+import com.dropbox.core.DbxException;
+import com.dropbox.core.ExponentialBackoffRetryPolicy;
+import com.dropbox.core.RetryPolicy;
+import com.dropbox.core.util.IOUtil;
+import com.dropbox.core.util.StringUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*>>> import checkers.nullness.quals.Nullable; */
+
+/**
+ * Cache of file thumbnails, for applications that show the same thumbnails over and over, such
+ * as galleries.
+ *
+ * <p> Thumbnails are cached by file path, revision, size and format. They are requested by
+ * revision, so a cached thumbnail always shows the revision it was cached for, and a new
+ * revision of a file gets a new thumbnail. Thumbnails are kept in a bounded in-memory cache,
+ * backed by an optional disk cache, in least recently used order:
+ *
+ * <pre>
+ * DbxThumbnailCache thumbnails = DbxThumbnailCache.newBuilder(client.files())
+ *     .withMemoryCapacity(32L &lt;&lt; 20)
+ *     .withDiskCache(new File("thumbnails"), 512L &lt;&lt; 20)
+ *     .build();
+ *
+ * ListFolderResult folder = client.files().listFolder("/Photos");
+ * thumbnails.prefetch(folder.getEntries(), ThumbnailSize.W128H128, ThumbnailFormat.JPEG);
+ * for (Metadata entry : folder.getEntries()) {
+ *     if (entry instanceof FileMetadata) {
+ *         byte [] jpeg = thumbnails.get((FileMetadata) entry, ThumbnailSize.W128H128, ThumbnailFormat.JPEG);
+ *         // render jpeg
+ *     }
+ * }
+ * </pre>
+ *
+ * <p> Concurrent requests for the same missing thumbnail, including prefetches, share a single
+ * download.
+ *
+ * <p> This class is thread-safe.
+ */
+public final class DbxThumbnailCache implements Closeable {
+    /**
+     * Largest file the API makes thumbnails of: 20 MiB.
+     */
+    public static final long MAX_FILE_SIZE = 20L << 20;
+
+    private static final String GET_THUMBNAIL_ROUTE = "2/files/get_thumbnail";
+    private static final String DISK_PREFIX = "t-";
+
+    // extensions the API makes thumbnails of
+    private static final Set<String> EXTENSIONS = new HashSet<String>(Arrays.asList(
+        "jpg", "jpeg", "png", "tiff", "tif", "gif", "bmp"
+    ));
+
+    private final DbxUserFilesRequests files;
+    private final long memoryCapacity;
+    private final /*@Nullable*/ CacheDirectory disk;
+    private final int parallelism;
+    private final RetryPolicy retryPolicy;
+    private final SingleFlight<Key, byte []> loading;
+
+    // thumbnails in least recently used order
+    private final LinkedHashMap<Key, byte []> memory;
+    private long memorySize;
+
+    private final AtomicLong memoryHits;
+    private final AtomicLong diskHits;
+    private final AtomicLong misses;
+
+    private /*@Nullable*/ ExecutorService executor;
+    private boolean closed;
+
+    private DbxThumbnailCache(Builder builder) throws IOException {
+        this.files = builder.files;
+        this.memoryCapacity = builder.memoryCapacity;
+        this.disk = builder.diskDirectory == null ? null : new CacheDirectory(builder.diskDirectory, builder.diskMaxSize);
+        this.parallelism = builder.parallelism;
+        this.retryPolicy = builder.retryPolicy;
+        this.loading = new SingleFlight<Key, byte []>();
+
+        this.memory = new LinkedHashMap<Key, byte []>(16, 0.75f, true);
+        this.memorySize = 0;
+
+        this.memoryHits = new AtomicLong();
+        this.diskHits = new AtomicLong();
+        this.misses = new AtomicLong();
+
+        this.executor = null;
+        this.closed = false;
+    }
+
+    /**
+     * Returns a new builder for a cache that downloads thumbnails through the given requests.
+     *
+     * @param files requests used for downloading thumbnails, such as {@code client.files()}
+     *
+     * @return builder for a {@link DbxThumbnailCache}
+     */
+    public static Builder newBuilder(DbxUserFilesRequests files) {
+        if (files == null) throw new NullPointerException("files");
+        return new Builder(files);
+    }
+
+    /**
+     * Returns the thumbnail of the file revision described by {@code file}, from memory, from
+     * disk, or downloaded, in that order.
+     *
+     * @param file metadata of the file revision
+     * @param size size of the thumbnail
+     * @param format format of the thumbnail
+     *
+     * @return thumbnail image, a copy the caller may modify
+     *
+     * @throws ThumbnailErrorException if the API can't make a thumbnail of the file
+     * @throws DbxException if downloading the thumbnail failed
+     * @throws IOException if reading or writing the disk cache failed
+     */
+    public byte [] get(FileMetadata file, ThumbnailSize size, ThumbnailFormat format)
+        throws DbxException, IOException {
+        if (file == null) throw new NullPointerException("file");
+        if (size == null) throw new NullPointerException("size");
+        if (format == null) throw new NullPointerException("format");
+
+        final Key key = new Key(file, size, format);
+        byte [] thumbnail = getFromMemory(key);
+        if (thumbnail != null) {
+            memoryHits.incrementAndGet();
+            return thumbnail.clone();
+        }
+
+        thumbnail = loading.load(key, new Callable<byte []>() {
+            @Override
+            public byte [] call() throws DbxException, IOException {
+                return load(key);
+            }
+        });
+        return thumbnail.clone();
+    }
+
+    /**
+     * Loads the thumbnails of the files among {@code entries} in the background, {@link
+     * #getParallelism} at a time, so that later calls to {@link #get} are served from the cache.
+     * Entries that are not files, and files the API can't make thumbnails of, are skipped.
+     *
+     * @param entries entries of a listed folder, such as {@link ListFolderResult#getEntries}
+     * @param size size of the thumbnails
+     * @param format format of the thumbnails
+     *
+     * @return futures of the prefetched thumbnails, holding the exception if a thumbnail could not
+     * be loaded
+     *
+     * @throws IllegalStateException if this cache has been closed
+     */
+    public List<Future<byte []>> prefetch(Iterable<? extends Metadata> entries,
+                                          final ThumbnailSize size,
+                                          final ThumbnailFormat format) {
+        if (entries == null) throw new NullPointerException("entries");
+        if (size == null) throw new NullPointerException("size");
+        if (format == null) throw new NullPointerException("format");
+
+        List<Future<byte []>> futures = new ArrayList<Future<byte []>>();
+        for (Metadata entry : entries) {
+            if (!(entry instanceof FileMetadata) || !hasThumbnail((FileMetadata) entry)) {
+                continue;
+            }
+            final FileMetadata file = (FileMetadata) entry;
+            futures.add(getExecutor().submit(new Callable<byte []>() {
+                @Override
+                public byte [] call() throws DbxException, IOException {
+                    return get(file, size, format);
+                }
+            }));
+        }
+        return futures;
+    }
+
+    /**
+     * Returns whether the API can make a thumbnail of {@code file}, judging by its extension and
+     * size.
+     *
+     * @param file metadata of a file
+     *
+     * @return whether {@code file} has a thumbnail
+     */
+    public static boolean hasThumbnail(FileMetadata file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0
+            && EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT))
+            && file.getSize() <= MAX_FILE_SIZE;
+    }
+
+    /**
+     * Returns the maximum number of thumbnails prefetched concurrently.
+     *
+     * @return number of concurrent prefetches
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns the number of thumbnails served from memory.
+     *
+     * @return number of memory cache hits
+     */
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    /**
+     * Returns the number of thumbnails served from the disk cache.
+     *
+     * @return number of disk cache hits
+     */
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    /**
+     * Returns the number of thumbnails that had to be downloaded.
+     *
+     * @return number of downloads
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the total size of the thumbnails in memory.
+     *
+     * @return size of the memory cache in bytes
+     */
+    public synchronized long getMemorySize() {
+        return memorySize;
+    }
+
+    /**
+     * Stops prefetching once the prefetches already started are done. Thumbnails cached on disk
+     * are kept.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (closed) {
+            throw new IllegalStateException("Thumbnail cache already closed.");
+        }
+        if (executor == null) {
+            final AtomicInteger threads = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "dropbox-thumbnail-cache-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Loads a thumbnail missing from memory, from disk or from the server.
+     */
+    private byte [] load(Key key) throws DbxException, IOException {
+        byte [] thumbnail = getFromMemory(key);
+        if (thumbnail != null) {
+            // loaded by the request we waited for
+            memoryHits.incrementAndGet();
+            return thumbnail;
+        }
+
+        if (disk != null) {
+            InputStream in = disk.open(key.diskName(), -1);
+            if (in != null) {
+                try {
+                    thumbnail = IOUtil.slurp(in, Integer.MAX_VALUE);
+                } finally {
+                    IOUtil.closeInput(in);
+                }
+                diskHits.incrementAndGet();
+                putInMemory(key, thumbnail);
+                return thumbnail;
+            }
+        }
+
+        misses.incrementAndGet();
+        thumbnail = download(key);
+        if (disk != null) {
+            File temp = disk.newTempFile();
+            try {
+                OutputStream out = new FileOutputStream(temp);
+                try {
+                    out.write(thumbnail);
+                } finally {
+                    out.close();
+                }
+                disk.publish(temp, key.diskName());
+                disk.evict();
+            } finally {
+                temp.delete();
+            }
+        }
+        putInMemory(key, thumbnail);
+        return thumbnail;
+    }
+
+    private byte [] download(Key key) throws DbxException, IOException {
+        RequestAttempts attempts = new RequestAttempts(retryPolicy, GET_THUMBNAIL_ROUTE, true);
+        while (true) {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                files.getThumbnailBuilder("rev:" + key.rev)
+                    .withSize(key.size)
+                    .withFormat(key.format)
+                    .download(out);
+                return out.toByteArray();
+            } catch (ThumbnailErrorException ex) {
+                throw ex;
+            } catch (DbxException ex) {
+                attempts.failed(ex);
+            }
+        }
+    }
+
+    private synchronized /*@Nullable*/ byte [] getFromMemory(Key key) {
+        return memory.get(key);
+    }
+
+    private synchronized void putInMemory(Key key, byte [] thumbnail) {
+        if (thumbnail.length > memoryCapacity) {
+            return;
+        }
+        byte [] previous = memory.put(key, thumbnail);
+        memorySize += thumbnail.length - (previous == null ? 0 : previous.length);
+
+        Iterator<Map.Entry<Key, byte []>> it = memory.entrySet().iterator();
+        while (memorySize > memoryCapacity && it.hasNext()) {
+            memorySize -= it.next().getValue().length;
+            it.remove();
+        }
+    }
+
+    /**
+     * Identifies a thumbnail: file path, revision, size and format.
+     */
+    private static final class Key {
+        private final String path;
+        private final String rev;
+        private final ThumbnailSize size;
+        private final ThumbnailFormat format;
+
+        private Key(FileMetadata file, ThumbnailSize size, ThumbnailFormat format) {
+            this.path = file.getPathLower() != null ? file.getPathLower() : file.getId();
+            this.rev = file.getRev();
+            this.size = size;
+            this.format = format;
+        }
+
+        /**
+         * Returns a file name for this key: a hash, since paths may not be valid file names.
+         */
+        String diskName() {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                return DISK_PREFIX + StringUtil.binaryToHex(digest.digest(StringUtil.stringToUtf8(toString())));
+            } catch (NoSuchAlgorithmException ex) {
+                // every Java platform must support SHA-256
+                throw new IllegalStateException("Unable to create SHA-256 digest", ex);
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return path.equals(other.path)
+                && rev.equals(other.rev)
+                && size == other.size
+                && format == other.format;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object [] { path, rev, size, format });
+        }
+
+        @Override
+        public String toString() {
+            return path + "|" + rev + "|" + size + "|" + format;
+        }
+    }
+
+    /**
+     * Builder for {@link DbxThumbnailCache}.
+     */
+    public static final class Builder {
+        private final DbxUserFilesRequests files;
+
+        private long memoryCapacity;
+        private /*@Nullable*/ File diskDirectory;
+        private long diskMaxSize;
+        private int parallelism;
+        private RetryPolicy retryPolicy;
+
+        private Builder(DbxUserFilesRequests files) {
+            this.files = files;
+
+            this.memoryCapacity = 16L << 20;
+            this.diskDirectory = null;
+            this.diskMaxSize = 0;
+            this.parallelism = 4;
+            this.retryPolicy = ExponentialBackoffRetryPolicy.newBuilder()
+                .withMaxRetries(2)
+                .withNetworkErrorRetries(true)
+                .build();
+        }
+
+        /**
+         * Sets the maximum total size of the thumbnails kept in memory. Defaults to 16 MiB.
+         *
+         * @param memoryCapacity capacity in bytes, or {@code 0} to keep no thumbnails in memory
+         *
+         * @return this builder
+         *
+         * @throws IllegalArgumentException if {@code memoryCapacity} is negative
+         */
+        public Builder withMemoryCapacity(long memoryCapacity) {
+            if (memoryCapacity < 0) {
+                throw new IllegalArgumentException("memoryCapacity must be non-negative");
+            }
+            this.memoryCapacity = memoryCapacity;
+            return this;
+        }
+
+        /**
+         * Sets the directory thumbnails are cached in on disk, which keeps thumbnails evicted from
+         * memory and across restarts. Defaults to {@code null}: thumbnails are only kept in memory.
+         *
+         * @param directory directory for cached thumbnails, created if it does not exist, or
+         * {@code null} to disable the disk cache
+         * @param maxSize maximum total size of the thumbnails on disk in bytes
+         *
+         * @return this builder
+         *
+         * @throws IllegalArgumentException if {@code maxSize} is not positive
+         */
+        public Builder withDiskCache(/*@Nullable*/ File directory, long maxSize) {
+            if (directory != null && maxSize <= 0) {
+                throw new IllegalArgumentException("maxSize must be positive");
+            }
+            this.diskDirectory = directory;
+            this.diskMaxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of thumbnails prefetched concurrently through {@link
+         * DbxThumbnailCache#prefetch}. Defaults to {@code 4}.
+         *
+         * @param parallelism number of concurrent prefetches, must be positive
+         *
+         * @return this builder
+         *
+         * @throws IllegalArgumentException if {@code parallelism} is not positive
+         */
+        public Builder withParallelism(int parallelism) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("parallelism must be positive");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets the policy deciding whether and when a failed thumbnail download is retried.
+         *
+         * <p> Defaults to an {@link ExponentialBackoffRetryPolicy} that retries up to 2 times,
+         * including on network errors.
+         *
+         * @param retryPolicy retry policy for thumbnail downloads
+         *
+         * @return this builder
+         */
+        public Builder withRetryPolicy(RetryPolicy retryPolicy) {
+            if (retryPolicy == null) throw new NullPointerException("retryPolicy");
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Returns a {@link DbxThumbnailCache} with the values set by this builder, indexing the
+         * thumbnails already in the disk cache.
+         *
+         * @return new cache
+         *
+         * @throws IOException if the disk cache directory could not be created or listed
+         */
+        public DbxThumbnailCache build() throws IOException {
+            return new DbxThumbnailCache(this);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package com.dropbox.core.v2.files;
+
+import com.dropbox.core.util.IOUtil;
+import com.dropbox.core.util.StringUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/*>>> import checkers.nullness.quals.Nullable; */
+
+/**
+ * Persistent record of an upload through an upload session, used to resume the upload after the
+ * process was restarted (see {@link DbxFileUploader#resume}).
+ *
+ * <p> A journal is a small append-only file. It starts with the identity of the source file
+ * (path, size and modification time) and the {@link CommitInfo} of the upload, followed by the
+ * upload session id and the offset acknowledged by the server after every chunk. Every record is
+ * synced to disk before the next chunk is sent and carries a checksum, so a journal torn by a
+ * crash still holds the last offset that was completely written. The server may have received
+ * more than the journal says, which is corrected when the upload is resumed.
+ *
+ * <p> Journals are written by {@link DbxFileUploader} if it has a {@link
+ * DbxFileUploader.Builder#withJournalDirectory journal directory}, and deleted once their upload
+ * is committed.
+ */
+public final class DbxUploadJournal {
+    private static final int MAGIC = 0x44425855; // "DBXU"
+    private static final int VERSION = 1;
+
+    private static final byte HEADER = 'H';
+    private static final byte SESSION = 'S';
+    private static final byte OFFSET = 'O';
+
+    private final File journalFile;
+    private final File sourceFile;
+    private final long sourceLength;
+    private final long sourceLastModified;
+    private final CommitInfo commitInfo;
+
+    private /*@Nullable*/ String sessionId;
+    private long offset;
+    // length of the complete records in the journal file
+    private long length;
+    private /*@Nullable*/ FileOutputStream out;
+
+    private DbxUploadJournal(File journalFile,
+                             File sourceFile,
+                             long sourceLength,
+                             long sourceLastModified,
+                             CommitInfo commitInfo) {
+        this.journalFile = journalFile;
+        this.sourceFile = sourceFile;
+        this.sourceLength = sourceLength;
+        this.sourceLastModified = sourceLastModified;
+        this.commitInfo = commitInfo;
+
+        this.sessionId = null;
+        this.offset = 0;
+        this.length = 0;
+        this.out = null;
+    }
+
+    /**
+     * Creates a new journal for uploading {@code sourceFile}, recording its current size and
+     * modification time.
+     */
+    static DbxUploadJournal create(File journalFile, File sourceFile, CommitInfo commitInfo) throws IOException {
+        File source = sourceFile.getAbsoluteFile();
+        DbxUploadJournal journal = new DbxUploadJournal(
+            journalFile, source, source.length(), source.lastModified(), commitInfo
+        );
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(header);
+        data.writeByte(HEADER);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        writeString(data, source.getPath());
+        data.writeLong(journal.sourceLength);
+        data.writeLong(journal.sourceLastModified);
+        writeString(data, CommitInfo.Serializer.INSTANCE.serialize(commitInfo));
+        data.flush();
+
+        journal.out = new FileOutputStream(journalFile, false);
+        try {
+            journal.append(header.toByteArray());
+        } catch (IOException ex) {
+            journal.delete();
+            throw ex;
+        }
+        return journal;
+    }
+
+    /**
+     * Reads the journal stored in {@code journalFile}. Records after the last complete one, for
+     * example a record torn by a crash, are ignored.
+     *
+     * @param journalFile file written by {@link DbxFileUploader}
+     *
+     * @return journal holding the last recorded state of the upload
+     *
+     * @throws IOException if the file could not be read or is not a journal
+     */
+    public static DbxUploadJournal read(File journalFile) throws IOException {
+        if (journalFile == null) throw new NullPointerException("journalFile");
+
+        DataInputStream in = new DataInputStream(new FileInputStream(journalFile));
+        try {
+            byte [] header = readRecord(in);
+            if (header == null || header[0] != HEADER) {
+                throw new IOException("Not an upload journal: " + journalFile);
+            }
+            DataInputStream data = fields(header);
+            if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+                throw new IOException("Not an upload journal: " + journalFile);
+            }
+            File source = new File(readString(data));
+            long length = data.readLong();
+            long lastModified = data.readLong();
+            CommitInfo commitInfo = CommitInfo.Serializer.INSTANCE.deserialize(readString(data));
+
+            DbxUploadJournal journal = new DbxUploadJournal(journalFile, source, length, lastModified, commitInfo);
+            journal.length = recordLength(header);
+            while (true) {
+                byte [] record = readRecord(in);
+                if (record == null) {
+                    break;
+                }
+                journal.length += recordLength(record);
+                if (record[0] == SESSION) {
+                    DataInputStream fields = fields(record);
+                    journal.sessionId = readString(fields);
+                    journal.offset = fields.readLong();
+                } else if (record[0] == OFFSET) {
+                    journal.offset = fields(record).readLong();
+                }
+                // skip unknown records
+            }
+            return journal;
+        } finally {
+            IOUtil.closeInput(in);
+        }
+    }
+
+    /**
+     * Returns the file this journal is stored in.
+     *
+     * @return journal file
+     */
+    public File getJournalFile() {
+        return journalFile;
+    }
+
+    /**
+     * Returns the local file being uploaded.
+     *
+     * @return absolute path of the source file
+     */
+    public File getSourceFile() {
+        return sourceFile;
+    }
+
+    /**
+     * Returns where and how the upload is committed.
+     *
+     * @return commit info of the upload
+     */
+    public CommitInfo getCommitInfo() {
+        return commitInfo;
+    }
+
+    /**
+     * Returns the id of the upload session, or {@code null} if the upload was interrupted before
+     * the session was started.
+     *
+     * @return upload session id
+     */
+    public /*@Nullable*/ String getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Returns the number of bytes of the source file the server acknowledged.
+     *
+     * @return acknowledged offset
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Checks that the source file still has the size and modification time it had when the
+     * upload started.
+     *
+     * @throws SourceFileChangedException if the source file changed or no longer exists
+     */
+    public void verifySource() throws SourceFileChangedException {
+        if (!sourceFile.isFile()) {
+            throw new SourceFileChangedException(sourceFile, "Source file no longer exists: " + sourceFile);
+        }
+        if (sourceFile.length() != sourceLength || sourceFile.lastModified() != sourceLastModified) {
+            throw new SourceFileChangedException(sourceFile, "Source file changed since the upload started: " + sourceFile);
+        }
+    }
+
+    /**
+     * Closes and deletes the journal file, abandoning the upload.
+     *
+     * @return whether the journal file was deleted
+     */
+    public synchronized boolean delete() {
+        close();
+        return journalFile.delete();
+    }
+
+    synchronized void started(String sessionId, long offset) throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(record);
+        data.writeByte(SESSION);
+        writeString(data, sessionId);
+        data.writeLong(offset);
+        data.flush();
+        append(record.toByteArray());
+
+        this.sessionId = sessionId;
+        this.offset = offset;
+    }
+
+    synchronized void acknowledged(long offset) throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(record);
+        data.writeByte(OFFSET);
+        data.writeLong(offset);
+        data.flush();
+        append(record.toByteArray());
+
+        this.offset = offset;
+    }
+
+    /**
+     * Closes the journal file, keeping it for a later {@link DbxFileUploader#resume}.
+     */
+    synchronized void close() {
+        if (out != null) {
+            IOUtil.closeQuietly(out);
+            out = null;
+        }
+    }
+
+    /**
+     * Appends a checksummed record and syncs it to disk:
+     *
+     * <pre>
+     * int length, byte[length] payload, long crc32(payload)
+     * </pre>
+     *
+     * The first byte of the payload is the type of the record.
+     */
+    private void append(byte [] payload) throws IOException {
+        if (out == null) {
+            out = new FileOutputStream(journalFile, true);
+            // drop a torn record left by a crash, it would hide the records appended after it
+            out.getChannel().truncate(length);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream(payload.length + 12);
+        DataOutputStream data = new DataOutputStream(record);
+        data.writeInt(payload.length);
+        data.write(payload);
+        data.writeLong(crc.getValue());
+        data.flush();
+
+        out.write(record.toByteArray());
+        out.getFD().sync();
+        length += record.size();
+    }
+
+    private static long recordLength(byte [] payload) {
+        return 4 + payload.length + 8;
+    }
+
+    /**
+     * Returns the payload of the next record, or {@code null} if there is no complete record left.
+     */
+    private static /*@Nullable*/ byte [] readRecord(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            if (length <= 0 || length > (1 << 20)) {
+                return null;
+            }
+            byte [] payload = new byte[length];
+            in.readFully(payload);
+            long checksum = in.readLong();
+
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (crc.getValue() != checksum) {
+                return null;
+            }
+            return payload;
+        } catch (EOFException ex) {
+            return null;
+        }
+    }
+
+    private static DataInputStream fields(byte [] record) {
+        return new DataInputStream(new ByteArrayInputStream(record, 1, record.length - 1));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte [] bytes = StringUtil.stringToUtf8(value);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > (1 << 20)) {
+            throw new IOException("Corrupt upload journal");
+        }
+        byte [] bytes = new byte[length];
+        in.readFully(bytes);
+        return StringUtil.utf8ToString(bytes);
+    }
+
+    /**
+     * Thrown when resuming an upload whose source file changed since the upload started.
+     */
+    public static final class SourceFileChangedException extends IOException {
+        private static final long serialVersionUID = 0L;
+
+        private final File sourceFile;
+
+        public SourceFileChangedException(File sourceFile, String message) {
+            super(message);
+            this.sourceFile = sourceFile;
+        }
+
+        /**
+         * Returns the source file that changed.
+         *
+         * @return source file of the upload
+         */
+        public File getSourceFile() {
+            return sourceFile;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.dropbox.core.v2.files;
+
+import com.dropbox.core.DbxContentHasher;
+import com.dropbox.core.DbxException;
+import com.dropbox.core.RetryPolicy;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/*>>> import checkers.nullness.quals.Nullable; */
+
+/**
+ * Looks up the server side metadata of files about to be uploaded, to find files whose content
+ * is already on the server.
+ *
+ * <p> The API has no batch {@code get_metadata}, so files are looked up in two ways: parent
+ * folders holding many of the files are listed once with {@code list_folder} (see {@link
+ * #prefetch}), other files are looked up one by one with {@code get_metadata}. Lookups are an
+ * optimization only: a file whose metadata could not be looked up is treated as changed.
+ *
+ * <p> {@link #prefetch} must be called before the lookup is shared with other threads, {@link
+ * #get} may then be called concurrently.
+ */
+final class RemoteFileLookup {
+    private static final String GET_METADATA_ROUTE = "2/files/get_metadata";
+    private static final String LIST_FOLDER_ROUTE = "2/files/list_folder";
+
+    private final DbxUserFilesRequests files;
+    private final RetryPolicy retryPolicy;
+
+    // lowercase path -> metadata of the files in the listed folders
+    private final Map<String, FileMetadata> listed;
+    private final Set<String> listedFolders;
+
+    RemoteFileLookup(DbxUserFilesRequests files, RetryPolicy retryPolicy) {
+        this.files = files;
+        this.retryPolicy = retryPolicy;
+
+        this.listed = new HashMap<String, FileMetadata>();
+        this.listedFolders = new HashSet<String>();
+    }
+
+    /**
+     * Lists the parent folders holding at least {@code threshold} of {@code paths}. Folders that
+     * fail to list are left to {@code get_metadata}.
+     */
+    void prefetch(Collection<String> paths, int threshold) {
+        if (threshold <= 0) {
+            return;
+        }
+
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (String path : paths) {
+            String parent = parent(path);
+            if (parent != null) {
+                Integer count = counts.get(parent);
+                counts.put(parent, count == null ? 1 : count + 1);
+            }
+        }
+
+        for (Map.Entry<String, Integer> folder : counts.entrySet()) {
+            if (folder.getValue() >= threshold) {
+                try {
+                    list(folder.getKey());
+                    listedFolders.add(folder.getKey());
+                } catch (DbxException ex) {
+                    // fall back to get_metadata for the files of this folder
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the metadata of the file at {@code path}, or {@code null} if there is no file at
+     * that path or its metadata could not be looked up.
+     */
+    /*@Nullable*/ FileMetadata get(String path) {
+        String parent = parent(path);
+        if (parent == null) {
+            return null;
+        }
+        if (listedFolders.contains(parent)) {
+            return listed.get(lower(path));
+        }
+
+        RequestAttempts attempts = new RequestAttempts(retryPolicy, GET_METADATA_ROUTE, true);
+        while (true) {
+            try {
+                Metadata metadata = files.getMetadata(path);
+                return metadata instanceof FileMetadata ? (FileMetadata) metadata : null;
+            } catch (GetMetadataErrorException ex) {
+                // most likely not found, either way there is nothing to compare with
+                return null;
+            } catch (DbxException ex) {
+                try {
+                    attempts.failed(ex);
+                } catch (DbxException failed) {
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether {@code local} has the size and content hash of {@code remote}. The local
+     * file is only hashed if the sizes match.
+     */
+    static boolean isUnchanged(/*@Nullable*/ FileMetadata remote, File local) throws IOException {
+        if (remote == null || remote.getContentHash() == null || remote.getSize() != local.length()) {
+            return false;
+        }
+        return remote.getContentHash().equals(DbxContentHasher.hash(local));
+    }
+
+    private void list(String folder) throws DbxException {
+        ListFolderResult result = listFolder(folder, null);
+        while (result != null) {
+            for (Metadata entry : result.getEntries()) {
+                if (entry instanceof FileMetadata && entry.getPathLower() != null) {
+                    listed.put(entry.getPathLower(), (FileMetadata) entry);
+                }
+            }
+            if (!result.getHasMore()) {
+                return;
+            }
+            result = listFolder(folder, result.getCursor());
+        }
+    }
+
+    /**
+     * Returns the next page of {@code folder}, or {@code null} if the folder does not exist.
+     */
+    private /*@Nullable*/ ListFolderResult listFolder(String folder, /*@Nullable*/ String cursor) throws DbxException {
+        RequestAttempts attempts = new RequestAttempts(retryPolicy, LIST_FOLDER_ROUTE, true);
+        while (true) {
+            try {
+                return cursor == null ? files.listFolder(folder) : files.listFolderContinue(cursor);
+            } catch (ListFolderErrorException ex) {
+                if (ex.errorValue.isPath() && ex.errorValue.getPathValue().isNotFound()) {
+                    // nothing uploaded to this folder yet
+                    return null;
+                }
+                throw ex;
+            } catch (ListFolderContinueErrorException ex) {
+                // the cursor was reset, the files of this folder are looked up one by one instead
+                throw ex;
+            } catch (DbxException ex) {
+                attempts.failed(ex);
+            }
+        }
+    }
+
+    /**
+     * Returns the lowercase parent folder of {@code path}, {@code ""} for the root folder, or
+     * {@code null} if {@code path} is not a plain path (such as an id or a revision).
+     */
+    private static /*@Nullable*/ String parent(String path) {
+        if (!path.startsWith("/")) {
+            return null;
+        }
+        return lower(path.substring(0, path.lastIndexOf('/')));
+    }
+
+    private static String lower(String path) {
+        return path.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,62 @@
+package com.dropbox.core.v2.files;
+
+import com.dropbox.core.DbxException;
+import com.dropbox.core.NetworkIOException;
+import com.dropbox.core.RetryPolicy;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retries of a single request made by the helpers in this package, such as the upload of one
+ * chunk, the download of one range or the listing of one page.
+ */
+final class RequestAttempts {
+    private final RetryPolicy retryPolicy;
+    private final String route;
+    private final boolean idempotent;
+    private final long startNanos;
+    private int retries;
+    private long previousDelayMillis;
+
+    RequestAttempts(RetryPolicy retryPolicy, String route, boolean idempotent) {
+        this.retryPolicy = retryPolicy;
+        this.route = route;
+        this.idempotent = idempotent;
+        this.startNanos = System.nanoTime();
+        this.retries = 0;
+        this.previousDelayMillis = 0;
+        retryPolicy.onRequest();
+    }
+
+    /**
+     * Waits before the next attempt, or throws {@code error} if the request should not be
+     * retried.
+     */
+    void failed(DbxException error) throws DbxException {
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        long delayMillis = retryPolicy.getRetryDelayMillis(
+            new RetryPolicy.FailedAttempt(route, idempotent, error, retries, elapsedMillis, previousDelayMillis)
+        );
+        if (delayMillis < 0) {
+            throw error;
+        }
+
+        sleep(delayMillis);
+        ++retries;
+        previousDelayMillis = delayMillis;
+    }
+
+    /**
+     * Sleeps like {@link Thread#sleep}, but reports interrupts as a {@link NetworkIOException}.
+     */
+    static void sleep(long millis) throws NetworkIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            // preserve interrupt
+            Thread.currentThread().interrupt();
+            throw new NetworkIOException(new InterruptedIOException("Interrupted while waiting to retry"));
+        }
+    }
+}
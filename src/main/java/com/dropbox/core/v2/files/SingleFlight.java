@@ -0,0 +1,64 @@
+package com.dropbox.core.v2.files;
+
+import com.dropbox.core.DbxException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Coalesces concurrent loads of the same key: while a key is being loaded, other threads asking
+ * for it wait for that load instead of starting their own.
+ */
+final class SingleFlight<K, V> {
+    private final ConcurrentMap<K, FutureTask<V>> inFlight;
+
+    SingleFlight() {
+        this.inFlight = new ConcurrentHashMap<K, FutureTask<V>>();
+    }
+
+    /**
+     * Runs {@code loader} on the calling thread, or waits for the load of {@code key} already in
+     * progress on another thread, and returns its result.
+     */
+    V load(K key, Callable<V> loader) throws DbxException, IOException {
+        FutureTask<V> task = new FutureTask<V>(loader);
+        FutureTask<V> existing = inFlight.putIfAbsent(key, task);
+        if (existing == null) {
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+        } else {
+            task = existing;
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            // preserve interrupt
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + key);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof DbxException) {
+                throw (DbxException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Unable to load " + key, cause);
+        }
+    }
+}
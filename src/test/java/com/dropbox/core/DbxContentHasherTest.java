@@ -0,0 +1,138 @@
+package com.dropbox.core;
+
+import static com.dropbox.core.TestUtil.randomBytes;
+import static com.dropbox.core.TestUtil.tempFile;
+import static org.testng.Assert.*;
+
+import com.dropbox.core.util.StringUtil;
+import com.dropbox.core.v2.files.FileMetadata;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class DbxContentHasherTest {
+    private static final int BLOCK = DbxContentHasher.BLOCK_SIZE;
+
+    @DataProvider
+    public static Object [][] sizes() {
+        return new Object [][] {
+            { 0 }, { 1 }, { BLOCK - 1 }, { BLOCK }, { BLOCK + 1 }, { 2 * BLOCK + 17 }
+        };
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        assertEquals(new DbxContentHasher().digestHex(),
+            "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+    }
+
+    @Test(dataProvider = "sizes")
+    public void testUpdate(int size) throws Exception {
+        byte [] data = randomBytes(size);
+        String expected = expectedHash(data);
+
+        DbxContentHasher hasher = new DbxContentHasher();
+        hasher.update(data);
+        assertEquals(hasher.digestHex(), expected);
+
+        // the hasher is reset after a digest, odd sized writes cross block boundaries
+        OutputStream out = hasher.asOutputStream();
+        for (int off = 0; off < size; off += 1000003) {
+            out.write(data, off, Math.min(1000003, size - off));
+        }
+        assertEquals(hasher.digestHex(), expected);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        buffer.put(data).flip();
+        hasher.update(buffer);
+        assertEquals(hasher.digestHex(), expected);
+    }
+
+    @Test(dataProvider = "sizes")
+    public void testHashFile(int size) throws Exception {
+        byte [] data = randomBytes(size);
+        File file = tempFile(data);
+
+        assertEquals(DbxContentHasher.hash(file), expectedHash(data));
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            assertEquals(DbxContentHasher.hash(file, executor), expectedHash(data));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testClone() throws Exception {
+        byte [] data = randomBytes(BLOCK + 100);
+
+        DbxContentHasher hasher = new DbxContentHasher();
+        hasher.update(data, 0, BLOCK + 50);
+        DbxContentHasher clone = hasher.clone();
+        hasher.update(data, BLOCK + 50, 50);
+        clone.update(data, BLOCK + 50, 50);
+
+        assertEquals(clone.digestHex(), hasher.digestHex());
+    }
+
+    @Test
+    public void testDownloadAndVerify() throws Exception {
+        byte [] data = randomBytes(BLOCK + 5);
+        FileMetadata metadata = metadata(data.length, expectedHash(data));
+        DbxDownloader<FileMetadata> downloader = new DbxDownloader<FileMetadata>(
+            metadata, new ByteArrayInputStream(data)
+        );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertSame(downloader.downloadAndVerify(out), metadata);
+        assertEquals(out.toByteArray(), data);
+    }
+
+    @Test
+    public void testDownloadAndVerifyMismatch() throws Exception {
+        byte [] data = randomBytes(100);
+        String wrongHash = expectedHash(randomBytes(101));
+        DbxDownloader<FileMetadata> downloader = new DbxDownloader<FileMetadata>(
+            metadata(data.length, wrongHash), new ByteArrayInputStream(data)
+        );
+
+        try {
+            downloader.downloadAndVerify(new ByteArrayOutputStream());
+            fail("Expected content hash mismatch");
+        } catch (ContentHashMismatchException ex) {
+            assertEquals(ex.getExpectedContentHash(), wrongHash);
+            assertEquals(ex.getActualContentHash(), expectedHash(data));
+        }
+    }
+
+    private static FileMetadata metadata(long size, String contentHash) {
+        return FileMetadata.newBuilder("a.bin", "id:a", new Date(0), new Date(0), "0123456789abcdef", size)
+            .withContentHash(contentHash)
+            .build();
+    }
+
+    /**
+     * Straightforward implementation of the content hash algorithm.
+     */
+    private static String expectedHash(byte [] data) throws Exception {
+        MessageDigest overall = MessageDigest.getInstance("SHA-256");
+        for (int off = 0; off < data.length; off += BLOCK) {
+            MessageDigest block = MessageDigest.getInstance("SHA-256");
+            block.update(data, off, Math.min(BLOCK, data.length - off));
+            overall.update(block.digest());
+        }
+        return StringUtil.binaryToHex(overall.digest());
+    }
+}
@@ -0,0 +1,135 @@
+package com.dropbox.core;
+
+import static com.dropbox.core.TestUtil.randomBytes;
+import static com.dropbox.core.TestUtil.tempFile;
+import static org.testng.Assert.*;
+
+import com.dropbox.core.util.IOUtil;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class DbxDownloaderTest {
+
+    @Test
+    public void testDownloadToFileChannel() throws Exception {
+        byte [] data = randomBytes(3 * 1024 * 1024 + 7);
+        DbxDownloader<String> downloader = new DbxDownloader<String>("result", new ByteArrayInputStream(data));
+        final AtomicLong progress = new AtomicLong();
+
+        File file = tempFile();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            channel.write(ByteBuffer.wrap(new byte [] { 1, 2, 3 }));
+
+            String result = downloader.download(channel, new IOUtil.ProgressListener() {
+                @Override
+                public void onProgress(long bytesWritten) {
+                    progress.set(bytesWritten);
+                }
+            });
+
+            assertEquals(result, "result");
+            assertEquals(channel.position(), 3 + data.length);
+            assertEquals(progress.get(), data.length);
+
+            ByteBuffer written = ByteBuffer.allocate(data.length);
+            channel.read(written, 3);
+            assertEquals(written.array(), data);
+        } finally {
+            raf.close();
+        }
+
+        try {
+            downloader.getInputStream();
+            fail("Downloader should be closed");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDownloadToFileChannelReadFailure() throws Exception {
+        InputStream body = new SequenceInputStream(
+            new ByteArrayInputStream(randomBytes(100000)),
+            new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    throw new IOException("Connection reset");
+                }
+            }
+        );
+        DbxDownloader<String> downloader = new DbxDownloader<String>("result", body);
+
+        RandomAccessFile raf = new RandomAccessFile(tempFile(), "rw");
+        try {
+            downloader.download(raf.getChannel());
+            fail("Expected network error");
+        } catch (NetworkIOException ex) {
+            assertEquals(ex.getCause().getMessage(), "Connection reset");
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void testChannelReadsHeapAndDirectBuffers() throws Exception {
+        byte [] data = randomBytes(50000);
+        DbxDownloader<String> downloader = new DbxDownloader<String>("result", new ByteArrayInputStream(data));
+
+        ReadableByteChannel channel = downloader.getChannel();
+        ByteBuffer heap = ByteBuffer.allocate(20000);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        while (heap.hasRemaining()) {
+            assertTrue(channel.read(heap) > 0);
+        }
+        while (channel.read(direct) >= 0) {
+            // read until the end of the body
+        }
+        downloader.close();
+
+        heap.flip();
+        direct.flip();
+        byte [] read = new byte[heap.remaining() + direct.remaining()];
+        heap.get(read, 0, heap.remaining());
+        direct.get(read, 20000, direct.remaining());
+        assertEquals(read, data);
+    }
+
+    @Test
+    public void testChannelStreamsAreReadAsChannels() throws Exception {
+        ChannelStream body = new ChannelStream();
+        assertSame(IOUtil.newChannel(body), body);
+    }
+
+    /**
+     * Response body of a transport that reads into buffers itself.
+     */
+    private static final class ChannelStream extends InputStream implements ReadableByteChannel {
+        @Override
+        public int read() {
+            return -1;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            return -1;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.dropbox.core;
+
+import static org.testng.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+public class DbxRateLimiterTest {
+
+    @Test
+    public void testUnlimitedUntilRateLimited() {
+        DbxRateLimiter limiter = DbxRateLimiter.newBuilder().build();
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(limiter.reserve("dbid:1"), 0L);
+        }
+        assertEquals(limiter.getRate("dbid:1"), Double.POSITIVE_INFINITY);
+        assertEquals(limiter.getQueueDepth("dbid:1"), 0);
+    }
+
+    @Test
+    public void testRateLimitPausesUser() {
+        DbxRateLimiter limiter = DbxRateLimiter.newBuilder().build();
+
+        for (int i = 0; i < 100; i++) {
+            limiter.reserve("dbid:1");
+        }
+        limiter.onRateLimited("dbid:1", TimeUnit.SECONDS.toMillis(30));
+
+        // rate is halved from what we were sending at
+        double rate = limiter.getRate("dbid:1");
+        assertTrue(rate >= 50 && rate <= 51, Double.toString(rate));
+
+        long first = limiter.reserve("dbid:1");
+        assertTrue(first > 29000 && first <= 30000, Long.toString(first));
+        long second = limiter.reserve("dbid:1");
+        assertTrue(second > first, first + " " + second);
+        assertEquals(limiter.getQueueDepth("dbid:1"), 2);
+
+        // other users are unaffected
+        assertEquals(limiter.reserve("dbid:2"), 0L);
+        assertEquals(limiter.reserve(null), 0L);
+        assertEquals(limiter.getQueueDepth(), 2);
+    }
+
+    @Test
+    public void testDecreaseOncePerPause() {
+        DbxRateLimiter limiter = DbxRateLimiter.newBuilder()
+            .withMinRate(1)
+            .build();
+
+        for (int i = 0; i < 100; i++) {
+            limiter.reserve(null);
+        }
+        // all requests in flight get rate limited at once
+        for (int i = 0; i < 100; i++) {
+            limiter.onRateLimited(null, TimeUnit.SECONDS.toMillis(10));
+        }
+        double rate = limiter.getRate(null);
+        assertTrue(rate >= 50 && rate <= 51, Double.toString(rate));
+
+        // longest backoff wins
+        limiter.onRateLimited(null, TimeUnit.SECONDS.toMillis(20));
+        long wait = limiter.reserve(null);
+        assertTrue(wait > 19000 && wait <= 20000, Long.toString(wait));
+    }
+
+    @Test
+    public void testAdditiveIncrease() {
+        DbxRateLimiter limiter = DbxRateLimiter.newBuilder()
+            .withMinRate(10)
+            .withMaxRate(20)
+            .withAdditiveIncrease(10)
+            .build();
+
+        limiter.onRateLimited("dbid:1", 0);
+        assertEquals(limiter.getRate("dbid:1"), 10.0);
+
+        limiter.onSuccess("dbid:1");
+        assertEquals(limiter.getRate("dbid:1"), 11.0);
+
+        for (int i = 0; i < 100; i++) {
+            limiter.onSuccess("dbid:1");
+        }
+        assertEquals(limiter.getRate("dbid:1"), 20.0);
+    }
+
+    @Test
+    public void testAcquireWaitsForPause() throws Exception {
+        DbxRateLimiter limiter = DbxRateLimiter.newBuilder()
+            .withMinRate(1000)
+            .build();
+
+        limiter.onRateLimited("dbid:1", 200);
+
+        long start = System.nanoTime();
+        limiter.acquire("dbid:1");
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed >= 150, Long.toString(elapsed));
+
+        start = System.nanoTime();
+        limiter.acquire("dbid:2");
+        elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed < 100, Long.toString(elapsed));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidDecreaseFactor() {
+        DbxRateLimiter.newBuilder().withDecreaseFactor(1);
+    }
+}
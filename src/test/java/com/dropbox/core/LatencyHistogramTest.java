@@ -0,0 +1,78 @@
+package com.dropbox.core;
+
+import static org.testng.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(histogram.getCount(), 0);
+        assertEquals(histogram.getP50(TimeUnit.NANOSECONDS), 0);
+        assertEquals(histogram.getMax(TimeUnit.NANOSECONDS), 0);
+    }
+
+    @Test
+    public void testBucketBoundaries() {
+        long [] values = { 0, 1, 31, 32, 33, 63, 64, 1000, 123456789L, Long.MAX_VALUE };
+        for (long value : values) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(LatencyHistogram.highestValueOf(index) >= value, Long.toString(value));
+            if (index > 0) {
+                assertTrue(LatencyHistogram.highestValueOf(index - 1) < value, Long.toString(value));
+            }
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+
+        assertEquals(histogram.getCount(), 10000);
+        assertWithin(histogram.getP50(TimeUnit.MICROSECONDS), 5000);
+        assertWithin(histogram.getP99(TimeUnit.MICROSECONDS), 9900);
+        assertWithin(histogram.getP999(TimeUnit.MICROSECONDS), 9990);
+        assertEquals(histogram.getPercentile(100, TimeUnit.MICROSECONDS), 10000);
+        assertEquals(histogram.getMax(TimeUnit.MICROSECONDS), 10000);
+
+        histogram.reset();
+        assertEquals(histogram.getCount(), 0);
+        assertEquals(histogram.getP99(TimeUnit.MICROSECONDS), 0);
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread [] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random();
+                    for (int j = 0; j < 10000; j++) {
+                        histogram.record(random.nextInt(1000000));
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(histogram.getCount(), 40000);
+        assertTrue(histogram.getMax(TimeUnit.NANOSECONDS) < 1000000);
+    }
+
+    private static void assertWithin(long actual, long expected) {
+        // 32 sub-buckets per power of two
+        assertTrue(Math.abs(actual - expected) <= expected / 32 + 1, actual + " != " + expected);
+    }
+}
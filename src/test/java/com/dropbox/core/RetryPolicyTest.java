@@ -0,0 +1,186 @@
+package com.dropbox.core;
+
+import static org.testng.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+public class RetryPolicyTest {
+    private static final String ROUTE = "2/files/get_metadata";
+
+    @Test
+    public void testServerBackoff() {
+        RetryPolicy policy = RetryPolicy.serverBackoff(2);
+
+        long delay = policy.getRetryDelayMillis(attempt(new RetryException("req", "503", 3, TimeUnit.SECONDS), 0));
+        assertTrue(delay >= 3000 && delay < 4000, Long.toString(delay));
+
+        assertTrue(policy.getRetryDelayMillis(attempt(new RetryException("req", "503"), 1)) >= 0);
+        assertEquals(policy.getRetryDelayMillis(attempt(new RetryException("req", "503"), 2)), RetryPolicy.NO_RETRY);
+        assertEquals(policy.getRetryDelayMillis(attempt(new ServerException("req", "500"), 0)), RetryPolicy.NO_RETRY);
+        assertEquals(policy.getRetryDelayMillis(attempt(networkError(), 0)), RetryPolicy.NO_RETRY);
+    }
+
+    @Test
+    public void testDefaultConfigPolicy() {
+        RetryPolicy disabled = DbxRequestConfig.newBuilder("sdk-test").build().getRetryPolicy();
+        assertEquals(disabled.getRetryDelayMillis(attempt(new RetryException("req", "503"), 0)), RetryPolicy.NO_RETRY);
+
+        RetryPolicy custom = ExponentialBackoffRetryPolicy.newBuilder().build();
+        DbxRequestConfig config = DbxRequestConfig.newBuilder("sdk-test")
+            .withRetryPolicy(custom)
+            .build();
+        assertTrue(config.isAutoRetryEnabled());
+        assertSame(config.getRetryPolicy(), custom);
+        assertSame(config.copy().build().getRetryPolicy(), custom);
+        assertNotSame(config.copy().withAutoRetryEnabled(3).build().getRetryPolicy(), custom);
+        assertFalse(config.copy().withAutoRetryDisabled().build().isAutoRetryEnabled());
+    }
+
+    @Test
+    public void testFullJitterBounds() {
+        ExponentialBackoffRetryPolicy policy = ExponentialBackoffRetryPolicy.newBuilder()
+            .withJitter(ExponentialBackoffRetryPolicy.Jitter.FULL)
+            .withBaseDelay(100, TimeUnit.MILLISECONDS)
+            .withMaxDelay(1, TimeUnit.SECONDS)
+            .withMaxRetries(100)
+            .withMaxElapsedTime(0, TimeUnit.MILLISECONDS)
+            .withRetryBudget(null)
+            .build();
+
+        for (int retries = 0; retries < 100; retries++) {
+            long cap = Math.min(1000, retries < 20 ? 100L << retries : Long.MAX_VALUE);
+            long delay = policy.getRetryDelayMillis(attempt(new RetryException("req", "503"), retries));
+            assertTrue(delay >= 0 && delay <= cap, retries + ": " + delay);
+        }
+    }
+
+    @Test
+    public void testDecorrelatedJitterBounds() {
+        ExponentialBackoffRetryPolicy policy = ExponentialBackoffRetryPolicy.newBuilder()
+            .withBaseDelay(100, TimeUnit.MILLISECONDS)
+            .withMaxDelay(5, TimeUnit.SECONDS)
+            .withMaxRetries(50)
+            .withMaxElapsedTime(0, TimeUnit.MILLISECONDS)
+            .withRetryBudget(null)
+            .build();
+
+        long previous = 0;
+        for (int retries = 0; retries < 50; retries++) {
+            RetryPolicy.FailedAttempt attempt = new RetryPolicy.FailedAttempt(
+                ROUTE, false, new RetryException("req", "503"), retries, 0, previous
+            );
+            long delay = policy.getRetryDelayMillis(attempt);
+            assertTrue(delay >= 100 && delay <= Math.min(5000, Math.max(100, previous) * 3), retries + ": " + delay);
+            previous = delay;
+        }
+    }
+
+    @Test
+    public void testServerBackoffIsLowerBound() {
+        ExponentialBackoffRetryPolicy policy = ExponentialBackoffRetryPolicy.newBuilder()
+            .withMaxDelay(1, TimeUnit.SECONDS)
+            .withRetryBudget(null)
+            .build();
+
+        long delay = policy.getRetryDelayMillis(attempt(new RateLimitException("req", "429", 10, TimeUnit.SECONDS), 0));
+        assertEquals(delay, 10000L);
+    }
+
+    @Test
+    public void testMaxRetriesAndElapsedTime() {
+        ExponentialBackoffRetryPolicy policy = ExponentialBackoffRetryPolicy.newBuilder()
+            .withBaseDelay(100, TimeUnit.MILLISECONDS)
+            .withMaxRetries(2)
+            .withMaxElapsedTime(1, TimeUnit.SECONDS)
+            .withRetryBudget(null)
+            .build();
+
+        assertTrue(policy.getRetryDelayMillis(attempt(new RetryException("req", "503"), 1)) >= 0);
+        assertEquals(policy.getRetryDelayMillis(attempt(new RetryException("req", "503"), 2)), RetryPolicy.NO_RETRY);
+
+        RetryPolicy.FailedAttempt late = new RetryPolicy.FailedAttempt(
+            ROUTE, false, new RetryException("req", "503"), 0, 950, 0
+        );
+        assertEquals(policy.getRetryDelayMillis(late), RetryPolicy.NO_RETRY);
+    }
+
+    @Test
+    public void testNetworkErrors() {
+        ExponentialBackoffRetryPolicy disabled = ExponentialBackoffRetryPolicy.newBuilder()
+            .withRetryBudget(null)
+            .build();
+        assertEquals(disabled.getRetryDelayMillis(idempotentAttempt(networkError())), RetryPolicy.NO_RETRY);
+
+        ExponentialBackoffRetryPolicy enabled = ExponentialBackoffRetryPolicy.newBuilder()
+            .withNetworkErrorRetries(true)
+            .withIdempotentRoutes("2/files/list_folder")
+            .withRetryBudget(null)
+            .build();
+        assertTrue(enabled.getRetryDelayMillis(idempotentAttempt(networkError())) >= 0);
+        assertEquals(enabled.getRetryDelayMillis(attempt(networkError(), 0)), RetryPolicy.NO_RETRY);
+
+        RetryPolicy.FailedAttempt listFolder = new RetryPolicy.FailedAttempt(
+            "2/files/list_folder", false, networkError(), 0, 0, 0
+        );
+        assertTrue(enabled.getRetryDelayMillis(listFolder) >= 0);
+
+        // never retry errors that will fail again
+        assertEquals(enabled.getRetryDelayMillis(idempotentAttempt(new BadRequestException("req", "400"))), RetryPolicy.NO_RETRY);
+    }
+
+    @Test
+    public void testRetryBudget() {
+        // no time-based refill, so only requests add tokens
+        RetryBudget budget = new RetryBudget(0.5, 0);
+        assertEquals(budget.getAvailableRetries(), 1);
+
+        ExponentialBackoffRetryPolicy policy = ExponentialBackoffRetryPolicy.newBuilder()
+            .withBaseDelay(0, TimeUnit.MILLISECONDS)
+            .withRetryBudget(budget)
+            .build();
+
+        assertTrue(policy.getRetryDelayMillis(attempt(new RetryException("req", "503"), 0)) >= 0);
+        assertEquals(policy.getRetryDelayMillis(attempt(new RetryException("req", "503"), 0)), RetryPolicy.NO_RETRY);
+
+        policy.onRequest();
+        assertEquals(budget.getAvailableRetries(), 0);
+        policy.onRequest();
+        assertEquals(budget.getAvailableRetries(), 1);
+        assertTrue(policy.getRetryDelayMillis(attempt(new RetryException("req", "503"), 0)) >= 0);
+
+        // capacity is capped
+        for (int i = 0; i < 100; i++) {
+            budget.recordRequest();
+        }
+        assertEquals(budget.getAvailableRetries(), 1);
+    }
+
+    @Test
+    public void testRetryBudgetMinRate() throws Exception {
+        RetryBudget budget = new RetryBudget(0, 100);
+        int available = budget.getAvailableRetries();
+        assertEquals(available, 1000);
+        for (int i = 0; i < available; i++) {
+            assertTrue(budget.tryAcquireRetry());
+        }
+        assertFalse(budget.tryAcquireRetry());
+
+        Thread.sleep(50);
+        assertTrue(budget.tryAcquireRetry());
+    }
+
+    private static RetryPolicy.FailedAttempt attempt(DbxException error, int retries) {
+        return new RetryPolicy.FailedAttempt(ROUTE, false, error, retries, 0, 0);
+    }
+
+    private static RetryPolicy.FailedAttempt idempotentAttempt(DbxException error) {
+        return new RetryPolicy.FailedAttempt("2/files/download", true, error, 0, 0, 0);
+    }
+
+    private static NetworkIOException networkError() {
+        return new NetworkIOException(new IOException("Connection reset"));
+    }
+}
@@ -0,0 +1,57 @@
+package com.dropbox.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+// unit test utility class
+public final class TestUtil {
+    private TestUtil() {
+    }
+
+    /**
+     * Returns {@code length} random bytes. The same length always gives the same bytes.
+     */
+    public static byte [] randomBytes(int length) {
+        byte [] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns a new empty file that is deleted when the JVM exits.
+     */
+    public static File tempFile() throws IOException {
+        File file = File.createTempFile("dbx-test", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Returns a new file holding {@code content} that is deleted when the JVM exits.
+     */
+    public static File tempFile(byte [] content) throws IOException {
+        File file = tempFile();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Returns a new empty directory that is deleted when the JVM exits, as long as it is empty
+     * by then.
+     */
+    public static File tempDirectory() throws IOException {
+        File directory = File.createTempFile("dbx-test", ".dir");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        directory.deleteOnExit();
+        return directory;
+    }
+}
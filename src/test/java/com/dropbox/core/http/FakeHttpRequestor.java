@@ -0,0 +1,155 @@
+package com.dropbox.core.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*>>> import checkers.nullness.quals.Nullable; */
+
+// unit test utility class: in-memory stand-in for the Dropbox API servers
+public abstract class FakeHttpRequestor extends HttpRequestor {
+
+    /**
+     * Returns the response to a request whose body has been fully written. Called from the
+     * thread that calls {@link HttpRequestor.Uploader#finish}, so implementations that are
+     * shared between threads must synchronize their own state.
+     */
+    protected abstract Response respond(Request request) throws IOException;
+
+    @Override
+    public Response doGet(String url, Iterable<Header> headers) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public HttpRequestor.Uploader startPost(String url, Iterable<Header> headers) {
+        return new Uploader(url, headers);
+    }
+
+    @Override
+    public HttpRequestor.Uploader startPut(String url, Iterable<Header> headers) {
+        return new Uploader(url, headers);
+    }
+
+    public static Response json(int statusCode, String body) throws IOException {
+        return json(statusCode, new ByteArrayInputStream(body.getBytes("UTF-8")));
+    }
+
+    public static Response json(int statusCode, InputStream body) {
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put("Content-Type", Collections.singletonList("application/json"));
+        return new Response(statusCode, body, headers);
+    }
+
+    /**
+     * Returns a content-download style response: {@code result} goes in the {@code
+     * dropbox-api-result} header, the file content in the body.
+     */
+    public static Response download(int statusCode, String result, InputStream body) {
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put("Content-Type", Collections.singletonList("application/octet-stream"));
+        headers.put("dropbox-api-result", Collections.singletonList(result));
+        return new Response(statusCode, body, headers);
+    }
+
+    /**
+     * A request as the server sees it, with its body.
+     */
+    public static final class Request {
+        private final String url;
+        private final List<Header> headers;
+        private final byte [] body;
+
+        private Request(String url, List<Header> headers, byte [] body) {
+            this.url = url;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * Returns the requested route within its namespace, e.g. {@code "upload_session/start"}.
+         */
+        public String getRoute() {
+            String path = url.substring(url.indexOf("/2/") + "/2/".length());
+            return path.substring(path.indexOf('/') + 1);
+        }
+
+        public List<Header> getHeaders() {
+            return headers;
+        }
+
+        public /*@Nullable*/ String getHeader(String name) {
+            String value = null;
+            for (Header header : headers) {
+                if (header.getKey().equals(name)) {
+                    value = header.getValue();
+                }
+            }
+            return value;
+        }
+
+        /**
+         * Returns the route argument: the {@code Dropbox-API-Arg} header of content routes,
+         * or the body of RPC routes.
+         */
+        public String getArg() {
+            String arg = getHeader("Dropbox-API-Arg");
+            return arg != null ? arg : getBodyAsString();
+        }
+
+        public byte [] getBody() {
+            return body;
+        }
+
+        public String getBodyAsString() {
+            try {
+                return new String(body, "UTF-8");
+            } catch (IOException ex) {
+                throw new AssertionError(ex);
+            }
+        }
+    }
+
+    private final class Uploader extends HttpRequestor.Uploader {
+        private final String url;
+        private final List<Header> headers;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        private Uploader(String url, Iterable<Header> headers) {
+            this.url = url;
+            this.headers = new ArrayList<Header>();
+            for (Header header : headers) {
+                this.headers.add(header);
+            }
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void abort() {
+        }
+
+        @Override
+        public Response finish() throws IOException {
+            return respond(new Request(url, headers, body.toByteArray()));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.dropbox.core.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.dropbox.core.util.IOUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+
+public class StandardHttpRequestorBench
+{
+    /**
+     * POST bodies of known size to a local HTTP server, once with fixed-length streaming (the
+     * default when the length is known) and once forced back to chunked transfer encoding.
+     */
+    @State(Scope.Benchmark)
+    public static class PostKnownLength
+    {
+        @Param({"512", "65536", "4194304"})
+        public int bodySize;
+
+        HttpServer server;
+        String url;
+        byte [] body;
+
+        final StandardHttpRequestor fixedLength = StandardHttpRequestor.INSTANCE;
+        final StandardHttpRequestor chunked = new StandardHttpRequestor(StandardHttpRequestor.Config.DEFAULT_INSTANCE) {
+            @Override
+            protected void configure(HttpURLConnection conn)
+            {
+                conn.setChunkedStreamingMode(IOUtil.DEFAULT_COPY_BUFFER_SIZE);
+            }
+        };
+
+        @Setup
+        public void setUp()
+            throws IOException
+        {
+            body = new byte[bodySize];
+            for (int i = 0; i < body.length; ++i) {
+                body[i] = (byte) i;
+            }
+
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange)
+                    throws IOException
+                {
+                    InputStream in = exchange.getRequestBody();
+                    byte [] buf = new byte[IOUtil.DEFAULT_COPY_BUFFER_SIZE];
+                    while (in.read(buf) >= 0) {
+                        // discard
+                    }
+                    exchange.sendResponseHeaders(200, -1);
+                    exchange.close();
+                }
+            });
+            server.start();
+            url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        }
+
+        @TearDown
+        public void tearDown()
+        {
+            server.stop(0);
+        }
+
+        @Benchmark
+        public int fixedLength()
+            throws IOException
+        {
+            return post(fixedLength);
+        }
+
+        @Benchmark
+        public int chunked()
+            throws IOException
+        {
+            return post(chunked);
+        }
+
+        private int post(StandardHttpRequestor requestor)
+            throws IOException
+        {
+            HttpRequestor.Uploader uploader = requestor.startPost(
+                url,
+                Collections.<HttpRequestor.Header>emptyList(),
+                body.length
+            );
+            try {
+                uploader.upload(body);
+                HttpRequestor.Response response = uploader.finish();
+                InputStream in = response.getBody();
+                if (in != null) {
+                    in.close();
+                }
+                return response.getStatusCode();
+            } finally {
+                uploader.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.dropbox.core.http;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import com.dropbox.core.util.IOUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class StandardHttpRequestorTest {
+    private HttpServer server;
+    private String url;
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/echo", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                IOUtil.copyStreamToStream(exchange.getRequestBody(), body);
+
+                String transferEncoding = exchange.getRequestHeaders().getFirst("Transfer-Encoding");
+                String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+                exchange.getResponseHeaders().add("X-Request-Transfer-Encoding", String.valueOf(transferEncoding));
+                exchange.getResponseHeaders().add("X-Request-Content-Length", String.valueOf(contentLength));
+
+                exchange.sendResponseHeaders(200, body.size());
+                OutputStream out = exchange.getResponseBody();
+                body.writeTo(out);
+                out.close();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/echo";
+    }
+
+    @AfterClass
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testKnownLengthUsesFixedLengthStreaming() throws Exception {
+        byte [] body = "{\"path\":\"/a.txt\"}".getBytes("UTF-8");
+
+        HttpRequestor.Uploader uploader = StandardHttpRequestor.INSTANCE.startPost(
+            url,
+            Collections.<HttpRequestor.Header>emptyList(),
+            body.length
+        );
+        HttpRequestor.Response response = finish(uploader, body);
+
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(firstHeader(response, "X-Request-Transfer-Encoding"), "null");
+        assertEquals(firstHeader(response, "X-Request-Content-Length"), Integer.toString(body.length));
+        assertEquals(IOUtil.slurp(response.getBody(), 1024), body);
+    }
+
+    @Test
+    public void testContentLengthHeaderUsesFixedLengthStreaming() throws Exception {
+        byte [] body = new byte[3 * IOUtil.DEFAULT_COPY_BUFFER_SIZE + 7];
+        for (int i = 0; i < body.length; ++i) {
+            body[i] = (byte) i;
+        }
+
+        List<HttpRequestor.Header> headers = new ArrayList<HttpRequestor.Header>();
+        headers.add(new HttpRequestor.Header("Content-Type", "application/octet-stream"));
+        headers.add(new HttpRequestor.Header("Content-Length", Integer.toString(body.length)));
+
+        HttpRequestor.Response response = finish(StandardHttpRequestor.INSTANCE.startPost(url, headers), body);
+
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(firstHeader(response, "X-Request-Transfer-Encoding"), "null");
+        assertEquals(firstHeader(response, "X-Request-Content-Length"), Integer.toString(body.length));
+        assertEquals(IOUtil.slurp(response.getBody(), body.length), body);
+    }
+
+    @Test
+    public void testUnknownLengthUsesChunkedStreaming() throws Exception {
+        byte [] body = "chunked".getBytes("UTF-8");
+
+        HttpRequestor.Response response = finish(
+            StandardHttpRequestor.INSTANCE.startPost(url, Collections.<HttpRequestor.Header>emptyList()),
+            body
+        );
+
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(firstHeader(response, "X-Request-Transfer-Encoding"), "chunked");
+        assertEquals(IOUtil.slurp(response.getBody(), 1024), body);
+    }
+
+    @Test
+    public void testUploadFileChannelRegion() throws Exception {
+        byte [] content = new byte[3 * IOUtil.DEFAULT_COPY_BUFFER_SIZE + 7];
+        for (int i = 0; i < content.length; ++i) {
+            content[i] = (byte) i;
+        }
+        File file = File.createTempFile("upload", ".bin");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+
+        int position = 5;
+        int count = content.length - 10;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            HttpRequestor.Uploader uploader = StandardHttpRequestor.INSTANCE.startPost(
+                url,
+                Collections.<HttpRequestor.Header>emptyList(),
+                count
+            );
+            HttpRequestor.Response response;
+            try {
+                uploader.upload(channel, position, count);
+                response = uploader.finish();
+            } finally {
+                uploader.close();
+            }
+
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(IOUtil.slurp(response.getBody(), content.length), Arrays.copyOfRange(content, position, position + count));
+            // positional reads leave the channel where it was
+            assertEquals(channel.position(), 0);
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test(expectedExceptions = IOUtil.ReadException.class)
+    public void testUploadFileChannelPastEnd() throws Exception {
+        File file = File.createTempFile("upload", ".bin");
+        file.deleteOnExit();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            HttpRequestor.Uploader uploader = StandardHttpRequestor.INSTANCE.startPost(
+                url,
+                Collections.<HttpRequestor.Header>emptyList()
+            );
+            try {
+                uploader.upload(raf.getChannel(), 0, 10);
+            } finally {
+                uploader.abort();
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void testUploadDirectByteBuffer() throws Exception {
+        byte [] body = "direct buffer".getBytes("UTF-8");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(body.length);
+        buffer.put(body);
+        buffer.flip();
+
+        HttpRequestor.Uploader uploader = StandardHttpRequestor.INSTANCE.startPost(
+            url,
+            Collections.<HttpRequestor.Header>emptyList(),
+            body.length
+        );
+        HttpRequestor.Response response;
+        try {
+            uploader.upload(buffer);
+            response = uploader.finish();
+        } finally {
+            uploader.close();
+        }
+
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(buffer.remaining(), 0);
+        assertEquals(IOUtil.slurp(response.getBody(), 1024), body);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeContentLength() throws Exception {
+        StandardHttpRequestor.INSTANCE.startPost(url, Collections.<HttpRequestor.Header>emptyList(), -1);
+    }
+
+    private static HttpRequestor.Response finish(HttpRequestor.Uploader uploader, byte [] body) throws IOException {
+        try {
+            uploader.upload(body);
+            return uploader.finish();
+        } finally {
+            uploader.close();
+        }
+    }
+
+    private static String firstHeader(HttpRequestor.Response response, String name) {
+        List<String> values = response.getHeaders().get(name);
+        assertEquals(values.size(), 1);
+        return values.get(0);
+    }
+}
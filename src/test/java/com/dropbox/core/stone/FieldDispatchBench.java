@@ -0,0 +1,72 @@
+package com.dropbox.core.stone;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+
+public class FieldDispatchBench
+{
+    /**
+     * Compare the String.equals(..) chains generated deserializers used to emit against the
+     * precomputed name index they use now. Field names are those of files.FileMetadata, in
+     * declaration order.
+     */
+    @State(Scope.Benchmark)
+    public static class DispatchFileMetadataFields
+    {
+        static final String[] FIELDS = {
+            "name", "path_lower", "path_display", "parent_shared_folder_id", "id",
+            "client_modified", "server_modified", "rev", "size", "media_info",
+            "symlink_info", "sharing_info", "property_groups", "has_explicit_shared_members",
+            "content_hash",
+        };
+
+        static final Map<String, Integer> FIELD_INDEXES = CompositeSerializer.indexNames(FIELDS);
+
+        // Not 'final' to avoid constant folding. Copies, so they are not the interned literals
+        // above, just like names read by the JSON parser.
+        static String[] input = new String[FIELDS.length];
+
+        static {
+            for (int i = 0; i < FIELDS.length; i++) {
+                input[i] = new String(FIELDS[i]);
+            }
+        }
+
+        @Benchmark
+        public void equalsChain(Blackhole bh)
+        {
+            for (String field : input) {
+                int index;
+                if ("name".equals(field)) index = 0;
+                else if ("path_lower".equals(field)) index = 1;
+                else if ("path_display".equals(field)) index = 2;
+                else if ("parent_shared_folder_id".equals(field)) index = 3;
+                else if ("id".equals(field)) index = 4;
+                else if ("client_modified".equals(field)) index = 5;
+                else if ("server_modified".equals(field)) index = 6;
+                else if ("rev".equals(field)) index = 7;
+                else if ("size".equals(field)) index = 8;
+                else if ("media_info".equals(field)) index = 9;
+                else if ("symlink_info".equals(field)) index = 10;
+                else if ("sharing_info".equals(field)) index = 11;
+                else if ("property_groups".equals(field)) index = 12;
+                else if ("has_explicit_shared_members".equals(field)) index = 13;
+                else if ("content_hash".equals(field)) index = 14;
+                else index = -1;
+                bh.consume(index);
+            }
+        }
+
+        @Benchmark
+        public void indexed(Blackhole bh)
+        {
+            for (String field : input) {
+                bh.consume(CompositeSerializer.indexOf(FIELD_INDEXES, field));
+            }
+        }
+    }
+}
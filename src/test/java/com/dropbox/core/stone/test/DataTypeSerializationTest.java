@@ -2,6 +2,8 @@ package com.dropbox.core.stone.test;
 
 import static org.testng.Assert.*;
 
+import com.dropbox.core.stone.StoneValidation;
+
 import java.io.IOException;
 
 import org.testng.annotations.Test;
@@ -182,4 +184,47 @@ public class DataTypeSerializationTest {
         assertEquals(actual, ChildUnion.ALPHA);
     }
 
+    @Test
+    public void testPatternValidationModes() throws Exception {
+        String json = "{\"path\":\"not a path\"}";
+        StoneValidation.Mode original = StoneValidation.getMode();
+        try {
+            StoneValidation.setMode(StoneValidation.Mode.FULL);
+            assertPatternRejected(json, false);
+            assertPatternRejected(json, true);
+
+            StoneValidation.setMode(StoneValidation.Mode.SERVER_TRUSTED);
+            assertPatternRejected(json, false);
+            assertEquals(PatternedPath.Serializer.INSTANCE.deserializeTrusted(json).getPath(), "not a path");
+
+            StoneValidation.setMode(StoneValidation.Mode.OFF);
+            assertEquals(PatternedPath.Serializer.INSTANCE.deserialize(json).getPath(), "not a path");
+            assertEquals(PatternedPath.Serializer.INSTANCE.deserializeTrusted(json).getPath(), "not a path");
+
+            // values built outside of deserialization are always validated
+            try {
+                new PatternedPath("not a path");
+                fail("Expected pattern validation failure");
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+            assertEquals(new PatternedPath("/a/valid/path").getPath(), "/a/valid/path");
+        } finally {
+            StoneValidation.setMode(original);
+        }
+    }
+
+    private static void assertPatternRejected(String json, boolean trusted) throws Exception {
+        try {
+            if (trusted) {
+                PatternedPath.Serializer.INSTANCE.deserializeTrusted(json);
+            } else {
+                PatternedPath.Serializer.INSTANCE.deserialize(json);
+            }
+            fail("Expected pattern validation failure");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
 }
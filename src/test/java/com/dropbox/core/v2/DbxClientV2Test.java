@@ -6,12 +6,26 @@ import static com.dropbox.core.v2.files.FilesSerializers.serializer;
 
 import com.dropbox.core.http.HttpRequestor;
 import com.dropbox.core.v2.files.FileMetadata;
+import com.dropbox.core.v2.files.GetMetadataErrorException;
 import com.dropbox.core.v2.files.Metadata;
+import com.dropbox.core.v2.common.PathRoot;
 import com.dropbox.core.BadRequestException;
+import com.dropbox.core.BadResponseException;
+import com.dropbox.core.DbxCallback;
 import com.dropbox.core.DbxDownloader;
 import com.dropbox.core.DbxException;
+import com.dropbox.core.DbxHost;
 import com.dropbox.core.DbxRequestConfig;
+import com.dropbox.core.DbxWrappedException;
+import com.dropbox.core.ExponentialBackoffRetryPolicy;
+import com.dropbox.core.NetworkIOException;
+import com.dropbox.core.RequestListener;
 import com.dropbox.core.RetryException;
+import com.dropbox.core.stone.StoneSerializer;
+import com.dropbox.core.stone.StoneSerializers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -28,9 +42,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class DbxClientV2Test {
 
@@ -202,6 +219,70 @@ public class DbxClientV2Test {
         assertEquals(actualMetadata, expectedMetadata);
     }
 
+    @Test
+    public void testRetryPolicyNetworkErrorDownload() throws Exception {
+        HttpRequestor mockRequestor = mock(HttpRequestor.class);
+        DbxRequestConfig config = createRequestConfig()
+            .withRetryPolicy(networkErrorRetryPolicy())
+            .withHttpRequestor(mockRequestor)
+            .build();
+
+        DbxClientV2 client = new DbxClientV2(config, "fakeAccessToken");
+        FileMetadata expectedMetadata = constructFileMetadate();
+        byte [] expectedBytes = new byte [] { 1, 2, 3, 4 };
+
+        // connection reset once, then return 200
+        HttpRequestor.Uploader mockUploader = mockUploader();
+        when(mockUploader.finish())
+            .thenThrow(new IOException("Connection reset"))
+            .thenReturn(createDownloaderResponse(expectedBytes, serialize(expectedMetadata)));
+        when(mockRequestor.startPost(anyString(), anyHeaders()))
+            .thenReturn(mockUploader);
+
+        DbxDownloader<FileMetadata> downloader = client.files().download(expectedMetadata.getId());
+
+        // downloads are idempotent, so should have been attempted twice
+        verify(mockRequestor, times(2)).startPost(anyString(), anyHeaders());
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        FileMetadata actualMetadata = downloader.download(bout);
+
+        assertEquals(bout.toByteArray(), expectedBytes);
+        assertEquals(actualMetadata, expectedMetadata);
+    }
+
+    @Test(expectedExceptions = NetworkIOException.class)
+    public void testRetryPolicyNetworkErrorRpc() throws Exception {
+        HttpRequestor mockRequestor = mock(HttpRequestor.class);
+        DbxRequestConfig config = createRequestConfig()
+            .withRetryPolicy(networkErrorRetryPolicy())
+            .withHttpRequestor(mockRequestor)
+            .build();
+
+        DbxClientV2 client = new DbxClientV2(config, "fakeAccessToken");
+
+        HttpRequestor.Uploader mockUploader = mockUploader();
+        when(mockUploader.finish())
+            .thenThrow(new IOException("Connection reset"));
+        when(mockRequestor.startPost(anyString(), anyHeaders()))
+            .thenReturn(mockUploader);
+
+        try {
+            client.files().getMetadata("id:1HkLjqifwMAAAAAAAAAAAQ");
+        } finally {
+            // RPC routes are not idempotent unless configured, so no retries
+            verify(mockRequestor, times(1)).startPost(anyString(), anyHeaders());
+        }
+    }
+
+    private static ExponentialBackoffRetryPolicy networkErrorRetryPolicy() {
+        return ExponentialBackoffRetryPolicy.newBuilder()
+            .withBaseDelay(0, TimeUnit.MILLISECONDS)
+            .withNetworkErrorRetries(true)
+            .withRetryBudget(null)
+            .build();
+    }
+
     @Test
     public void testRetrySuccessWithBackoff() throws Exception {
         HttpRequestor mockRequestor = mock(HttpRequestor.class);
@@ -239,6 +320,192 @@ public class DbxClientV2Test {
         assertTrue(actual instanceof FileMetadata, actual.getClass().toString());
     }
 
+    @Test
+    public void testAsyncRetrySuccess() throws Exception {
+        HttpRequestor mockRequestor = mock(HttpRequestor.class);
+        DbxRequestConfig config = createRequestConfig()
+            .withAutoRetryEnabled(3)
+            .withHttpRequestor(mockRequestor)
+            .build();
+
+        DbxClientV2 client = new DbxClientV2(config, "fakeAccessToken");
+        FileMetadata expected = constructFileMetadate();
+
+        // 503 once, then return result
+        respondAsync(
+            mockRequestor,
+            createEmptyResponse(503),
+            createSuccessResponse(serialize(expected))
+        );
+
+        BlockingCallback<Metadata> callback = new BlockingCallback<Metadata>();
+        client.files().getMetadataAsync(expected.getId(), callback);
+        Metadata actual = callback.get();
+
+        // should have been attempted twice, never through the blocking API
+        verify(mockRequestor, times(2)).startPostAsync(anyString(), anyHeaders(), any(byte[].class), anyResponseCallback());
+        verify(mockRequestor, never()).startPost(anyString(), anyHeaders());
+
+        assertEquals(actual.getName(), expected.getName());
+        assertTrue(actual instanceof FileMetadata, actual.getClass().toString());
+        assertEquals(((FileMetadata) actual).getId(), expected.getId());
+    }
+
+    @Test(expectedExceptions = GetMetadataErrorException.class)
+    public void testAsyncRouteError() throws Exception {
+        HttpRequestor mockRequestor = mock(HttpRequestor.class);
+        DbxRequestConfig config = createRequestConfig()
+            .withAutoRetryEnabled(3)
+            .withHttpRequestor(mockRequestor)
+            .build();
+
+        DbxClientV2 client = new DbxClientV2(config, "fakeAccessToken");
+
+        byte [] error = (
+            "{\"error_summary\":\"path/not_found/..\"," +
+            "\"error\":{\".tag\":\"path\",\"path\":{\".tag\":\"not_found\"}}}"
+        ).getBytes("UTF-8");
+        respondAsync(
+            mockRequestor,
+            new HttpRequestor.Response(409, new ByteArrayInputStream(error), Collections.<String,List<String>>emptyMap())
+        );
+
+        BlockingCallback<Metadata> callback = new BlockingCallback<Metadata>();
+        client.files().getMetadataAsync("/missing.txt", callback);
+        try {
+            callback.get();
+        } finally {
+            // route errors are not retried
+            verify(mockRequestor, times(1)).startPostAsync(anyString(), anyHeaders(), any(byte[].class), anyResponseCallback());
+        }
+    }
+
+    @Test
+    public void testAsyncDeserializerThrows() throws Exception {
+        HttpRequestor mockRequestor = mock(HttpRequestor.class);
+        DbxRequestConfig config = createRequestConfig()
+            .withAutoRetryEnabled(3)
+            .withHttpRequestor(mockRequestor)
+            .build();
+
+        DbxRawClientV2 client = new DbxRawClientV2(config, DbxHost.DEFAULT, null, null) {
+            @Override
+            protected void addAuthHeaders(List<HttpRequestor.Header> headers) {
+            }
+
+            @Override
+            protected DbxRawClientV2 withPathRoot(PathRoot pathRoot) {
+                return this;
+            }
+        };
+
+        final IllegalArgumentException invalid = new IllegalArgumentException("invalid result");
+        StoneSerializer<String> throwing = new StoneSerializer<String>() {
+            @Override
+            public void serialize(String value, JsonGenerator g) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public String deserialize(JsonParser p) {
+                throw invalid;
+            }
+        };
+
+        respondAsync(mockRequestor, createSuccessResponse("\"result\"".getBytes("UTF-8")));
+
+        BlockingCallback<String> callback = new BlockingCallback<String>();
+        client.rpcStyleAsync(
+            DbxHost.DEFAULT.getApi(), "2/test/echo", "arg", false,
+            StoneSerializers.string(), throwing, StoneSerializers.void_(),
+            new DbxRawClientV2.RpcCallback<String>(callback) {
+                @Override
+                protected DbxException newException(DbxWrappedException error) {
+                    throw new AssertionError("unexpected route error");
+                }
+            }
+        );
+
+        try {
+            callback.get();
+            fail("deserializer failure was not reported");
+        } catch (BadResponseException ex) {
+            assertSame(ex.getCause(), invalid);
+        }
+        // unexpected errors are not retried
+        verify(mockRequestor, times(1)).startPostAsync(anyString(), anyHeaders(), any(byte[].class), anyResponseCallback());
+    }
+
+    @Test
+    public void testAsyncListenerThrows() throws Exception {
+        HttpRequestor mockRequestor = mock(HttpRequestor.class);
+        final IllegalStateException broken = new IllegalStateException("broken listener");
+        DbxRequestConfig config = createRequestConfig()
+            .withAutoRetryEnabled(3)
+            .withHttpRequestor(mockRequestor)
+            .withRequestListener(new RequestListener() {
+                @Override
+                public void onFirstByte(Request request, int attempt, int statusCode) {
+                    throw broken;
+                }
+            })
+            .build();
+
+        DbxClientV2 client = new DbxClientV2(config, "fakeAccessToken");
+        FileMetadata expected = constructFileMetadate();
+
+        respondAsync(mockRequestor, createSuccessResponse(serialize(expected)));
+
+        BlockingCallback<Metadata> callback = new BlockingCallback<Metadata>();
+        client.files().getMetadataAsync(expected.getId(), callback);
+
+        try {
+            callback.get();
+            fail("listener failure was not reported");
+        } catch (DbxException ex) {
+            assertSame(ex.getCause(), broken);
+        }
+        verify(mockRequestor, times(1)).startPostAsync(anyString(), anyHeaders(), any(byte[].class), anyResponseCallback());
+    }
+
+    private static void respondAsync(HttpRequestor mockRequestor, HttpRequestor.Response ... responses) {
+        final Iterator<HttpRequestor.Response> remaining = Arrays.asList(responses).iterator();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                HttpRequestor.ResponseCallback callback = (HttpRequestor.ResponseCallback) invocation.getArguments()[3];
+                callback.onResponse(remaining.next());
+                return null;
+            }
+        }).when(mockRequestor).startPostAsync(anyString(), anyHeaders(), any(byte[].class), anyResponseCallback());
+    }
+
+    private static final class BlockingCallback<T> implements DbxCallback<T> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile T result;
+        private volatile DbxException error;
+
+        @Override
+        public void onSuccess(T result) {
+            this.result = result;
+            done.countDown();
+        }
+
+        @Override
+        public void onFailure(DbxException error) {
+            this.error = error;
+            done.countDown();
+        }
+
+        public T get() throws DbxException, InterruptedException {
+            assertTrue(done.await(30, TimeUnit.SECONDS), "timed out waiting for async request");
+            if (error != null) {
+                throw error;
+            }
+            return result;
+        }
+    }
+
     private static HttpRequestor.Response createRateLimitResponse(long backoffSeconds) {
         byte [] body = new byte[0];
         return new HttpRequestor.Response(
@@ -316,6 +583,10 @@ public class DbxClientV2Test {
         return Matchers.<Iterable<HttpRequestor.Header>>any();
     }
 
+    private static HttpRequestor.ResponseCallback anyResponseCallback() {
+        return Matchers.<HttpRequestor.ResponseCallback>any();
+    }
+
     private static byte [] serialize(Metadata metadata) {
         assertNotNull(metadata);
 
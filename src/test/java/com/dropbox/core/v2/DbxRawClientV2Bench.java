@@ -0,0 +1,179 @@
+package com.dropbox.core.v2;
+
+import com.dropbox.core.DbxHost;
+import com.dropbox.core.DbxRequestConfig;
+import com.dropbox.core.http.HttpRequestor;
+import com.dropbox.core.stone.StoneSerializer;
+import com.dropbox.core.stone.StoneSerializers;
+import com.dropbox.core.v2.common.PathRoot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class DbxRawClientV2Bench
+{
+    /**
+     * Send RPC requests with a large argument (such as a {@code getMetadataBatch} style list of
+     * paths) through a requestor that discards the request body. Compares serializing into the
+     * pooled per-thread buffer, serializing straight into the request body stream and the old
+     * approach of copying a fresh {@code ByteArrayOutputStream} into a {@code byte[]}.
+     *
+     * <p> Run with {@code -prof gc} to compare allocation rates.
+     */
+    @State(Scope.Thread)
+    public static class RpcRequestBody
+    {
+        @Param({"10", "1000", "10000"})
+        public int paths;
+
+        // Not 'final' to avoid constant folding.
+        List<String> arg;
+        StoneSerializer<List<String>> serializer = StoneSerializers.list(StoneSerializers.string());
+
+        RawClient pooled;
+        RawClient streaming;
+
+        @Setup
+        public void setUp()
+        {
+            arg = new ArrayList<String>(paths);
+            for (int i = 0; i < paths; i++) {
+                arg.add("/Photos/2016/February/IMG_" + i + ".jpg");
+            }
+
+            DbxRequestConfig config = DbxRequestConfig.newBuilder("sdk-bench")
+                .withHttpRequestor(new DiscardingRequestor())
+                .build();
+            pooled = new RawClient(config);
+            streaming = new RawClient(config.copy().withRequestBodyStreaming(true).build());
+        }
+
+        @Benchmark
+        public Object pooled()
+            throws Exception
+        {
+            return pooled.rpcStyle(
+                DbxHost.DEFAULT.getApi(), "2/bench/paths", arg, false,
+                serializer, StoneSerializers.void_(), StoneSerializers.void_()
+            );
+        }
+
+        @Benchmark
+        public Object streaming()
+            throws Exception
+        {
+            return streaming.rpcStyle(
+                DbxHost.DEFAULT.getApi(), "2/bench/paths", arg, false,
+                serializer, StoneSerializers.void_(), StoneSerializers.void_()
+            );
+        }
+
+        @Benchmark
+        public byte[] copy()
+            throws Exception
+        {
+            // what rpcStyle used to allocate for every request body
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            serializer.serialize(arg, out);
+            return out.toByteArray();
+        }
+    }
+
+    static final class RawClient extends DbxRawClientV2
+    {
+        RawClient(DbxRequestConfig requestConfig)
+        {
+            super(requestConfig, DbxHost.DEFAULT, null, null);
+        }
+
+        @Override
+        protected void addAuthHeaders(List<HttpRequestor.Header> headers)
+        {
+        }
+
+        @Override
+        protected DbxRawClientV2 withPathRoot(PathRoot pathRoot)
+        {
+            return this;
+        }
+    }
+
+    static final class DiscardingRequestor extends HttpRequestor
+    {
+        private static final byte[] RESPONSE = { 'n', 'u', 'l', 'l' };
+
+        @Override
+        public Response doGet(String url, Iterable<Header> headers)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Uploader startPost(String url, Iterable<Header> headers)
+        {
+            return new DiscardingUploader();
+        }
+
+        @Override
+        public Uploader startPut(String url, Iterable<Header> headers)
+        {
+            return new DiscardingUploader();
+        }
+
+        private static final class DiscardingUploader extends Uploader
+        {
+            @Override
+            public OutputStream getBody()
+            {
+                return new OutputStream() {
+                    @Override
+                    public void write(int b)
+                    {
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len)
+                    {
+                    }
+                };
+            }
+
+            @Override
+            public void upload(byte[] body, int off, int len)
+            {
+            }
+
+            @Override
+            public void close()
+            {
+            }
+
+            @Override
+            public void abort()
+            {
+            }
+
+            @Override
+            public Response finish()
+                throws IOException
+            {
+                return new Response(
+                    200,
+                    new ByteArrayInputStream(RESPONSE),
+                    Collections.<String, List<String>>emptyMap()
+                );
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.dropbox.core.v2;
+
+import static org.testng.Assert.*;
+
+import com.dropbox.core.DbxDownloader;
+import com.dropbox.core.DbxException;
+import com.dropbox.core.DbxHost;
+import com.dropbox.core.DbxRequestConfig;
+import com.dropbox.core.ExponentialBackoffRetryPolicy;
+import com.dropbox.core.LatencyHistogram;
+import com.dropbox.core.RequestListener;
+import com.dropbox.core.RetryException;
+import com.dropbox.core.RouteLatencyRecorder;
+import com.dropbox.core.http.FakeHttpRequestor;
+import com.dropbox.core.http.HttpRequestor;
+import com.dropbox.core.stone.StoneSerializers;
+import com.dropbox.core.util.IOUtil;
+import com.dropbox.core.v2.common.PathRoot;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+public class RequestListenerTest {
+    private static final String ROUTE = "2/test/echo";
+
+    @Test
+    public void testRpcEvents() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        FakeRequestor requestor = new FakeRequestor(response(200, "\"world\""));
+        RawClient client = new RawClient(config(requestor, listener));
+
+        String result = client.rpcStyle(
+            DbxHost.DEFAULT.getApi(), ROUTE, "hello", false,
+            StoneSerializers.string(), StoneSerializers.string(), StoneSerializers.void_()
+        );
+
+        assertEquals(result, "world");
+        assertEquals(listener.events, Arrays.asList(
+            "start RPC " + ROUTE,
+            "headers 0",
+            "sent 7",
+            "first 0 200",
+            "received 7",
+            "complete null"
+        ));
+    }
+
+    @Test
+    public void testRpcRetryEvents() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        FakeRequestor requestor = new FakeRequestor(response(503, ""), response(200, "\"world\""));
+        DbxRequestConfig config = config(requestor, listener).copy()
+            .withRetryPolicy(ExponentialBackoffRetryPolicy.newBuilder()
+                .withBaseDelay(0, TimeUnit.MILLISECONDS)
+                .withRetryBudget(null)
+                .build())
+            .build();
+        RawClient client = new RawClient(config);
+
+        client.rpcStyle(
+            DbxHost.DEFAULT.getApi(), ROUTE, "hello", false,
+            StoneSerializers.string(), StoneSerializers.string(), StoneSerializers.void_()
+        );
+
+        assertTrue(listener.events.contains("first 0 503"), listener.events.toString());
+        assertTrue(listener.events.contains("retry 0 RetryException 0"), listener.events.toString());
+        assertTrue(listener.events.contains("headers 1"), listener.events.toString());
+        assertTrue(listener.events.contains("first 1 200"), listener.events.toString());
+        assertEquals(listener.events.get(listener.events.size() - 1), "complete null");
+    }
+
+    @Test
+    public void testRpcFailureEvents() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        FakeRequestor requestor = new FakeRequestor(response(503, ""));
+        RawClient client = new RawClient(config(requestor, listener));
+
+        try {
+            client.rpcStyle(
+                DbxHost.DEFAULT.getApi(), ROUTE, "hello", false,
+                StoneSerializers.string(), StoneSerializers.string(), StoneSerializers.void_()
+            );
+            fail("Expected RetryException");
+        } catch (RetryException ex) {
+            // expected
+        }
+        assertEquals(listener.events.get(listener.events.size() - 1), "complete RetryException");
+    }
+
+    @Test
+    public void testDownloadCompletesOnClose() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        HttpRequestor.Response response = new HttpRequestor.Response(
+            200,
+            new ByteArrayInputStream(new byte [] { 1, 2, 3, 4 }),
+            headers("Dropbox-API-Result", "\"meta\"")
+        );
+        RawClient client = new RawClient(config(new FakeRequestor(response), listener));
+
+        DbxDownloader<String> downloader = client.downloadStyle(
+            DbxHost.DEFAULT.getContent(), ROUTE, "hello", false, Collections.<HttpRequestor.Header>emptyList(),
+            StoneSerializers.string(), StoneSerializers.string(), StoneSerializers.void_()
+        );
+        assertFalse(listener.events.contains("complete null"), listener.events.toString());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(downloader.download(out), "meta");
+        assertEquals(out.toByteArray(), new byte [] { 1, 2, 3, 4 });
+
+        assertTrue(listener.events.contains("received 4"), listener.events.toString());
+        assertEquals(listener.events.get(listener.events.size() - 1), "complete null");
+    }
+
+    @Test
+    public void testUploadEvents() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        FakeRequestor requestor = new FakeRequestor(response(200, "\"done\""));
+        RawClient client = new RawClient(config(requestor, listener));
+
+        HttpRequestor.Uploader uploader = client.uploadStyle(
+            DbxHost.DEFAULT.getContent(), ROUTE, "hello", false, StoneSerializers.string()
+        );
+        OutputStream body = uploader.getBody();
+        body.write(new byte [10]);
+        body.write(1);
+        HttpRequestor.Response response = uploader.finish();
+        assertEquals(listener.events.get(listener.events.size() - 1), "first 0 200");
+
+        IOUtil.slurp(response.getBody(), 1024);
+        response.getBody().close();
+        uploader.close();
+
+        assertEquals(listener.events, Arrays.asList(
+            "start UPLOAD " + ROUTE,
+            "headers 0",
+            "sent 10",
+            "sent 1",
+            "first 0 200",
+            "received 6",
+            "complete null"
+        ));
+    }
+
+    @Test
+    public void testRouteLatencyRecorder() throws Exception {
+        RouteLatencyRecorder recorder = new RouteLatencyRecorder();
+        FakeRequestor requestor = new FakeRequestor(response(200, "\"a\""), response(200, "\"b\""));
+        RawClient client = new RawClient(config(requestor, recorder));
+
+        for (int i = 0; i < 2; i++) {
+            client.rpcStyle(
+                DbxHost.DEFAULT.getApi(), ROUTE, "hello", false,
+                StoneSerializers.string(), StoneSerializers.string(), StoneSerializers.void_()
+            );
+        }
+
+        assertEquals(recorder.getRoutes(), Collections.singleton(ROUTE));
+        LatencyHistogram latency = recorder.getLatency(ROUTE);
+        assertEquals(latency.getCount(), 2);
+        assertTrue(latency.getP50(TimeUnit.NANOSECONDS) > 0);
+        assertTrue(latency.getP999(TimeUnit.NANOSECONDS) <= latency.getMax(TimeUnit.NANOSECONDS));
+        assertEquals(recorder.getTimeToFirstByte(ROUTE).getCount(), 2);
+        assertNull(recorder.getLatency("2/other/route"));
+    }
+
+    private static DbxRequestConfig config(HttpRequestor requestor, RequestListener listener) {
+        return DbxRequestConfig.newBuilder("sdk-test")
+            .withHttpRequestor(requestor)
+            .withRequestListener(listener)
+            .build();
+    }
+
+    private static HttpRequestor.Response response(int statusCode, String body) throws IOException {
+        return new HttpRequestor.Response(
+            statusCode,
+            new ByteArrayInputStream(body.getBytes("UTF-8")),
+            Collections.<String, List<String>>emptyMap()
+        );
+    }
+
+    private static Map<String, List<String>> headers(String name, String value) {
+        Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+        headers.put(name, Collections.singletonList(value));
+        return headers;
+    }
+
+    private static final class RawClient extends DbxRawClientV2 {
+        private RawClient(DbxRequestConfig requestConfig) {
+            super(requestConfig, DbxHost.DEFAULT, null, null);
+        }
+
+        @Override
+        protected void addAuthHeaders(List<HttpRequestor.Header> headers) {
+        }
+
+        @Override
+        protected DbxRawClientV2 withPathRoot(PathRoot pathRoot) {
+            return this;
+        }
+    }
+
+    private static final class RecordingListener extends RequestListener {
+        private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void onStart(Request request) {
+            events.add("start " + request.getStyle() + " " + request.getRoute());
+        }
+
+        @Override
+        public void onHeadersSent(Request request, int attempt) {
+            events.add("headers " + attempt);
+        }
+
+        @Override
+        public void onFirstByte(Request request, int attempt, int statusCode) {
+            events.add("first " + attempt + " " + statusCode);
+        }
+
+        @Override
+        public void onBytesSent(Request request, long bytes) {
+            events.add("sent " + bytes);
+        }
+
+        @Override
+        public void onBytesReceived(Request request, long bytes) {
+            events.add("received " + bytes);
+        }
+
+        @Override
+        public void onRetry(Request request, int attempt, DbxException error, long delayMillis) {
+            events.add("retry " + attempt + " " + error.getClass().getSimpleName() + " " + delayMillis);
+        }
+
+        @Override
+        public void onComplete(Request request, long durationNanos, Exception error) {
+            events.add("complete " + (error == null ? null : error.getClass().getSimpleName()));
+        }
+    }
+
+    /**
+     * Returns the given responses in order, ignoring request bodies.
+     */
+    private static final class FakeRequestor extends FakeHttpRequestor {
+        private final LinkedList<Response> responses;
+
+        private FakeRequestor(Response ... responses) {
+            this.responses = new LinkedList<Response>(Arrays.asList(responses));
+        }
+
+        @Override
+        protected Response respond(Request request) {
+            synchronized (responses) {
+                return responses.removeFirst();
+            }
+        }
+    }
+}
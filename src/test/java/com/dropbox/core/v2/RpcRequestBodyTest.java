@@ -0,0 +1,129 @@
+package com.dropbox.core.v2;
+
+import static org.testng.Assert.*;
+
+import com.dropbox.core.DbxHost;
+import com.dropbox.core.DbxRequestConfig;
+import com.dropbox.core.ExponentialBackoffRetryPolicy;
+import com.dropbox.core.http.FakeHttpRequestor;
+import com.dropbox.core.http.HttpRequestor;
+import com.dropbox.core.stone.StoneSerializers;
+import com.dropbox.core.v2.common.PathRoot;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class RpcRequestBodyTest {
+    private static final String ROUTE = "2/test/echo";
+
+    @Test
+    public void testBufferedBody() throws Exception {
+        RecordingRequestor requestor = new RecordingRequestor(response(200, "null"), response(200, "null"));
+        RawClient client = new RawClient(config(requestor));
+
+        call(client, "a much longer argument than the next one");
+        call(client, "short");
+
+        assertEquals(requestor.bodies, Arrays.asList(
+            "\"a much longer argument than the next one\"",
+            "\"short\""
+        ));
+        assertEquals(requestor.contentLengths, Arrays.asList("42", "7"));
+    }
+
+    @Test
+    public void testBufferedBodyRetried() throws Exception {
+        RecordingRequestor requestor = new RecordingRequestor(response(503, ""), response(200, "null"));
+        RawClient client = new RawClient(retrying(config(requestor)).build());
+
+        call(client, "hello");
+
+        assertEquals(requestor.bodies, Arrays.asList("\"hello\"", "\"hello\""));
+        assertEquals(requestor.contentLengths, Arrays.asList("7", "7"));
+    }
+
+    @Test
+    public void testStreamedBodyRetried() throws Exception {
+        RecordingRequestor requestor = new RecordingRequestor(response(503, ""), response(200, "null"));
+        RawClient client = new RawClient(retrying(config(requestor)).withRequestBodyStreaming(true).build());
+
+        call(client, "hello");
+
+        assertEquals(requestor.bodies, Arrays.asList("\"hello\"", "\"hello\""));
+        assertEquals(requestor.contentLengths, Arrays.asList(null, null));
+    }
+
+    private static void call(RawClient client, String arg) throws Exception {
+        client.rpcStyle(
+            DbxHost.DEFAULT.getApi(), ROUTE, arg, false,
+            StoneSerializers.string(), StoneSerializers.void_(), StoneSerializers.void_()
+        );
+    }
+
+    private static DbxRequestConfig config(HttpRequestor requestor) {
+        return DbxRequestConfig.newBuilder("sdk-test")
+            .withHttpRequestor(requestor)
+            .build();
+    }
+
+    private static DbxRequestConfig.Builder retrying(DbxRequestConfig config) {
+        return config.copy()
+            .withRetryPolicy(ExponentialBackoffRetryPolicy.newBuilder()
+                .withBaseDelay(0, TimeUnit.MILLISECONDS)
+                .withRetryBudget(null)
+                .build());
+    }
+
+    private static HttpRequestor.Response response(int statusCode, String body) throws IOException {
+        return new HttpRequestor.Response(
+            statusCode,
+            new ByteArrayInputStream(body.getBytes("UTF-8")),
+            Collections.<String, List<String>>emptyMap()
+        );
+    }
+
+    private static final class RawClient extends DbxRawClientV2 {
+        private RawClient(DbxRequestConfig requestConfig) {
+            super(requestConfig, DbxHost.DEFAULT, null, null);
+        }
+
+        @Override
+        protected void addAuthHeaders(List<HttpRequestor.Header> headers) {
+        }
+
+        @Override
+        protected DbxRawClientV2 withPathRoot(PathRoot pathRoot) {
+            return this;
+        }
+    }
+
+    /**
+     * Returns the given responses in order and records the body and {@code Content-Length} of
+     * every request.
+     */
+    private static final class RecordingRequestor extends FakeHttpRequestor {
+        private final LinkedList<Response> responses;
+        private final List<String> bodies = new ArrayList<String>();
+        private final List<String> contentLengths = new ArrayList<String>();
+
+        private RecordingRequestor(Response ... responses) {
+            this.responses = new LinkedList<Response>(Arrays.asList(responses));
+        }
+
+        @Override
+        protected Response respond(Request request) {
+            bodies.add(request.getBodyAsString());
+            contentLengths.add(request.getHeader("Content-Length"));
+            return responses.removeFirst();
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.dropbox.core.v2.files;
+
+import static com.dropbox.core.TestUtil.tempFile;
+import static org.testng.Assert.*;
+
+import com.dropbox.core.DbxContentHasher;
+import com.dropbox.core.DbxRequestConfig;
+import com.dropbox.core.ExponentialBackoffRetryPolicy;
+import com.dropbox.core.http.FakeHttpRequestor;
+import com.dropbox.core.http.HttpRequestor;
+import com.dropbox.core.v2.DbxClientV2;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class DbxBatchUploaderTest {
+
+    @Test
+    public void testFilesAreCommittedInBatches() throws Exception {
+        BatchServer server = new BatchServer();
+        DbxBatchUploader uploader = uploader(server, 2);
+        List<DbxBatchUploader.Result> results;
+        try {
+            results = uploader.upload(entries(5));
+        } finally {
+            uploader.close();
+        }
+
+        assertEquals(results.size(), 5);
+        for (int i = 0; i < 5; ++i) {
+            DbxBatchUploader.Result result = results.get(i);
+            assertTrue(result.isSuccess());
+            assertEquals(result.getMetadata().getPathDisplay(), "/file" + i + ".txt");
+            assertEquals(server.committed.get("/file" + i + ".txt"), content(i));
+        }
+        assertEquals(server.count("upload_session/start"), 5);
+        assertEquals(server.count("upload_session/finish_batch"), 3);
+        assertTrue(server.closedStarts == 5, "sessions must be closed before they are committed");
+    }
+
+    @Test
+    public void testPollsUntilComplete() throws Exception {
+        BatchServer server = new BatchServer();
+        server.pollsUntilComplete = 3;
+        DbxBatchUploader uploader = uploader(server, DbxBatchUploader.MAX_BATCH_SIZE);
+        List<DbxBatchUploader.Result> results;
+        try {
+            results = uploader.upload(entries(3));
+        } finally {
+            uploader.close();
+        }
+
+        for (DbxBatchUploader.Result result : results) {
+            assertTrue(result.isSuccess());
+        }
+        assertEquals(server.count("upload_session/finish_batch"), 1);
+        assertEquals(server.count("upload_session/finish_batch/check"), 3);
+    }
+
+    @Test
+    public void testPerFileResults() throws Exception {
+        BatchServer server = new BatchServer();
+        List<DbxBatchUploader.Entry> entries = entries(2);
+        entries.add(new DbxBatchUploader.Entry(new File("does-not-exist.txt"), new CommitInfo("/missing.txt")));
+        entries.add(new DbxBatchUploader.Entry(tempFile(content(3)), new CommitInfo("/conflict.txt")));
+
+        DbxBatchUploader uploader = uploader(server, DbxBatchUploader.MAX_BATCH_SIZE);
+        List<DbxBatchUploader.Result> results;
+        try {
+            results = uploader.upload(entries);
+        } finally {
+            uploader.close();
+        }
+
+        assertTrue(results.get(0).isSuccess());
+        assertTrue(results.get(1).isSuccess());
+
+        DbxBatchUploader.Result missing = results.get(2);
+        assertFalse(missing.isSuccess());
+        assertTrue(missing.getException() instanceof FileNotFoundException);
+        assertNull(missing.getFinishError());
+
+        DbxBatchUploader.Result conflict = results.get(3);
+        assertFalse(conflict.isSuccess());
+        assertNull(conflict.getException());
+        assertTrue(conflict.getFinishError().isPath());
+        assertTrue(conflict.getFinishError().getPathValue().isConflict());
+
+        assertEquals(server.committed.size(), 2);
+    }
+
+    @Test
+    public void testSkipUnchangedWithGetMetadata() throws Exception {
+        testSkipUnchanged(0, "get_metadata", 4);
+    }
+
+    @Test
+    public void testSkipUnchangedWithListFolder() throws Exception {
+        testSkipUnchanged(2, "list_folder", 1);
+    }
+
+    private static void testSkipUnchanged(int listFolderThreshold, String lookupRoute, int lookups) throws Exception {
+        BatchServer server = new BatchServer();
+        // the server has the same /file0.txt, a different /file1.txt of the same size and a
+        // different /file2.txt of another size.
+        server.committed.put("/file0.txt", content(0));
+        server.committed.put("/file1.txt", content(7));
+        server.committed.put("/file2.txt", "other content".getBytes("UTF-8"));
+
+        DbxBatchUploader uploader = builder(server, DbxBatchUploader.MAX_BATCH_SIZE)
+            .withSkipUnchanged(true)
+            .withListFolderThreshold(listFolderThreshold)
+            .build();
+        List<DbxBatchUploader.Result> results;
+        try {
+            results = uploader.upload(entries(4));
+        } finally {
+            uploader.close();
+        }
+
+        assertTrue(results.get(0).isSkipped());
+        assertTrue(results.get(0).isSuccess());
+        assertEquals(results.get(0).getMetadata().getPathDisplay(), "/file0.txt");
+        for (int i = 1; i < 4; ++i) {
+            assertTrue(results.get(i).isSuccess());
+            assertFalse(results.get(i).isSkipped());
+            assertEquals(server.committed.get("/file" + i + ".txt"), content(i));
+        }
+
+        assertEquals(server.count(lookupRoute), lookups);
+        assertEquals(server.count("upload_session/start"), 3);
+        assertEquals(uploader.getSkippedFiles(), 1);
+        assertEquals(uploader.getSkippedBytes(), content(0).length);
+    }
+
+    private static DbxBatchUploader uploader(HttpRequestor requestor, int batchSize) {
+        return builder(requestor, batchSize).build();
+    }
+
+    private static DbxBatchUploader.Builder builder(HttpRequestor requestor, int batchSize) {
+        DbxRequestConfig config = DbxRequestConfig.newBuilder("sdk-test")
+            .withHttpRequestor(requestor)
+            .build();
+        DbxClientV2 client = new DbxClientV2(config, "fakeAccessToken");
+        return DbxBatchUploader.newBuilder(client.files())
+            .withParallelism(3)
+            .withBatchSize(batchSize)
+            .withPollInterval(0, 10, TimeUnit.MILLISECONDS)
+            .withRetryPolicy(ExponentialBackoffRetryPolicy.newBuilder()
+                .withBaseDelay(0, TimeUnit.MILLISECONDS)
+                .withRetryBudget(null)
+                .build());
+    }
+
+    private static List<DbxBatchUploader.Entry> entries(int count) throws IOException {
+        List<DbxBatchUploader.Entry> entries = new ArrayList<DbxBatchUploader.Entry>();
+        for (int i = 0; i < count; ++i) {
+            entries.add(new DbxBatchUploader.Entry(tempFile(content(i)), new CommitInfo("/file" + i + ".txt")));
+        }
+        return entries;
+    }
+
+    private static byte [] content(int i) throws IOException {
+        return ("content of file " + i).getBytes("UTF-8");
+    }
+
+    /**
+     * In-memory stand-in for the upload session and metadata routes of the Dropbox API. Paths containing
+     * "conflict" fail to commit.
+     */
+    private static final class BatchServer extends FakeHttpRequestor {
+        private static final Pattern PATH = Pattern.compile("\"path\":\"([^\"]*)\"");
+        private static final Pattern ENTRY = Pattern.compile(
+            "\"session_id\":\"([^\"]*)\",\"offset\":(\\d+)\\},\"commit\":\\{\"path\":\"([^\"]*)\""
+        );
+
+        private final List<String> routes = new ArrayList<String>();
+        private final Map<String, byte []> sessions = new HashMap<String, byte []>();
+        private final Map<String, byte []> committed = new HashMap<String, byte []>();
+        private final Map<String, String> jobs = new HashMap<String, String>();
+        private int closedStarts;
+        private int pollsUntilComplete = 1;
+        private int polls;
+
+        synchronized int count(String route) {
+            return Collections.frequency(routes, route);
+        }
+
+        @Override
+        protected synchronized Response respond(Request request) throws IOException {
+            String route = request.getRoute();
+            String arg = request.getArg();
+            byte [] body = request.getBody();
+            routes.add(route);
+
+            if (route.equals("upload_session/start")) {
+                if (arg.contains("\"close\":true")) {
+                    ++closedStarts;
+                }
+                String sessionId = "session" + sessions.size();
+                sessions.put(sessionId, body);
+                return json("{\"session_id\":\"" + sessionId + "\"}");
+            } else if (route.equals("upload_session/finish_batch")) {
+                String jobId = "job" + jobs.size();
+                jobs.put(jobId, commit(arg));
+                polls = 0;
+                return json("{\".tag\":\"async_job_id\",\"async_job_id\":\"" + jobId + "\"}");
+            } else if (route.equals("upload_session/finish_batch/check")) {
+                if (++polls < pollsUntilComplete) {
+                    return json("{\".tag\":\"in_progress\"}");
+                }
+                String jobId = arg.replaceAll(".*\"async_job_id\":\"([^\"]*)\".*", "$1");
+                return json("{\".tag\":\"complete\",\"entries\":[" + jobs.get(jobId) + "]}");
+            } else if (route.equals("get_metadata")) {
+                String path = find(PATH, arg);
+                byte [] content = committed.get(path);
+                if (content == null) {
+                    return json(409, "{\"error_summary\":\"path/not_found/\"" +
+                        ",\"error\":{\".tag\":\"path\",\"path\":{\".tag\":\"not_found\"}}}");
+                }
+                return json("{\".tag\":\"file\"," + fileFields(path, content) + "}");
+            } else if (route.equals("list_folder")) {
+                String folder = find(PATH, arg);
+                StringBuilder entries = new StringBuilder();
+                for (Map.Entry<String, byte []> file : committed.entrySet()) {
+                    if (file.getKey().substring(0, file.getKey().lastIndexOf('/')).equalsIgnoreCase(folder)) {
+                        if (entries.length() > 0) {
+                            entries.append(',');
+                        }
+                        entries.append("{\".tag\":\"file\",").append(fileFields(file.getKey(), file.getValue())).append("}");
+                    }
+                }
+                return json("{\"entries\":[" + entries + "],\"cursor\":\"cursor\",\"has_more\":false}");
+            }
+            throw new AssertionError("Unexpected route " + route);
+        }
+
+        private String commit(String arg) {
+            StringBuilder entries = new StringBuilder();
+            Matcher matcher = ENTRY.matcher(arg);
+            while (matcher.find()) {
+                byte [] content = sessions.get(matcher.group(1));
+                assertEquals(Long.parseLong(matcher.group(2)), content.length);
+                String path = matcher.group(3);
+
+                if (entries.length() > 0) {
+                    entries.append(',');
+                }
+                if (path.contains("conflict")) {
+                    entries.append("{\".tag\":\"failure\",\"failure\":{\".tag\":\"path\",\"path\":")
+                        .append("{\".tag\":\"conflict\",\"conflict\":{\".tag\":\"file\"}}}}");
+                    continue;
+                }
+
+                committed.put(path, content);
+                entries.append("{\".tag\":\"success\",").append(fileFields(path, content)).append("}");
+            }
+            return entries.toString();
+        }
+
+        private static String fileFields(String path, byte [] content) {
+            DbxContentHasher hasher = new DbxContentHasher();
+            hasher.update(content);
+            String name = path.substring(path.lastIndexOf('/') + 1);
+            return "\"name\":\"" + name + "\"" +
+                ",\"id\":\"id:" + name + "\"" +
+                ",\"client_modified\":\"2016-02-22T19:24:00Z\"" +
+                ",\"server_modified\":\"2016-02-22T19:24:00Z\"" +
+                ",\"rev\":\"0123456789abcdef\"" +
+                ",\"size\":" + content.length +
+                ",\"path_lower\":\"" + path.toLowerCase() + "\"" +
+                ",\"path_display\":\"" + path + "\"" +
+                ",\"content_hash\":\"" + hasher.digestHex() + "\"";
+        }
+
+        private static String find(Pattern pattern, String arg) {
+            Matcher matcher = pattern.matcher(arg);
+            if (!matcher.find()) {
+                throw new AssertionError("Missing " + pattern + " in " + arg);
+            }
+            return matcher.group(1);
+        }
+
+        private static Response json(String body) throws IOException {
+            return json(200, body);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.dropbox.core.v2.files;
+
+import static org.testng.Assert.*;
+
+import com.dropbox.core.DbxRequestConfig;
+import com.dropbox.core.http.FakeHttpRequestor;
+import com.dropbox.core.http.HttpRequestor;
+import com.dropbox.core.v2.DbxClientV2;
+
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class DbxChangeFeedTest {
+
+    @Test
+    public void testOnlyFiredCursorsAreFetched() throws Exception {
+        FeedServer server = new FeedServer();
+        server.folder("quiet");
+        server.folder("busy", "/a.txt", "/b.txt");
+
+        DbxChangeFeed feed = feed(server).build();
+        try {
+            DbxChangeFeed.Watch quiet = feed.watch("quiet#0");
+            DbxChangeFeed.Watch busy = feed.watch("busy#0");
+
+            DbxChangeFeed.Changes first = take(feed);
+            DbxChangeFeed.Changes second = take(feed);
+            assertSame(first.getWatch(), busy);
+            assertEquals(paths(first), Collections.singletonList("/a.txt"));
+            assertEquals(first.getCursor(), "busy#1");
+            assertEquals(paths(second), Collections.singletonList("/b.txt"));
+            assertEquals(second.getCursor(), "busy#2");
+            assertNull(second.getError());
+
+            assertNull(feed.poll(100, TimeUnit.MILLISECONDS));
+            assertEquals(busy.getCursor(), "busy#2");
+            assertTrue(quiet.isActive());
+            assertFalse(server.requests().contains("continue:quiet#0"));
+        } finally {
+            feed.close();
+            server.release();
+        }
+    }
+
+    @Test
+    public void testFullQueueStopsFetching() throws Exception {
+        FeedServer server = new FeedServer();
+        server.folder("big", "/1.txt", "/2.txt", "/3.txt", "/4.txt", "/5.txt");
+
+        DbxChangeFeed feed = feed(server).withQueueCapacity(1).build();
+        try {
+            feed.watch("big#0");
+
+            // one page queued, one page held by the fetcher, nothing more listed
+            assertTrue(server.awaitCount("continue:", 2, 5000), "pages were not fetched");
+            assertFalse(server.awaitCount("continue:", 3, 200), "fetched past a full queue");
+
+            List<String> paths = new ArrayList<String>();
+            for (int i = 0; i < 5; ++i) {
+                paths.addAll(paths(take(feed)));
+            }
+            assertEquals(paths, list("/1.txt", "/2.txt", "/3.txt", "/4.txt", "/5.txt"));
+            assertEquals(server.count("continue:"), 5);
+        } finally {
+            feed.close();
+            server.release();
+        }
+    }
+
+    @Test
+    public void testWatchesShareLongpollSlots() throws Exception {
+        FeedServer server = new FeedServer();
+        for (int i = 0; i < 10; ++i) {
+            server.folder("f" + i, "/f" + i + ".txt");
+        }
+
+        DbxChangeFeed feed = feed(server).withMaxConcurrentPolls(2).build();
+        try {
+            for (int i = 0; i < 10; ++i) {
+                feed.watch("f" + i + "#0");
+            }
+
+            List<String> paths = new ArrayList<String>();
+            for (int i = 0; i < 10; ++i) {
+                paths.addAll(paths(take(feed)));
+            }
+            Collections.sort(paths);
+            assertEquals(paths.size(), 10);
+            assertEquals(paths.get(0), "/f0.txt");
+            assertEquals(paths.get(9), "/f9.txt");
+            assertTrue(server.maxConcurrentPolls <= 2, "concurrent polls: " + server.maxConcurrentPolls);
+        } finally {
+            feed.close();
+            server.release();
+        }
+    }
+
+    @Test
+    public void testResetCursorStopsWatch() throws Exception {
+        FeedServer server = new FeedServer();
+
+        DbxChangeFeed feed = feed(server).build();
+        try {
+            DbxChangeFeed.Watch watch = feed.watch("reset#0");
+
+            DbxChangeFeed.Changes changes = take(feed);
+            assertSame(changes.getWatch(), watch);
+            assertTrue(changes.getError() instanceof ListFolderLongpollErrorException, String.valueOf(changes.getError()));
+            assertTrue(changes.getEntries().isEmpty());
+            assertFalse(watch.isActive());
+        } finally {
+            feed.close();
+            server.release();
+        }
+    }
+
+    private static DbxChangeFeed.Builder feed(HttpRequestor requestor) {
+        DbxRequestConfig config = DbxRequestConfig.newBuilder("sdk-test")
+            .withHttpRequestor(requestor)
+            .build();
+        DbxClientV2 client = new DbxClientV2(config, "fakeAccessToken");
+        return DbxChangeFeed.newBuilder(client.files());
+    }
+
+    private static DbxChangeFeed.Changes take(DbxChangeFeed feed) throws InterruptedException {
+        DbxChangeFeed.Changes changes = feed.poll(5, TimeUnit.SECONDS);
+        assertNotNull(changes, "no changes queued");
+        return changes;
+    }
+
+    private static List<String> paths(DbxChangeFeed.Changes changes) {
+        List<String> paths = new ArrayList<String>();
+        for (Metadata entry : changes.getEntries()) {
+            paths.add(entry.getPathLower());
+        }
+        return paths;
+    }
+
+    private static List<String> list(String... values) {
+        List<String> list = new ArrayList<String>();
+        Collections.addAll(list, values);
+        return list;
+    }
+
+    /**
+     * In-memory stand-in for the longpoll and list_folder/continue routes of the Dropbox API.
+     * Each folder holds one change per page; cursor {@code "<folder>#<n>"} has listed the first
+     * {@code n} changes. Long-polls without changes wait a little before timing out, like the real
+     * route does.
+     */
+    private static final class FeedServer extends FakeHttpRequestor {
+        private static final Pattern CURSOR = Pattern.compile("\"cursor\":\"([^\"#]*)#([0-9]+)\"");
+
+        private final Map<String, List<String>> folders = new HashMap<String, List<String>>();
+        private final List<String> requests = new ArrayList<String>();
+        private int polls = 0;
+        private volatile int maxConcurrentPolls = 0;
+        private boolean released = false;
+
+        synchronized void folder(String name, String... paths) {
+            folders.put(name, list(paths));
+        }
+
+        synchronized List<String> requests() {
+            return new ArrayList<String>(requests);
+        }
+
+        synchronized int count(String prefix) {
+            int count = 0;
+            for (String request : requests) {
+                if (request.startsWith(prefix)) {
+                    ++count;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Waits up to {@code timeoutMillis} until at least {@code count} requests start with
+         * {@code prefix}, and returns whether they did.
+         */
+        synchronized boolean awaitCount(String prefix, int count, long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (count(prefix) < count) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        }
+
+        synchronized void release() {
+            released = true;
+            notifyAll();
+        }
+
+        @Override
+        protected synchronized Response respond(Request request) throws IOException {
+            String url = request.getUrl();
+            String body = request.getBodyAsString();
+            Matcher matcher = CURSOR.matcher(body);
+            assertTrue(matcher.find(), body);
+            String folder = matcher.group(1);
+            int offset = Integer.parseInt(matcher.group(2));
+
+            if (url.endsWith("/2/files/list_folder/longpoll")) {
+                assertTrue(url.startsWith("https://notify."), url);
+                requests.add("longpoll:" + folder + "#" + offset);
+                if (folder.equals("reset")) {
+                    return json(409, "{\"error_summary\":\"reset/\",\"error\":{\".tag\":\"reset\"}}");
+                }
+                boolean changes = offset < folders.get(folder).size();
+                if (!changes) {
+                    ++polls;
+                    maxConcurrentPolls = Math.max(maxConcurrentPolls, polls);
+                    try {
+                        if (!released) {
+                            wait(50);
+                        }
+                    } catch (InterruptedException ex) {
+                        throw new InterruptedIOException();
+                    } finally {
+                        --polls;
+                    }
+                }
+                return json(200, "{\"changes\":" + changes + "}");
+            }
+
+            assertTrue(url.endsWith("/2/files/list_folder/continue"), url);
+            requests.add("continue:" + folder + "#" + offset);
+            // wakes awaitCount, and long-polls, which then time out early
+            notifyAll();
+            List<String> paths = folders.get(folder);
+            String path = paths.get(offset);
+            return json(200,
+                "{\"entries\":[{\".tag\":\"deleted\",\"name\":\"" + path.substring(1) + "\"" +
+                ",\"path_lower\":\"" + path + "\",\"path_display\":\"" + path + "\"}]" +
+                ",\"cursor\":\"" + folder + "#" + (offset + 1) + "\"" +
+                ",\"has_more\":" + (offset + 1 < paths.size()) + "}");
+        }
+    }
+}
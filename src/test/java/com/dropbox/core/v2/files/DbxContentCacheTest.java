@@ -0,0 +1,170 @@
+package com.dropbox.core.v2.files;
+
+import static com.dropbox.core.TestUtil.tempDirectory;
+import static org.testng.Assert.*;
+
+import com.dropbox.core.DbxContentHasher;
+import com.dropbox.core.DbxRequestConfig;
+import com.dropbox.core.http.FakeHttpRequestor;
+import com.dropbox.core.http.HttpRequestor;
+import com.dropbox.core.v2.DbxClientV2;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class DbxContentCacheTest {
+
+    @Test
+    public void testRepeatReadsAreServedLocally() throws Exception {
+        RevServer server = new RevServer();
+        FileMetadata a = server.add("a00000001", 1000);
+
+        DbxContentCache cache = cache(server, tempDirectory(), 10000);
+        try {
+            assertEquals(read(cache, a), server.content(a));
+            assertEquals(read(cache, a), server.content(a));
+            assertEquals(read(cache, a), server.content(a));
+        } finally {
+            cache.close();
+        }
+
+        assertEquals(server.downloads.size(), 1);
+        assertEquals(cache.getMisses(), 1);
+        assertEquals(cache.getHits(), 2);
+        assertEquals(cache.getSize(), 1000);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        RevServer server = new RevServer();
+        FileMetadata a = server.add("a00000001", 1000);
+        FileMetadata b = server.add("b00000001", 1000);
+        FileMetadata c = server.add("c00000001", 1000);
+
+        DbxContentCache cache = cache(server, tempDirectory(), 2500);
+        try {
+            read(cache, a);
+            read(cache, b);
+            read(cache, a);
+            read(cache, c);
+
+            assertTrue(cache.contains(a));
+            assertFalse(cache.contains(b));
+            assertTrue(cache.contains(c));
+            assertEquals(cache.getEvictions(), 1);
+            assertEquals(cache.getSize(), 2000);
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testCachedContentSurvivesRestart() throws Exception {
+        RevServer server = new RevServer();
+        FileMetadata a = server.add("a00000001", 1000);
+        File directory = tempDirectory();
+
+        DbxContentCache cache = cache(server, directory, 10000);
+        try {
+            read(cache, a);
+        } finally {
+            cache.close();
+        }
+        // left behind by an interrupted download
+        assertTrue(new File(directory, "tmp-interrupted").createNewFile());
+
+        DbxContentCache reopened = cache(server, directory, 10000);
+        try {
+            assertTrue(reopened.contains(a));
+            assertEquals(read(reopened, a), server.content(a));
+        } finally {
+            reopened.close();
+        }
+
+        assertEquals(server.downloads.size(), 1);
+        assertFalse(new File(directory, "tmp-interrupted").exists());
+    }
+
+    private static DbxContentCache cache(HttpRequestor requestor, File directory, long maxSize) throws IOException {
+        DbxRequestConfig config = DbxRequestConfig.newBuilder("sdk-test")
+            .withHttpRequestor(requestor)
+            .build();
+        DbxClientV2 client = new DbxClientV2(config, "fakeAccessToken");
+        return DbxContentCache.newBuilder(client.files(), directory)
+            .withMaxSize(maxSize)
+            .build();
+    }
+
+    private static byte [] read(DbxContentCache cache, FileMetadata metadata) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.download(metadata, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * In-memory stand-in for the download route of the Dropbox API, serving file revisions.
+     */
+    private static final class RevServer extends FakeHttpRequestor {
+        private static final Pattern PATH = Pattern.compile("\"path\":\"rev:([^\"]*)\"");
+
+        private final Map<String, byte []> revs = Collections.synchronizedMap(new HashMap<String, byte []>());
+        private final List<String> downloads = Collections.synchronizedList(new ArrayList<String>());
+
+        FileMetadata add(String rev, int size) {
+            byte [] content = new byte[size];
+            new Random(rev.hashCode()).nextBytes(content);
+            revs.put(rev, content);
+            return metadata(rev, content);
+        }
+
+        byte [] content(FileMetadata metadata) {
+            return revs.get(metadata.getRev());
+        }
+
+        private static FileMetadata metadata(String rev, byte [] content) {
+            DbxContentHasher hasher = new DbxContentHasher();
+            hasher.update(content);
+            return FileMetadata.newBuilder("file.bin", "id:file", new Date(0), new Date(0), rev, content.length)
+                .withContentHash(hasher.digestHex())
+                .build();
+        }
+
+        @Override
+        protected Response respond(Request request) throws IOException {
+            assertEquals(request.getRoute(), "download");
+            Matcher matcher = PATH.matcher(request.getArg());
+            assertTrue(matcher.find(), request.getArg());
+            String rev = matcher.group(1);
+
+            downloads.add(rev);
+            byte [] content = revs.get(rev);
+            FileMetadata metadata = metadata(rev, content);
+
+            return download(200,
+                "{\".tag\":\"file\"" +
+                ",\"name\":\"file.bin\"" +
+                ",\"id\":\"id:file\"" +
+                ",\"client_modified\":\"2016-02-22T19:24:00Z\"" +
+                ",\"server_modified\":\"2016-02-22T19:24:00Z\"" +
+                ",\"rev\":\"" + rev + "\"" +
+                ",\"size\":" + content.length +
+                ",\"content_hash\":\"" + metadata.getContentHash() + "\"" +
+                "}",
+                new ByteArrayInputStream(content)
+            );
+        }
+    }
+}
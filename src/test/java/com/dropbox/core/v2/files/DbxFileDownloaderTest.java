@@ -0,0 +1,263 @@
+package com.dropbox.core.v2.files;
+
+import static com.dropbox.core.TestUtil.randomBytes;
+import static com.dropbox.core.TestUtil.tempFile;
+import static org.testng.Assert.*;
+
+import com.dropbox.core.ContentHashMismatchException;
+import com.dropbox.core.DbxContentHasher;
+import com.dropbox.core.DbxRequestConfig;
+import com.dropbox.core.ExponentialBackoffRetryPolicy;
+import com.dropbox.core.http.FakeHttpRequestor;
+import com.dropbox.core.http.HttpRequestor;
+import com.dropbox.core.v2.DbxClientV2;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class DbxFileDownloaderTest {
+    private static final int BLOCK = DbxContentHasher.BLOCK_SIZE;
+    private static final String REV = "0123456789abcdef";
+
+    @Test
+    public void testSmallFileUsesSingleRequest() throws Exception {
+        FileServer server = new FileServer(randomBytes(1000));
+        File target = tempFile();
+
+        FileMetadata metadata = downloader(server).download("/small.bin", target);
+
+        assertEquals(metadata.getRev(), REV);
+        assertEquals(read(target), server.content);
+        assertEquals(server.ranges, Collections.singletonList((String) null));
+    }
+
+    @Test
+    public void testRangesAreWrittenToTheirPositions() throws Exception {
+        FileServer server = new FileServer(randomBytes(2 * BLOCK + 17));
+        File target = tempFile();
+
+        downloader(server).download("/large.bin", target);
+
+        assertEquals(read(target), server.content);
+        assertEquals(new HashSet<String>(server.ranges), setOf(
+            "bytes=0-" + (BLOCK - 1),
+            "bytes=" + BLOCK + "-" + (2 * BLOCK - 1),
+            "bytes=" + (2 * BLOCK) + "-" + (2 * BLOCK + 16)
+        ));
+    }
+
+    @Test
+    public void testTruncatedRangeIsRetried() throws Exception {
+        FileServer server = new FileServer(randomBytes(2 * BLOCK + 17));
+        server.truncate.add("bytes=" + BLOCK + "-" + (2 * BLOCK - 1));
+        File target = tempFile();
+
+        downloader(server).download("/large.bin", target);
+
+        assertEquals(read(target), server.content);
+        assertEquals(server.ranges.size(), 4);
+    }
+
+    @Test
+    public void testContentHashMismatch() throws Exception {
+        FileServer server = new FileServer(randomBytes(BLOCK + 1));
+        server.contentHash = hash(randomBytes(10));
+
+        try {
+            downloader(server).download("/large.bin", tempFile());
+            fail("Expected content hash mismatch");
+        } catch (ContentHashMismatchException ex) {
+            assertEquals(ex.getExpectedContentHash(), server.contentHash);
+            assertEquals(ex.getActualContentHash(), hash(server.content));
+        }
+    }
+
+    @Test
+    public void testBrokenStreamIsResumed() throws Exception {
+        FileServer server = new FileServer(randomBytes(10000));
+        server.breakAfter = 3000;
+        server.breaks = 2;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        FileMetadata metadata = downloader(server).download(server.metadata(), out);
+
+        assertEquals(metadata.getRev(), REV);
+        assertEquals(out.toByteArray(), server.content);
+        assertEquals(server.ranges, Arrays.asList(null, "bytes=3000-", "bytes=6000-"));
+    }
+
+    @Test
+    public void testBrokenStreamIsResumedIntoChannel() throws Exception {
+        FileServer server = new FileServer(randomBytes(10000));
+        server.breakAfter = 4000;
+        server.breaks = 1;
+        File target = tempFile();
+
+        RandomAccessFile raf = new RandomAccessFile(target, "rw");
+        try {
+            downloader(server).download(server.metadata(), raf.getChannel());
+        } finally {
+            raf.close();
+        }
+
+        assertEquals(read(target), server.content);
+        assertEquals(server.ranges, Arrays.asList(null, "bytes=4000-"));
+    }
+
+    private static DbxFileDownloader downloader(HttpRequestor requestor) {
+        DbxRequestConfig config = DbxRequestConfig.newBuilder("sdk-test")
+            .withHttpRequestor(requestor)
+            .build();
+        DbxClientV2 client = new DbxClientV2(config, "fakeAccessToken");
+        return DbxFileDownloader.newBuilder(client.files())
+            .withRangeSize(BLOCK)
+            .withParallelism(3)
+            .withRetryPolicy(ExponentialBackoffRetryPolicy.newBuilder()
+                .withBaseDelay(0, TimeUnit.MILLISECONDS)
+                .withNetworkErrorRetries(true)
+                .withRetryBudget(null)
+                .build())
+            .build();
+    }
+
+    private static String hash(byte [] content) {
+        DbxContentHasher hasher = new DbxContentHasher();
+        hasher.update(content);
+        return hasher.digestHex();
+    }
+
+    private static byte [] read(File file) throws IOException {
+        byte [] content = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(content);
+        } finally {
+            in.close();
+        }
+        return content;
+    }
+
+    private static Set<String> setOf(String ... values) {
+        Set<String> set = new HashSet<String>();
+        Collections.addAll(set, values);
+        return set;
+    }
+
+    /**
+     * In-memory stand-in for the metadata and download routes of the Dropbox API, serving a
+     * single file.
+     */
+    private static final class FileServer extends FakeHttpRequestor {
+        private static final Pattern PATH = Pattern.compile("\"path\":\"([^\"]*)\"");
+        private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+        private final byte [] content;
+        private final List<String> ranges = Collections.synchronizedList(new ArrayList<String>());
+        private final Set<String> truncate = Collections.synchronizedSet(new HashSet<String>());
+        private volatile String contentHash;
+        private volatile int breakAfter;
+        private volatile int breaks;
+
+        private FileServer(byte [] content) {
+            this.content = content;
+            this.contentHash = hash(content);
+        }
+
+        @Override
+        protected Response respond(Request request) throws IOException {
+            String route = request.getRoute();
+            String range = request.getHeader("Range");
+            String path = find(PATH, request.getArg());
+            if (route.equals("get_metadata")) {
+                return json(200, metadataJson());
+            }
+            assertEquals(route, "download");
+            assertEquals(path, "rev:" + REV, "ranges must be pinned to the revision");
+
+            ranges.add(range);
+            if (range == null) {
+                return download(200, metadataJson(), body(content));
+            }
+
+            Matcher matcher = RANGE.matcher(range);
+            assertTrue(matcher.matches(), range);
+            int start = Integer.parseInt(matcher.group(1));
+            int end = matcher.group(2).isEmpty() ? content.length - 1 : Integer.parseInt(matcher.group(2));
+            end = Math.min(end, content.length - 1);
+            int length = end - start + 1;
+            if (truncate.remove(range)) {
+                length /= 2;
+            }
+            byte [] body = new byte[length];
+            System.arraycopy(content, start, body, 0, length);
+            return download(206, metadataJson(), body(body));
+        }
+
+        private FileMetadata metadata() {
+            return FileMetadata.newBuilder("file.bin", "id:file", new Date(0), new Date(0), REV, content.length)
+                .withContentHash(contentHash)
+                .build();
+        }
+
+        private String metadataJson() {
+            return "{\".tag\":\"file\"" +
+                ",\"name\":\"file.bin\"" +
+                ",\"id\":\"id:file\"" +
+                ",\"client_modified\":\"2016-02-22T19:24:00Z\"" +
+                ",\"server_modified\":\"2016-02-22T19:24:00Z\"" +
+                ",\"rev\":\"" + REV + "\"" +
+                ",\"size\":" + content.length +
+                ",\"path_lower\":\"/file.bin\"" +
+                ",\"path_display\":\"/file.bin\"" +
+                ",\"content_hash\":\"" + contentHash + "\"" +
+                "}";
+        }
+
+        private static String find(Pattern pattern, String arg) {
+            Matcher matcher = pattern.matcher(arg);
+            if (!matcher.find()) {
+                throw new AssertionError("Missing " + pattern + " in " + arg);
+            }
+            return matcher.group(1);
+        }
+
+        /**
+         * Returns a response body that fails after {@link #breakAfter} bytes, as long as there
+         * are {@link #breaks} left.
+         */
+        private InputStream body(byte [] body) {
+            if (breaks <= 0 || body.length <= breakAfter) {
+                return new ByteArrayInputStream(body);
+            }
+            --breaks;
+            return new SequenceInputStream(
+                new ByteArrayInputStream(body, 0, breakAfter),
+                new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("Connection reset");
+                    }
+                }
+            );
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package com.dropbox.core.v2.files;
+
+import static com.dropbox.core.TestUtil.randomBytes;
+import static com.dropbox.core.TestUtil.tempDirectory;
+import static com.dropbox.core.TestUtil.tempFile;
+import static org.testng.Assert.*;
+
+import com.dropbox.core.DbxContentHasher;
+import com.dropbox.core.DbxRequestConfig;
+import com.dropbox.core.ExponentialBackoffRetryPolicy;
+import com.dropbox.core.NetworkIOException;
+import com.dropbox.core.RetryPolicy;
+import com.dropbox.core.http.FakeHttpRequestor;
+import com.dropbox.core.http.HttpRequestor;
+import com.dropbox.core.v2.DbxClientV2;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class DbxFileUploaderTest {
+    private static final int CHUNK_SIZE = 4096;
+
+    @Test
+    public void testSmallFileUsesSingleRequest() throws Exception {
+        byte [] content = randomBytes(CHUNK_SIZE);
+        File file = tempFile(content);
+        SessionServer server = new SessionServer();
+
+        FileMetadata metadata = uploader(server, 1).upload(file, new CommitInfo("/small.bin"));
+
+        assertEquals(metadata.getSize(), content.length);
+        assertEquals(server.routes, Collections.singletonList("upload"));
+        assertEquals(server.committed.get("/small.bin"), content);
+    }
+
+    @Test
+    public void testChunkedUpload() throws Exception {
+        byte [] content = randomBytes(2 * CHUNK_SIZE + 5);
+        File file = tempFile(content);
+        SessionServer server = new SessionServer();
+
+        FileMetadata metadata = uploader(server, 1).upload(file, new CommitInfo("/large.bin"));
+
+        assertEquals(metadata.getSize(), content.length);
+        assertEquals(server.routes, listOf("upload_session/start", "upload_session/append_v2", "upload_session/finish"));
+        assertEquals(server.committed.get("/large.bin"), content);
+    }
+
+    @Test
+    public void testIncorrectOffsetCorrection() throws Exception {
+        byte [] content = randomBytes(3 * CHUNK_SIZE + 5);
+        File file = tempFile(content);
+        SessionServer server = new SessionServer();
+        // the first append reaches the server, but its response is lost
+        server.loseResponses.add("upload_session/append_v2");
+
+        FileMetadata metadata = uploader(server, 1).upload(file, new CommitInfo("/retried.bin"));
+
+        assertEquals(metadata.getSize(), content.length);
+        assertEquals(server.routes, listOf(
+            "upload_session/start",
+            "upload_session/append_v2",
+            // resent, the server tells us it already has the chunk
+            "upload_session/append_v2",
+            "upload_session/append_v2",
+            "upload_session/finish"
+        ));
+        assertEquals(server.committed.get("/retried.bin"), content);
+    }
+
+    @Test
+    public void testCommittingRequestsAreNotRetriedOnNetworkErrors() throws Exception {
+        File file = tempFile(randomBytes(100));
+        SessionServer server = new SessionServer();
+        server.loseResponses.add("upload");
+
+        try {
+            uploader(server, 1).upload(file, new CommitInfo("/once.bin"));
+            fail("Expected upload to fail");
+        } catch (NetworkIOException ex) {
+            // expected: the file may have been committed
+        }
+        assertEquals(server.routes, Collections.singletonList("upload"));
+    }
+
+    @Test
+    public void testRetriedFinishFindsCommittedFile() throws Exception {
+        byte [] content = randomBytes(2 * CHUNK_SIZE + 5);
+        File file = tempFile(content);
+        SessionServer server = new SessionServer();
+        // the file is committed, but the response is lost
+        server.loseResponses.add("upload_session/finish");
+
+        DbxFileUploader uploader = builder(server)
+            .withRetryPolicy(ExponentialBackoffRetryPolicy.newBuilder()
+                .withBaseDelay(0, TimeUnit.MILLISECONDS)
+                .withNetworkErrorRetries(true)
+                .withIdempotentRoutes("2/files/upload_session/finish")
+                .withRetryBudget(null)
+                .build())
+            .build();
+        FileMetadata metadata = uploader.upload(file, new CommitInfo("/lost.bin"));
+
+        assertEquals(metadata.getSize(), content.length);
+        assertEquals(server.routes, listOf(
+            "upload_session/start",
+            "upload_session/append_v2",
+            "upload_session/finish",
+            // the session is gone, the file is there
+            "upload_session/finish",
+            "get_metadata"
+        ));
+    }
+
+    @Test
+    public void testSubmitUploadsInParallel() throws Exception {
+        int parallelism = 4;
+        SessionServer server = new SessionServer();
+        // every upload waits until all of them are in flight
+        server.inFlight = new CountDownLatch(parallelism);
+
+        DbxFileUploader uploader = uploader(server, parallelism);
+        List<Future<FileMetadata>> results = new ArrayList<Future<FileMetadata>>();
+        try {
+            for (int i = 0; i < parallelism; ++i) {
+                results.add(uploader.submit(tempFile(randomBytes(100)), new CommitInfo("/parallel" + i + ".bin")));
+            }
+            for (Future<FileMetadata> result : results) {
+                assertEquals(result.get(10, TimeUnit.SECONDS).getSize(), 100);
+            }
+        } finally {
+            uploader.close();
+        }
+        assertEquals(server.committed.size(), parallelism);
+    }
+
+    @Test
+    public void testResumeFromJournal() throws Exception {
+        byte [] content = randomBytes(3 * CHUNK_SIZE + 5);
+        File file = tempFile(content);
+        File journalDirectory = tempDirectory();
+        SessionServer server = new SessionServer();
+        server.failRoutes.add("upload_session/finish");
+
+        try {
+            journaling(server, journalDirectory).upload(file, new CommitInfo("/resumed.bin"));
+            fail("Expected upload to fail");
+        } catch (NetworkIOException ex) {
+            // expected
+        }
+
+        // a restarted process finds the upload in the journal directory
+        DbxFileUploader uploader = journaling(server, journalDirectory);
+        List<DbxUploadJournal> journals = uploader.getInterruptedUploads();
+        assertEquals(journals.size(), 1);
+        DbxUploadJournal journal = journals.get(0);
+        assertEquals(journal.getSourceFile(), file.getAbsoluteFile());
+        assertEquals(journal.getCommitInfo().getPath(), "/resumed.bin");
+        assertEquals(journal.getSessionId(), "session0");
+        assertEquals(journal.getOffset(), 3 * CHUNK_SIZE);
+
+        server.failRoutes.clear();
+        server.routes.clear();
+        FileMetadata metadata = uploader.resume(journal);
+
+        assertEquals(metadata.getSize(), content.length);
+        assertEquals(server.routes, listOf("upload_session/finish"));
+        assertEquals(server.committed.get("/resumed.bin"), content);
+        assertFalse(journal.getJournalFile().exists());
+        assertTrue(uploader.getInterruptedUploads().isEmpty());
+    }
+
+    @Test
+    public void testResumeRejectsChangedSource() throws Exception {
+        File file = tempFile(randomBytes(2 * CHUNK_SIZE + 5));
+        File journalDirectory = tempDirectory();
+        SessionServer server = new SessionServer();
+        server.failRoutes.add("upload_session/finish");
+
+        try {
+            journaling(server, journalDirectory).upload(file, new CommitInfo("/changed.bin"));
+            fail("Expected upload to fail");
+        } catch (NetworkIOException ex) {
+            // expected
+        }
+
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(1);
+        } finally {
+            out.close();
+        }
+
+        DbxFileUploader uploader = journaling(server, journalDirectory);
+        DbxUploadJournal journal = uploader.getInterruptedUploads().get(0);
+        try {
+            uploader.resume(journal);
+            fail("Expected resume to detect the changed source file");
+        } catch (DbxUploadJournal.SourceFileChangedException ex) {
+            assertEquals(ex.getSourceFile(), file.getAbsoluteFile());
+        }
+        assertTrue(journal.getJournalFile().exists());
+    }
+
+    private static DbxFileUploader uploader(HttpRequestor requestor, int parallelism) {
+        return builder(requestor)
+            .withParallelism(parallelism)
+            .withRetryPolicy(ExponentialBackoffRetryPolicy.newBuilder()
+                .withBaseDelay(0, TimeUnit.MILLISECONDS)
+                .withNetworkErrorRetries(true)
+                .withRetryBudget(null)
+                .build())
+            .build();
+    }
+
+    private static DbxFileUploader journaling(HttpRequestor requestor, File journalDirectory) {
+        return builder(requestor)
+            .withJournalDirectory(journalDirectory)
+            .withRetryPolicy(RetryPolicy.serverBackoff(0))
+            .build();
+    }
+
+    private static DbxFileUploader.Builder builder(HttpRequestor requestor) {
+        DbxRequestConfig config = DbxRequestConfig.newBuilder("sdk-test")
+            .withHttpRequestor(requestor)
+            .build();
+        DbxClientV2 client = new DbxClientV2(config, "fakeAccessToken");
+        return DbxFileUploader.newBuilder(client.files())
+            .withChunkSize(CHUNK_SIZE);
+    }
+
+    private static List<String> listOf(String ... values) {
+        List<String> list = new ArrayList<String>();
+        Collections.addAll(list, values);
+        return list;
+    }
+
+    /**
+     * In-memory stand-in for the upload routes of the Dropbox API.
+     */
+    private static final class SessionServer extends FakeHttpRequestor {
+        private static final Pattern SESSION_ID = Pattern.compile("\"session_id\":\"([^\"]*)\"");
+        private static final Pattern OFFSET = Pattern.compile("\"offset\":(\\d+)");
+        private static final Pattern PATH = Pattern.compile("\"path\":\"([^\"]*)\"");
+
+        private final List<String> routes = Collections.synchronizedList(new ArrayList<String>());
+        private final List<String> loseResponses = Collections.synchronizedList(new ArrayList<String>());
+        private final List<String> failRoutes = Collections.synchronizedList(new ArrayList<String>());
+        private final Map<String, ByteArrayOutputStream> sessions = new HashMap<String, ByteArrayOutputStream>();
+        private final Map<String, byte []> committed = Collections.synchronizedMap(new HashMap<String, byte []>());
+        private volatile CountDownLatch inFlight;
+        private int sessionCount = 0;
+
+        @Override
+        protected Response respond(Request request) throws IOException {
+            CountDownLatch latch = inFlight;
+            if (latch != null) {
+                latch.countDown();
+                try {
+                    if (!latch.await(5, TimeUnit.SECONDS)) {
+                        throw new IOException("Uploads did not run in parallel");
+                    }
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+            }
+            return handle(request.getRoute(), request.getArg(), request.getBody());
+        }
+
+        private synchronized Response handle(String route, String arg, byte [] body) throws IOException {
+            routes.add(route);
+            if (failRoutes.contains(route)) {
+                throw new IOException("Connection refused");
+            }
+
+            Response response;
+            if (route.equals("get_metadata")) {
+                String path = find(PATH, arg);
+                byte [] content = committed.get(path);
+                if (content == null) {
+                    return json(409, "{\"error_summary\":\"path/not_found/\",\"error\":{\".tag\":\"path\",\"path\":{\".tag\":\"not_found\"}}}");
+                }
+                return json(200, metadata(path, content));
+            } else if (route.equals("upload")) {
+                response = commit(find(PATH, arg), body);
+            } else if (route.equals("upload_session/start")) {
+                String sessionId = "session" + sessionCount++;
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                data.write(body);
+                sessions.put(sessionId, data);
+                response = json(200, "{\"session_id\":\"" + sessionId + "\"}");
+            } else {
+                String sessionId = find(SESSION_ID, arg);
+                ByteArrayOutputStream data = sessions.get(sessionId);
+                if (data == null) {
+                    String error = "{\".tag\":\"not_found\"}";
+                    if (route.equals("upload_session/finish")) {
+                        error = "{\".tag\":\"lookup_failed\",\"lookup_failed\":" + error + "}";
+                    }
+                    return json(409, "{\"error_summary\":\"not_found/\",\"error\":" + error + "}");
+                }
+                long offset = Long.parseLong(find(OFFSET, arg));
+                if (offset != data.size()) {
+                    String error = "{\".tag\":\"incorrect_offset\",\"correct_offset\":" + data.size() + "}";
+                    if (route.equals("upload_session/finish")) {
+                        error = "{\".tag\":\"lookup_failed\",\"lookup_failed\":" + error + "}";
+                    }
+                    return json(409, "{\"error_summary\":\"incorrect_offset/\",\"error\":" + error + "}");
+                }
+                data.write(body);
+                if (route.equals("upload_session/finish")) {
+                    sessions.remove(sessionId);
+                    response = commit(find(PATH, arg), data.toByteArray());
+                } else {
+                    response = json(200, "null");
+                }
+            }
+
+            if (loseResponses.remove(route)) {
+                throw new IOException("Connection reset");
+            }
+            return response;
+        }
+
+        private Response commit(String path, byte [] content) throws IOException {
+            committed.put(path, content);
+            return json(200, metadata(path, content));
+        }
+
+        private static String metadata(String path, byte [] content) throws IOException {
+            DbxContentHasher hasher = new DbxContentHasher();
+            hasher.asOutputStream().write(content);
+            String name = path.substring(path.lastIndexOf('/') + 1);
+            return (
+                "{\".tag\":\"file\"" +
+                ",\"name\":\"" + name + "\"" +
+                ",\"id\":\"id:" + name + "\"" +
+                ",\"client_modified\":\"2016-02-22T19:24:00Z\"" +
+                ",\"server_modified\":\"2016-02-22T19:24:00Z\"" +
+                ",\"rev\":\"0123456789abcdef\"" +
+                ",\"size\":" + content.length +
+                ",\"path_lower\":\"" + path.toLowerCase() + "\"" +
+                ",\"path_display\":\"" + path + "\"" +
+                ",\"content_hash\":\"" + hasher.digestHex() + "\"" +
+                "}"
+            );
+        }
+
+        private static String find(Pattern pattern, String arg) {
+            Matcher matcher = pattern.matcher(arg);
+            if (!matcher.find()) {
+                throw new AssertionError("Missing " + pattern + " in " + arg);
+            }
+            return matcher.group(1);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.dropbox.core.v2.files;
+
+import static org.testng.Assert.*;
+
+import com.dropbox.core.DbxRequestConfig;
+import com.dropbox.core.http.FakeHttpRequestor;
+import com.dropbox.core.http.HttpRequestor;
+import com.dropbox.core.util.Collector;
+import com.dropbox.core.v2.DbxClientV2;
+
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class DbxFolderCrawlerTest {
+
+    @Test
+    public void testCrawlsWholeTree() throws Exception {
+        TreeServer server = new TreeServer(2);
+        server.folder("/a", "id:a");
+        server.folder("/a/b", "id:b");
+        server.folder("/c", "id:c");
+        for (int i = 0; i < 5; ++i) {
+            server.file("/f" + i + ".txt");
+            server.file("/a/f" + i + ".txt");
+            server.file("/a/b/f" + i + ".txt");
+        }
+        server.file("/c/f.txt");
+
+        DbxFolderCrawler crawler = crawler(server, 3).build();
+        try {
+            DbxFolderCrawler.Result<ArrayList<Metadata>> result = crawler.crawl("", new OrderCheckingCollector());
+
+            assertEquals(paths(result.getEntries()), server.paths());
+            assertEquals(result.getFolders(), 4);
+            assertNull(result.getCursor());
+        } finally {
+            crawler.close();
+        }
+    }
+
+    @Test
+    public void testFoldersAreListedOncePerId() throws Exception {
+        TreeServer server = new TreeServer(100);
+        server.folder("/a", "id:a");
+        server.file("/a/f.txt");
+        // same folder, mounted twice
+        server.folder("/a/shared", "id:shared");
+        server.folder("/b", "id:b");
+        server.folder("/b/shared", "id:shared");
+        server.file("/a/shared/f.txt");
+        server.file("/b/shared/f.txt");
+
+        DbxFolderCrawler crawler = crawler(server, 2).build();
+        try {
+            DbxFolderCrawler.Result<ArrayList<Metadata>> result = crawler.crawl("", new Collector.ArrayListCollector<Metadata>());
+
+            assertEquals(result.getFolders(), 4);
+            int shared = 0;
+            for (String path : paths(result.getEntries())) {
+                if (path.endsWith("/shared")) {
+                    ++shared;
+                }
+            }
+            assertEquals(shared, 1);
+        } finally {
+            crawler.close();
+        }
+    }
+
+    @Test
+    public void testLatestCursorIsTakenBeforeCrawl() throws Exception {
+        TreeServer server = new TreeServer(100);
+        server.folder("/a", "id:a");
+        server.file("/a/f.txt");
+
+        DbxFolderCrawler crawler = crawler(server, 2).withLatestCursor(true).build();
+        try {
+            DbxFolderCrawler.Result<ArrayList<Metadata>> result = crawler.crawl("/a", new Collector.ArrayListCollector<Metadata>());
+
+            assertEquals(result.getCursor(), "latest:/a");
+            assertEquals(server.requests.get(0), "get_latest_cursor:/a");
+            assertEquals(paths(result.getEntries()), Collections.singletonList("/a/f.txt"));
+        } finally {
+            crawler.close();
+        }
+    }
+
+    @Test(expectedExceptions = ListFolderErrorException.class)
+    public void testMissingFolderFails() throws Exception {
+        TreeServer server = new TreeServer(100);
+
+        DbxFolderCrawler crawler = crawler(server, 2).build();
+        try {
+            crawler.crawl("/missing", new Collector.ArrayListCollector<Metadata>());
+        } finally {
+            crawler.close();
+        }
+    }
+
+    private static DbxFolderCrawler.Builder crawler(HttpRequestor requestor, int parallelism) {
+        DbxRequestConfig config = DbxRequestConfig.newBuilder("sdk-test")
+            .withHttpRequestor(requestor)
+            .build();
+        DbxClientV2 client = new DbxClientV2(config, "fakeAccessToken");
+        return DbxFolderCrawler.newBuilder(client.files()).withParallelism(parallelism);
+    }
+
+    private static List<String> paths(List<Metadata> entries) {
+        List<String> paths = new ArrayList<String>();
+        for (Metadata entry : entries) {
+            paths.add(entry.getPathLower());
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    /**
+     * Collects entries, checking that every entry comes after its folder.
+     */
+    private static final class OrderCheckingCollector extends Collector<Metadata, ArrayList<Metadata>> {
+        private final ArrayList<Metadata> entries = new ArrayList<Metadata>();
+        private final Set<String> folders = new HashSet<String>();
+
+        @Override
+        public void add(Metadata entry) {
+            String path = entry.getPathLower();
+            String parent = path.substring(0, path.lastIndexOf('/'));
+            assertTrue(parent.isEmpty() || folders.contains(parent), path);
+            if (entry instanceof FolderMetadata) {
+                folders.add(path);
+            }
+            entries.add(entry);
+        }
+
+        @Override
+        public ArrayList<Metadata> finish() {
+            return entries;
+        }
+    }
+
+    /**
+     * In-memory stand-in for the list_folder routes of the Dropbox API, serving a folder tree in
+     * pages of {@code pageSize} entries. Cursors are {@code "<folder>#<offset>"}.
+     */
+    private static final class TreeServer extends FakeHttpRequestor {
+        private static final Pattern PATH = Pattern.compile("\"path\":\"([^\"]*)\"");
+        private static final Pattern CURSOR = Pattern.compile("\"cursor\":\"([^\"]*)#([0-9]+)\"");
+
+        private final int pageSize;
+        // path -> folder id, or null for files
+        private final Map<String, String> entries = Collections.synchronizedMap(new LinkedHashMap<String, String>());
+        private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+        TreeServer(int pageSize) {
+            this.pageSize = pageSize;
+        }
+
+        void folder(String path, String id) {
+            entries.put(path, id);
+        }
+
+        void file(String path) {
+            entries.put(path, null);
+        }
+
+        List<String> paths() {
+            List<String> paths = new ArrayList<String>(entries.keySet());
+            Collections.sort(paths);
+            return paths;
+        }
+
+        @Override
+        protected Response respond(Request request) throws IOException {
+            String url = request.getUrl();
+            String body = request.getBodyAsString();
+            if (url.endsWith("/2/files/list_folder/get_latest_cursor")) {
+                String path = group(PATH, body, 1);
+                requests.add("get_latest_cursor:" + path);
+                return json(200, "{\"cursor\":\"latest:" + path + "\"}");
+            }
+
+            String folder;
+            int offset;
+            if (url.endsWith("/2/files/list_folder/continue")) {
+                folder = group(CURSOR, body, 1);
+                offset = Integer.parseInt(group(CURSOR, body, 2));
+            } else {
+                assertTrue(url.endsWith("/2/files/list_folder"), url);
+                folder = group(PATH, body, 1);
+                offset = 0;
+                if (!folder.isEmpty() && !entries.containsKey(folder)) {
+                    return json(409, "{\"error_summary\":\"path/not_found/\",\"error\":{\".tag\":\"path\",\"path\":{\".tag\":\"not_found\"}}}");
+                }
+            }
+            requests.add(folder + "#" + offset);
+
+            List<String> children = new ArrayList<String>();
+            synchronized (entries) {
+                for (String path : entries.keySet()) {
+                    if (path.startsWith(folder + "/") && path.indexOf('/', folder.length() + 1) < 0) {
+                        children.add(path);
+                    }
+                }
+            }
+
+            StringBuilder json = new StringBuilder("{\"entries\":[");
+            int end = Math.min(children.size(), offset + pageSize);
+            for (int i = offset; i < end; ++i) {
+                String path = children.get(i);
+                String id = entries.get(path);
+                if (i > offset) {
+                    json.append(',');
+                }
+                String name = path.substring(path.lastIndexOf('/') + 1);
+                if (id != null) {
+                    json.append("{\".tag\":\"folder\",\"name\":\"").append(name)
+                        .append("\",\"id\":\"").append(id).append('"');
+                } else {
+                    json.append("{\".tag\":\"file\",\"name\":\"").append(name)
+                        .append("\",\"id\":\"id:").append(path.hashCode()).append('"')
+                        .append(",\"client_modified\":\"2016-02-22T19:24:00Z\"")
+                        .append(",\"server_modified\":\"2016-02-22T19:24:00Z\"")
+                        .append(",\"rev\":\"a00000001\",\"size\":10");
+                }
+                json.append(",\"path_lower\":\"").append(path).append('"')
+                    .append(",\"path_display\":\"").append(path).append("\"}");
+            }
+            json.append("],\"cursor\":\"").append(folder).append('#').append(end).append('"')
+                .append(",\"has_more\":").append(end < children.size())
+                .append('}');
+            return json(200, json.toString());
+        }
+
+        private static String group(Pattern pattern, String body, int group) {
+            Matcher matcher = pattern.matcher(body);
+            assertTrue(matcher.find(), body);
+            return matcher.group(group);
+        }
+    }
+}
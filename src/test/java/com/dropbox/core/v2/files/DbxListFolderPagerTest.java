@@ -0,0 +1,256 @@
+package com.dropbox.core.v2.files;
+
+import static org.testng.Assert.*;
+
+import com.dropbox.core.DbxRequestConfig;
+import com.dropbox.core.ExponentialBackoffRetryPolicy;
+import com.dropbox.core.http.FakeHttpRequestor;
+import com.dropbox.core.http.HttpRequestor;
+import com.dropbox.core.util.Collector;
+import com.dropbox.core.v2.DbxClientV2;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class DbxListFolderPagerTest {
+
+    @Test
+    public void testFollowsCursorAcrossPages() throws Exception {
+        FolderServer server = new FolderServer(3, 4);
+        DbxListFolderPager pager = pager(server);
+
+        DbxListFolderPager.Result<ArrayList<Metadata>> result = pager.listFolder(
+            ListFolderArg.newBuilder("/folder").build(),
+            new Collector.ArrayListCollector<Metadata>()
+        );
+
+        assertEquals(names(result.getEntries()), server.names());
+        assertEquals(result.getCursor(), "cursor-3");
+        assertFalse(result.getHasMore());
+        assertEquals(server.requests, Arrays.asList(
+            "list_folder", "list_folder/continue:cursor-1", "list_folder/continue:cursor-2"
+        ));
+    }
+
+    @Test
+    public void testEntriesAreCollectedAsTheyAreParsed() throws Exception {
+        final FolderServer server = new FolderServer(1, 5);
+        DbxListFolderPager pager = pager(server);
+
+        // collectors see each entry before the rest of the page is read
+        final List<Integer> bytesReadAtEntry = new ArrayList<Integer>();
+        DbxListFolderPager.Result<Integer> result = pager.listFolderPage(
+            ListFolderArg.newBuilder("/folder").build(),
+            new CountingCollector() {
+                @Override
+                public void add(Metadata entry) {
+                    super.add(entry);
+                    bytesReadAtEntry.add(server.bytesRead);
+                }
+            }
+        );
+
+        assertEquals(result.getEntries(), Integer.valueOf(5));
+        assertEquals(bytesReadAtEntry.size(), 5);
+        assertTrue(bytesReadAtEntry.get(0) < bytesReadAtEntry.get(4), bytesReadAtEntry.toString());
+    }
+
+    @Test
+    public void testRetriedPageDoesNotRepeatEntries() throws Exception {
+        FolderServer server = new FolderServer(2, 4);
+        // break the second page halfway, once
+        server.breakPage = 2;
+        DbxListFolderPager pager = pager(server);
+
+        DbxListFolderPager.Result<ArrayList<Metadata>> result = pager.listFolder(
+            ListFolderArg.newBuilder("/folder").build(),
+            new Collector.ArrayListCollector<Metadata>()
+        );
+
+        assertEquals(names(result.getEntries()), server.names());
+        assertEquals(server.requests.size(), 3);
+    }
+
+    @Test
+    public void testContinuePage() throws Exception {
+        FolderServer server = new FolderServer(3, 2);
+        DbxListFolderPager pager = pager(server);
+
+        DbxListFolderPager.Result<Integer> result = pager.listFolderContinuePage("cursor-1", new CountingCollector());
+
+        assertEquals(result.getEntries(), Integer.valueOf(2));
+        assertEquals(result.getCursor(), "cursor-2");
+        assertTrue(result.getHasMore());
+    }
+
+    private static DbxListFolderPager pager(HttpRequestor requestor) {
+        DbxRequestConfig config = DbxRequestConfig.newBuilder("sdk-test")
+            .withHttpRequestor(requestor)
+            .withRetryPolicy(ExponentialBackoffRetryPolicy.newBuilder()
+                .withBaseDelay(0, TimeUnit.MILLISECONDS)
+                .withNetworkErrorRetries(true)
+                .withIdempotentRoutes("2/files/list_folder", "2/files/list_folder/continue")
+                .build())
+            .build();
+        DbxClientV2 client = new DbxClientV2(config, "fakeAccessToken");
+        return new DbxListFolderPager(client.files());
+    }
+
+    private static List<String> names(List<Metadata> entries) {
+        List<String> names = new ArrayList<String>();
+        for (Metadata entry : entries) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+
+    private static class CountingCollector extends Collector<Metadata, Integer> {
+        private int count = 0;
+
+        @Override
+        public void add(Metadata entry) {
+            ++count;
+        }
+
+        @Override
+        public Integer finish() {
+            return count;
+        }
+    }
+
+    /**
+     * In-memory stand-in for the list_folder routes of the Dropbox API, serving a folder of
+     * {@code pages} pages with {@code pageSize} files each. Page {@code n} ends with cursor
+     * {@code "cursor-n"}.
+     */
+    private static final class FolderServer extends FakeHttpRequestor {
+        private static final Pattern CURSOR = Pattern.compile("\"cursor\":\"cursor-([0-9]+)\"");
+
+        private final int pages;
+        private final int pageSize;
+        private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+        private volatile int bytesRead = 0;
+        private int breakPage = -1;
+
+        FolderServer(int pages, int pageSize) {
+            this.pages = pages;
+            this.pageSize = pageSize;
+        }
+
+        List<String> names() {
+            List<String> names = new ArrayList<String>();
+            for (int page = 1; page <= pages; ++page) {
+                for (int i = 0; i < pageSize; ++i) {
+                    names.add("file-" + page + "-" + i + ".txt");
+                }
+            }
+            return names;
+        }
+
+        private String page(int page) {
+            StringBuilder json = new StringBuilder("{\"entries\":[");
+            for (int i = 0; i < pageSize; ++i) {
+                String name = "file-" + page + "-" + i + ".txt";
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("{\".tag\":\"file\"")
+                    .append(",\"name\":\"").append(name).append('"')
+                    .append(",\"id\":\"id:").append(name).append('"')
+                    .append(",\"client_modified\":\"2016-02-22T19:24:00Z\"")
+                    .append(",\"server_modified\":\"2016-02-22T19:24:00Z\"")
+                    .append(",\"rev\":\"a00000001\"")
+                    .append(",\"size\":10")
+                    .append(",\"path_lower\":\"/folder/").append(name).append('"')
+                    .append(",\"path_display\":\"/folder/").append(name).append('"')
+                    .append('}');
+            }
+            return json.append("],\"cursor\":\"cursor-").append(page).append('"')
+                .append(",\"has_more\":").append(page < pages)
+                .append('}')
+                .toString();
+        }
+
+        @Override
+        protected Response respond(Request request) throws IOException {
+            assertTrue(request.getRoute().startsWith("list_folder"), request.getUrl());
+            String body = request.getBodyAsString();
+            int page = 1;
+            if (request.getRoute().equals("list_folder/continue")) {
+                Matcher matcher = CURSOR.matcher(body);
+                assertTrue(matcher.find(), body);
+                page = Integer.parseInt(matcher.group(1)) + 1;
+                requests.add("list_folder/continue:cursor-" + matcher.group(1));
+            } else {
+                requests.add("list_folder");
+            }
+
+            byte [] json = page(page).getBytes("UTF-8");
+            final int breakAt = page == breakPage ? json.length / 2 : -1;
+            if (page == breakPage) {
+                breakPage = -1;
+            }
+            bytesRead = 0;
+
+            InputStream in = new ByteArrayInputStream(json) {
+                @Override
+                public synchronized int read(byte [] b, int off, int len) {
+                    // trickle the body so parsing interleaves with reading
+                    int n = super.read(b, off, Math.min(len, 16));
+                    if (n > 0) {
+                        bytesRead += n;
+                    }
+                    return n;
+                }
+            };
+            if (breakAt >= 0) {
+                in = new BreakingInputStream(in, breakAt);
+            }
+
+            return json(200, in);
+        }
+    }
+
+    /**
+     * Fails with an {@link IOException} once {@code limit} bytes were read, like a dropped
+     * connection.
+     */
+    private static final class BreakingInputStream extends InputStream {
+        private final InputStream in;
+        private int remaining;
+
+        BreakingInputStream(InputStream in, int limit) {
+            this.in = in;
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte [] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte [] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                throw new IOException("connection reset");
+            }
+            int n = in.read(b, off, Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+}
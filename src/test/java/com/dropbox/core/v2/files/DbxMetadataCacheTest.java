@@ -0,0 +1,329 @@
+package com.dropbox.core.v2.files;
+
+import static org.testng.Assert.*;
+
+import com.dropbox.core.DbxHost;
+import com.dropbox.core.DbxRequestConfig;
+import com.dropbox.core.http.FakeHttpRequestor;
+import com.dropbox.core.http.HttpRequestor;
+import com.dropbox.core.v2.DbxClientV2;
+import com.dropbox.core.v2.DbxTeamClientV2;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class DbxMetadataCacheTest {
+
+    @Test
+    public void testRepeatedLookupsAreHits() throws Exception {
+        MetadataServer server = new MetadataServer();
+        DbxUserFilesRequests files = files(server, null);
+        DbxMetadataCache cache = DbxMetadataCache.newBuilder().build();
+
+        assertEquals(cache.getMetadata(files, "/Docs/A.txt").getPathLower(), "/docs/a.txt");
+        assertEquals(cache.getMetadata(files, "/docs/a.TXT").getPathLower(), "/docs/a.txt");
+
+        assertEquals(server.requests(), list("get_metadata:/Docs/A.txt"));
+        assertEquals(cache.getHits(), 1);
+        assertEquals(cache.getMisses(), 1);
+        assertEquals(cache.size(), 1);
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneRequest() throws Exception {
+        MetadataServer server = new MetadataServer();
+        server.blocked = new CountDownLatch(1);
+        final DbxUserFilesRequests files = files(server, null);
+        final DbxMetadataCache cache = DbxMetadataCache.newBuilder().build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Metadata>> results = new ArrayList<Future<Metadata>>();
+            for (int i = 0; i < 8; ++i) {
+                results.add(executor.submit(new Callable<Metadata>() {
+                    @Override
+                    public Metadata call() throws Exception {
+                        return cache.getMetadata(files, "/hot.txt");
+                    }
+                }));
+            }
+            // let every thread find the lookup in flight
+            Thread.sleep(200);
+            server.blocked.countDown();
+
+            for (Future<Metadata> result : results) {
+                assertEquals(result.get(5, TimeUnit.SECONDS).getPathLower(), "/hot.txt");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(server.requests(), list("get_metadata:/hot.txt"));
+        assertEquals(cache.getMisses(), 8);
+    }
+
+    @Test
+    public void testMutationsInvalidateEntries() throws Exception {
+        MetadataServer server = new MetadataServer();
+        DbxUserFilesRequests files = files(server, null);
+        DbxMetadataCache cache = DbxMetadataCache.newBuilder().build();
+
+        cache.getMetadata(files, "/a/b.txt");
+        cache.getMetadata(files, "/a/c/d.txt");
+        cache.getMetadata(files, "id:e");
+        cache.getMetadata(files, "/f.txt");
+        cache.getMetadata(files, "/g.txt");
+        assertEquals(cache.size(), 5);
+
+        // removes everything below /a, including id:e, which is /a/e.txt
+        cache.deleteV2(files, "/A");
+        assertEquals(cache.size(), 2);
+
+        cache.moveV2(files, "/f.txt", "/h.txt");
+        assertEquals(cache.size(), 1);
+
+        cache.upload(files, new CommitInfo("/g.txt"), new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+        assertEquals(cache.size(), 0);
+
+        cache.getMetadata(files, "/a/b.txt");
+        assertEquals(server.count("get_metadata:/a/b.txt"), 2);
+        assertEquals(cache.getEvictions(), 0);
+    }
+
+    @Test
+    public void testInvalidationDuringLookupIsScoped() throws Exception {
+        MetadataServer server = new MetadataServer();
+        final DbxUserFilesRequests files = files(server, null);
+        DbxUserFilesRequests other = files(server, null);
+        final DbxMetadataCache cache = DbxMetadataCache.newBuilder().build();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            server.started = new CountDownLatch(1);
+            server.blocked = new CountDownLatch(1);
+            Future<Metadata> x = executor.submit(new Callable<Metadata>() {
+                @Override
+                public Metadata call() throws Exception {
+                    return cache.getMetadata(files, "/a/x.txt");
+                }
+            });
+            assertTrue(server.started.await(5, TimeUnit.SECONDS));
+            // neither affects the lookup in flight
+            cache.invalidate(files, "/a/y.txt");
+            cache.invalidate(other, "/a");
+            server.blocked.countDown();
+            x.get(5, TimeUnit.SECONDS);
+
+            server.started = new CountDownLatch(1);
+            server.blocked = new CountDownLatch(1);
+            Future<Metadata> z = executor.submit(new Callable<Metadata>() {
+                @Override
+                public Metadata call() throws Exception {
+                    return cache.getMetadata(files, "/b/z.txt");
+                }
+            });
+            assertTrue(server.started.await(5, TimeUnit.SECONDS));
+            // the folder of the lookup in flight changed
+            cache.invalidate(files, "/B");
+            server.blocked.countDown();
+            z.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        server.blocked = null;
+
+        cache.getMetadata(files, "/a/x.txt");
+        cache.getMetadata(files, "/b/z.txt");
+        assertEquals(server.count("get_metadata:/a/x.txt"), 1);
+        assertEquals(server.count("get_metadata:/b/z.txt"), 2);
+        assertEquals(cache.getHits(), 1);
+    }
+
+    @Test
+    public void testEntriesArePerClient() throws Exception {
+        MetadataServer server = new MetadataServer();
+        DbxUserFilesRequests alice = files(server, "dbid:alice");
+        DbxUserFilesRequests bob = files(server, "dbid:bob");
+        DbxMetadataCache cache = DbxMetadataCache.newBuilder().build();
+
+        cache.getMetadata(alice, "/a.txt");
+        cache.getMetadata(bob, "/a.txt");
+        cache.deleteV2(alice, "/a.txt");
+        cache.getMetadata(bob, "/a.txt");
+
+        assertEquals(server.count("get_metadata:/a.txt"), 2);
+        assertEquals(cache.getHits(), 1);
+    }
+
+    @Test
+    public void testClientsWithoutUserIdDoNotShareEntries() throws Exception {
+        MetadataServer server = new MetadataServer();
+        DbxUserFilesRequests first = files(server, null);
+        DbxUserFilesRequests second = files(server, null);
+        DbxMetadataCache cache = DbxMetadataCache.newBuilder().build();
+
+        cache.getMetadata(first, "/a.txt");
+        cache.getMetadata(second, "/a.txt");
+        cache.getMetadata(first, "/a.txt");
+
+        assertEquals(server.count("get_metadata:/a.txt"), 2);
+        assertEquals(cache.getHits(), 1);
+        assertEquals(cache.size(), 2);
+    }
+
+    @Test
+    public void testTeamMembersDoNotShareEntries() throws Exception {
+        MetadataServer server = new MetadataServer();
+        DbxRequestConfig config = DbxRequestConfig.newBuilder("sdk-test")
+            .withHttpRequestor(server)
+            .build();
+        // both members carry the user ID of the team client
+        DbxTeamClientV2 team = new DbxTeamClientV2(config, "fakeAccessToken", DbxHost.DEFAULT, "dbid:team");
+        DbxUserFilesRequests alice = team.asMember("dbmid:alice").files();
+        DbxUserFilesRequests bob = team.asMember("dbmid:bob").files();
+        DbxMetadataCache cache = DbxMetadataCache.newBuilder().build();
+
+        cache.getMetadata(alice, "/a.txt");
+        cache.getMetadata(bob, "/a.txt");
+
+        assertEquals(server.count("get_metadata:/a.txt"), 2);
+        assertEquals(cache.getHits(), 0);
+    }
+
+    @Test
+    public void testEntriesExpireAndAreBounded() throws Exception {
+        MetadataServer server = new MetadataServer();
+        DbxUserFilesRequests files = files(server, null);
+        DbxMetadataCache cache = DbxMetadataCache.newBuilder()
+            .withMaxEntries(2)
+            .withTtl(100, TimeUnit.MILLISECONDS)
+            .build();
+
+        for (int i = 0; i < 10; ++i) {
+            cache.getMetadata(files, "/" + i + ".txt");
+        }
+        assertTrue(cache.size() <= 2, "size: " + cache.size());
+        assertEquals(cache.getEvictions(), 10 - cache.size());
+
+        cache.getMetadata(files, "/x.txt");
+        Thread.sleep(150);
+        cache.getMetadata(files, "/x.txt");
+        assertEquals(server.count("get_metadata:/x.txt"), 2);
+        assertEquals(cache.getHits(), 0);
+    }
+
+    private static DbxUserFilesRequests files(HttpRequestor requestor, String userId) {
+        DbxRequestConfig config = DbxRequestConfig.newBuilder("sdk-test")
+            .withHttpRequestor(requestor)
+            .build();
+        return new DbxClientV2(config, "fakeAccessToken", userId).files();
+    }
+
+    private static List<String> list(String... values) {
+        List<String> list = new ArrayList<String>();
+        Collections.addAll(list, values);
+        return list;
+    }
+
+    /**
+     * In-memory stand-in for the metadata routes of the Dropbox API. Every path exists; id
+     * {@code "id:<x>"} is the file {@code "/a/<x>.txt"}.
+     */
+    private static final class MetadataServer extends FakeHttpRequestor {
+        private static final Pattern PATH = Pattern.compile("\"(path|from_path|to_path)\":\"([^\"]*)\"");
+
+        private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+        private volatile CountDownLatch started = null;
+        private volatile CountDownLatch blocked = null;
+
+        List<String> requests() {
+            synchronized (requests) {
+                return new ArrayList<String>(requests);
+            }
+        }
+
+        int count(String request) {
+            return Collections.frequency(requests(), request);
+        }
+
+        @Override
+        protected Response respond(Request request) throws IOException {
+            String route = request.getRoute();
+            Map<String, String> paths = paths(request.getArg());
+            if (route.equals("upload")) {
+                String path = paths.get("path");
+                requests.add("upload:" + path);
+                return json(file(path));
+            }
+            if (route.equals("get_metadata")) {
+                String path = paths.get("path");
+                requests.add("get_metadata:" + path);
+                if (started != null) {
+                    started.countDown();
+                }
+                CountDownLatch latch = blocked;
+                if (latch != null) {
+                    try {
+                        assertTrue(latch.await(5, TimeUnit.SECONDS));
+                    } catch (InterruptedException ex) {
+                        throw new InterruptedIOException();
+                    }
+                }
+                return json(file(path));
+            }
+            if (route.equals("delete_v2")) {
+                String path = paths.get("path");
+                requests.add("delete_v2:" + path);
+                return json("{\"metadata\":" + file(path) + "}");
+            }
+
+            assertEquals(route, "move_v2");
+            requests.add("move_v2:" + paths.get("from_path") + ":" + paths.get("to_path"));
+            return json("{\"metadata\":" + file(paths.get("to_path")) + "}");
+        }
+
+        private static Map<String, String> paths(String body) {
+            Map<String, String> paths = new HashMap<String, String>();
+            Matcher matcher = PATH.matcher(body);
+            while (matcher.find()) {
+                paths.put(matcher.group(1), matcher.group(2));
+            }
+            return paths;
+        }
+
+        private static String file(String path) {
+            if (path.startsWith("id:")) {
+                path = "/a/" + path.substring(3) + ".txt";
+            }
+            return "{\".tag\":\"file\"" +
+                ",\"name\":\"" + path.substring(path.lastIndexOf('/') + 1) + "\"" +
+                ",\"path_lower\":\"" + path.toLowerCase() + "\"" +
+                ",\"path_display\":\"" + path + "\"" +
+                ",\"id\":\"id:" + path.hashCode() + "\"" +
+                ",\"client_modified\":\"2016-02-22T19:24:00Z\"" +
+                ",\"server_modified\":\"2016-02-22T19:24:00Z\"" +
+                ",\"rev\":\"a00000001\"" +
+                ",\"size\":10}";
+        }
+
+        private static Response json(String body) throws IOException {
+            return json(200, body);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.dropbox.core.v2.files;
+
+import static org.testng.Assert.*;
+
+import com.dropbox.core.DbxRequestConfig;
+import com.dropbox.core.http.FakeHttpRequestor;
+import com.dropbox.core.http.HttpRequestor;
+import com.dropbox.core.v2.DbxClientV2;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class DbxMetadataIndexTest {
+
+    @Test
+    public void testSnapshotAnswersLookups() throws Exception {
+        IndexServer server = new IndexServer();
+        server.snapshot = entries(folder("/Docs"), file("/Docs/A.txt"), file("/Docs/b.txt"), file("/c.txt"));
+
+        DbxMetadataIndex index = index(server, null);
+        assertEquals(index.sync(), 4);
+
+        assertEquals(index.size(), 4);
+        assertEquals(index.getCursor(), "cursor-0");
+        assertEquals(index.getMetadata("/docs/a.TXT").getPathDisplay(), "/Docs/A.txt");
+        assertNull(index.getMetadata("/missing"));
+        assertEquals(names(index.listFolder("")), list("Docs", "c.txt"));
+        assertEquals(names(index.listFolder("/Docs/")), list("A.txt", "b.txt"));
+        assertNull(index.listFolder("/c.txt"));
+    }
+
+    @Test
+    public void testChangesAreApplied() throws Exception {
+        IndexServer server = new IndexServer();
+        server.snapshot = entries(folder("/a"), folder("/a/b"), file("/a/b/c.txt"), file("/a/d.txt"), file("/e.txt"));
+        server.deltas.add(entries(deleted("/a"), file("/f.txt")));
+        server.deltas.add(entries(folder("/g"), file("/g/h.txt")));
+
+        DbxMetadataIndex index = index(server, null);
+        index.sync();
+        assertEquals(index.sync(), 2);
+
+        // deleted folders go with everything below them
+        assertNull(index.getMetadata("/a"));
+        assertNull(index.getMetadata("/a/b/c.txt"));
+        assertNull(index.listFolder("/a/b"));
+        assertEquals(names(index.listFolder("")), list("e.txt", "f.txt"));
+
+        index.sync();
+        assertEquals(names(index.listFolder("/g")), list("h.txt"));
+        assertEquals(index.size(), 4);
+        assertEquals(index.getCursor(), "cursor-2");
+        assertEquals(server.requests, list("list_folder", "continue:cursor-0", "continue:cursor-1"));
+    }
+
+    @Test
+    public void testIndexSurvivesRestart() throws Exception {
+        IndexServer server = new IndexServer();
+        server.snapshot = entries(folder("/a"), file("/a/b.txt"));
+        server.deltas.add(entries(file("/a/c.txt")));
+        File file = File.createTempFile("dbx-metadata-index", ".index");
+        file.deleteOnExit();
+        assertTrue(file.delete());
+
+        DbxMetadataIndex index = index(server, file);
+        index.sync();
+        assertTrue(file.exists());
+
+        DbxMetadataIndex reopened = index(server, file);
+        assertEquals(reopened.getCursor(), "cursor-0");
+        assertEquals(names(reopened.listFolder("/a")), list("b.txt"));
+        assertTrue(reopened.getMetadata("/a/b.txt") instanceof FileMetadata);
+
+        reopened.sync();
+        assertEquals(names(reopened.listFolder("/a")), list("b.txt", "c.txt"));
+        assertEquals(server.requests, list("list_folder", "continue:cursor-0"));
+    }
+
+    @Test
+    public void testResetCursorRelists() throws Exception {
+        IndexServer server = new IndexServer();
+        server.snapshot = entries(file("/a.txt"));
+
+        DbxMetadataIndex index = index(server, null);
+        index.sync();
+
+        server.reset = true;
+        server.snapshot = entries(file("/b.txt"));
+        index.sync();
+
+        assertNull(index.getMetadata("/a.txt"));
+        assertNotNull(index.getMetadata("/b.txt"));
+        assertEquals(server.requests, list("list_folder", "continue:cursor-0", "list_folder"));
+    }
+
+    private static DbxMetadataIndex index(HttpRequestor requestor, File file) throws IOException {
+        DbxRequestConfig config = DbxRequestConfig.newBuilder("sdk-test")
+            .withHttpRequestor(requestor)
+            .build();
+        DbxClientV2 client = new DbxClientV2(config, "fakeAccessToken");
+        return DbxMetadataIndex.newBuilder(client.files(), "").withFile(file).build();
+    }
+
+    private static List<String> names(List<Metadata> entries) {
+        List<String> names = new ArrayList<String>();
+        for (Metadata entry : entries) {
+            names.add(entry.getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static List<String> list(String... values) {
+        List<String> list = new ArrayList<String>();
+        Collections.addAll(list, values);
+        return list;
+    }
+
+    private static String entries(String... entries) {
+        StringBuilder json = new StringBuilder();
+        for (String entry : entries) {
+            if (json.length() > 0) {
+                json.append(',');
+            }
+            json.append(entry);
+        }
+        return json.toString();
+    }
+
+    private static String folder(String path) {
+        return "{\".tag\":\"folder\"" + common(path) + ",\"id\":\"id:" + path.hashCode() + "\"}";
+    }
+
+    private static String file(String path) {
+        return "{\".tag\":\"file\"" + common(path) +
+            ",\"id\":\"id:" + path.hashCode() + "\"" +
+            ",\"client_modified\":\"2016-02-22T19:24:00Z\"" +
+            ",\"server_modified\":\"2016-02-22T19:24:00Z\"" +
+            ",\"rev\":\"a00000001\"" +
+            ",\"size\":10}";
+    }
+
+    private static String deleted(String path) {
+        return "{\".tag\":\"deleted\"" + common(path) + "}";
+    }
+
+    private static String common(String path) {
+        return ",\"name\":\"" + path.substring(path.lastIndexOf('/') + 1) + "\"" +
+            ",\"path_lower\":\"" + path.toLowerCase() + "\"" +
+            ",\"path_display\":\"" + path + "\"";
+    }
+
+    /**
+     * In-memory stand-in for the list_folder routes of the Dropbox API. The snapshot is listed
+     * with cursor {@code "cursor-0"}, and delta {@code n} is listed from {@code "cursor-n"}.
+     */
+    private static final class IndexServer extends FakeHttpRequestor {
+        private static final Pattern CURSOR = Pattern.compile("\"cursor\":\"cursor-([0-9]+)\"");
+
+        private String snapshot = "";
+        private final List<String> deltas = new ArrayList<String>();
+        private boolean reset = false;
+        private final List<String> requests = new ArrayList<String>();
+
+        @Override
+        protected Response respond(Request request) throws IOException {
+            String url = request.getUrl();
+            String body = request.getBodyAsString();
+            if (url.endsWith("/2/files/list_folder")) {
+                assertTrue(body.contains("\"recursive\":true"), body);
+                requests.add("list_folder");
+                reset = false;
+                return page(snapshot, 0);
+            }
+
+            assertTrue(url.endsWith("/2/files/list_folder/continue"), url);
+            Matcher matcher = CURSOR.matcher(body);
+            assertTrue(matcher.find(), body);
+            int delta = Integer.parseInt(matcher.group(1));
+            requests.add("continue:cursor-" + delta);
+            if (reset) {
+                return json(409, "{\"error_summary\":\"reset/\",\"error\":{\".tag\":\"reset\"}}");
+            }
+            if (delta >= deltas.size()) {
+                return page("", delta);
+            }
+            return page(deltas.get(delta), delta + 1);
+        }
+
+        private static Response page(String entries, int cursor) throws IOException {
+            return json(200, "{\"entries\":[" + entries + "],\"cursor\":\"cursor-" + cursor + "\",\"has_more\":false}");
+        }
+    }
+}
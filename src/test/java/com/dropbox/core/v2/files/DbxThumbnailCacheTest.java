@@ -0,0 +1,182 @@
+package com.dropbox.core.v2.files;
+
+import static com.dropbox.core.TestUtil.tempDirectory;
+import static org.testng.Assert.*;
+
+import com.dropbox.core.DbxRequestConfig;
+import com.dropbox.core.http.FakeHttpRequestor;
+import com.dropbox.core.http.HttpRequestor;
+import com.dropbox.core.v2.DbxClientV2;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class DbxThumbnailCacheTest {
+
+    @Test
+    public void testRepeatGetsAreServedFromMemory() throws Exception {
+        ThumbnailServer server = new ThumbnailServer();
+        FileMetadata a = file("a.jpg", "a00000001");
+
+        DbxThumbnailCache cache = cache(server).build();
+        try {
+            byte [] first = cache.get(a, ThumbnailSize.W64H64, ThumbnailFormat.JPEG);
+            byte [] second = cache.get(a, ThumbnailSize.W64H64, ThumbnailFormat.JPEG);
+            assertEquals(first, server.thumbnail("a00000001", "w64h64", "jpeg"));
+            assertEquals(second, first);
+
+            // other size, other thumbnail
+            cache.get(a, ThumbnailSize.W128H128, ThumbnailFormat.JPEG);
+        } finally {
+            cache.close();
+        }
+
+        assertEquals(server.requests, Arrays.asList("a00000001/w64h64/jpeg", "a00000001/w128h128/jpeg"));
+        assertEquals(cache.getMisses(), 2);
+        assertEquals(cache.getMemoryHits(), 1);
+    }
+
+    @Test
+    public void testEvictedThumbnailsAreServedFromDisk() throws Exception {
+        ThumbnailServer server = new ThumbnailServer();
+        FileMetadata a = file("a.jpg", "a00000001");
+        FileMetadata b = file("b.jpg", "b00000001");
+
+        // room for one thumbnail in memory
+        DbxThumbnailCache cache = cache(server)
+            .withMemoryCapacity(ThumbnailServer.SIZE)
+            .withDiskCache(tempDirectory(), 10 * ThumbnailServer.SIZE)
+            .build();
+        try {
+            cache.get(a, ThumbnailSize.W64H64, ThumbnailFormat.JPEG);
+            cache.get(b, ThumbnailSize.W64H64, ThumbnailFormat.JPEG);
+            assertEquals(cache.getMemorySize(), ThumbnailServer.SIZE);
+
+            assertEquals(
+                cache.get(a, ThumbnailSize.W64H64, ThumbnailFormat.JPEG),
+                server.thumbnail("a00000001", "w64h64", "jpeg")
+            );
+        } finally {
+            cache.close();
+        }
+
+        assertEquals(server.requests.size(), 2);
+        assertEquals(cache.getDiskHits(), 1);
+    }
+
+    @Test
+    public void testPrefetchSharesDownloadsWithGet() throws Exception {
+        ThumbnailServer server = new ThumbnailServer();
+        server.blocked = new CountDownLatch(1);
+        FileMetadata a = file("a.jpg", "a00000001");
+        FileMetadata b = file("b.png", "b00000001");
+        List<Metadata> entries = Arrays.<Metadata>asList(
+            a,
+            b,
+            file("notes.txt", "c00000001"),
+            FolderMetadata.newBuilder("photos", "id:photos").build()
+        );
+
+        DbxThumbnailCache cache = cache(server).withParallelism(2).build();
+        try {
+            List<Future<byte []>> futures = cache.prefetch(entries, ThumbnailSize.W64H64, ThumbnailFormat.JPEG);
+            assertEquals(futures.size(), 2);
+            assertTrue(server.started.await(10, TimeUnit.SECONDS));
+
+            server.blocked.countDown();
+            byte [] thumbnail = cache.get(a, ThumbnailSize.W64H64, ThumbnailFormat.JPEG);
+            assertEquals(thumbnail, server.thumbnail("a00000001", "w64h64", "jpeg"));
+            for (Future<byte []> future : futures) {
+                assertNotNull(future.get(10, TimeUnit.SECONDS));
+            }
+            cache.get(b, ThumbnailSize.W64H64, ThumbnailFormat.JPEG);
+        } finally {
+            cache.close();
+        }
+
+        assertEquals(server.requests.size(), 2);
+        assertEquals(cache.getMisses(), 2);
+    }
+
+    private static DbxThumbnailCache.Builder cache(HttpRequestor requestor) {
+        DbxRequestConfig config = DbxRequestConfig.newBuilder("sdk-test")
+            .withHttpRequestor(requestor)
+            .build();
+        DbxClientV2 client = new DbxClientV2(config, "fakeAccessToken");
+        return DbxThumbnailCache.newBuilder(client.files());
+    }
+
+    private static FileMetadata file(String name, String rev) {
+        return FileMetadata.newBuilder(name, "id:" + rev, new Date(0), new Date(0), rev, 1000)
+            .withPathLower("/photos/" + name)
+            .build();
+    }
+
+    /**
+     * In-memory stand-in for the thumbnail route of the Dropbox API. Every thumbnail is {@link
+     * #SIZE} bytes derived from the requested revision, size and format.
+     */
+    private static final class ThumbnailServer extends FakeHttpRequestor {
+        private static final int SIZE = 100;
+        private static final Pattern PATH = Pattern.compile("\"path\":\"rev:([^\"]*)\"");
+        private static final Pattern FORMAT = Pattern.compile("\"format\":\"([^\"]*)\"");
+        private static final Pattern THUMBNAIL_SIZE = Pattern.compile("\"size\":\"([^\"]*)\"");
+
+        private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+        private final CountDownLatch started = new CountDownLatch(1);
+        // holds back responses until counted down
+        private volatile CountDownLatch blocked = new CountDownLatch(0);
+
+        byte [] thumbnail(String rev, String size, String format) {
+            byte [] thumbnail = new byte[SIZE];
+            Arrays.fill(thumbnail, (byte) (rev + size + format).hashCode());
+            return thumbnail;
+        }
+
+        private static String group(Pattern pattern, String arg) {
+            Matcher matcher = pattern.matcher(arg);
+            assertTrue(matcher.find(), arg);
+            return matcher.group(1);
+        }
+
+        @Override
+        protected Response respond(Request request) throws IOException {
+            assertEquals(request.getRoute(), "get_thumbnail");
+            String rev = group(PATH, request.getArg());
+            String size = group(THUMBNAIL_SIZE, request.getArg());
+            String format = group(FORMAT, request.getArg());
+
+            requests.add(rev + "/" + size + "/" + format);
+            started.countDown();
+            try {
+                blocked.await();
+            } catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+
+            return download(200,
+                "{\".tag\":\"file\"" +
+                ",\"name\":\"file.jpg\"" +
+                ",\"id\":\"id:" + rev + "\"" +
+                ",\"client_modified\":\"2016-02-22T19:24:00Z\"" +
+                ",\"server_modified\":\"2016-02-22T19:24:00Z\"" +
+                ",\"rev\":\"" + rev + "\"" +
+                ",\"size\":1000" +
+                "}",
+                new ByteArrayInputStream(thumbnail(rev, size, format))
+            );
+        }
+    }
+}
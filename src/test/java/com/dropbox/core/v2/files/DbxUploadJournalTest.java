@@ -0,0 +1,81 @@
+package com.dropbox.core.v2.files;
+
+import static com.dropbox.core.TestUtil.tempFile;
+import static org.testng.Assert.*;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class DbxUploadJournalTest {
+
+    @Test
+    public void testReadLastAcknowledgedOffset() throws Exception {
+        File source = tempFile(new byte[100]);
+        File journalFile = tempFile();
+
+        DbxUploadJournal journal = DbxUploadJournal.create(journalFile, source, new CommitInfo("/a.bin"));
+        journal.started("session", 10);
+        journal.acknowledged(20);
+        journal.acknowledged(30);
+        journal.close();
+
+        DbxUploadJournal read = DbxUploadJournal.read(journalFile);
+        assertEquals(read.getSourceFile(), source.getAbsoluteFile());
+        assertEquals(read.getCommitInfo().getPath(), "/a.bin");
+        assertEquals(read.getSessionId(), "session");
+        assertEquals(read.getOffset(), 30);
+        read.verifySource();
+    }
+
+    @Test
+    public void testTornRecordIsIgnored() throws Exception {
+        File source = tempFile(new byte[100]);
+        File journalFile = tempFile();
+
+        DbxUploadJournal journal = DbxUploadJournal.create(journalFile, source, new CommitInfo("/a.bin"));
+        journal.started("session", 10);
+        journal.acknowledged(20);
+        journal.close();
+
+        // crash while writing the last record
+        RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+        try {
+            raf.setLength(raf.length() - 3);
+        } finally {
+            raf.close();
+        }
+
+        assertEquals(DbxUploadJournal.read(journalFile).getOffset(), 10);
+
+        // resumed uploads replace the torn record
+        DbxUploadJournal resumed = DbxUploadJournal.read(journalFile);
+        resumed.acknowledged(40);
+        resumed.close();
+        assertEquals(DbxUploadJournal.read(journalFile).getOffset(), 40);
+    }
+
+    @Test(expectedExceptions = DbxUploadJournal.SourceFileChangedException.class)
+    public void testVerifySourceDetectsChange() throws Exception {
+        File source = tempFile(new byte[100]);
+        DbxUploadJournal journal = DbxUploadJournal.create(tempFile(), source, new CommitInfo("/a.bin"));
+        journal.close();
+
+        FileOutputStream out = new FileOutputStream(source, true);
+        try {
+            out.write(1);
+        } finally {
+            out.close();
+        }
+
+        DbxUploadJournal.read(journal.getJournalFile()).verifySource();
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testReadRejectsOtherFiles() throws Exception {
+        DbxUploadJournal.read(tempFile(new byte[100]));
+    }
+}
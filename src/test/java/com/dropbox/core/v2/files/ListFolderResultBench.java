@@ -0,0 +1,107 @@
+package com.dropbox.core.v2.files;
+
+import com.dropbox.core.stone.StoneValidation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.regex.Pattern;
+
+public class ListFolderResultBench
+{
+    // same pattern used by the files namespace for path arguments
+    static final String PATH_REGEX = "(/(.|[\\r\\n])*)?|id:.*|(ns:[0-9]+(/.*)?)";
+
+    /**
+     * Deserialize a large {@code listFolder} page under each validation mode. {@code FULL} mode
+     * still uses the precompiled patterns, so compare it against {@code patternMatches} below for
+     * the cost of the old per-construction {@code Pattern.matches(..)} calls.
+     */
+    @State(Scope.Benchmark)
+    public static class DeserializeListFolderResult
+    {
+        @Param({"1000", "10000"})
+        public int entries;
+
+        String json;
+        StoneValidation.Mode originalMode;
+
+        @Setup
+        public void setUp()
+        {
+            originalMode = StoneValidation.getMode();
+
+            StringBuilder buf = new StringBuilder();
+            buf.append("{\"entries\":[");
+            for (int i = 0; i < entries; i++) {
+                if (i > 0) {
+                    buf.append(',');
+                }
+                buf.append("{\".tag\":\"file\"")
+                    .append(",\"name\":\"file").append(i).append(".txt\"")
+                    .append(",\"id\":\"id:1HkLjqifwMAAAAAAAAAA").append(i).append("\"")
+                    .append(",\"client_modified\":\"2016-02-22T19:24:00Z\"")
+                    .append(",\"server_modified\":\"2016-02-22T19:24:00Z\"")
+                    .append(",\"rev\":\"2e0c38735597").append(Integer.toHexString(i)).append("\"")
+                    .append(",\"size\":2091603")
+                    .append(",\"path_lower\":\"/photos/file").append(i).append(".txt\"")
+                    .append(",\"path_display\":\"/Photos/file").append(i).append(".txt\"")
+                    .append(",\"content_hash\":\"e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855\"")
+                    .append('}');
+            }
+            buf.append("],\"cursor\":\"AAE0IzKyLz\",\"has_more\":false}");
+            json = buf.toString();
+        }
+
+        @TearDown
+        public void tearDown()
+        {
+            StoneValidation.setMode(originalMode);
+        }
+
+        @Benchmark
+        public ListFolderResult full()
+            throws Exception
+        {
+            StoneValidation.setMode(StoneValidation.Mode.FULL);
+            return ListFolderResult.Serializer.INSTANCE.deserializeTrusted(json);
+        }
+
+        @Benchmark
+        public ListFolderResult serverTrusted()
+            throws Exception
+        {
+            StoneValidation.setMode(StoneValidation.Mode.SERVER_TRUSTED);
+            return ListFolderResult.Serializer.INSTANCE.deserializeTrusted(json);
+        }
+    }
+
+    /**
+     * Compare recompiling the regex on every check (what generated constructors used to do) to
+     * matching against a precompiled pattern.
+     */
+    @State(Scope.Benchmark)
+    public static class MatchPath
+    {
+        static final Pattern PATH_PATTERN = Pattern.compile(PATH_REGEX);
+
+        // Not 'final' to avoid constant folding.
+        static String path = "/Photos/2016/Summer Vacation/IMG_0001.jpg";
+
+        @Benchmark
+        public boolean patternMatches()
+        {
+            return Pattern.matches(PATH_REGEX, path);
+        }
+
+        @Benchmark
+        public boolean precompiled()
+        {
+            return PATH_PATTERN.matcher(path).matches();
+        }
+    }
+}